@@ -19,28 +19,54 @@
 package io.github.mzmine.datamodel.data_access;
 
 import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.modules.dataprocessing.group_metacorrelate.corrgrouping.CorrelateGroupingTask;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This class caches feature data and either preloads all features of all provided feature list rows
  * object loads data lazily and stores already loaded intensity/mz values in memory for later data
  * accession. The intended use is for cases where the feature data is accessed multiple times, e.g.,
  * in the {@link CorrelateGroupingTask} where all feature shapes are correlated against each other.
- * In this case, all intensity data are preloaded to avoid synchronization in a ConcurrentHashMap.
+ * <p>
+ * Preloaded data are stored column wise: the values of all features are packed into few large
+ * arrays and located by the row index and the raw data file index. This avoids one map entry and
+ * one array per feature and the synchronization of a ConcurrentHashMap. Use
+ * {@link #getIntensities(Feature)} and {@link #getMzs(Feature)} to access the values without
+ * copying, and {@link #getIntensities(int, int, Feature)} in loops over the rows and files to skip
+ * their lookup.
  *
  * @author Robin Schmid (https://github.com/robinschmid)
  */
 public class CachedFeatureDataAccess {
 
+  // maximum length of a packed block, the values of a feature are never split
+  private static final int BLOCK_SIZE = 1 << 24;
+
   protected final Map<Feature, double[]> intensityMap;
   protected final Map<Feature, double[]> mzMap;
 
+  // preloaded data
+  private final Map<FeatureListRow, Integer> rowIndices;
+  private final Map<RawDataFile, Integer> fileIndices;
+  private final PackedValues packedIntensities;
+  private final PackedValues packedMzs;
+
   /**
    * Initialize data access as a cache with {@link ConcurrentHashMap} for thread safety. This is
    * useful if the features of interest are not predefined and if data are accessed multiple times
@@ -49,6 +75,10 @@ public class CachedFeatureDataAccess {
   public CachedFeatureDataAccess() {
     intensityMap = new ConcurrentHashMap<>();
     mzMap = new ConcurrentHashMap<>();
+    rowIndices = Map.of();
+    fileIndices = Map.of();
+    packedIntensities = null;
+    packedMzs = null;
   }
 
   /**
@@ -68,7 +98,7 @@ public class CachedFeatureDataAccess {
   /**
    * Preloads specific data for all feature in an array of rows. This is useful if all (or most) of
    * the features in the selected rows are accessed multiple times. Otherwise, access the feature
-   * data directly.
+   * data directly. Data of other features is loaded on access and not cached.
    *
    * @param rows             a list of rows (provides the option to prefilter)
    * @param preloadMz        preload all m/z arrays for all features
@@ -76,70 +106,260 @@ public class CachedFeatureDataAccess {
    */
   public CachedFeatureDataAccess(FeatureListRow[] rows, boolean preloadMz,
       boolean preloadIntensity) {
-    intensityMap = new HashMap<>();
-    mzMap = new HashMap<>();
-    if (preloadMz) {
-      loadMzValues(rows);
+    this(rows, getRawDataFiles(rows), preloadMz, preloadIntensity);
+  }
+
+  /**
+   * Preloads specific data for all features of the given raw data files in an array of rows. The
+   * index based access uses the index of the row in rows and of the file in files.
+   *
+   * @param rows             a list of rows (provides the option to prefilter)
+   * @param files            the raw data files to preload
+   * @param preloadMz        preload all m/z arrays for all features
+   * @param preloadIntensity preload all intensity arrays for all features
+   */
+  public CachedFeatureDataAccess(FeatureListRow[] rows, List<RawDataFile> files,
+      boolean preloadMz, boolean preloadIntensity) {
+    intensityMap = null;
+    mzMap = null;
+    rowIndices = new IdentityHashMap<>(rows.length);
+    for (int i = 0; i < rows.length; i++) {
+      rowIndices.put(rows[i], i);
     }
-    if (preloadIntensity) {
-      loadIntensityValues(rows);
+    fileIndices = new HashMap<>(files.size());
+    for (int i = 0; i < files.size(); i++) {
+      fileIndices.put(files.get(i), i);
     }
+    final RawDataFile[] fileArray = files.toArray(RawDataFile[]::new);
+    packedMzs = preloadMz ? PackedValues.load(rows, fileArray,
+        f -> f.getFeatureData().getMZValueBuffer()) : null;
+    packedIntensities = preloadIntensity ? PackedValues.load(rows, fileArray,
+        f -> f.getFeatureData().getIntensityValueBuffer()) : null;
+  }
+
+  private static List<RawDataFile> getRawDataFiles(FeatureListRow[] rows) {
+    final Set<RawDataFile> files = new LinkedHashSet<>();
+    for (FeatureListRow row : rows) {
+      for (Feature feature : row.getFeatures()) {
+        if (feature != null && feature.getRawDataFile() != null) {
+          files.add(feature.getRawDataFile());
+        }
+      }
+    }
+    return List.copyOf(files);
+  }
+
+  private static boolean isLoaded(@Nullable Feature feature) {
+    return feature != null && !feature.getFeatureStatus().equals(FeatureStatus.UNKNOWN);
   }
 
   /**
-   * This method returns the intensity array and keeps it in memory for later accessions
+   * The intensity values without copying preloaded data
+   *
+   * @param f feature
+   * @return the intensity values of this feature
+   */
+  public Values getIntensities(@NotNull Feature f) {
+    final Values values = getPacked(packedIntensities, f);
+    return values != null ? values : Values.of(getIntensityValues(f));
+  }
+
+  /**
+   * The m/z values without copying preloaded data
+   *
+   * @param f feature
+   * @return the m/z values of this feature
+   */
+  public Values getMzs(@NotNull Feature f) {
+    final Values values = getPacked(packedMzs, f);
+    return values != null ? values : Values.of(getMzValues(f));
+  }
+
+  /**
+   * This method returns the intensity array and keeps it in memory for later accessions. Preloaded
+   * values are copied, see {@link #getIntensities(Feature)}.
    *
    * @param f feature
    * @return the intensity array of this feature
    */
   public double[] getIntensityValues(Feature f) {
     assert f != null;
-    return intensityMap.computeIfAbsent(f, feature -> feature.getFeatureData()
-        .getIntensityValues(new double[feature.getNumberOfDataPoints()]));
+    final Values values = getPacked(packedIntensities, f);
+    if (values != null) {
+      return values.toArray();
+    }
+    final Function<Feature, double[]> loader = feature -> feature.getFeatureData()
+        .getIntensityValues(new double[feature.getNumberOfDataPoints()]);
+    return intensityMap != null ? intensityMap.computeIfAbsent(f, loader) : loader.apply(f);
   }
 
   /**
-   * This method returns the m/z array and keeps it in memory for later accessions
+   * This method returns the m/z array and keeps it in memory for later accessions. Preloaded values
+   * are copied, see {@link #getMzs(Feature)}.
    *
    * @param f feature
    * @return the m/z array of this feature
    */
   public double[] getMzValues(Feature f) {
     assert f != null;
-    return mzMap.computeIfAbsent(f, feature -> feature.getFeatureData()
-        .getMzValues(new double[feature.getNumberOfDataPoints()]));
+    final Values values = getPacked(packedMzs, f);
+    if (values != null) {
+      return values.toArray();
+    }
+    final Function<Feature, double[]> loader = feature -> feature.getFeatureData()
+        .getMzValues(new double[feature.getNumberOfDataPoints()]);
+    return mzMap != null ? mzMap.computeIfAbsent(f, loader) : loader.apply(f);
   }
 
   /**
-   * Load all intensity values
+   * @param rowIndex  index of the row in the preloaded rows
+   * @param fileIndex index of the raw data file, see {@link #getFileIndex(RawDataFile)}
+   * @return the preloaded intensities or null if not preloaded
+   */
+  @Nullable
+  public Values getIntensities(int rowIndex, int fileIndex) {
+    return packedIntensities == null ? null
+        : packedIntensities.get(rowIndex * fileIndices.size() + fileIndex);
+  }
+
+  /**
+   * The intensity values by index without the lookup of the row and the raw data file. Features
+   * that were not preloaded are loaded.
    *
-   * @param rows load data for these rows
+   * @param rowIndex  index of the row in the preloaded rows
+   * @param fileIndex index of the raw data file, see {@link #getFileIndex(RawDataFile)}
+   * @param f         the feature at this position
+   * @return the intensity values of this feature
    */
-  private void loadIntensityValues(FeatureListRow[] rows) {
-    for (FeatureListRow row : rows) {
-      for (Feature feature : row.getFeatures()) {
-        if (feature != null && !feature.getFeatureStatus().equals(FeatureStatus.UNKNOWN)) {
-          intensityMap.put(feature, feature.getFeatureData()
-              .getIntensityValues(new double[feature.getNumberOfDataPoints()]));
-        }
-      }
+  public Values getIntensities(int rowIndex, int fileIndex, @NotNull Feature f) {
+    assert Integer.valueOf(rowIndex).equals(rowIndices.get(f.getRow()))
+           && getFileIndex(f.getRawDataFile()) == fileIndex;
+    final Values values = getIntensities(rowIndex, fileIndex);
+    return values != null ? values : Values.of(getIntensityValues(f));
+  }
+
+  /**
+   * @param rowIndex  index of the row in the preloaded rows
+   * @param fileIndex index of the raw data file, see {@link #getFileIndex(RawDataFile)}
+   * @return the preloaded m/z values or null if not preloaded
+   */
+  @Nullable
+  public Values getMzs(int rowIndex, int fileIndex) {
+    return packedMzs == null ? null : packedMzs.get(rowIndex * fileIndices.size() + fileIndex);
+  }
+
+  /**
+   * @return the index of the raw data file in the preloaded data or -1
+   */
+  public int getFileIndex(RawDataFile file) {
+    final Integer index = fileIndices.get(file);
+    return index == null ? -1 : index;
+  }
+
+  @Nullable
+  private Values getPacked(@Nullable PackedValues packed, @NotNull Feature f) {
+    if (packed == null) {
+      return null;
+    }
+    final Integer row = rowIndices.get(f.getRow());
+    final Integer file = fileIndices.get(f.getRawDataFile());
+    if (row == null || file == null) {
+      return null;
     }
+    return packed.get(row * fileIndices.size() + file);
   }
 
   /**
-   * Load all mz values
+   * A view on the values of a feature
    *
-   * @param rows load data for these rows
+   * @param values array that contains the values
+   * @param offset index of the first value
+   * @param length number of values
    */
-  private void loadMzValues(FeatureListRow[] rows) {
-    for (FeatureListRow row : rows) {
-      for (Feature feature : row.getFeatures()) {
-        if (feature != null && !feature.getFeatureStatus().equals(FeatureStatus.UNKNOWN)) {
-          mzMap.put(feature, feature.getFeatureData()
-              .getMzValues(new double[feature.getNumberOfDataPoints()]));
+  public record Values(double[] values, int offset, int length) {
+
+    public static Values of(double[] values) {
+      return new Values(values, 0, values.length);
+    }
+
+    public double get(int index) {
+      assert index < length;
+      return values[offset + index];
+    }
+
+    public double[] toArray() {
+      return Arrays.copyOfRange(values, offset, offset + length);
+    }
+  }
+
+  /**
+   * The values of all features packed into blocks. Each (row, file) slot stores the block in the
+   * upper and the offset in the lower 32 bits of a long.
+   */
+  private static class PackedValues {
+
+    private final double[][] blocks;
+    private final long[] slots;
+    private final int[] lengths;
+
+    private PackedValues(double[][] blocks, long[] slots, int[] lengths) {
+      this.blocks = blocks;
+      this.slots = slots;
+      this.lengths = lengths;
+    }
+
+    private static PackedValues load(FeatureListRow[] rows, RawDataFile[] files,
+        Function<Feature, DoubleBuffer> buffer) {
+      final int numSlots = Math.multiplyExact(rows.length, files.length);
+      final long[] slots = new long[numSlots];
+      final int[] lengths = new int[numSlots];
+      Arrays.fill(slots, -1L);
+
+      // assign all features to blocks
+      final List<Integer> blockSizes = new ArrayList<>();
+      int used = 0;
+      for (int r = 0; r < rows.length; r++) {
+        for (int f = 0; f < files.length; f++) {
+          final Feature feature = rows[r].getFeature(files[f]);
+          if (!isLoaded(feature)) {
+            continue;
+          }
+          final int length = buffer.apply(feature).capacity();
+          if (used > 0 && used + length > BLOCK_SIZE) {
+            blockSizes.add(used);
+            used = 0;
+          }
+          final int slot = r * files.length + f;
+          slots[slot] = ((long) blockSizes.size() << 32) | used;
+          lengths[slot] = length;
+          used += length;
+        }
+      }
+      blockSizes.add(used);
+
+      final double[][] blocks = new double[blockSizes.size()][];
+      for (int b = 0; b < blocks.length; b++) {
+        blocks[b] = new double[blockSizes.get(b)];
+      }
+      for (int r = 0; r < rows.length; r++) {
+        for (int f = 0; f < files.length; f++) {
+          final int slot = r * files.length + f;
+          if (slots[slot] != -1L) {
+            buffer.apply(rows[r].getFeature(files[f]))
+                .get(0, blocks[(int) (slots[slot] >>> 32)], (int) slots[slot], lengths[slot]);
+          }
         }
       }
+      return new PackedValues(blocks, slots, lengths);
     }
-  }
 
+    @Nullable
+    private Values get(int slot) {
+      final long packed = slots[slot];
+      if (packed == -1L) {
+        return null;
+      }
+      return new Values(blocks[(int) (packed >>> 32)], (int) packed, lengths[slot]);
+    }
+  }
 }
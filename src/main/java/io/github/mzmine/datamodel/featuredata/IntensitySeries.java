@@ -35,7 +35,7 @@ public interface IntensitySeries extends SeriesValueCount {
       throws XMLStreamException {
     writer.writeStartElement(CONST.XML_INTENSITY_VALUES_ELEMENT);
     writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(series.getNumberOfValues()));
-    writer.writeCharacters(ParsingUtils.doubleBufferToString(series.getIntensityValueBuffer()));
+    ParsingUtils.writeDoubleValues(writer, series.getIntensityValueBuffer());
     writer.writeEndElement();
   }
 
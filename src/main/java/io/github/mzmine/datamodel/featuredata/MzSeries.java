@@ -38,7 +38,7 @@ public interface MzSeries extends SeriesValueCount {
   static void saveMzValuesToXML(XMLStreamWriter writer, MzSeries series) throws XMLStreamException {
     writer.writeStartElement(CONST.XML_MZ_VALUES_ELEMENT);
     writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(series.getNumberOfValues()));
-    writer.writeCharacters(ParsingUtils.doubleBufferToString(series.getMZValueBuffer()));
+    ParsingUtils.writeDoubleValues(writer, series.getMZValueBuffer());
     writer.writeEndElement();
   }
 
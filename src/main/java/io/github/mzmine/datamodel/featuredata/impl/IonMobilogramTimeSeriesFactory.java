@@ -190,10 +190,9 @@ public class IonMobilogramTimeSeriesFactory {
           int[] indices = ParsingUtils.stringToIntArray(reader.getElementText());
           scans = ParsingUtils.getSublistFromIndices((List<Frame>) file.getFrames(), indices);
         }
-        case CONST.XML_MZ_VALUES_ELEMENT -> mzs = ParsingUtils.stringToDoubleArray(
-            reader.getElementText());
-        case CONST.XML_INTENSITY_VALUES_ELEMENT -> intensities = ParsingUtils.stringToDoubleArray(
-            reader.getElementText());
+        case CONST.XML_MZ_VALUES_ELEMENT -> mzs = ParsingUtils.readDoubleValues(reader);
+        case CONST.XML_INTENSITY_VALUES_ELEMENT -> intensities = ParsingUtils.readDoubleValues(
+            reader);
         case SummedIntensityMobilitySeries.XML_ELEMENT -> summedMobilogram = SummedIntensityMobilitySeries.loadFromXML(
             reader, storage);
       }
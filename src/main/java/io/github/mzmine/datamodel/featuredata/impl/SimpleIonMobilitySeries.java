@@ -28,6 +28,8 @@ import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
 import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.ParsingUtils;
+import java.lang.ref.SoftReference;
+import java.nio.Buffer;
 import java.nio.DoubleBuffer;
 import java.util.Collections;
 import java.util.List;
@@ -51,8 +53,14 @@ public class SimpleIonMobilitySeries implements IonMobilitySeries, ModifiableSpe
 
   protected final List<MobilityScan> scans;
 
-  protected final DoubleBuffer intensityValues;
+  /**
+   * A {@link DoubleBuffer} or a {@link java.nio.FloatBuffer}, see {@link
+   * StorageUtils#storeIntensityValues(MemoryMapStorage, double[])}
+   */
+  protected final Buffer intensityValues;
   protected final DoubleBuffer mzValues;
+  // converted float intensities, kept while memory is available
+  private SoftReference<DoubleBuffer> convertedIntensityValues;
 
   /**
    * @param storage         May be null if forceStoreInRam is true.
@@ -75,7 +83,7 @@ public class SimpleIonMobilitySeries implements IonMobilitySeries, ModifiableSpe
 
     this.scans = scans;
     this.mzValues = StorageUtils.storeValuesToDoubleBuffer(storage, mzValues);
-    this.intensityValues = StorageUtils.storeValuesToDoubleBuffer(storage, intensityValues);
+    this.intensityValues = StorageUtils.storeIntensityValues(storage, intensityValues);
   }
 
   public static SimpleIonMobilitySeries loadFromXML(@NotNull XMLStreamReader reader,
@@ -108,10 +116,9 @@ public class SimpleIonMobilitySeries implements IonMobilitySeries, ModifiableSpe
           scans = ParsingUtils.getSublistFromIndices(file.getFrame(frameindex).getMobilityScans(),
               indices);
         }
-        case CONST.XML_MZ_VALUES_ELEMENT -> mzs = ParsingUtils.stringToDoubleArray(
-            reader.getElementText());
-        case CONST.XML_INTENSITY_VALUES_ELEMENT -> intensities = ParsingUtils.stringToDoubleArray(
-            reader.getElementText());
+        case CONST.XML_MZ_VALUES_ELEMENT -> mzs = ParsingUtils.readDoubleValues(reader);
+        case CONST.XML_INTENSITY_VALUES_ELEMENT -> intensities = ParsingUtils.readDoubleValues(
+            reader);
       }
     }
 
@@ -152,7 +159,35 @@ public class SimpleIonMobilitySeries implements IonMobilitySeries, ModifiableSpe
 
   @Override
   public DoubleBuffer getIntensityValueBuffer() {
-    return intensityValues;
+    if (intensityValues instanceof DoubleBuffer doubles) {
+      return doubles;
+    }
+    final SoftReference<DoubleBuffer> ref = convertedIntensityValues;
+    DoubleBuffer converted = ref != null ? ref.get() : null;
+    if (converted == null) {
+      converted = StorageUtils.toDoubleBuffer(intensityValues);
+      convertedIntensityValues = new SoftReference<>(converted);
+    }
+    return converted;
+  }
+
+  @Override
+  public double getIntensity(int index) {
+    return StorageUtils.getValue(intensityValues, index);
+  }
+
+  @Override
+  public double[] getIntensityValues(double[] dst) {
+    if (dst.length < getNumberOfValues()) {
+      dst = new double[getNumberOfValues()];
+    }
+    StorageUtils.getValues(intensityValues, 0, dst, 0, getNumberOfValues());
+    return dst;
+  }
+
+  @Override
+  public int getNumberOfValues() {
+    return intensityValues.capacity();
   }
 
   @Override
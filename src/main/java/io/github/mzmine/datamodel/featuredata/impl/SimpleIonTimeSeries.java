@@ -30,6 +30,8 @@ import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
 import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.ParsingUtils;
+import java.lang.ref.SoftReference;
+import java.nio.Buffer;
 import java.nio.DoubleBuffer;
 import java.util.Collections;
 import java.util.Comparator;
@@ -55,8 +57,14 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
   private static final Logger logger = Logger.getLogger(SimpleIonTimeSeries.class.getName());
 
   protected final List<Scan> scans;
-  protected final DoubleBuffer intensityValues;
+  /**
+   * A {@link DoubleBuffer} or a {@link java.nio.FloatBuffer}, see {@link
+   * StorageUtils#storeIntensityValues(MemoryMapStorage, double[])}
+   */
+  protected final Buffer intensityValues;
   protected final DoubleBuffer mzValues;
+  // converted float intensities, kept while memory is available
+  private SoftReference<DoubleBuffer> convertedIntensityValues;
 
   /**
    * @param storage         may be null if forceStoreInRam is true
@@ -79,7 +87,7 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
     this.scans = scans;
 
     this.mzValues = StorageUtils.storeValuesToDoubleBuffer(storage, mzValues);
-    this.intensityValues = StorageUtils.storeValuesToDoubleBuffer(storage, intensityValues);
+    this.intensityValues = StorageUtils.storeIntensityValues(storage, intensityValues);
   }
 
   public static SimpleIonTimeSeries loadFromXML(XMLStreamReader reader, MemoryMapStorage storage,
@@ -110,10 +118,9 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
                 .map(f -> (Scan) f).toList();
           }
         }
-        case CONST.XML_MZ_VALUES_ELEMENT -> mzs = ParsingUtils.stringToDoubleArray(
-            reader.getElementText());
-        case CONST.XML_INTENSITY_VALUES_ELEMENT -> intensities = ParsingUtils.stringToDoubleArray(
-            reader.getElementText());
+        case CONST.XML_MZ_VALUES_ELEMENT -> mzs = ParsingUtils.readDoubleValues(reader);
+        case CONST.XML_INTENSITY_VALUES_ELEMENT -> intensities = ParsingUtils.readDoubleValues(
+            reader);
       }
     }
 
@@ -157,7 +164,35 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
 
   @Override
   public DoubleBuffer getIntensityValueBuffer() {
-    return intensityValues;
+    if (intensityValues instanceof DoubleBuffer doubles) {
+      return doubles;
+    }
+    final SoftReference<DoubleBuffer> ref = convertedIntensityValues;
+    DoubleBuffer converted = ref != null ? ref.get() : null;
+    if (converted == null) {
+      converted = StorageUtils.toDoubleBuffer(intensityValues);
+      convertedIntensityValues = new SoftReference<>(converted);
+    }
+    return converted;
+  }
+
+  @Override
+  public double getIntensity(int index) {
+    return StorageUtils.getValue(intensityValues, index);
+  }
+
+  @Override
+  public double[] getIntensityValues(double[] dst) {
+    if (dst.length < getNumberOfValues()) {
+      dst = new double[getNumberOfValues()];
+    }
+    StorageUtils.getValues(intensityValues, 0, dst, 0, getNumberOfValues());
+    return dst;
+  }
+
+  @Override
+  public int getNumberOfValues() {
+    return intensityValues.capacity();
   }
 
   @Override
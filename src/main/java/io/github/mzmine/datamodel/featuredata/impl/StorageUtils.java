@@ -22,7 +22,9 @@ import io.github.mzmine.datamodel.featuredata.IonSeries;
 import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.MemoryMapStorage;
 import java.io.IOException;
+import java.nio.Buffer;
 import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -177,6 +179,100 @@ public class StorageUtils {
     return buffer;
   }
 
+  /**
+   * Stores the given array into a float buffer. The values are converted to float precision.
+   *
+   * @param storage The storage to be used. If null, the values will be stored in a float array.
+   * @param values  The values to be stored.
+   * @return The float buffer the values were stored in.
+   */
+  @NotNull
+  public static FloatBuffer storeValuesToFloatBuffer(@Nullable final MemoryMapStorage storage,
+      @NotNull final double[] values) {
+    final float[] floats = new float[values.length];
+    for (int i = 0; i < values.length; i++) {
+      floats[i] = (float) values[i];
+    }
+
+    FloatBuffer buffer;
+    if (storage != null) {
+      try {
+        buffer = storage.storeData(floats);
+      } catch (IOException e) {
+        e.printStackTrace();
+        buffer = FloatBuffer.wrap(floats);
+      }
+    } else {
+      buffer = FloatBuffer.wrap(floats);
+    }
+    return buffer;
+  }
+
+  /**
+   * Stores intensity values in double or float precision, depending on {@link
+   * MemoryMapStorage#isStoreIntensitiesAsFloat()}. Use {@link #getValue(Buffer, int)} and {@link
+   * #getValues(Buffer, int, double[], int, int)} to read the values.
+   *
+   * @param storage The storage to be used. If null, the values will be stored in ram.
+   * @param values  The intensity values.
+   * @return A {@link DoubleBuffer} or a {@link FloatBuffer}.
+   */
+  @NotNull
+  public static Buffer storeIntensityValues(@Nullable final MemoryMapStorage storage,
+      @NotNull final double[] values) {
+    if (MemoryMapStorage.isStoreIntensitiesAsFloat()) {
+      return storeValuesToFloatBuffer(storage, values);
+    }
+    return storeValuesToDoubleBuffer(storage, values);
+  }
+
+  /**
+   * @param buffer A {@link DoubleBuffer} or {@link FloatBuffer}.
+   * @param index  The absolute index.
+   * @return The value at the index.
+   */
+  public static double getValue(@NotNull final Buffer buffer, final int index) {
+    if (buffer instanceof DoubleBuffer doubles) {
+      return doubles.get(index);
+    }
+    return ((FloatBuffer) buffer).get(index);
+  }
+
+  /**
+   * Copies values of a {@link DoubleBuffer} or {@link FloatBuffer} to a double array.
+   *
+   * @param buffer    The source buffer.
+   * @param index     The absolute index of the first value in the buffer.
+   * @param dst       The destination array.
+   * @param dstOffset The offset in the destination array.
+   * @param length    The number of values to copy.
+   */
+  public static void getValues(@NotNull final Buffer buffer, final int index,
+      @NotNull final double[] dst, final int dstOffset, final int length) {
+    if (buffer instanceof DoubleBuffer doubles) {
+      doubles.get(index, dst, dstOffset, length);
+      return;
+    }
+    final FloatBuffer floats = (FloatBuffer) buffer;
+    for (int i = 0; i < length; i++) {
+      dst[dstOffset + i] = floats.get(index + i);
+    }
+  }
+
+  /**
+   * @param buffer A {@link DoubleBuffer} or {@link FloatBuffer}.
+   * @return The given double buffer or a double buffer of the converted float values.
+   */
+  @NotNull
+  public static DoubleBuffer toDoubleBuffer(@NotNull final Buffer buffer) {
+    if (buffer instanceof DoubleBuffer doubles) {
+      return doubles;
+    }
+    final double[] values = new double[buffer.capacity()];
+    getValues(buffer, 0, values, 0, values.length);
+    return DoubleBuffer.wrap(values);
+  }
+
   /**
    * Stores the given array into an int buffer.
    *
@@ -181,7 +181,7 @@ public class SummedIntensityMobilitySeries implements IntensitySeries, MobilityS
     writer.writeStartElement(CONST.XML_MOBILITY_VALUES_ELEMENT);
     writer
         .writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(getNumberOfValues()));
-    writer.writeCharacters(ParsingUtils.doubleBufferToString(getMobilityValues()));
+    ParsingUtils.writeDoubleValues(writer, getMobilityValues());
     writer.writeEndElement();
 
     IntensitySeries.saveIntensityValuesToXML(writer, this);
@@ -206,9 +206,9 @@ public class SummedIntensityMobilitySeries implements IntensitySeries, MobilityS
       }
       switch (reader.getLocalName()) {
         case CONST.XML_INTENSITY_VALUES_ELEMENT -> intensities = ParsingUtils
-            .stringToDoubleArray(reader.getElementText());
+            .readDoubleValues(reader);
         case CONST.XML_MOBILITY_VALUES_ELEMENT -> mobilities = ParsingUtils
-            .stringToDoubleArray(reader.getElementText());
+            .readDoubleValues(reader);
       }
     }
     return new SummedIntensityMobilitySeries(storage, mobilities, intensities);
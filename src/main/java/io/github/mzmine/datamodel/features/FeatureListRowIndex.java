@@ -0,0 +1,418 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.datamodel.features;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.RawDataFile;
+import java.util.ArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable index over a snapshot of the rows of a {@link ModularFeatureList}. Rows are sorted by
+ * their average m/z and retention time so range queries only visit the rows in the smaller of both
+ * windows. The index further maps row IDs and row instances to their position in the list. The
+ * features of a raw data file are indexed lazily on the first feature query for this file.
+ * <p>
+ * Rows whose m/z or retention time or whose features change after the index was built are marked
+ * as changed. Queries check changed rows with their current values instead of the indexed ones.
+ * The {@link ModularFeatureList} discards the index on all other changes of the indexed rows. Rows
+ * that are appended after the index was built are not covered and need to be checked by the
+ * caller.
+ */
+final class FeatureListRowIndex {
+
+  private final FeatureListRow[] rows;
+  private final Map<FeatureListRow, Integer> rowPositions;
+  private final Map<Integer, FeatureListRow> rowsById;
+  private final Set<Integer> duplicateIds = new HashSet<>();
+  private final PointIndex rowPoints;
+  private final Map<RawDataFile, FeaturePoints> featurePoints = new ConcurrentHashMap<>();
+  // positions of rows that changed after the index was built
+  private final Set<Integer> changedPositions = ConcurrentHashMap.newKeySet();
+
+  FeatureListRowIndex(@NotNull FeatureListRow[] rows) {
+    this.rows = rows;
+    rowPositions = new IdentityHashMap<>(rows.length);
+    rowsById = new HashMap<>(rows.length);
+
+    final double[] mzs = new double[rows.length];
+    final float[] rts = new float[rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      final FeatureListRow row = rows[i];
+      rowPositions.putIfAbsent(row, i);
+      if (rowsById.putIfAbsent(row.getID(), row) != null) {
+        duplicateIds.add(row.getID());
+      }
+      mzs[i] = toValue(row.getAverageMZ());
+      rts[i] = toValue(row.getAverageRT());
+    }
+    rowPoints = new PointIndex(mzs, rts);
+  }
+
+  private static double toValue(@Nullable Double value) {
+    return value == null ? Double.NaN : value;
+  }
+
+  private static float toValue(@Nullable Float value) {
+    return value == null ? Float.NaN : value;
+  }
+
+  /**
+   * @return the number of indexed rows. These are the first rows of the feature list.
+   */
+  int size() {
+    return rows.length;
+  }
+
+  /**
+   * @return the position of the row in the feature list or -1 if the row is not indexed
+   */
+  int indexOf(@Nullable FeatureListRow row) {
+    final Integer position = row == null ? null : rowPositions.get(row);
+    return position == null ? -1 : position;
+  }
+
+  /**
+   * Marks the row at this position as changed. Queries check this row with its current values.
+   */
+  void markChanged(int position) {
+    changedPositions.add(position);
+  }
+
+  /**
+   * @return the number of rows that changed after the index was built
+   */
+  int getNumChanged() {
+    return changedPositions.size();
+  }
+
+  /**
+   * @return the first indexed row with this ID or null
+   */
+  @Nullable
+  FeatureListRow getRowById(int id) {
+    return rowsById.get(id);
+  }
+
+  /**
+   * @return true if more than one indexed row has this ID
+   */
+  boolean hasDuplicateId(int id) {
+    return duplicateIds.contains(id);
+  }
+
+  /**
+   * @return all indexed rows inside both ranges in the order of the feature list
+   */
+  @NotNull
+  List<FeatureListRow> getRows(@NotNull Range<Float> rtRange, @NotNull Range<Double> mzRange) {
+    final int[] hits = withChangedRows(rowPoints.query(rtRange, mzRange), position -> {
+      final FeatureListRow row = rows[position];
+      return contains(rtRange, toValue(row.getAverageRT())) && contains(mzRange,
+          toValue(row.getAverageMZ()));
+    });
+    final List<FeatureListRow> result = new ArrayList<>(hits.length);
+    for (int hit : hits) {
+      result.add(rows[hit]);
+    }
+    return result;
+  }
+
+  /**
+   * @return all features of the raw data file inside both ranges in the order of the feature list
+   */
+  @NotNull
+  List<Feature> getFeatures(@NotNull RawDataFile raw, @NotNull Range<Float> rtRange,
+      @NotNull Range<Double> mzRange) {
+    final FeaturePoints points = featurePoints.computeIfAbsent(raw, this::indexFeatures);
+    final int[] hits = points.index.query(rtRange, mzRange);
+    // features are indexed in the order of their rows
+    for (int i = 0; i < hits.length; i++) {
+      hits[i] = points.rowPositions[hits[i]];
+    }
+    final int[] positions = withChangedRows(hits, position -> {
+      final Feature f = getFeature(position, raw);
+      return f != null && contains(rtRange, toValue(f.getRT())) && contains(mzRange,
+          toValue(f.getMZ()));
+    });
+    final List<Feature> result = new ArrayList<>(positions.length);
+    for (int position : positions) {
+      result.add(getFeature(position, raw));
+    }
+    return result;
+  }
+
+  @Nullable
+  private Feature getFeature(int position, RawDataFile raw) {
+    return ((ModularFeatureListRow) rows[position]).getFilesFeatures().get(raw);
+  }
+
+  /**
+   * Replaces the indexed hits of changed rows by the changed rows that match with their current
+   * values
+   *
+   * @param hits    sorted row positions found in the index
+   * @param matches checks a changed row
+   * @return the sorted row positions
+   */
+  private int[] withChangedRows(int[] hits, IntPredicate matches) {
+    if (changedPositions.isEmpty()) {
+      return hits;
+    }
+    final IntList result = new IntList();
+    for (int hit : hits) {
+      if (!changedPositions.contains(hit)) {
+        result.add(hit);
+      }
+    }
+    for (int position : changedPositions) {
+      if (matches.test(position)) {
+        result.add(position);
+      }
+    }
+    final int[] positions = result.toArray();
+    Arrays.sort(positions);
+    return positions;
+  }
+
+  private FeaturePoints indexFeatures(RawDataFile raw) {
+    final IntList positions = new IntList();
+    for (int i = 0; i < rows.length; i++) {
+      if (getFeature(i, raw) != null) {
+        positions.add(i);
+      }
+    }
+
+    final int[] rowPositions = positions.toArray();
+    final double[] mzs = new double[rowPositions.length];
+    final float[] rts = new float[rowPositions.length];
+    for (int i = 0; i < rowPositions.length; i++) {
+      final Feature feature = getFeature(rowPositions[i], raw);
+      mzs[i] = toValue(feature.getMZ());
+      rts[i] = toValue(feature.getRT());
+    }
+    return new FeaturePoints(rowPositions, new PointIndex(mzs, rts));
+  }
+
+  /**
+   * Checks a value against a range like the stream filters did before. Missing values only match
+   * an unbounded range.
+   */
+  static boolean contains(@NotNull Range<Double> range, double value) {
+    if (Double.isNaN(value)) {
+      return !range.hasLowerBound() && !range.hasUpperBound();
+    }
+    return range.contains(value);
+  }
+
+  static boolean contains(@NotNull Range<Float> range, float value) {
+    if (Float.isNaN(value)) {
+      return !range.hasLowerBound() && !range.hasUpperBound();
+    }
+    return range.contains(value);
+  }
+
+  /**
+   * @param rowPositions the row position of each indexed feature
+   */
+  private record FeaturePoints(int[] rowPositions, PointIndex index) {
+
+  }
+
+  /**
+   * Points in the m/z and retention time plane. Points are identified by their original index,
+   * missing values are NaN and sorted to the end.
+   */
+  private static final class PointIndex {
+
+    private final double[] mzs;
+    private final float[] rts;
+    // point indices and values sorted by m/z and by rt
+    private final int[] mzOrder;
+    private final double[] sortedMzs;
+    private final int[] rtOrder;
+    private final float[] sortedRts;
+
+    private PointIndex(double[] mzs, float[] rts) {
+      this.mzs = mzs;
+      this.rts = rts;
+      mzOrder = new int[mzs.length];
+      Arrays.setAll(mzOrder, i -> i);
+      IntArrays.quickSort(mzOrder, (a, b) -> Double.compare(mzs[a], mzs[b]));
+      rtOrder = new int[rts.length];
+      Arrays.setAll(rtOrder, i -> i);
+      IntArrays.quickSort(rtOrder, (a, b) -> Float.compare(rts[a], rts[b]));
+
+      sortedMzs = new double[mzs.length];
+      sortedRts = new float[rts.length];
+      for (int i = 0; i < mzs.length; i++) {
+        sortedMzs[i] = mzs[mzOrder[i]];
+        sortedRts[i] = rts[rtOrder[i]];
+      }
+    }
+
+    /**
+     * @return the sorted indices of all points inside both ranges
+     */
+    int[] query(Range<Float> rtRange, Range<Double> mzRange) {
+      final boolean mzBounded = mzRange.hasLowerBound() || mzRange.hasUpperBound();
+      final boolean rtBounded = rtRange.hasLowerBound() || rtRange.hasUpperBound();
+
+      final IntList hits = new IntList();
+      final IntConsumer check = i -> {
+        if (contains(mzRange, mzs[i]) && contains(rtRange, rts[i])) {
+          hits.add(i);
+        }
+      };
+
+      if (!mzBounded && !rtBounded) {
+        for (int i = 0; i < mzs.length; i++) {
+          check.accept(i);
+        }
+        return hits.toArray();
+      }
+
+      // visit the smaller window of both orders. NaN values are sorted to the end and never
+      // inside a bounded window
+      final int mzFrom = mzRange.hasLowerBound() ? lowerBound(sortedMzs,
+          mzRange.lowerEndpoint()) : 0;
+      final int mzTo = mzRange.hasUpperBound() ? upperBound(sortedMzs, mzRange.upperEndpoint())
+          : nanStart(sortedMzs);
+      final int rtFrom = rtRange.hasLowerBound() ? lowerBound(sortedRts,
+          rtRange.lowerEndpoint()) : 0;
+      final int rtTo = rtRange.hasUpperBound() ? upperBound(sortedRts, rtRange.upperEndpoint())
+          : nanStart(sortedRts);
+
+      if (mzBounded && (!rtBounded || mzTo - mzFrom <= rtTo - rtFrom)) {
+        for (int i = mzFrom; i < mzTo; i++) {
+          check.accept(mzOrder[i]);
+        }
+      } else {
+        for (int i = rtFrom; i < rtTo; i++) {
+          check.accept(rtOrder[i]);
+        }
+      }
+      final int[] result = hits.toArray();
+      Arrays.sort(result);
+      return result;
+    }
+
+    /**
+     * @return the first index with a value >= key
+     */
+    private static int lowerBound(double[] sorted, double key) {
+      int low = 0;
+      int high = sorted.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (sorted[mid] < key) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return the first index with a value > key or NaN
+     */
+    private static int upperBound(double[] sorted, double key) {
+      int low = 0;
+      int high = sorted.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (sorted[mid] <= key) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    private static int nanStart(double[] sorted) {
+      return upperBound(sorted, Double.POSITIVE_INFINITY);
+    }
+
+    private static int lowerBound(float[] sorted, float key) {
+      int low = 0;
+      int high = sorted.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (sorted[mid] < key) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    private static int upperBound(float[] sorted, float key) {
+      int low = 0;
+      int high = sorted.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (sorted[mid] <= key) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    private static int nanStart(float[] sorted) {
+      return upperBound(sorted, Float.POSITIVE_INFINITY);
+    }
+  }
+
+  /**
+   * Growable int array to collect query hits without boxing.
+   */
+  private static final class IntList {
+
+    private int[] values = new int[16];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
@@ -31,6 +31,8 @@ import io.github.mzmine.datamodel.features.types.DataType;
 import io.github.mzmine.datamodel.features.types.FeatureDataType;
 import io.github.mzmine.datamodel.features.types.annotations.ManualAnnotationType;
 import io.github.mzmine.datamodel.features.types.numbers.IDType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.projectload.CachedIMSFrame;
 import io.github.mzmine.modules.io.projectload.CachedIMSRawDataFile;
@@ -58,6 +60,7 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 import org.jetbrains.annotations.NotNull;
@@ -99,6 +102,10 @@ public class ModularFeatureList implements FeatureList {
   private String dateCreated;
   // grouping
   private List<RowGroup> groups;
+  // index for range, ID and feature queries. Built lazily and discarded on changes of indexed rows
+  private final Object rowIndexLock = new Object();
+  private volatile FeatureListRowIndex rowIndex;
+  private int rowIndexVersion;
 
 
   public ModularFeatureList(String name, @Nullable MemoryMapStorage storage,
@@ -127,6 +134,110 @@ public class ModularFeatureList implements FeatureList {
       // check feature data for graphical columns
       DataTypeUtils.applyFeatureSpecificGraphicalTypes((ModularFeature) dataModel);
     });
+
+    // keep the row index consistent
+    featureListRows.addListener(this::onRowsChanged);
+    // IDs are rarely changed and discard the index, other values only mark the row
+    addRowTypeListener(new IDType(), (dataModel, type, oldValue, newValue) -> {
+      final FeatureListRowIndex index = rowIndex;
+      if (index != null && index.indexOf((FeatureListRow) dataModel) != -1) {
+        invalidateRowIndex();
+      }
+    });
+    final DataTypeValueChangeListener rowListener = (dataModel, type, oldValue, newValue) ->
+        onRowChanged((FeatureListRow) dataModel);
+    addRowTypeListener(new MZType(), rowListener);
+    addRowTypeListener(new RTType(), rowListener);
+    final DataTypeValueChangeListener featureListener = (dataModel, type, oldValue, newValue) ->
+        onRowChanged(((ModularFeature) dataModel).getRow());
+    addFeatureTypeListener(new MZType(), featureListener);
+    addFeatureTypeListener(new RTType(), featureListener);
+  }
+
+  /**
+   * Appending rows keeps the row index, all other changes of the list discard it.
+   */
+  private void onRowsChanged(ListChangeListener.Change<? extends FeatureListRow> change) {
+    final FeatureListRowIndex index = rowIndex;
+    if (index == null) {
+      return;
+    }
+    while (change.next()) {
+      if (change.wasPermutated() || change.wasUpdated() || change.wasRemoved()
+          || change.getFrom() < index.size()) {
+        invalidateRowIndex();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Called when the m/z or retention time of a row or its features change. The row is checked
+   * with its current values by the row index.
+   */
+  void onRowChanged(@Nullable FeatureListRow row) {
+    synchronized (rowIndexLock) {
+      // an index that is built right now may have read the old values
+      rowIndexVersion++;
+      final FeatureListRowIndex index = rowIndex;
+      final int position = index == null ? -1 : index.indexOf(row);
+      if (position != -1) {
+        index.markChanged(position);
+      }
+    }
+  }
+
+  private void invalidateRowIndex() {
+    synchronized (rowIndexLock) {
+      rowIndexVersion++;
+      rowIndex = null;
+    }
+  }
+
+  /**
+   * The row index covers the first {@link FeatureListRowIndex#size()} rows. Rows appended later
+   * need to be checked separately. The index is rebuilt once too many rows were appended or
+   * changed.
+   *
+   * @return the current row index
+   */
+  @NotNull
+  private FeatureListRowIndex getRowIndex() {
+    FeatureListRowIndex index = rowIndex;
+    if (index != null && featureListRows.size() - index.size() + index.getNumChanged()
+                         <= Math.max(1000, index.size() / 16)) {
+      return index;
+    }
+
+    final int version;
+    synchronized (rowIndexLock) {
+      version = rowIndexVersion;
+    }
+    index = new FeatureListRowIndex(featureListRows.toArray(FeatureListRow[]::new));
+    synchronized (rowIndexLock) {
+      // only keep the index if the rows did not change in the meantime
+      if (version == rowIndexVersion) {
+        rowIndex = index;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * @return the position of the row or -1
+   */
+  private int indexOfRow(@Nullable FeatureListRow row) {
+    final FeatureListRowIndex index = getRowIndex();
+    final int position = index.indexOf(row);
+    if (position != -1) {
+      return position;
+    }
+    for (int i = index.size(); i < featureListRows.size(); i++) {
+      if (featureListRows.get(i) == row) {
+        return i;
+      }
+    }
+    return -1;
   }
 
   @Override
@@ -490,10 +601,27 @@ public class ModularFeatureList implements FeatureList {
   @Override
   public List<FeatureListRow> getRowsInsideScanAndMZRange(Range<Float> rtRange,
       Range<Double> mzRange) {
-    // TODO handle if mz or rt is not present
-    return modularStream().filter(
-            row -> rtRange.contains(row.getAverageRT()) && mzRange.contains(row.getAverageMZ()))
-        .collect(Collectors.toCollection(FXCollections::observableArrayList));
+    // rows without mz or rt only match unbounded ranges
+    final FeatureListRowIndex index = getRowIndex();
+    final ObservableList<FeatureListRow> rows = FXCollections.observableArrayList(
+        index.getRows(rtRange, mzRange));
+    // rows added after the index was built
+    for (int i = index.size(); i < featureListRows.size(); i++) {
+      final FeatureListRow row = featureListRows.get(i);
+      if (FeatureListRowIndex.contains(rtRange, toValue(row.getAverageRT()))
+          && FeatureListRowIndex.contains(mzRange, toValue(row.getAverageMZ()))) {
+        rows.add(row);
+      }
+    }
+    return rows;
+  }
+
+  private static double toValue(@Nullable Double value) {
+    return value == null ? Double.NaN : value;
+  }
+
+  private static float toValue(@Nullable Float value) {
+    return value == null ? Float.NaN : value;
   }
 
   @Override
@@ -546,11 +674,20 @@ public class ModularFeatureList implements FeatureList {
   @Override
   public List<Feature> getFeaturesInsideScanAndMZRange(RawDataFile raw, Range<Float> rtRange,
       Range<Double> mzRange) {
-    // TODO solve with bindings and check for rt or mz presence in row
-    return modularStream().map(ModularFeatureListRow::getFilesFeatures).map(map -> map.get(raw))
-        .filter(Objects::nonNull)
-        .filter(f -> rtRange.contains(f.getRT()) && mzRange.contains(f.getMZ()))
-        .collect(Collectors.toCollection(FXCollections::observableArrayList));
+    // features without mz or rt only match unbounded ranges
+    final FeatureListRowIndex index = getRowIndex();
+    final ObservableList<Feature> features = FXCollections.observableArrayList(
+        index.getFeatures(raw, rtRange, mzRange));
+    // rows added after the index was built
+    for (int i = index.size(); i < featureListRows.size(); i++) {
+      final Feature f = ((ModularFeatureListRow) featureListRows.get(i)).getFilesFeatures()
+          .get(raw);
+      if (f != null && FeatureListRowIndex.contains(rtRange, toValue(f.getRT()))
+          && FeatureListRowIndex.contains(mzRange, toValue(f.getMZ()))) {
+        features.add(f);
+      }
+    }
+    return features;
   }
 
   /**
@@ -617,6 +754,16 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public int getFeatureListRowNum(Feature feature) {
+    // features know their row
+    if (feature instanceof ModularFeature modularFeature) {
+      final FeatureListRow row = modularFeature.getRow();
+      if (row != null && row.hasFeature(feature)) {
+        final int position = indexOfRow(row);
+        if (position != -1) {
+          return position;
+        }
+      }
+    }
     for (int i = 0; i < featureListRows.size(); i++) {
       if (featureListRows.get(i).hasFeature(feature)) {
         return i;
@@ -641,21 +788,40 @@ public class ModularFeatureList implements FeatureList {
 
   @Override
   public FeatureListRow getFeatureRow(Feature feature) {
-    return stream().filter(row -> row.hasFeature(feature)).findFirst().orElse(null);
+    final int position = getFeatureListRowNum(feature);
+    return position == -1 ? null : featureListRows.get(position);
   }
 
   @Override
   public FeatureListRow findRowByID(int id) {
-    List<FeatureListRow> featureListRows = stream().filter(r -> r.getID() == id).toList();
-    if (featureListRows.isEmpty()) {
-      return null;
+    final FeatureListRowIndex index = getRowIndex();
+    FeatureListRow row = index.getRowById(id);
+    boolean duplicate = index.hasDuplicateId(id);
+    // rows added after the index was built
+    for (int i = index.size(); i < featureListRows.size() && !duplicate; i++) {
+      final FeatureListRow r = featureListRows.get(i);
+      if (r.getID() == id) {
+        duplicate = row != null;
+        if (row == null) {
+          row = r;
+        }
+      }
     }
 
-    if (featureListRows.size() > 1) {
+    if (duplicate) {
       logger.info("more than one row with id " + id);
     }
+    return row;
+  }
 
-    return featureListRows.get(0);
+  /**
+   * Called by the row if features are added or removed
+   */
+  @Override
+  public void fireFeatureChangedEvent(FeatureListRow row, Feature newFeature, RawDataFile raw,
+      boolean updateByRowBindings) {
+    onRowChanged(row);
+    FeatureList.super.fireFeatureChangedEvent(row, newFeature, raw, updateByRowBindings);
   }
 
   @Override
@@ -19,17 +19,33 @@
 package io.github.mzmine.datamodel.features.correlation;
 
 import io.github.mzmine.datamodel.features.FeatureListRow;
-import io.github.mzmine.util.MathUtils;
-import java.util.concurrent.ConcurrentHashMap;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Map an object to two rows
+ * Map an object to two rows. The undirected key combines both row IDs into a long, so it is unique
+ * for all int IDs. The values are kept in primitive long maps without boxed keys or entry objects.
+ * Each map holds a stripe of the keys and is locked on its own, so the map can be filled from
+ * multiple threads.
  *
  * @author Robin Schmid
  */
-public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
+public class R2RMap<T> {
 
+  // power of two, selected by the highest bits of the mixed key
+  private static final int STRIPE_BITS = 6;
+  private static final int NUM_STRIPES = 1 << STRIPE_BITS;
+
+  private final Long2ObjectOpenHashMap<T>[] stripes;
+
+  @SuppressWarnings("unchecked")
   public R2RMap() {
+    stripes = new Long2ObjectOpenHashMap[NUM_STRIPES];
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      stripes[i] = new Long2ObjectOpenHashMap<>();
+    }
   }
 
   /**
@@ -39,8 +55,29 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    * @param b Feature list row with getID >=0
    * @return unique undirected ID
    */
-  public static int toKey(FeatureListRow a, FeatureListRow b) {
-    return MathUtils.undirectedPairing(a.getID(), b.getID());
+  public static long toKey(FeatureListRow a, FeatureListRow b) {
+    return toKey(a.getID(), b.getID());
+  }
+
+  /**
+   * The lower ID in the upper 32 bits, the higher ID in the lower 32 bits
+   *
+   * @param idA row ID >=0
+   * @param idB row ID >=0
+   * @return unique undirected ID
+   */
+  public static long toKey(int idA, int idB) {
+    final int lower = Math.min(idA, idB);
+    final int higher = Math.max(idA, idB);
+    return ((long) lower << 32) | (higher & 0xffffffffL);
+  }
+
+  /**
+   * The stripes use the lowest bits of the mixed key for their buckets, so the stripe is selected
+   * by the highest bits
+   */
+  private Long2ObjectOpenHashMap<T> getStripe(long key) {
+    return stripes[(int) (HashCommon.mix(key) >>> (Long.SIZE - STRIPE_BITS))];
   }
 
   /**
@@ -50,7 +87,7 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    * @param value values is mapped to the pair of FeatureListRows a and b
    */
   public void add(FeatureListRow a, FeatureListRow b, T value) {
-    this.put(toKey(a, b), value);
+    put(toKey(a, b), value);
   }
 
   /**
@@ -60,7 +97,35 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    * @param value values is mapped to the pair of FeatureListRows a and b
    */
   public void put(FeatureListRow a, FeatureListRow b, T value) {
-    super.put(toKey(a, b), value);
+    put(toKey(a, b), value);
+  }
+
+  /**
+   * @param key undirected key, see {@link #toKey(int, int)}
+   * @return the previous value or null
+   */
+  public T put(long key, T value) {
+    final Long2ObjectOpenHashMap<T> stripe = getStripe(key);
+    synchronized (stripe) {
+      return stripe.put(key, value);
+    }
+  }
+
+  /**
+   * Adds all mappings of another map
+   */
+  public void putAll(R2RMap<? extends T> map) {
+    // the same keys are in the stripe with the same index. Copy first to hold only one lock
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      final Long2ObjectOpenHashMap<? extends T> source = map.stripes[i];
+      final Long2ObjectOpenHashMap<T> copy = new Long2ObjectOpenHashMap<>();
+      synchronized (source) {
+        copy.putAll(source);
+      }
+      synchronized (stripes[i]) {
+        stripes[i].putAll(copy);
+      }
+    }
   }
 
   /**
@@ -72,4 +137,67 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
     return get(toKey(a, b));
   }
 
+  /**
+   * @param key undirected key, see {@link #toKey(int, int)}
+   * @return the mapped value or null
+   */
+  public T get(long key) {
+    final Long2ObjectOpenHashMap<T> stripe = getStripe(key);
+    synchronized (stripe) {
+      return stripe.get(key);
+    }
+  }
+
+  /**
+   * @param key undirected key, see {@link #toKey(int, int)}
+   * @return the removed value or null
+   */
+  public T remove(long key) {
+    final Long2ObjectOpenHashMap<T> stripe = getStripe(key);
+    synchronized (stripe) {
+      return stripe.remove(key);
+    }
+  }
+
+  public boolean containsKey(long key) {
+    final Long2ObjectOpenHashMap<T> stripe = getStripe(key);
+    synchronized (stripe) {
+      return stripe.containsKey(key);
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (Long2ObjectOpenHashMap<T> stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.size();
+      }
+    }
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public void clear() {
+    for (Long2ObjectOpenHashMap<T> stripe : stripes) {
+      synchronized (stripe) {
+        stripe.clear();
+      }
+    }
+  }
+
+  /**
+   * @return a copy of all values
+   */
+  public List<T> values() {
+    final List<T> values = new ArrayList<>();
+    for (Long2ObjectOpenHashMap<T> stripe : stripes) {
+      synchronized (stripe) {
+        values.addAll(stripe.values());
+      }
+    }
+    return values;
+  }
 }
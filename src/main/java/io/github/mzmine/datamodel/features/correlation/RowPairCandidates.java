@@ -0,0 +1,198 @@
+/*
+ * Copyright 2006-2021 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.datamodel.features.correlation;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance.Unit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Candidate pairs of rows for row-to-row comparisons. Instead of comparing every row to all other
+ * rows, the rows are sorted by the lowest retention time of their features and each row is only
+ * paired with the following rows until no feature can be within the RT tolerance of a feature of
+ * this row. The number of pairs then scales with the local density of rows instead of the square
+ * of all rows. The pairs are processed in parallel blocks with similar numbers of pairs.
+ */
+public class RowPairCandidates {
+
+  // more blocks than threads to balance uneven pair costs
+  private static final int BLOCKS_PER_THREAD = 8;
+
+  // row indices sorted by the lowest feature RT
+  private final int[] order;
+  // exclusive end position in order of the partners of each position
+  private final int[] ends;
+  private final long numPairs;
+
+  private RowPairCandidates(int[] order, int[] ends) {
+    this.order = order;
+    this.ends = ends;
+    long pairs = 0;
+    for (int p = 0; p < order.length; p++) {
+      pairs += ends[p] - p - 1;
+    }
+    numPairs = pairs;
+  }
+
+  /**
+   * All pairs of rows
+   *
+   * @param numRows number of rows
+   */
+  public static RowPairCandidates all(int numRows) {
+    final int[] order = IntStream.range(0, numRows).toArray();
+    final int[] ends = new int[numRows];
+    Arrays.fill(ends, numRows);
+    return new RowPairCandidates(order, ends);
+  }
+
+  /**
+   * Pairs of rows that have at least one pair of features within the RT tolerance, as checked by
+   * {@link RTTolerance#checkWithinTolerance(float, float)} in any direction. Other pairs may be
+   * included.
+   *
+   * @param rows        the rows
+   * @param rtTolerance the tolerance or null for all pairs
+   */
+  public static RowPairCandidates withinRtTolerance(@NotNull FeatureListRow[] rows,
+      @Nullable RTTolerance rtTolerance) {
+    // the lower end of the tolerance range only grows with the RT below 100 %
+    if (rtTolerance == null || (rtTolerance.getUnit() == Unit.PERCENT
+                                && rtTolerance.getTolerance() >= 100)) {
+      return all(rows.length);
+    }
+
+    final int numRows = rows.length;
+    final float[] minRts = new float[numRows];
+    final float[] maxRts = new float[numRows];
+    for (int i = 0; i < numRows; i++) {
+      float min = Float.POSITIVE_INFINITY;
+      float max = Float.NEGATIVE_INFINITY;
+      for (Feature feature : rows[i].getFeatures()) {
+        final float rt = feature.getRT();
+        min = Math.min(min, rt);
+        max = Math.max(max, rt);
+      }
+      if (min > max) {
+        // no features, cannot match any row
+        min = max = rows[i].getAverageRT();
+      }
+      minRts[i] = min;
+      maxRts[i] = max;
+    }
+
+    final int[] order = IntStream.range(0, numRows).boxed()
+        .sorted(Comparator.comparingDouble(i -> minRts[i])).mapToInt(Integer::intValue).toArray();
+    final int[] ends = new int[numRows];
+    for (int p = 0; p < numRows; p++) {
+      final float maxRt = maxRts[order[p]];
+      final float upper = rtTolerance.getToleranceRange(maxRt).upperEndpoint();
+      // first following row whose features are all out of tolerance in both directions. Both
+      // conditions are monotonic with the sorted lowest RT
+      int low = p + 1;
+      int high = numRows;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        final float minRt = minRts[order[mid]];
+        final Range<Float> range = rtTolerance.getToleranceRange(minRt);
+        if (minRt > upper && range.lowerEndpoint() > maxRt) {
+          high = mid;
+        } else {
+          low = mid + 1;
+        }
+      }
+      ends[p] = low;
+    }
+    return new RowPairCandidates(order, ends);
+  }
+
+  public long getNumPairs() {
+    return numPairs;
+  }
+
+  /**
+   * Applies the consumer to all pairs in parallel blocks. Each pair is passed once with the lower
+   * row index first.
+   *
+   * @param consumer receives the indices of both rows, called concurrently
+   * @param canceled stops the processing if true
+   * @param progress receives the finished fraction of all pairs, called concurrently
+   */
+  public void forEachPair(@NotNull PairConsumer consumer, @NotNull BooleanSupplier canceled,
+      @Nullable DoubleConsumer progress) {
+    final List<int[]> blocks = createBlocks();
+    blocks.parallelStream().forEach(block -> {
+      for (int p = block[0]; p < block[1] && !canceled.getAsBoolean(); p++) {
+        final int a = order[p];
+        for (int q = p + 1; q < ends[p]; q++) {
+          final int b = order[q];
+          if (a < b) {
+            consumer.accept(a, b);
+          } else {
+            consumer.accept(b, a);
+          }
+        }
+        if (progress != null && numPairs > 0) {
+          progress.accept((ends[p] - p - 1) / (double) numPairs);
+        }
+      }
+    });
+  }
+
+  /**
+   * @return ranges of positions with similar numbers of pairs
+   */
+  private List<int[]> createBlocks() {
+    final int numBlocks = MZmineCore.getConfiguration().getNumOfThreads() * BLOCKS_PER_THREAD;
+    final long pairsPerBlock = Math.max(1, numPairs / numBlocks);
+    final List<int[]> blocks = new ArrayList<>();
+    int start = 0;
+    long pairs = 0;
+    for (int p = 0; p < order.length; p++) {
+      pairs += ends[p] - p - 1;
+      if (pairs >= pairsPerBlock) {
+        blocks.add(new int[]{start, p + 1});
+        start = p + 1;
+        pairs = 0;
+      }
+    }
+    if (start < order.length) {
+      blocks.add(new int[]{start, order.length});
+    }
+    return blocks;
+  }
+
+  @FunctionalInterface
+  public interface PairConsumer {
+
+    void accept(int a, int b);
+  }
+}
@@ -45,16 +45,11 @@ public abstract class AbstractMassSpectrum implements MassSpectrum {
 
   protected synchronized void updateMzRangeAndTICValues() {
 
-    final DoubleBuffer mzValues = getMzValues();
-    final DoubleBuffer intensityValues = getIntensityValues();
-
-    assert mzValues != null;
-    assert intensityValues != null;
-    assert mzValues.capacity() == intensityValues.capacity();
+    final int numDataPoints = getNumberOfDataPoints();
 
     totalIonCurrent = 0.0;
 
-    if (mzValues.capacity() == 0) {
+    if (numDataPoints == 0) {
       mzRange = null;
       basePeakIndex = null;
       return;
@@ -62,25 +57,28 @@ public abstract class AbstractMassSpectrum implements MassSpectrum {
 
     totalIonCurrent = 0.0;
     basePeakIndex = 0;
-    mzRange = Range.closed(mzValues.get(0), mzValues.get(mzValues.capacity() - 1));
+    mzRange = Range.closed(getMzValue(0), getMzValue(numDataPoints - 1));
 
-    for (int i = 0; i < mzValues.capacity() - 1; i++) {
+    double basePeakIntensity = getIntensityValue(0);
+    for (int i = 0; i < numDataPoints - 1; i++) {
 
       // Check the order of the m/z values
-      if ((i < mzValues.capacity() - 1) && (mzValues.get(i) > mzValues.get(i + 1))) {
+      if (getMzValue(i) > getMzValue(i + 1)) {
         throw new IllegalArgumentException("The m/z values must be sorted in ascending order");
       }
 
       // Update base peak index
-      if (intensityValues.get(i) > intensityValues.get(basePeakIndex)) {
+      final double intensity = getIntensityValue(i);
+      if (intensity > basePeakIntensity) {
         basePeakIndex = i;
+        basePeakIntensity = intensity;
       }
 
       // Update TIC
-      totalIonCurrent += intensityValues.get(i);
+      totalIonCurrent += intensity;
     }
 
-    totalIonCurrent += intensityValues.get(intensityValues.capacity() - 1);
+    totalIonCurrent += getIntensityValue(numDataPoints - 1);
   }
 
 
@@ -141,7 +139,7 @@ public abstract class AbstractMassSpectrum implements MassSpectrum {
     if (basePeakIndex == null)
       return null;
     else
-      return getMzValues().get(basePeakIndex);
+      return getMzValue(basePeakIndex);
   }
 
   @Override
@@ -150,7 +148,7 @@ public abstract class AbstractMassSpectrum implements MassSpectrum {
     if (basePeakIndex == null) {
       return null;
     } else {
-      return getIntensityValues().get(basePeakIndex);
+      return getIntensityValue(basePeakIndex);
     }
   }
 
@@ -21,13 +21,18 @@ package io.github.mzmine.datamodel.impl;
 import io.github.mzmine.datamodel.Frame;
 import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
 import io.github.mzmine.util.MemoryMapStorage;
+import java.lang.ref.SoftReference;
+import java.nio.Buffer;
 import java.nio.DoubleBuffer;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
- * An implementation of MassSpectrum that stores the data points in a MemoryMapStorage.
+ * An implementation of MassSpectrum that stores the data points in a MemoryMapStorage. If no
+ * storage is given and {@link MemoryMapStorage#isCompressSpectraInRam()} is set, the data points
+ * are kept compressed in native memory ({@link CompressedSpectrumData}). Intensities are stored in
+ * float precision if {@link MemoryMapStorage#isStoreIntensitiesAsFloat()} is set.
  */
 public abstract class AbstractStorableSpectrum extends AbstractMassSpectrum {
 
@@ -35,7 +40,19 @@ public abstract class AbstractStorableSpectrum extends AbstractMassSpectrum {
   private static final DoubleBuffer EMPTY_BUFFER = DoubleBuffer.wrap(new double[0]);
 
   protected DoubleBuffer mzValues;
-  protected DoubleBuffer intensityValues;
+  /**
+   * A {@link DoubleBuffer} or a {@link java.nio.FloatBuffer}, see {@link
+   * StorageUtils#storeIntensityValues(MemoryMapStorage, double[])}
+   */
+  protected Buffer intensityValues;
+
+  @Nullable
+  private CompressedSpectrumData compressedData;
+  // decoded values for random access of compressed data and converted float intensities
+  @Nullable
+  private SoftReference<DoubleBuffer> decodedMzValues;
+  @Nullable
+  private SoftReference<DoubleBuffer> decodedIntensityValues;
 
   /**
    * Note: mz and intensity values for a scan shall only be set once and are enforced to be
@@ -55,6 +72,22 @@ public abstract class AbstractStorableSpectrum extends AbstractMassSpectrum {
     setDataPoints(storage, mzValues, intensityValues);
   }
 
+  /**
+   * Uses values that were already stored, e.g., slices of a buffer that holds the values of
+   * multiple spectra.
+   *
+   * @param mzValues        the stored m/z values sorted in ascending order
+   * @param intensityValues the stored intensity values, a {@link DoubleBuffer} or a {@link
+   *                        java.nio.FloatBuffer}
+   */
+  protected AbstractStorableSpectrum(@NotNull DoubleBuffer mzValues,
+      @NotNull Buffer intensityValues) {
+    assert mzValues.capacity() == intensityValues.capacity();
+    this.mzValues = mzValues;
+    this.intensityValues = intensityValues;
+    updateMzRangeAndTICValues();
+  }
+
   protected synchronized void setDataPoints(@Nullable MemoryMapStorage storage,
       @Nullable double[] mzValues,
       @Nullable double[] intensityValues) {
@@ -77,12 +110,47 @@ public abstract class AbstractStorableSpectrum extends AbstractMassSpectrum {
       }
     }
 
+    compressedData = null;
+    decodedMzValues = null;
+    decodedIntensityValues = null;
+
+    if (storage == null && MemoryMapStorage.isCompressSpectraInRam()) {
+      if (MemoryMapStorage.isStoreIntensitiesAsFloat()) {
+        intensityValues = toFloatPrecision(intensityValues);
+      }
+      // calculate TIC and base peak on the uncompressed values
+      this.mzValues = DoubleBuffer.wrap(mzValues);
+      this.intensityValues = DoubleBuffer.wrap(intensityValues);
+      updateMzRangeAndTICValues();
+      compressedData = CompressedSpectrumData.compress(mzValues, intensityValues);
+      this.mzValues = null;
+      this.intensityValues = null;
+      return;
+    }
+
     this.mzValues = StorageUtils.storeValuesToDoubleBuffer(storage, mzValues);
-    this.intensityValues = StorageUtils.storeValuesToDoubleBuffer(storage, intensityValues);
+    this.intensityValues = StorageUtils.storeIntensityValues(storage, intensityValues);
     updateMzRangeAndTICValues();
   }
 
+  private static double[] toFloatPrecision(double[] values) {
+    final double[] rounded = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      rounded[i] = (float) values[i];
+    }
+    return rounded;
+  }
+
   DoubleBuffer getMzValues() {
+    if (compressedData != null) {
+      final SoftReference<DoubleBuffer> ref = decodedMzValues;
+      DoubleBuffer decoded = ref != null ? ref.get() : null;
+      if (decoded == null) {
+        decoded = DoubleBuffer.wrap(compressedData.getMzValues(new double[0]));
+        decodedMzValues = new SoftReference<>(decoded);
+      }
+      return decoded;
+    }
     if (mzValues == null) {
       return EMPTY_BUFFER;
     } else {
@@ -91,15 +159,44 @@ public abstract class AbstractStorableSpectrum extends AbstractMassSpectrum {
   }
 
   DoubleBuffer getIntensityValues() {
-    if (intensityValues == null) {
+    if (intensityValues instanceof DoubleBuffer doubles) {
+      return doubles;
+    }
+    if (compressedData == null && intensityValues == null) {
       return EMPTY_BUFFER;
-    } else {
-      return intensityValues;
     }
+    final SoftReference<DoubleBuffer> ref = decodedIntensityValues;
+    DoubleBuffer decoded = ref != null ? ref.get() : null;
+    if (decoded == null) {
+      decoded = compressedData != null ? DoubleBuffer.wrap(
+          compressedData.getIntensityValues(new double[0]))
+          : StorageUtils.toDoubleBuffer(intensityValues);
+      decodedIntensityValues = new SoftReference<>(decoded);
+    }
+    return decoded;
+  }
+
+  @Override
+  public double getIntensityValue(int index) {
+    if (compressedData != null || intensityValues == null) {
+      return getIntensityValues().get(index);
+    }
+    return StorageUtils.getValue(intensityValues, index);
+  }
+
+  @Override
+  public int getNumberOfDataPoints() {
+    if (compressedData != null) {
+      return compressedData.getNumberOfValues();
+    }
+    return super.getNumberOfDataPoints();
   }
 
   @Override
   public double[] getMzValues(@NotNull double[] dst) {
+    if (compressedData != null) {
+      return compressedData.getMzValues(dst);
+    }
     if (mzValues == null) {
       return new double[0];
     }
@@ -112,6 +209,9 @@ public abstract class AbstractStorableSpectrum extends AbstractMassSpectrum {
 
   @Override
   public double[] getIntensityValues(@NotNull double[] dst) {
+    if (compressedData != null) {
+      return compressedData.getIntensityValues(dst);
+    }
     if (intensityValues == null) {
       return new double[0];
     }
@@ -119,7 +219,7 @@ public abstract class AbstractStorableSpectrum extends AbstractMassSpectrum {
     if (dst.length < getNumberOfDataPoints()) {
       dst = new double[getNumberOfDataPoints()];
     }
-    intensityValues.get(0, dst, 0, getNumberOfDataPoints());
+    StorageUtils.getValues(intensityValues, 0, dst, 0, getNumberOfDataPoints());
     return dst;
   }
 
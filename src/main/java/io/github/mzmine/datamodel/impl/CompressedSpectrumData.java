@@ -0,0 +1,173 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.datamodel.impl;
+
+import java.nio.ByteBuffer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Lossless compressed m/z and intensity arrays of a spectrum in native memory. The data is stored
+ * in a direct {@link ByteBuffer} outside of the java heap and decoded on access.
+ * <p>
+ * The m/z values are stored as the zig-zag and varint encoded differences of their raw long bits.
+ * Sorted positive doubles have ascending long bits, so the differences of close m/z values of
+ * profile spectra only take a few bytes. The intensities are stored run-length encoded: every
+ * non-zero value is preceded by the number of zeros in front of it. Intensities are stored as
+ * floats if all values can be represented as floats without loss, otherwise as doubles.
+ */
+public final class CompressedSpectrumData {
+
+  private final ByteBuffer data;
+  private final int numValues;
+  private final int intensityOffset;
+  private final boolean floatIntensities;
+
+  private CompressedSpectrumData(ByteBuffer data, int numValues, int intensityOffset,
+      boolean floatIntensities) {
+    this.data = data;
+    this.numValues = numValues;
+    this.intensityOffset = intensityOffset;
+    this.floatIntensities = floatIntensities;
+  }
+
+  /**
+   * @param mzValues        the m/z values
+   * @param intensityValues the intensity values, same length as the m/z values
+   * @return the compressed data
+   */
+  @NotNull
+  public static CompressedSpectrumData compress(@NotNull double[] mzValues,
+      @NotNull double[] intensityValues) {
+    assert mzValues.length == intensityValues.length;
+    final int numValues = mzValues.length;
+
+    boolean floatIntensities = true;
+    for (double intensity : intensityValues) {
+      if ((double) (float) intensity != intensity) {
+        floatIntensities = false;
+        break;
+      }
+    }
+
+    // worst case: 10 bytes per m/z, 5 bytes run length + 8 bytes per intensity
+    final ByteBuffer buffer = ByteBuffer.allocate(numValues * 23);
+    long last = 0;
+    for (double mz : mzValues) {
+      final long bits = Double.doubleToRawLongBits(mz);
+      final long delta = bits - last;
+      writeVarLong(buffer, (delta << 1) ^ (delta >> 63));
+      last = bits;
+    }
+
+    final int intensityOffset = buffer.position();
+    int zeros = 0;
+    for (double intensity : intensityValues) {
+      if (Double.doubleToRawLongBits(intensity) == 0L) {
+        zeros++;
+        continue;
+      }
+      writeVarLong(buffer, zeros);
+      zeros = 0;
+      if (floatIntensities) {
+        buffer.putFloat((float) intensity);
+      } else {
+        buffer.putDouble(intensity);
+      }
+    }
+    // trailing zeros are not written
+
+    buffer.flip();
+    final ByteBuffer data = ByteBuffer.allocateDirect(buffer.remaining());
+    data.put(buffer).flip();
+    return new CompressedSpectrumData(data.asReadOnlyBuffer(), numValues, intensityOffset,
+        floatIntensities);
+  }
+
+  private static void writeVarLong(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static long readVarLong(ByteBuffer buffer) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  public int getNumberOfValues() {
+    return numValues;
+  }
+
+  /**
+   * @return the number of bytes of the compressed data
+   */
+  public int getCompressedSize() {
+    return data.capacity();
+  }
+
+  /**
+   * @param dst the destination array. A new array is created if it is too small.
+   * @return the decoded m/z values
+   */
+  public double[] getMzValues(@NotNull double[] dst) {
+    if (dst.length < numValues) {
+      dst = new double[numValues];
+    }
+    final ByteBuffer buffer = data.duplicate();
+    long bits = 0;
+    for (int i = 0; i < numValues; i++) {
+      final long zigzag = readVarLong(buffer);
+      bits += (zigzag >>> 1) ^ -(zigzag & 1);
+      dst[i] = Double.longBitsToDouble(bits);
+    }
+    return dst;
+  }
+
+  /**
+   * @param dst the destination array. A new array is created if it is too small.
+   * @return the decoded intensity values
+   */
+  public double[] getIntensityValues(@NotNull double[] dst) {
+    if (dst.length < numValues) {
+      dst = new double[numValues];
+    }
+    final ByteBuffer buffer = data.duplicate().position(intensityOffset);
+    int i = 0;
+    while (buffer.hasRemaining()) {
+      final int zeros = (int) readVarLong(buffer);
+      for (int end = i + zeros; i < end; i++) {
+        dst[i] = 0d;
+      }
+      dst[i++] = floatIntensities ? buffer.getFloat() : buffer.getDouble();
+    }
+    for (; i < numValues; i++) {
+      dst[i] = 0d;
+    }
+    return dst;
+  }
+}
@@ -24,12 +24,15 @@ import io.github.mzmine.datamodel.MobilityScan;
 import io.github.mzmine.datamodel.featuredata.impl.SimpleIonMobilogramTimeSeries;
 import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
 import io.github.mzmine.datamodel.impl.masslist.StoredMobilityScanMassList;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionBuffer;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetector;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetectorParameters;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.exceptions.MissingMassListException;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import java.nio.Buffer;
 import java.nio.DoubleBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
@@ -50,14 +53,15 @@ public class MobilityScanStorage {
   // raw data
   private final Frame frame;
   private final DoubleBuffer rawMzValues;
-  private final DoubleBuffer rawIntensityValues;
+  // DoubleBuffer or FloatBuffer, see StorageUtils#storeIntensityValues
+  private final Buffer rawIntensityValues;
   private final IntBuffer rawStorageOffsets;
   private final IntBuffer rawBasePeakIndices;
   private final int rawMaxNumPoints;
 
   // mass list
   private DoubleBuffer massListMzValues = null;
-  private DoubleBuffer massListIntensityValues = null;
+  private Buffer massListIntensityValues = null;
   private IntBuffer massListStorageOffsets = null;
   private IntBuffer massListBasePeakIndices = null;
   private int massListMaxNumPoints = -1;
@@ -93,7 +97,7 @@ public class MobilityScanStorage {
     this.rawBasePeakIndices = StorageUtils.storeValuesToIntBuffer(storage, rawBasePeakIndices);
 
     rawMzValues = StorageUtils.storeValuesToDoubleBuffer(storage, mzs);
-    rawIntensityValues = StorageUtils.storeValuesToDoubleBuffer(storage, intensities);
+    rawIntensityValues = StorageUtils.storeIntensityValues(storage, intensities);
   }
 
   public MobilityScanStorage(@Nullable MemoryMapStorage storage, @NotNull final Frame frame,
@@ -129,32 +133,42 @@ public class MobilityScanStorage {
       return;
     }
 
-    // mobility scan -> [0][] = mzs, [1][] = intensities
-    final List<double[][]> data = new ArrayList<>();
+    // detect all mobility scans with one reused buffer and collect the values in one array
+    final List<MobilityScan> mobilityScans = getMobilityScans();
+    final MassDetectionBuffer buffer = new MassDetectionBuffer(rawMaxNumPoints);
+    final DoubleArrayList mzs = new DoubleArrayList();
+    final DoubleArrayList intensities = new DoubleArrayList();
+    final int[] massListStorageOffsets = new int[mobilityScans.size()];
+    final int[] massListBasePeakIndices = new int[mobilityScans.size()];
+    int maxNumPoints = 0;
 
-    for (MobilityScan mobilityScan : getMobilityScans()) {
-      double[][] mzIntensity = massDetector.getMassValues(mobilityScan, massDetectorParameters);
-      data.add(mzIntensity);
+    for (int i = 0; i < mobilityScans.size(); i++) {
+      final int numPoints = massDetector.getMassValues(mobilityScans.get(i),
+          massDetectorParameters, buffer);
+      massListStorageOffsets[i] = mzs.size();
+      mzs.addElements(mzs.size(), buffer.getMzValues(), 0, numPoints);
+      intensities.addElements(intensities.size(), buffer.getIntensityValues(), 0, numPoints);
+      maxNumPoints = Math.max(maxNumPoints, numPoints);
+
+      int basePeakIndex = -1;
+      double maxIntensity = -1d;
+      for (int j = 0; j < numPoints; j++) {
+        if (buffer.getIntensity(j) > maxIntensity) {
+          maxIntensity = buffer.getIntensity(j);
+          basePeakIndex = j;
+        }
+      }
+      massListBasePeakIndices[i] = basePeakIndex;
     }
 
-    AtomicInteger biggestOffset = new AtomicInteger(0);
-    final int[] massListStorageOffsets = StorageUtils.generateOffsets(data, biggestOffset);
     this.massListStorageOffsets = StorageUtils.storeValuesToIntBuffer(storage,
         massListStorageOffsets);
-    massListMaxNumPoints = biggestOffset.get();
-
-    final int numDp = massListStorageOffsets[massListStorageOffsets.length - 1] + data.get(
-        data.size() - 1)[0].length;
-    final double[] mzs = new double[numDp];
-    final double[] intensities = new double[numDp];
-
-    StorageUtils.putAllValuesIntoOneArray(data, 0, mzs);
-    final int[] massListBasePeakIndices = StorageUtils.putAllValuesIntoOneArray(data, 1,
-        intensities);
+    massListMaxNumPoints = maxNumPoints;
     this.massListBasePeakIndices = StorageUtils.storeValuesToIntBuffer(storage,
         massListBasePeakIndices);
-    massListMzValues = StorageUtils.storeValuesToDoubleBuffer(storage, mzs);
-    massListIntensityValues = StorageUtils.storeValuesToDoubleBuffer(storage, intensities);
+    massListMzValues = StorageUtils.storeValuesToDoubleBuffer(storage, mzs.toDoubleArray());
+    massListIntensityValues = StorageUtils.storeIntensityValues(storage,
+        intensities.toDoubleArray());
   }
 
   public MassList getMassList(int mobilityScanIndex) {
@@ -257,13 +271,13 @@ public class MobilityScanStorage {
 
   public void getRawMobilityScanIntensityValues(int mobilityScanIndex, double[] dst, int offset) {
     assert getNumberOfRawDatapoints(mobilityScanIndex) + offset <= dst.length;
-    rawIntensityValues.get(getRawStorageOffset(mobilityScanIndex), dst, offset,
-        getNumberOfRawDatapoints(mobilityScanIndex));
+    StorageUtils.getValues(rawIntensityValues, getRawStorageOffset(mobilityScanIndex), dst,
+        offset, getNumberOfRawDatapoints(mobilityScanIndex));
   }
 
   public void getAllRawMobilityScanIntensityValues(double[] dst) {
     assert dst.length >= getRawTotalNumPoints();
-    rawIntensityValues.get(0, dst, 0, getRawTotalNumPoints());
+    StorageUtils.getValues(rawIntensityValues, 0, dst, 0, getRawTotalNumPoints());
   }
 
   public double getRawMobilityScanMzValue(int mobilityScanIndex, int index) {
@@ -271,7 +285,8 @@ public class MobilityScanStorage {
   }
 
   public double getRawMobilityScanIntensityValue(int mobilityScanIndex, int index) {
-    return rawIntensityValues.get(getRawStorageOffset(mobilityScanIndex) + index);
+    return StorageUtils.getValue(rawIntensityValues,
+        getRawStorageOffset(mobilityScanIndex) + index);
   }
 
   // mass list
@@ -367,8 +382,8 @@ public class MobilityScanStorage {
           null);
     }
     assert getNumberOfMassListDatapoints(mobilityScanIndex) + offset <= dst.length;
-    massListIntensityValues.get(getMassListStorageOffset(mobilityScanIndex), dst, offset,
-        getNumberOfMassListDatapoints(mobilityScanIndex));
+    StorageUtils.getValues(massListIntensityValues, getMassListStorageOffset(mobilityScanIndex),
+        dst, offset, getNumberOfMassListDatapoints(mobilityScanIndex));
   }
 
   public void getAllMassListIntensityValues(double[] dst) {
@@ -378,7 +393,7 @@ public class MobilityScanStorage {
           null);
     }
     assert dst.length >= getMassListTotalNumPoints();
-    massListIntensityValues.get(0, dst, 0, getMassListTotalNumPoints());
+    StorageUtils.getValues(massListIntensityValues, 0, dst, 0, getMassListTotalNumPoints());
   }
 
   public double getMassListMzValue(int mobilityScanIndex, int index) {
@@ -396,6 +411,7 @@ public class MobilityScanStorage {
           "No mass list present for mobility scans. Run mass detection for scan type \"Mobility scans\" prior.",
           null);
     }
-    return massListIntensityValues.get(getMassListStorageOffset(mobilityScanIndex) + index);
+    return StorageUtils.getValue(massListIntensityValues,
+        getMassListStorageOffset(mobilityScanIndex) + index);
   }
 }
@@ -104,10 +104,9 @@ public class SimpleMergedMsMsSpectrum extends SimpleMergedMassSpectrum implement
         continue;
       }
       switch (reader.getLocalName()) {
-        case CONST.XML_MZ_VALUES_ELEMENT -> mzs = ParsingUtils.stringToDoubleArray(
-            reader.getElementText());
-        case CONST.XML_INTENSITY_VALUES_ELEMENT -> intensties = ParsingUtils.stringToDoubleArray(
-            reader.getElementText());
+        case CONST.XML_MZ_VALUES_ELEMENT -> mzs = ParsingUtils.readDoubleValues(reader);
+        case CONST.XML_INTENSITY_VALUES_ELEMENT -> intensties = ParsingUtils.readDoubleValues(
+            reader);
         case CONST.XML_SCAN_LIST_ELEMENT -> scans = ParsingUtils.stringToMobilityScanList(
             reader.getElementText(), file);
         case MsMsInfo.XML_ELEMENT -> info = MsMsInfo.loadFromXML(reader, file);
@@ -134,11 +133,13 @@ public class SimpleMergedMsMsSpectrum extends SimpleMergedMassSpectrum implement
     }
 
     writer.writeStartElement(CONST.XML_MZ_VALUES_ELEMENT);
-    writer.writeCharacters(ParsingUtils.doubleBufferToString(getMzValues()));
+    writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(getNumberOfDataPoints()));
+    ParsingUtils.writeDoubleValues(writer, getMzValues());
     writer.writeEndElement();
 
     writer.writeStartElement(CONST.XML_INTENSITY_VALUES_ELEMENT);
-    writer.writeCharacters(ParsingUtils.doubleBufferToString(getIntensityValues()));
+    writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(getNumberOfDataPoints()));
+    ParsingUtils.writeDoubleValues(writer, getIntensityValues());
     writer.writeEndElement();
 
     List<MobilityScan> mobilityScans = getSourceSpectra().stream()
@@ -19,10 +19,13 @@ package io.github.mzmine.datamodel.impl.masslist;
 
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
 import io.github.mzmine.datamodel.impl.AbstractStorableSpectrum;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.MemoryMapStorage;
+import java.nio.Buffer;
+import java.nio.DoubleBuffer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -36,6 +39,15 @@ public class SimpleMassList extends AbstractStorableSpectrum implements MassList
     super(storage, mzValues, intensityValues);
   }
 
+  /**
+   * @param mzValues        already stored m/z values
+   * @param intensityValues already stored intensity values, see {@link
+   *                        StorageUtils#storeIntensityValues(MemoryMapStorage, double[])}
+   */
+  public SimpleMassList(@NotNull DoubleBuffer mzValues, @NotNull Buffer intensityValues) {
+    super(mzValues, intensityValues);
+  }
+
   /**
    * Use mzValues and intensityValues constructor
    *
@@ -54,6 +54,7 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.taskcontrol.impl.WrappedTask;
 import io.github.mzmine.util.ExitCode;
 import io.github.mzmine.util.FeatureTableFXUtil;
+import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.javafx.FxIconUtil;
 import io.github.mzmine.util.javafx.groupablelistview.GroupEntity;
 import io.github.mzmine.util.javafx.groupablelistview.GroupableListView;
@@ -105,6 +106,7 @@ import javafx.scene.control.TabPane;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
+import javafx.scene.control.Tooltip;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -199,6 +201,12 @@ public class MainWindowController {
   @FXML
   private Label memoryBarLabel;
 
+  @FXML
+  private Label memoryMapLabel;
+
+  @FXML
+  private Tooltip memoryMapTooltip;
+
   @FXML
   private TableColumn<WrappedTask, String> taskNameColumn;
 
@@ -444,6 +452,10 @@ public class MainWindowController {
 
       memoryBar.setProgress(memory);
       memoryBarLabel.setText(freeMemMB + "/" + totalMemMB + " MB free");
+
+      memoryMapLabel.setText(
+          String.format("%.1f GB mapped data", MemoryMapStorage.getTotalBytesUsed() / 1E9));
+      memoryMapTooltip.setText(MemoryMapStorage.getUsageDescription());
     }));
     memoryUpdater.play();
 
@@ -28,7 +28,9 @@ import io.github.mzmine.parameters.impl.SimpleParameterSet;
 import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.parameters.parametertypes.HiddenParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
 import io.github.mzmine.parameters.parametertypes.OptOutParameter;
+import io.github.mzmine.parameters.parametertypes.OptionalParameter;
 import io.github.mzmine.parameters.parametertypes.ParameterSetParameter;
 import io.github.mzmine.parameters.parametertypes.WindowSettingsParameter;
 import io.github.mzmine.parameters.parametertypes.colorpalette.ColorPaletteParameter;
@@ -38,6 +40,7 @@ import io.github.mzmine.parameters.parametertypes.filenames.FileSelectionType;
 import io.github.mzmine.parameters.parametertypes.paintscale.PaintScalePaletteParameter;
 import io.github.mzmine.parameters.parametertypes.submodules.OptionalModuleParameter;
 import io.github.mzmine.util.ExitCode;
+import io.github.mzmine.util.MemoryMapStorage;
 import java.text.DecimalFormat;
 import java.util.Map;
 import javafx.application.Platform;
@@ -146,6 +149,29 @@ public class MZminePreferences extends SimpleParameterSet {
       KeepInMemory.ALL, KeepInMemory.MASSES_AND_FEATURES), KeepInMemory.values(),
       KeepInMemory.NONE);
 
+  public static final OptionalParameter<DirectoryParameter> memoryMapDirectory = new OptionalParameter<>(
+      new DirectoryParameter("Memory mapping directory",
+          "Directory for the memory mapped files of spectral and feature data. Should be a local "
+          + "drive with fast read and write and enough space (e.g., an NVMe scratch disk). If not "
+          + "selected, the temporary file directory is used. Applies to new data."));
+
+  public static final IntegerParameter memoryMapFileSize = new IntegerParameter(
+      "Memory mapping file size (MB)",
+      "Size of a single memory mapped file. New files are created when a file is full. "
+      + "Only the used part of a file occupies disk space on most file systems.",
+      (int) (MemoryMapStorage.DEFAULT_STORAGE_FILE_CAPACITY / 1_000_000), 1, 2000);
+
+  public static final OptionalParameter<IntegerParameter> memoryMapQuota = new OptionalParameter<>(
+      new IntegerParameter("Memory mapping quota (GB)",
+          "Maximum amount of data that is memory mapped to files. Tasks that exceed the quota "
+          + "fail with an error instead of filling up the disk.", 100, 1, null));
+
+  public static final BooleanParameter floatIntensities = new BooleanParameter(
+      "Store intensities as float",
+      "Stores intensities of spectra, mass lists and chromatograms in float instead of double "
+      + "precision, which halves their memory footprint. Float precision covers the dynamic range "
+      + "of MS detectors. Applies to new data.", false);
+
   public static final BooleanParameter showPrecursorWindow = new BooleanParameter(
       "Show precursor windows", "Show the isolation window instead of just the precursor m/z.",
       false);
@@ -154,7 +180,8 @@ public class MZminePreferences extends SimpleParameterSet {
   public MZminePreferences() {
     super(new Parameter[]{
         // start with performance
-        numOfThreads, memoryOption, tempDirectory, proxySettings, rExecPath, sendStatistics,
+        numOfThreads, memoryOption, tempDirectory, memoryMapDirectory, memoryMapFileSize,
+        memoryMapQuota, floatIntensities, proxySettings, rExecPath, sendStatistics,
         // visuals
         // number formats
         mzFormat, rtFormat, mobilityFormat, ccsFormat, intensityFormat, ppmFormat, scoreFormat, percentFormat,
@@ -174,6 +201,8 @@ public class MZminePreferences extends SimpleParameterSet {
     dialog.addParameterGroup("General",
         new Parameter[]{numOfThreads, memoryOption, tempDirectory, proxySettings, rExecPath,
             sendStatistics});
+    dialog.addParameterGroup("Memory mapping",
+        new Parameter[]{memoryMapDirectory, memoryMapFileSize, memoryMapQuota, floatIntensities});
     dialog.addParameterGroup("Formats",
         new Parameter[]{mzFormat, rtFormat, mobilityFormat, ccsFormat, intensityFormat, ppmFormat,
             scoreFormat, unitFormat});
@@ -192,6 +221,7 @@ public class MZminePreferences extends SimpleParameterSet {
 
       // Update proxy settings
       updateSystemProxySettings();
+      updateMemoryMappingSettings();
 
       // enforce memory option (only applies to new data)
       final KeepInMemory keepInMemory = MZmineCore.getConfiguration().getPreferences()
@@ -235,6 +265,27 @@ public class MZminePreferences extends SimpleParameterSet {
   public void loadValuesFromXML(Element xmlElement) {
     super.loadValuesFromXML(xmlElement);
     updateSystemProxySettings();
+    updateMemoryMappingSettings();
+  }
+
+  /**
+   * Applies the directory, file size, quota and intensity precision to new memory mapped files.
+   */
+  private void updateMemoryMappingSettings() {
+    final OptionalParameter<DirectoryParameter> directory = getParameter(memoryMapDirectory);
+    MemoryMapStorage.setStorageDirectory(
+        directory.getValue() ? directory.getEmbeddedParameter().getValue() : null);
+
+    final Integer fileSize = getParameter(memoryMapFileSize).getValue();
+    MemoryMapStorage.setStorageFileCapacity(fileSize != null ? fileSize * 1_000_000L
+        : MemoryMapStorage.DEFAULT_STORAGE_FILE_CAPACITY);
+
+    final OptionalParameter<IntegerParameter> quota = getParameter(memoryMapQuota);
+    final Integer quotaGB = quota.getEmbeddedParameter().getValue();
+    MemoryMapStorage.setStorageQuota(
+        quota.getValue() && quotaGB != null ? quotaGB * 1_000_000_000L : 0);
+
+    MemoryMapStorage.setStoreIntensitiesAsFloat(getParameter(floatIntensities).getValue());
   }
 
   private void updateSystemProxySettings() {
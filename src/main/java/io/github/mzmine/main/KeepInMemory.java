@@ -25,7 +25,11 @@ import io.github.mzmine.util.MemoryMapStorage;
  */
 public enum KeepInMemory {
 
-  NONE, ALL, FEATURES, MASS_LISTS, RAW_SCANS, MASSES_AND_FEATURES;
+  NONE, ALL, FEATURES, MASS_LISTS, RAW_SCANS, MASSES_AND_FEATURES,
+  /**
+   * Raw scans and mass lists in RAM, lossless compressed
+   */
+  SPECTRA_COMPRESSED;
 
   public static KeepInMemory parse(String s) {
     s = s.toLowerCase();
@@ -36,6 +40,7 @@ public enum KeepInMemory {
       case "centroids" -> MASS_LISTS;
       case "raw" -> RAW_SCANS;
       case "masses_features" -> MASSES_AND_FEATURES;
+      case "compressed" -> SPECTRA_COMPRESSED;
       default -> throw new IllegalStateException("Unexpected value: " + s);
     };
   }
@@ -59,6 +64,11 @@ public enum KeepInMemory {
         MemoryMapStorage.setStoreMassListsInRam(true);
         MemoryMapStorage.setStoreFeaturesInRam(true);
       }
+      case SPECTRA_COMPRESSED -> {
+        MemoryMapStorage.setStoreRawFilesInRam(true);
+        MemoryMapStorage.setStoreMassListsInRam(true);
+        MemoryMapStorage.setCompressSpectraInRam(true);
+      }
     }
   }
 }
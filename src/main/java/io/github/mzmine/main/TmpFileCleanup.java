@@ -49,9 +49,18 @@ public class TmpFileCleanup implements Runnable {
 //    closeProject();
 
     logger.fine("Checking for old temporary files...");
+    cleanupDirectory(new File(System.getProperty("java.io.tmpdir")));
+
+    // memory mapped files may be stored in a different directory
+    final File storageDirectory = MemoryMapStorage.getStorageDirectory();
+    if (storageDirectory != null) {
+      cleanupDirectory(storageDirectory);
+    }
+  }
+
+  private void cleanupDirectory(File tempDir) {
     try {
       // Find all temporary files with the mask mzmine*.scans
-      File tempDir = new File(System.getProperty("java.io.tmpdir"));
       File remainingTmpFiles[] = tempDir.listFiles(new FilenameFilter() {
         @Override
         public boolean accept(File dir, String name) {
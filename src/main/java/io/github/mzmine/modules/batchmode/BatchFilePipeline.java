@@ -0,0 +1,544 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineModule;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ModularADAPChromatogramBuilderModule;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.FeatureResolverModule;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionModule;
+import io.github.mzmine.modules.dataprocessing.featdet_smoothing.SmoothingModule;
+import io.github.mzmine.modules.dataprocessing.filter_isotopegrouper.IsotopeGrouperModule;
+import io.github.mzmine.modules.io.import_rawdata_all.AllSpectralDataImportModule;
+import io.github.mzmine.modules.io.import_rawdata_all.AllSpectralDataImportParameters;
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.EmbeddedParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelectionType;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelectionType;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.taskcontrol.impl.WrappedTask;
+import io.github.mzmine.util.ExitCode;
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs consecutive file-local batch steps for every raw data file independently. Each file starts
+ * its next step as soon as its own previous step is completed, so a slow file does not stall the
+ * other files. Steps that combine files (e.g., alignment, gap filling) are not file-local and act
+ * as a barrier in {@link BatchTask}.
+ * <p>
+ * A step is file-local if its module processes every file or feature list on its own and if it
+ * uses the data of the previous batch step. The data import runs once for all files and spectral
+ * libraries, like in the step-wise mode, so all files share one storage. Each file starts its next
+ * step as soon as it was imported.
+ */
+class BatchFilePipeline {
+
+  private static final Logger logger = Logger.getLogger(BatchFilePipeline.class.getName());
+
+  private static final Set<Class<? extends MZmineModule>> FILE_LOCAL_MODULES = Set.of(
+      AllSpectralDataImportModule.class, MassDetectionModule.class,
+      ModularADAPChromatogramBuilderModule.class, SmoothingModule.class,
+      IsotopeGrouperModule.class);
+
+  private final BatchTask batchTask;
+  private final MZmineProject project;
+  private final BatchQueue queue;
+  private final int firstStep;
+  private final int endStep;
+  private final List<Lane> lanes = new ArrayList<>();
+  private final Set<RawDataFile> rawDataFilesBefore = new HashSet<>();
+  private volatile WrappedTask[] importTasks = new WrappedTask[0];
+
+  private int remainingLanes;
+  private int remainingImportTasks;
+  private volatile String errorMessage;
+  private volatile boolean canceled;
+
+  /**
+   * @param firstStep the first step of the pipeline
+   * @param endStep   the step after the last step of the pipeline (exclusive)
+   */
+  BatchFilePipeline(@NotNull BatchTask batchTask, @NotNull MZmineProject project,
+      @NotNull BatchQueue queue, int firstStep, int endStep) {
+    this.batchTask = batchTask;
+    this.project = project;
+    this.queue = queue;
+    this.firstStep = firstStep;
+    this.endStep = endStep;
+  }
+
+  /**
+   * @param queue     the batch queue
+   * @param firstStep the first step
+   * @return the index after the last consecutive file-local step starting at firstStep. Equals
+   * firstStep if the first step is not file-local.
+   */
+  static int findEndOfFileLocalSteps(@NotNull BatchQueue queue, int firstStep) {
+    int end = firstStep;
+    while (end < queue.size() && isFileLocalStep(queue.get(end))) {
+      // the import is only file-local as the first step of the pipeline
+      if (end > firstStep && queue.get(end).getModule() instanceof AllSpectralDataImportModule) {
+        break;
+      }
+      end++;
+    }
+    return end;
+  }
+
+  static boolean isFileLocalStep(@NotNull MZmineProcessingStep<?> step) {
+    final MZmineModule module = step.getModule();
+    if (module instanceof AllSpectralDataImportModule) {
+      return true;
+    }
+    if (!FILE_LOCAL_MODULES.contains(module.getClass())
+        && !(module instanceof FeatureResolverModule)) {
+      return false;
+    }
+    return usesBatchLastData(step.getParameterSet()) == Boolean.TRUE;
+  }
+
+  /**
+   * @return true if all data selections use the data of the previous step, false if one does not,
+   * null if there is no data selection
+   */
+  @Nullable
+  private static Boolean usesBatchLastData(ParameterSet parameters) {
+    Boolean result = null;
+    for (Parameter<?> p : parameters.getParameters()) {
+      if (p instanceof RawDataFilesParameter rdp) {
+        if (rdp.getValue() == null
+            || rdp.getValue().getSelectionType() != RawDataFilesSelectionType.BATCH_LAST_FILES) {
+          return false;
+        }
+        result = true;
+      } else if (p instanceof FeatureListsParameter flp) {
+        if (flp.getValue() == null || flp.getValue().getSelectionType()
+                                      != FeatureListsSelectionType.BATCH_LAST_FEATURELISTS) {
+          return false;
+        }
+        result = true;
+      } else if (p instanceof EmbeddedParameterSet embedded) {
+        final Boolean embeddedResult = usesBatchLastData(embedded.getEmbeddedParameters());
+        if (embeddedResult == Boolean.FALSE) {
+          return false;
+        } else if (embeddedResult != null) {
+          result = true;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Creates one lane per file. Either from the file names of the import step or from the data of
+   * the previous batch step.
+   *
+   * @return false if the pipeline cannot be used for the input data, e.g., if a feature list of
+   * multiple raw data files is selected.
+   */
+  boolean createLanes(@NotNull List<RawDataFile> lastDataFiles,
+      @NotNull List<FeatureList> lastFeatureLists) {
+    final MZmineProcessingStep<?> first = queue.get(firstStep);
+    if (first.getModule() instanceof AllSpectralDataImportModule) {
+      final File[] files = first.getParameterSet()
+          .getParameter(AllSpectralDataImportParameters.fileNames).getValue();
+      if (files == null || files.length == 0) {
+        return false;
+      }
+      for (File file : files) {
+        lanes.add(new Lane(file, null, null));
+      }
+      return true;
+    }
+
+    if (hasParameter(first.getParameterSet(), RawDataFilesParameter.class)) {
+      for (RawDataFile file : lastDataFiles) {
+        lanes.add(new Lane(null, file, null));
+      }
+    } else {
+      for (FeatureList flist : lastFeatureLists) {
+        if (flist.getNumberOfRawDataFiles() != 1) {
+          return false;
+        }
+        lanes.add(new Lane(null, flist.getRawDataFile(0), flist));
+      }
+    }
+    return !lanes.isEmpty();
+  }
+
+  private static boolean hasParameter(ParameterSet parameters, Class<?> parameterClass) {
+    for (Parameter<?> p : parameters.getParameters()) {
+      if (parameterClass.isInstance(p) || (p instanceof EmbeddedParameterSet embedded
+                                           && hasParameter(embedded.getEmbeddedParameters(),
+          parameterClass))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Runs all steps for all lanes and waits until all lanes are finished, one step failed or the
+   * batch was canceled.
+   *
+   * @return true if all steps finished successfully
+   */
+  boolean run() {
+    logger.info(() -> String.format("Processing steps %d to %d independently for %d files",
+        firstStep + 1, endStep, lanes.size()));
+
+    synchronized (this) {
+      remainingLanes = lanes.size();
+    }
+    if (queue.get(firstStep).getModule() instanceof AllSpectralDataImportModule) {
+      submitImport();
+    } else {
+      for (Lane lane : lanes) {
+        submitStep(lane);
+      }
+    }
+
+    synchronized (this) {
+      while (remainingLanes > 0 && errorMessage == null && !canceled) {
+        if (batchTask.isCanceled()) {
+          canceled = true;
+          break;
+        }
+        try {
+          this.wait(1000);
+        } catch (InterruptedException e) {
+          // ignore
+        }
+      }
+    }
+
+    if (errorMessage != null || canceled) {
+      // stop all lanes
+      for (WrappedTask task : importTasks) {
+        task.getActualTask().cancel();
+      }
+      for (Lane lane : lanes) {
+        for (WrappedTask task : lane.getTasks()) {
+          task.getActualTask().cancel();
+        }
+      }
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return the error message or null
+   */
+  @Nullable
+  String getErrorMessage() {
+    return errorMessage;
+  }
+
+  boolean isCanceled() {
+    return canceled;
+  }
+
+  /**
+   * @return the raw data files of all lanes
+   */
+  List<RawDataFile> getDataFiles() {
+    return lanes.stream().map(lane -> lane.dataFile).filter(Objects::nonNull).toList();
+  }
+
+  /**
+   * @return the last feature lists of all lanes
+   */
+  List<FeatureList> getFeatureLists() {
+    return lanes.stream().map(lane -> lane.featureList).filter(Objects::nonNull).toList();
+  }
+
+  /**
+   * Imports all files and spectral libraries of the first step at once. Each lane continues as soon
+   * as its file was imported.
+   */
+  private void submitImport() {
+    final MZmineProcessingStep<?> step = queue.get(firstStep);
+    final MZmineProcessingModule method = (MZmineProcessingModule) step.getModule();
+    final ParameterSet parameters = step.getParameterSet().cloneParameterSet();
+
+    final List<String> messages = new ArrayList<>();
+    if (!parameters.checkParameterValues(messages)) {
+      fail("Invalid parameter settings for module " + method.getName() + ": " + Arrays.toString(
+          messages.toArray()));
+      return;
+    }
+
+    rawDataFilesBefore.addAll(project.getCurrentRawDataFiles());
+    final List<Task> tasks = new ArrayList<>();
+    final ExitCode exitCode = method.runModule(project, parameters, tasks, Instant.now());
+    if (exitCode != ExitCode.OK) {
+      fail("Could not start batch step " + method.getName());
+      return;
+    }
+
+    synchronized (this) {
+      remainingImportTasks = tasks.size();
+    }
+    if (tasks.isEmpty()) {
+      importCompleted(null);
+      return;
+    }
+    final WrappedTask[] wrappedTasks = MZmineCore.getTaskController()
+        .addTasks(tasks.toArray(new Task[0]));
+    importTasks = wrappedTasks;
+    for (WrappedTask task : wrappedTasks) {
+      task.getCompletion().thenRun(() -> importCompleted(task));
+    }
+  }
+
+  /**
+   * Starts the next step of all lanes whose file was imported
+   *
+   * @param task the completed import task or null
+   */
+  private void importCompleted(@Nullable WrappedTask task) {
+    if (task != null && !checkCompletion(new WrappedTask[]{task})) {
+      return;
+    }
+
+    final List<Lane> imported = new ArrayList<>();
+    final List<Lane> missing = new ArrayList<>();
+    synchronized (this) {
+      if (task != null) {
+        remainingImportTasks--;
+      }
+      for (Lane lane : lanes) {
+        if (lane.importFile == null) {
+          continue;
+        }
+        final String path = lane.importFile.getAbsolutePath();
+        lane.dataFile = project.getCurrentRawDataFiles().stream()
+            .filter(file -> !rawDataFilesBefore.contains(file) && !isAssigned(file))
+            .filter(file -> path.equals(file.getAbsolutePath()) || lane.importFile.getName()
+                .equals(file.getName())).findFirst().orElse(null);
+        if (lane.dataFile != null) {
+          lane.importFile = null;
+          imported.add(lane);
+        } else if (remainingImportTasks == 0) {
+          missing.add(lane);
+        }
+      }
+    }
+
+    if (!missing.isEmpty()) {
+      fail("Could not find the imported file " + missing.get(0).importFile.getAbsolutePath());
+      return;
+    }
+    for (Lane lane : imported) {
+      nextStep(lane);
+    }
+  }
+
+  private boolean isAssigned(RawDataFile file) {
+    return lanes.stream().anyMatch(lane -> lane.dataFile == file);
+  }
+
+  private void submitStep(Lane lane) {
+    if (errorMessage != null || canceled) {
+      return;
+    }
+
+    final MZmineProcessingStep<?> step = queue.get(lane.step);
+    final MZmineProcessingModule method = (MZmineProcessingModule) step.getModule();
+    final ParameterSet parameters = step.getParameterSet().cloneParameterSet();
+
+    if (!setLaneData(parameters, lane)) {
+      fail("No data for step " + method.getName() + " of file " + lane);
+      return;
+    }
+
+    final List<String> messages = new ArrayList<>();
+    if (!parameters.checkParameterValues(messages)) {
+      fail("Invalid parameter settings for module " + method.getName() + ": " + Arrays.toString(
+          messages.toArray()));
+      return;
+    }
+
+    lane.featureListsBefore = new HashSet<>(getFeatureListsOf(lane.dataFile));
+
+    final List<Task> tasks = new ArrayList<>();
+    final ExitCode exitCode = method.runModule(project, parameters, tasks, Instant.now());
+    if (exitCode != ExitCode.OK) {
+      fail("Could not start batch step " + method.getName() + " for file " + lane);
+      return;
+    }
+    if (tasks.isEmpty()) {
+      stepCompleted(lane, new WrappedTask[0]);
+      return;
+    }
+
+    final WrappedTask[] wrappedTasks = MZmineCore.getTaskController()
+        .addTasks(tasks.toArray(new Task[0]));
+    lane.setTasks(wrappedTasks);
+    CompletableFuture.allOf(
+            Arrays.stream(wrappedTasks).map(WrappedTask::getCompletion)
+                .toArray(CompletableFuture[]::new))
+        .thenRun(() -> stepCompleted(lane, wrappedTasks));
+  }
+
+  private void stepCompleted(Lane lane, WrappedTask[] wrappedTasks) {
+    if (!checkCompletion(wrappedTasks)) {
+      return;
+    }
+
+    final List<FeatureList> created = new ArrayList<>(getFeatureListsOf(lane.dataFile));
+    created.removeAll(lane.featureListsBefore);
+    if (!created.isEmpty()) {
+      lane.featureList = created.get(created.size() - 1);
+    }
+    nextStep(lane);
+  }
+
+  /**
+   * @return true if all tasks finished. Otherwise, the pipeline fails or is canceled.
+   */
+  private boolean checkCompletion(WrappedTask[] wrappedTasks) {
+    for (WrappedTask task : wrappedTasks) {
+      final TaskStatus status = task.getCompletion().join();
+      if (status == TaskStatus.ERROR) {
+        fail(task.getActualTask().getTaskDescription() + ": " + task.getActualTask()
+            .getErrorMessage());
+        return false;
+      } else if (status == TaskStatus.CANCELED) {
+        cancel();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void nextStep(Lane lane) {
+    lane.step++;
+    if (lane.step < endStep) {
+      submitStep(lane);
+    } else {
+      synchronized (this) {
+        remainingLanes--;
+        this.notifyAll();
+      }
+    }
+  }
+
+  private List<FeatureList> getFeatureListsOf(@Nullable RawDataFile file) {
+    if (file == null) {
+      return List.of();
+    }
+    return project.getCurrentFeatureLists().stream()
+        .filter(flist -> flist.getNumberOfRawDataFiles() == 1 && flist.getRawDataFile(0) == file)
+        .toList();
+  }
+
+  /**
+   * Sets the data of the lane as the data of the previous batch step.
+   *
+   * @return false if the step requires a feature list but the lane has none
+   */
+  private static boolean setLaneData(ParameterSet parameters, Lane lane) {
+    for (Parameter<?> p : parameters.getParameters()) {
+      if (p instanceof RawDataFilesParameter rdp) {
+        rdp.getValue().setBatchLastFiles(new RawDataFile[]{lane.dataFile});
+      } else if (p instanceof FeatureListsParameter flp) {
+        if (lane.featureList == null) {
+          return false;
+        }
+        flp.getValue().setBatchLastFeatureLists(new FeatureList[]{lane.featureList});
+      } else if (p instanceof EmbeddedParameterSet embedded) {
+        if (!setLaneData(embedded.getEmbeddedParameters(), lane)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private void fail(String message) {
+    synchronized (this) {
+      if (errorMessage == null) {
+        errorMessage = message;
+      }
+      this.notifyAll();
+    }
+  }
+
+  private void cancel() {
+    synchronized (this) {
+      canceled = true;
+      this.notifyAll();
+    }
+  }
+
+  /**
+   * The steps of one raw data file
+   */
+  private class Lane {
+
+    private File importFile;
+    private RawDataFile dataFile;
+    private FeatureList featureList;
+    private int step = firstStep;
+    private volatile WrappedTask[] tasks = new WrappedTask[0];
+    private Set<FeatureList> featureListsBefore = Set.of();
+
+    private Lane(File importFile, RawDataFile dataFile, FeatureList featureList) {
+      this.importFile = importFile;
+      this.dataFile = dataFile;
+      this.featureList = featureList;
+    }
+
+    private WrappedTask[] getTasks() {
+      return tasks;
+    }
+
+    private void setTasks(WrappedTask[] tasks) {
+      this.tasks = tasks;
+    }
+
+    @Override
+    public String toString() {
+      return importFile != null ? importFile.getName()
+          : dataFile != null ? dataFile.getName() : "unknown";
+    }
+  }
+}
@@ -62,6 +62,8 @@ public class BatchModeModule implements MZmineProcessingModule {
       BatchQueue newQueue = BatchQueue.loadFromXml(parsedBatchXML.getDocumentElement());
       ParameterSet parameters = new BatchModeParameters();
       parameters.getParameter(BatchModeParameters.batchQueue).setValue(newQueue);
+      // batch files only contain the steps, run them step by step
+      parameters.getParameter(BatchModeParameters.processFilesIndependently).setValue(false);
       Task batchTask = new BatchTask(project, parameters, moduleCallDate);
       batchTask.run();
       if (batchTask.getStatus() == TaskStatus.FINISHED) {
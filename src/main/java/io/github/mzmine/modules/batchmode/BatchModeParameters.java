@@ -21,6 +21,7 @@ package io.github.mzmine.modules.batchmode;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.dialogs.ParameterSetupDialog;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNameListSilentParameter;
 import io.github.mzmine.util.ExitCode;
 
@@ -29,9 +30,16 @@ public class BatchModeParameters extends SimpleParameterSet {
   public static final FileNameListSilentParameter lastFiles =
       new FileNameListSilentParameter("Last used files");
   public static final BatchQueueParameter batchQueue = new BatchQueueParameter();
+  public static final BooleanParameter processFilesIndependently = new BooleanParameter(
+      "Process files independently",
+      "Consecutive file-local steps (import, mass detection, chromatogram builder, smoothing, "
+      + "resolving, isotope grouping) that use the data of the previous step are run for each "
+      + "file independently. A file starts the next step as soon as its previous step is done, "
+      + "steps that combine files (e.g., alignment) wait for all files. Batch files that are run "
+      + "from the command line are processed step by step.", false);
 
   public BatchModeParameters() {
-    super(new Parameter[] {batchQueue, lastFiles});
+    super(new Parameter[] {batchQueue, lastFiles, processFilesIndependently});
   }
 
   @Override
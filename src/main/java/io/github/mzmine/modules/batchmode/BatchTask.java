@@ -24,6 +24,7 @@ import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingModule;
 import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.io.import_rawdata_all.AllSpectralDataImportModule;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.EmbeddedParameterSet;
@@ -41,6 +42,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 
@@ -50,8 +52,13 @@ import org.jetbrains.annotations.NotNull;
 public class BatchTask extends AbstractTask {
 
   private final BatchQueue queue;
+  private final boolean processFilesIndependently;
   private Logger logger = Logger.getLogger(this.getClass().getName());
   private int totalSteps, processedSteps;
+  /**
+   * Time in ms between the completion of the last task of a step and the start of the next step
+   */
+  private final long[] stepIdleTimes;
   private MZmineProject project;
   private List<RawDataFile> createdDataFiles, previousCreatedDataFiles, startDataFiles;
   private List<FeatureList> createdFeatureLists, previousCreatedFeatureLists, startFeatureLists;
@@ -60,7 +67,10 @@ public class BatchTask extends AbstractTask {
     super(null, moduleCallDate); // we don't create any new data here, date is irrelevant, too.
     this.project = project;
     this.queue = parameters.getParameter(BatchModeParameters.batchQueue).getValue();
+    this.processFilesIndependently = Objects.requireNonNullElse(
+        parameters.getParameter(BatchModeParameters.processFilesIndependently).getValue(), false);
     totalSteps = queue.size();
+    stepIdleTimes = new long[totalSteps];
     createdDataFiles = new ArrayList<>();
     createdFeatureLists = new ArrayList<>();
     previousCreatedDataFiles = new ArrayList<>();
@@ -80,8 +90,15 @@ public class BatchTask extends AbstractTask {
     // Process individual batch steps
     for (int i = 0; i < totalSteps; i++) {
 
-      processQueueStep(i);
-      processedSteps++;
+      final int pipelineEnd =
+          processFilesIndependently ? BatchFilePipeline.findEndOfFileLocalSteps(queue, i) : i;
+      if (pipelineEnd - i > 1 && processFileLocalSteps(i, pipelineEnd)) {
+        processedSteps += pipelineEnd - i;
+        i = pipelineEnd - 1;
+      } else if (getStatus() == TaskStatus.PROCESSING) {
+        processQueueStep(i);
+        processedSteps++;
+      }
 
       // If we are canceled or ran into error, stop here
       if (isCanceled() || (getStatus() == TaskStatus.ERROR)) {
@@ -90,7 +107,8 @@ public class BatchTask extends AbstractTask {
 
     }
 
-    logger.info("Finished a batch of " + totalSteps + " steps");
+    logger.info("Finished a batch of " + totalSteps + " steps, idle time between steps "
+                + Arrays.stream(stepIdleTimes).sum() + " ms");
     setStatus(TaskStatus.FINISHED);
 
   }
@@ -171,6 +189,15 @@ public class BatchTask extends AbstractTask {
         .addTasks(currentStepTasks.toArray(new Task[0]));
     currentStepTasks = null;
 
+    // wake up as soon as a task completes
+    for (WrappedTask stepTask : currentStepWrappedTasks) {
+      stepTask.getCompletion().thenRun(() -> {
+        synchronized (this) {
+          this.notifyAll();
+        }
+      });
+    }
+
     while (!allTasksFinished) {
 
       // If we canceled the batch, cancel all running tasks
@@ -214,11 +241,15 @@ public class BatchTask extends AbstractTask {
 
       }
 
-      // Wait 1s before checking the tasks again
+      // Wait until the next task completes, check for cancel of the batch every 1s
       if (!allTasksFinished) {
         synchronized (this) {
           try {
-            this.wait(1000);
+            // completions notify while holding the lock, no completion is missed
+            if (!Arrays.stream(currentStepWrappedTasks)
+                .allMatch(t -> t.getCompletion().isDone())) {
+              this.wait(1000);
+            }
           } catch (InterruptedException e) {
             // ignore
           }
@@ -226,6 +257,14 @@ public class BatchTask extends AbstractTask {
       }
     }
 
+    final long lastCompletion = Arrays.stream(currentStepWrappedTasks)
+        .mapToLong(WrappedTask::getCompletionNanoTime).max().orElse(-1);
+    if (lastCompletion != -1) {
+      stepIdleTimes[stepNumber] = Math.max(0, (System.nanoTime() - lastCompletion) / 1_000_000);
+    }
+    logger.finest(() -> "Step #" + (stepNumber + 1) + " " + method.getName() + " idle time "
+                        + stepIdleTimes[stepNumber] + " ms");
+
     createdDataFiles = new ArrayList<>(project.getCurrentRawDataFiles());
     createdFeatureLists = new ArrayList<>(project.getCurrentFeatureLists());
     createdDataFiles.removeAll(beforeDataFiles);
@@ -240,6 +279,56 @@ public class BatchTask extends AbstractTask {
     }
   }
 
+  /**
+   * Runs the file-local steps for each file independently.
+   *
+   * @param firstStep the first file-local step
+   * @param endStep   the step after the last file-local step (exclusive)
+   * @return false if the steps cannot be run independently for the current data and need to be
+   * processed one after another (or if an error occurred)
+   */
+  private boolean processFileLocalSteps(int firstStep, int endStep) {
+    // If the last step did not produce any data files or feature lists, use
+    // the ones from the previous step
+    if (createdDataFiles.isEmpty()) {
+      createdDataFiles = previousCreatedDataFiles;
+    }
+    if (createdFeatureLists.isEmpty()) {
+      createdFeatureLists = previousCreatedFeatureLists;
+    }
+
+    final BatchFilePipeline pipeline = new BatchFilePipeline(this, project, queue, firstStep,
+        endStep);
+    if (!pipeline.createLanes(createdDataFiles, createdFeatureLists)) {
+      logger.info(() -> "Cannot process steps " + (firstStep + 1) + " to " + endStep
+                        + " independently for each file, processing one step after another.");
+      return false;
+    }
+
+    if (!pipeline.run()) {
+      if (pipeline.getErrorMessage() != null) {
+        setStatus(TaskStatus.ERROR);
+        setErrorMessage(pipeline.getErrorMessage());
+      } else {
+        setStatus(TaskStatus.CANCELED);
+      }
+      return false;
+    }
+
+    if (queue.get(firstStep).getModule() instanceof AllSpectralDataImportModule) {
+      createdDataFiles = new ArrayList<>(pipeline.getDataFiles());
+      previousCreatedDataFiles = createdDataFiles;
+    } else {
+      createdDataFiles = new ArrayList<>();
+    }
+    createdFeatureLists = new ArrayList<>(pipeline.getFeatureLists());
+    createdFeatureLists.removeAll(previousCreatedFeatureLists);
+    if (!createdFeatureLists.isEmpty()) {
+      previousCreatedFeatureLists = createdFeatureLists;
+    }
+    return true;
+  }
+
   /**
    * Recursively sets the last feature lists to the parameters since there might be embedded
    * parameters.
@@ -272,6 +361,14 @@ public class BatchTask extends AbstractTask {
     return true;
   }
 
+  /**
+   * @return the idle time in ms between the completion of the last task of each step and the start
+   * of the next step
+   */
+  public long[] getStepIdleTimes() {
+    return stepIdleTimes.clone();
+  }
+
   @Override
   public TaskPriority getTaskPriority() {
     // to not block mzmine when run with single thread
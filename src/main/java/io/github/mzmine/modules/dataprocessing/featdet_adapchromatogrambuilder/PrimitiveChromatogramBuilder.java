@@ -0,0 +1,464 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder;
+
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Builds {@link ADAPChromatogram}s from data points that are kept in primitive arrays. Produces
+ * the same chromatograms as adding every data point as an {@link ExpandedDataPoint} to a list,
+ * sorting it by intensity and mapping the m/z ranges to chromatograms in a TreeRangeMap, without
+ * creating an object per data point.
+ * <p>
+ * Data points are processed in the order of descending intensity and m/z. A data point is added
+ * to the chromatogram whose m/z range contains it. Otherwise, it starts a new chromatogram if it
+ * is above the minimum highest intensity. New m/z ranges span the m/z tolerance and are limited by
+ * the ranges of existing chromatograms. Chromatogram objects are only created for chromatograms
+ * that match the minimum number of continuous scans.
+ */
+public final class PrimitiveChromatogramBuilder {
+
+  private final MZTolerance mzTolerance;
+  private final double minHighestPoint;
+
+  // all data points
+  private double[] mzs = new double[1024];
+  private double[] intensities = new double[1024];
+  private int[] scanIndices = new int[1024];
+  private int numPoints = 0;
+
+  private double progress = 0d;
+
+  public PrimitiveChromatogramBuilder(MZTolerance mzTolerance, double minHighestPoint) {
+    this.mzTolerance = mzTolerance;
+    this.minHighestPoint = minHighestPoint;
+  }
+
+  /**
+   * @param mz        the m/z. NaN values are skipped.
+   * @param intensity the intensity. NaN values are skipped.
+   * @param scanIndex index of the scan in the array of all scans
+   */
+  public void addDataPoint(double mz, double intensity, int scanIndex) {
+    if (Double.isNaN(mz) || Double.isNaN(intensity)) {
+      return;
+    }
+    if (numPoints == mzs.length) {
+      final int capacity = mzs.length + (mzs.length >> 1);
+      mzs = Arrays.copyOf(mzs, capacity);
+      intensities = Arrays.copyOf(intensities, capacity);
+      scanIndices = Arrays.copyOf(scanIndices, capacity);
+    }
+    mzs[numPoints] = mz;
+    intensities[numPoints] = intensity;
+    scanIndices[numPoints] = scanIndex;
+    numPoints++;
+  }
+
+  public int getNumberOfDataPoints() {
+    return numPoints;
+  }
+
+  public double getProgress() {
+    return progress;
+  }
+
+  /**
+   * @param scans           all scans, the data point scan indices point into this array
+   * @param minGroupIntensity intensity threshold for continuous data points
+   * @param minimumScanSpan minimum number of continuous data points
+   * @param isCanceled      checked regularly to stop processing
+   * @return all chromatograms that match the minimum number of continuous data points sorted by
+   * m/z or null if canceled
+   */
+  @Nullable
+  public List<ADAPChromatogram> buildChromatograms(@NotNull Scan[] scans, double minGroupIntensity,
+      int minimumScanSpan, @NotNull BooleanSupplier isCanceled) {
+    // sort by intensity and m/z descending like the DataPointSorter. The index breaks ties to
+    // keep the order of a stable sort
+    final int[] order = new int[numPoints];
+    Arrays.setAll(order, i -> i);
+    IntArrays.quickSort(order, (a, b) -> {
+      int result = Double.compare(intensities[b], intensities[a]);
+      if (result == 0) {
+        result = Double.compare(mzs[b], mzs[a]);
+      }
+      return result != 0 ? result : Integer.compare(a, b);
+    });
+
+    // assign data points to chromatograms
+    final MzRanges ranges = new MzRanges();
+    final int[] assigned = new int[numPoints];
+    for (int i = 0; i < numPoints; i++) {
+      if ((i & 0xFFFF) == 0) {
+        if (isCanceled.getAsBoolean()) {
+          return null;
+        }
+        progress = 0.5 * i / numPoints;
+      }
+
+      final int point = order[i];
+      final double mz = mzs[point];
+      final int existing = ranges.get(mz);
+      if (existing != -1) {
+        assigned[point] = existing;
+        continue;
+      }
+
+      assigned[point] = -1;
+      // skip it entirely if the intensity is not high enough
+      if (intensities[point] < minHighestPoint) {
+        continue;
+      }
+      assigned[point] = startNewChromatogramLimitMzRanges(ranges, mz);
+    }
+
+    // group the data points of all remaining chromatograms in the order they were added
+    final int numChromatograms = ranges.getNumberOfIds();
+    final int[] offsets = new int[numChromatograms + 1];
+    for (int point = 0; point < numPoints; point++) {
+      if (assigned[point] != -1 && ranges.isPresent(assigned[point])) {
+        offsets[assigned[point] + 1]++;
+      }
+    }
+    for (int c = 0; c < numChromatograms; c++) {
+      offsets[c + 1] += offsets[c];
+    }
+    final int[] members = new int[offsets[numChromatograms]];
+    final int[] fill = Arrays.copyOf(offsets, numChromatograms);
+    for (int i = 0; i < numPoints; i++) {
+      final int point = order[i];
+      final int c = assigned[point];
+      if (c != -1 && ranges.isPresent(c)) {
+        members[fill[c]++] = point;
+      }
+    }
+
+    // only the first (highest) data point of each scan is added to a chromatogram
+    final int[] lastChromatogramInScan = new int[scans.length];
+    Arrays.fill(lastChromatogramInScan, -1);
+    final int[] chromatogramIds = ranges.getIdsSortedByMz();
+    final List<ADAPChromatogram> chromatograms = new ArrayList<>();
+    for (int i = 0; i < chromatogramIds.length; i++) {
+      if (isCanceled.getAsBoolean()) {
+        return null;
+      }
+      progress = 0.5 + 0.5 * i / chromatogramIds.length;
+
+      final int c = chromatogramIds[i];
+      int numKept = 0;
+      for (int m = offsets[c]; m < offsets[c + 1]; m++) {
+        final int point = members[m];
+        if (lastChromatogramInScan[scanIndices[point]] != c) {
+          lastChromatogramInScan[scanIndices[point]] = c;
+          members[offsets[c] + numKept++] = point;
+        }
+      }
+
+      if (matchesMinContinuousDataPoints(members, offsets[c], numKept, minGroupIntensity,
+          minimumScanSpan)) {
+        final ADAPChromatogram chromatogram = new ADAPChromatogram();
+        for (int m = offsets[c]; m < offsets[c] + numKept; m++) {
+          final int point = members[m];
+          chromatogram.addMzFeature(scans[scanIndices[point]],
+              new SimpleDataPoint(mzs[point], intensities[point]));
+        }
+        chromatograms.add(chromatogram);
+      }
+    }
+    progress = 1d;
+    return chromatograms;
+  }
+
+  /**
+   * Starts a new chromatogram and limits its range so that it does not overlap with existing m/z
+   * ranges
+   *
+   * @return the id of the chromatogram the data point was added to
+   */
+  private int startNewChromatogramLimitMzRanges(MzRanges ranges, double mz) {
+    final double tolerance = mzTolerance.getMzToleranceForMass(mz);
+    final double lowerTolerance = mz - tolerance;
+    final double upperTolerance = mz + tolerance;
+
+    // use the boundaries of neighboring ranges so that none of the ranges overlap. Equal bounds
+    // would need two adjacent ranges around an m/z that neither of them contains
+    final int minusRange = ranges.get(lowerTolerance);
+    final int plusRange = ranges.get(upperTolerance);
+    final double lower = minusRange == -1 ? lowerTolerance : ranges.getUpper(minusRange);
+    final double upper = plusRange == -1 ? upperTolerance : ranges.getLower(plusRange);
+
+    if (lower < upper) {
+      return ranges.put(lower, upper);
+    } else {
+      throw new IllegalStateException(
+          String.format("Incorrect range [%f, %f] for m/z %f", lower, upper, mz));
+    }
+  }
+
+  /**
+   * Same as {@link ADAPChromatogram#matchesMinContinuousDataPoints(Scan[], double, int, double)}
+   * on the data points of one chromatogram. Missing scans break the continuous data points.
+   */
+  private boolean matchesMinContinuousDataPoints(int[] members, int offset, int length,
+      double intensityThresh, int minimumScanSpan) {
+    // sort by scan index, scans are unique within a chromatogram
+    final long[] scanOrder = new long[length];
+    for (int i = 0; i < length; i++) {
+      scanOrder[i] = ((long) scanIndices[members[offset + i]] << 32) | i;
+    }
+    Arrays.sort(scanOrder);
+
+    int connectedScans = 0;
+    double maxCurrentHeight = 0d;
+    int lastScan = -2;
+    for (long key : scanOrder) {
+      final int point = members[offset + (int) key];
+      final int scan = (int) (key >>> 32);
+      if (scan != lastScan + 1) {
+        connectedScans = 0;
+      }
+      lastScan = scan;
+
+      final double intensity = intensities[point];
+      if (intensity >= intensityThresh) {
+        connectedScans++;
+        // track height of current segment
+        if (maxCurrentHeight < intensity) {
+          maxCurrentHeight = intensity;
+        }
+        if (connectedScans >= minimumScanSpan && maxCurrentHeight >= minHighestPoint) {
+          return true;
+        }
+      } else {
+        connectedScans = 0;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Non-overlapping closed-open m/z ranges of chromatograms. The lower bounds are kept sorted in
+   * blocks of primitive arrays, so inserting a range only shifts the values of one block.
+   * Inserting a range removes or truncates overlapping ranges like TreeRangeMap#put.
+   */
+  public static final class MzRanges {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private final List<Block> blocks = new ArrayList<>();
+    // bounds by chromatogram id
+    private double[] lowers = new double[1024];
+    private double[] uppers = new double[1024];
+    private boolean[] removed = new boolean[1024];
+    private int numIds = 0;
+
+    /**
+     * @return the id of the range that contains the value or -1
+     */
+    public int get(double value) {
+      final int b = findBlock(value);
+      if (b == -1) {
+        return -1;
+      }
+      final Block block = blocks.get(b);
+      final int i = block.floor(value);
+      final int id = block.ids[i];
+      return value < uppers[id] ? id : -1;
+    }
+
+    public double getLower(int id) {
+      return lowers[id];
+    }
+
+    public double getUpper(int id) {
+      return uppers[id];
+    }
+
+    public int getNumberOfIds() {
+      return numIds;
+    }
+
+    /**
+     * @return false if the range was replaced by another range
+     */
+    public boolean isPresent(int id) {
+      return !removed[id];
+    }
+
+    /**
+     * @return the ids of all present ranges sorted by m/z
+     */
+    public int[] getIdsSortedByMz() {
+      int size = 0;
+      for (Block block : blocks) {
+        size += block.size;
+      }
+      final int[] ids = new int[size];
+      int i = 0;
+      for (Block block : blocks) {
+        System.arraycopy(block.ids, 0, ids, i, block.size);
+        i += block.size;
+      }
+      return ids;
+    }
+
+    /**
+     * @return the id of the new range
+     */
+    public int put(double lower, double upper) {
+      removeOverlapping(lower, upper);
+
+      if (numIds == lowers.length) {
+        final int capacity = numIds * 2;
+        lowers = Arrays.copyOf(lowers, capacity);
+        uppers = Arrays.copyOf(uppers, capacity);
+        removed = Arrays.copyOf(removed, capacity);
+      }
+      final int id = numIds++;
+      lowers[id] = lower;
+      uppers[id] = upper;
+
+      if (blocks.isEmpty()) {
+        blocks.add(new Block());
+      }
+      final int b = Math.max(0, findBlock(lower));
+      final Block block = blocks.get(b);
+      block.insert(block.floor(lower) + 1, lower, id);
+      if (block.size == BLOCK_SIZE) {
+        blocks.add(b + 1, block.split());
+      }
+      return id;
+    }
+
+    /**
+     * Ranges that start inside the new range are removed or truncated at its upper bound. A range
+     * that starts before the new range is truncated at its lower bound.
+     */
+    private void removeOverlapping(double lower, double upper) {
+      for (int b = Math.max(0, findBlock(lower)); b < blocks.size(); ) {
+        final Block block = blocks.get(b);
+        int i = 0;
+        while (i < block.size) {
+          final int id = block.ids[i];
+          if (block.lowers[i] >= upper) {
+            return;
+          }
+          if (uppers[id] <= lower) {
+            i++;
+          } else if (block.lowers[i] < lower) {
+            uppers[id] = lower;
+            i++;
+          } else if (uppers[id] > upper) {
+            lowers[id] = upper;
+            block.lowers[i] = upper;
+            return;
+          } else {
+            removed[id] = true;
+            block.remove(i);
+          }
+        }
+        if (block.size == 0) {
+          blocks.remove(b);
+        } else {
+          b++;
+        }
+      }
+    }
+
+    /**
+     * @return the index of the last block with a first lower bound <= value or -1
+     */
+    private int findBlock(double value) {
+      int low = 0;
+      int high = blocks.size() - 1;
+      int result = -1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        if (blocks.get(mid).lowers[0] <= value) {
+          result = mid;
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return result;
+    }
+  }
+
+  private static final class Block {
+
+    private final double[] lowers = new double[MzRanges.BLOCK_SIZE];
+    private final int[] ids = new int[MzRanges.BLOCK_SIZE];
+    private int size = 0;
+
+    /**
+     * @return the index of the last lower bound <= value or -1
+     */
+    int floor(double value) {
+      int low = 0;
+      int high = size - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        if (lowers[mid] <= value) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return high;
+    }
+
+    void insert(int index, double lower, int id) {
+      System.arraycopy(lowers, index, lowers, index + 1, size - index);
+      System.arraycopy(ids, index, ids, index + 1, size - index);
+      lowers[index] = lower;
+      ids[index] = id;
+      size++;
+    }
+
+    void remove(int index) {
+      System.arraycopy(lowers, index + 1, lowers, index, size - index - 1);
+      System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+      size--;
+    }
+
+    /**
+     * Moves the upper half of the values to a new block
+     */
+    Block split() {
+      final Block upper = new Block();
+      final int half = size / 2;
+      upper.size = size - half;
+      System.arraycopy(lowers, half, upper.lowers, 0, upper.size);
+      System.arraycopy(ids, half, upper.ids, 0, upper.size);
+      size = half;
+      return upper;
+    }
+  }
+}
@@ -36,6 +36,7 @@ import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.types.ImageType;
 import io.github.mzmine.datamodel.features.types.MobilityUnitType;
 import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.filter_groupms2.GroupMS2SubParameters;
 import io.github.mzmine.modules.dataprocessing.filter_groupms2.GroupMS2Task;
 import io.github.mzmine.parameters.ParameterSet;
@@ -50,15 +51,20 @@ import io.github.mzmine.util.R.RSessionWrapper;
 import io.github.mzmine.util.R.RSessionWrapperException;
 import io.github.mzmine.util.maths.CenterFunction;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 
 public class FeatureResolverTask extends AbstractTask {
 
   // Logger.
   private static final Logger logger = Logger.getLogger(FeatureResolverTask.class.getName());
+  // rows per parallel chunk, each chunk is resolved with its own resolver and data access
+  private static final int MAX_ROWS_PER_CHUNK = 2000;
 
   // Feature lists.
   private final MZmineProject project;
@@ -67,9 +73,11 @@ public class FeatureResolverTask extends AbstractTask {
   private final ParameterSet parameters;
   // function to find center mz of all feature data points
   private final CenterFunction mzCenterFunction;
+  // rows per parallel chunk or 0 to split the rows by the number of threads
+  private final int rowsPerChunk;
   private FeatureList newPeakList;
   // Counters.
-  private int processedRows;
+  private final AtomicInteger processedRows = new AtomicInteger(0);
   private int totalRows;
   private RSessionWrapper rSession;
   private String errorMsg;
@@ -87,6 +95,20 @@ public class FeatureResolverTask extends AbstractTask {
   public FeatureResolverTask(final MZmineProject project, MemoryMapStorage storage,
       final FeatureList list, final ParameterSet parameterSet, CenterFunction mzCenterFunction,
       @NotNull Instant moduleCallDate) {
+    this(project, storage, list, parameterSet, mzCenterFunction, moduleCallDate, 0);
+  }
+
+  /**
+   * Create the task.
+   *
+   * @param list         feature list to operate on.
+   * @param parameterSet task parameters.
+   * @param rowsPerChunk number of rows resolved in each parallel chunk or 0 to split the rows by
+   *                     the number of threads
+   */
+  public FeatureResolverTask(final MZmineProject project, MemoryMapStorage storage,
+      final FeatureList list, final ParameterSet parameterSet, CenterFunction mzCenterFunction,
+      @NotNull Instant moduleCallDate, int rowsPerChunk) {
     super(storage, moduleCallDate);
 
     // Initialize.
@@ -94,9 +116,9 @@ public class FeatureResolverTask extends AbstractTask {
     parameters = parameterSet;
     originalPeakList = list;
     newPeakList = null;
-    processedRows = 0;
     totalRows = 0;
     this.mzCenterFunction = mzCenterFunction;
+    this.rowsPerChunk = rowsPerChunk;
   }
 
   @Override
@@ -106,7 +128,7 @@ public class FeatureResolverTask extends AbstractTask {
 
   @Override
   public double getFinishedPercentage() {
-    return totalRows == 0 ? 0.0 : (double) processedRows / (double) totalRows;
+    return totalRows == 0 ? 0.0 : (double) processedRows.get() / (double) totalRows;
   }
 
   @Override
@@ -133,6 +155,9 @@ public class FeatureResolverTask extends AbstractTask {
             legacyResolve();
           }
           // resolving finished
+          if (isCanceled() || newPeakList == null) {
+            return;
+          }
 
           // sort and reset IDs here to ahve the same sorting for every feature list
           FeatureListUtils.sortByDefaultRT(newPeakList, true);
@@ -143,12 +168,12 @@ public class FeatureResolverTask extends AbstractTask {
                 GeneralResolverParameters.groupMS2Parameters).getEmbeddedParameters();
             GroupMS2Task task = new GroupMS2Task(project, newPeakList, ms2params, moduleCallDate);
             // restart progress
-            processedRows = 0;
+            processedRows.set(0);
             totalRows = newPeakList.getNumberOfRows();
             // group all features with MS/MS
             for (FeatureListRow row : newPeakList.getRows()) {
               task.processRow(row);
-              processedRows++;
+              processedRows.incrementAndGet();
             }
           }
 
@@ -339,8 +364,8 @@ public class FeatureResolverTask extends AbstractTask {
   }
 
   private void dimensionIndependentResolve(ModularFeatureList originalFeatureList) {
-    final Resolver resolver = ((GeneralResolverParameters) parameters).getResolver(parameters,
-        originalFeatureList);
+    final GeneralResolverParameters resolverParameters = (GeneralResolverParameters) parameters;
+    final Resolver resolver = resolverParameters.getResolver(parameters, originalFeatureList);
     if (resolver == null) {
       setErrorMessage("Resolver could not be initialised.");
       setStatus(TaskStatus.ERROR);
@@ -350,21 +375,37 @@ public class FeatureResolverTask extends AbstractTask {
     final RawDataFile dataFile = originalFeatureList.getRawDataFile(0);
     final ModularFeatureList resolvedFeatureList = createNewFeatureList(originalFeatureList);
 
-    final FeatureDataAccess access = EfficientDataAccess.of(originalFeatureList,
-        EfficientDataAccess.FeatureDataType.INCLUDE_ZEROS, dataFile);
+    final List<FeatureListRow> rows = List.copyOf(originalFeatureList.getRows());
+    processedRows.set(0);
+    totalRows = rows.size();
+
+    // resolve chunks of rows in parallel. Resolvers keep buffers and the data access holds the
+    // current feature, so every chunk uses its own instances of both
+    final int chunkSize = Math.max(1, rowsPerChunk > 0 ? Math.min(rowsPerChunk, totalRows)
+        : Math.min(MAX_ROWS_PER_CHUNK, (int) Math.ceil(
+            totalRows / (4d * MZmineCore.getConfiguration().getNumOfThreads()))));
+    final int numChunks = (totalRows + chunkSize - 1) / chunkSize;
+
+    final List<List<ResolvedFeature>> resolvedChunks = IntStream.range(0, numChunks).parallel()
+        .mapToObj(chunk -> {
+          final List<FeatureListRow> chunkRows = rows.subList(chunk * chunkSize,
+              Math.min(totalRows, (chunk + 1) * chunkSize));
+          final Resolver chunkResolver =
+              chunk == 0 ? resolver : resolverParameters.getResolver(parameters, originalFeatureList);
+          return resolveRows(chunkResolver, originalFeatureList, dataFile, chunkRows);
+        }).toList();
+
+    if (isCanceled()) {
+      return;
+    }
 
-    processedRows = 0;
-    totalRows = originalFeatureList.getNumberOfRows();
+    // create rows in the order of the original rows so the IDs do not depend on the threading
     int peakId = 1;
-
     int c = 0;
-
-    while (access.hasNextFeature()) {
-      final ModularFeature originalFeature = (ModularFeature) access.nextFeature();
-      final List<IonTimeSeries<? extends Scan>> resolvedSeries = resolver.resolve(access,
-          getMemoryMapStorage());
-
-      for (IonTimeSeries<? extends Scan> resolved : resolvedSeries) {
+    for (List<ResolvedFeature> chunk : resolvedChunks) {
+      for (ResolvedFeature resolvedFeature : chunk) {
+        final ModularFeature originalFeature = resolvedFeature.originalFeature();
+        final IonTimeSeries<? extends Scan> resolved = resolvedFeature.resolved();
         final ModularFeatureListRow newRow = new ModularFeatureListRow(resolvedFeatureList,
             peakId++);
         final ModularFeature f = new ModularFeature(resolvedFeatureList,
@@ -382,7 +423,6 @@ public class FeatureResolverTask extends AbstractTask {
           c++;
         }
       }
-      processedRows++;
     }
     logger.info(c + "/" + resolvedFeatureList.getNumberOfRows()
         + " have less than 4 scans (frames for IMS data)");
@@ -395,6 +435,31 @@ public class FeatureResolverTask extends AbstractTask {
     newPeakList = resolvedFeatureList;
   }
 
+  /**
+   * Resolves the features of a subset of rows. The resolver and the data access are only used by
+   * the calling thread.
+   *
+   * @return the resolved series with their original feature in the order of the rows
+   */
+  private List<ResolvedFeature> resolveRows(Resolver resolver,
+      ModularFeatureList originalFeatureList, RawDataFile dataFile, List<FeatureListRow> rows) {
+    final FeatureDataAccess access = EfficientDataAccess.of(originalFeatureList,
+        EfficientDataAccess.FeatureDataType.INCLUDE_ZEROS, dataFile, rows);
+
+    final List<ResolvedFeature> resolvedFeatures = new ArrayList<>();
+    while (access.hasNextFeature() && !isCanceled()) {
+      final ModularFeature originalFeature = (ModularFeature) access.nextFeature();
+      final List<IonTimeSeries<? extends Scan>> resolvedSeries = resolver.resolve(access,
+          getMemoryMapStorage());
+
+      for (IonTimeSeries<? extends Scan> resolved : resolvedSeries) {
+        resolvedFeatures.add(new ResolvedFeature(originalFeature, resolved));
+      }
+      processedRows.incrementAndGet();
+    }
+    return resolvedFeatures;
+  }
+
   @Override
   public void cancel() {
     super.cancel();
@@ -422,7 +487,7 @@ public class FeatureResolverTask extends AbstractTask {
 
     final FeatureResolver resolver = ((GeneralResolverParameters) parameters).getResolver();
 
-    processedRows = 0;
+    processedRows.set(0);
     totalRows = originalFeatureList.getNumberOfRows();
     int peakId = 1;
     final Integer minNumDp = parameters.getValue(GeneralResolverParameters.MIN_NUMBER_OF_DATAPOINTS);
@@ -452,7 +517,7 @@ public class FeatureResolverTask extends AbstractTask {
         newRow.setFeatureInformation(peak.getPeakInformation());
         resolvedFeatureList.addRow(newRow);
       }
-      processedRows++;
+      processedRows.incrementAndGet();
     }
 
     resolvedFeatureList.addDescriptionOfAppliedTask(
@@ -501,4 +566,12 @@ public class FeatureResolverTask extends AbstractTask {
 
     return resolvedFeatureList;
   }
+
+  /**
+   * A resolved series and the feature it was resolved from
+   */
+  private record ResolvedFeature(ModularFeature originalFeature,
+                                 IonTimeSeries<? extends Scan> resolved) {
+
+  }
 }
@@ -0,0 +1,931 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.PeakIntegrationMethod;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Java port of the centWave peak detection of XCMS (findPeaks.centWave) for a single chromatogram
+ * of one m/z value, as it was previously called through R. Regions of interest are the sections of
+ * non-zero intensities. The continuous wavelet transform, local maxima and ridge line detection
+ * follow the MassSpecWavelet functions that are shipped with XCMS (MSW.cwt,
+ * MSW.getLocalMaximumCWT, MSW.getRidge). Gaussian fitting is not supported, like in the previous
+ * R call.
+ * <p>
+ * Tautenhahn R, Böttcher C, Neumann S: Highly sensitive feature detection for high resolution
+ * LC/MS. BMC Bioinformatics 2008, 9:504
+ * <p>
+ * Instances cache the wavelets of each scale and are not thread safe.
+ */
+public final class CentWave {
+
+  // Minutes <-> seconds.
+  private static final double SECONDS_PER_MINUTE = 60.0;
+
+  // Mexican hat wavelet sampled on [-8, 8], like in MSW.cwt
+  private static final int PSI_LENGTH = 1024;
+  private static final double[] PSI;
+  private static final double PSI_DX;
+  private static final double PSI_X_MAX = 16d;
+
+  // ridge line parameters of MSW.getRidge and MSW.getLocalMaximumCWT
+  private static final int RIDGE_MIN_WIN_SIZE = 3;
+  private static final int RIDGE_GAP_THRESHOLD = 3;
+  private static final int LOCAL_MAX_MIN_WIN_SIZE = 5;
+
+  static {
+    final double by = 16d / (PSI_LENGTH - 1);
+    PSI = new double[PSI_LENGTH];
+    final double factor = 2d / Math.sqrt(3) * Math.pow(Math.PI, -0.25);
+    for (int i = 0; i < PSI_LENGTH; i++) {
+      final double x = i == PSI_LENGTH - 1 ? 8d : -8d + i * by;
+      PSI[i] = factor * (1 - x * x) * Math.exp(-x * x / 2);
+    }
+    PSI_DX = (-8d + by) - (-8d);
+  }
+
+  private final double snThreshold;
+  private final Range<Double> peakWidth;
+  private final PeakIntegrationMethod integrationMethod;
+  // wavelets by scale
+  private final Map<Integer, double[]> wavelets = new HashMap<>();
+
+  /**
+   * @param snThreshold       signal to noise ratio threshold
+   * @param peakWidth         range of peak widths in the unit of the x values (the wavelet
+   *                          scales)
+   * @param integrationMethod integrate on the wavelet coefficients (smoothed) or the raw data
+   */
+  public CentWave(double snThreshold, @NotNull Range<Double> peakWidth,
+      @NotNull PeakIntegrationMethod integrationMethod) {
+    this.snThreshold = snThreshold;
+    this.peakWidth = peakWidth;
+    this.integrationMethod = integrationMethod;
+  }
+
+  /**
+   * Detects peaks in a chromatogram. Missing values need to be represented by zero intensities.
+   *
+   * @param x           retention times in minutes, strictly increasing
+   * @param y           intensities
+   * @param numValues   the number of values to use from x and y
+   * @return the detected peaks in the order of their regions of interest. Overlapping peaks are
+   * removed in favour of the peak with the larger area, like in XCMS.
+   */
+  @NotNull
+  public List<CentWavePeak> findPeaks(double[] x, double[] y, int numValues) {
+    if (numValues < 2) {
+      return List.of();
+    }
+
+    final int[] scales = getScales(x, numValues);
+    if (scales.length == 0) {
+      return List.of();
+    }
+
+    final List<CentWavePeak> peaks = new ArrayList<>();
+    for (int start = 0; start < numValues; start++) {
+      if (y[start] > 0) {
+        int end = start;
+        while (end + 1 < numValues && y[end + 1] > 0) {
+          end++;
+        }
+        findPeaksInRoi(x, y, numValues, start, end, scales, peaks);
+        start = end;
+      }
+    }
+    return removeOverlapping(peaks);
+  }
+
+  /**
+   * Converts the peak width range into wavelet scales in number of scans.
+   */
+  private int[] getScales(double[] x, int numValues) {
+    final double meanDiff = (x[numValues - 1] - x[0]) / (numValues - 1);
+    final int low = (int) Math.rint(peakWidth.lowerEndpoint() / meanDiff / 2);
+    final int high = (int) Math.rint(peakWidth.upperEndpoint() / meanDiff / 2);
+    if (low <= 0 && high <= 0) {
+      return new int[0];
+    }
+    if (low <= 0 || high <= 0) {
+      return new int[]{Math.max(low, high)};
+    }
+    final int[] scales = new int[(high - low) / 2 + 1];
+    for (int i = 0; i < scales.length; i++) {
+      scales[i] = low + 2 * i;
+    }
+    return scales;
+  }
+
+  private void findPeaksInRoi(double[] x, double[] y, int numValues, int scmin, int scmax,
+      int[] scales, List<CentWavePeak> peaks) {
+    final int minPeakWidth = scales[0];
+    final int noiseRange = minPeakWidth * 3;
+    final int maxNoiseRange = scales[scales.length - 1] * 3;
+    final int minPtsAboveBaseLine = Math.max(4, minPeakWidth - 2);
+    final int scRangeTol = minPeakWidth / 2;
+    final int maxDescOutlier = scRangeTol;
+
+    final int roiLength = scmax - scmin + 1;
+    // extended scan range for baseline and wavelet analysis
+    final int srFrom = Math.max(0, scmin - maxNoiseRange);
+    final int srTo = Math.min(numValues - 1, scmax + maxNoiseRange);
+    final double[] d = Arrays.copyOfRange(y, srFrom, srTo + 1);
+    // roi with tolerance, relative to d
+    final int ftdFrom = Math.max(srFrom, scmin - scRangeTol) - srFrom;
+    final int ftdTo = Math.min(srTo, scmax + scRangeTol) - srFrom;
+
+    // first baseline estimate: trimmed mean
+    final double noise = roiLength >= 10 * minPeakWidth ? estimateChromNoise(y, 0, numValues,
+        3 * minPeakWidth) : estimateChromNoise(d, 0, d.length, 3 * minPeakWidth);
+    if (!continuousPtsAboveThreshold(d, ftdFrom, ftdTo + 1, noise, minPtsAboveBaseLine)) {
+      return;
+    }
+
+    // second estimate from the data around the peak
+    final double[] localNoise = getLocalNoiseEstimate(d, ftdFrom, ftdTo, noiseRange,
+        d.length < numValues, noise, minPtsAboveBaseLine);
+    final double baseline = Math.max(1, Math.min(localNoise[0], noise));
+    final double sdnoise = Math.max(1, localNoise[1]);
+    final double sdthr = sdnoise * snThreshold;
+
+    if (!anyAbove(d, ftdFrom, ftdTo + 1, baseline, sdthr)) {
+      return;
+    }
+
+    final double[][] wCoefs = cwt(d, scales);
+    if (wCoefs.length == 0 || !anyAbove(wCoefs, baseline, sdthr)) {
+      return;
+    }
+    if (srTo == numValues - 1 && d.length > 1) {
+      // edge workaround of XCMS, local maxima detection fails otherwise
+      for (double[] coefs : wCoefs) {
+        coefs[d.length - 1] = coefs[d.length - 2] * 0.99;
+      }
+    }
+
+    final boolean[][] localMax = getLocalMaximumCWT(wCoefs, scales);
+    final List<int[]> ridges = getRidges(localMax, scales);
+
+    final int irange = (minPeakWidth + 1) / 2;
+    final List<int[]> peakInfo = new ArrayList<>();
+    for (int[] ridge : ridges) {
+      if (ridge.length == 0 || !isWaveletPeak(wCoefs[0], ridge, baseline, sdthr)) {
+        continue;
+      }
+      // peaks in the original data range and final S/N check
+      boolean aboveThreshold = false;
+      for (int pos : ridge) {
+        if (pos >= ftdFrom && pos <= ftdTo && d[pos] - baseline >= sdthr) {
+          aboveThreshold = true;
+          break;
+        }
+      }
+      if (!aboveThreshold) {
+        continue;
+      }
+
+      // the best scale has the largest intensity sum around its position
+      int bestScaleNr = 0;
+      double maxInt = Double.NEGATIVE_INFINITY;
+      for (int k = 0; k < ridge.length; k++) {
+        final int r1 = Math.max(0, ridge[k] - irange);
+        final int r2 = Math.min(d.length - 1, ridge[k] + irange);
+        double sum = 0;
+        for (int i = r1; i <= r2; i++) {
+          sum += d[i];
+        }
+        if (sum > maxInt) {
+          maxInt = sum;
+          bestScaleNr = k;
+        }
+      }
+      final int bestScale = scales[bestScaleNr];
+      final int bestScalePos = ridge[bestScaleNr];
+      final int lwpos = Math.max(0, bestScalePos - bestScale);
+      final int rwpos = Math.min(bestScalePos + bestScale, d.length - 1);
+      peakInfo.add(new int[]{bestScaleNr, bestScalePos, lwpos, rwpos});
+    }
+
+    for (int[] info : peakInfo) {
+      final int bestScaleNr = info[0];
+      final int bestScalePos = info[1];
+      int[] lm;
+      if (integrationMethod == PeakIntegrationMethod.UseSmoothedData) {
+        lm = descendMin(wCoefs[bestScaleNr], bestScalePos);
+        if (lm[0] == lm[1] || allZero(d, lm[0], lm[1])) {
+          lm = descendMinTol(d, info[2], info[3], maxDescOutlier);
+        }
+      } else {
+        lm = descendMinTol(d, info[2], info[3], maxDescOutlier);
+      }
+      lm = narrowBoundaries(lm, d);
+
+      double maxo = 0;
+      double sum = 0;
+      double sumAboveBaseline = 0;
+      for (int i = lm[0]; i <= lm[1]; i++) {
+        maxo = Math.max(maxo, d[i]);
+        sum += d[i];
+        if (d[i] > baseline) {
+          sumAboveBaseline += d[i] - baseline;
+        }
+      }
+      final int left = srFrom + lm[0];
+      final int right = srFrom + lm[1];
+      // integration in seconds like XCMS
+      final double pwid = left == right ? 1
+          : (x[right] - x[left]) * SECONDS_PER_MINUTE / (right - left);
+
+      // the signal to noise ratio is calculated from the maximum in the original roi. Wavelet
+      // bounds outside the roi are replaced by the roi bounds
+      final int lw = srFrom + info[2];
+      final int rw = srFrom + info[3];
+      final int p1 = lw >= scmin && lw <= scmax ? lw : scmin;
+      final int p2 = rw >= scmin && rw <= scmax ? rw : scmax;
+      double roiMax = 0;
+      for (int i = Math.min(p1, p2); i <= Math.max(p1, p2); i++) {
+        roiMax = Math.max(roiMax, y[i]);
+      }
+
+      peaks.add(new CentWavePeak(left, right, srFrom + bestScalePos, scales[bestScaleNr], maxo,
+          pwid * sum, pwid * sumAboveBaseline, Math.rint((roiMax - baseline) / sdnoise)));
+    }
+  }
+
+  /**
+   * Removes peaks that overlap with a peak of larger area (rectUnique in XCMS). Peaks sharing a
+   * boundary do not overlap.
+   */
+  private static List<CentWavePeak> removeOverlapping(List<CentWavePeak> peaks) {
+    if (peaks.size() < 2) {
+      return peaks;
+    }
+    final Integer[] order = new Integer[peaks.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    // stable sort
+    Arrays.sort(order, Comparator.comparingDouble(i -> -peaks.get(i).area()));
+
+    final boolean[] keep = new boolean[peaks.size()];
+    for (int i = 0; i < order.length; i++) {
+      final CentWavePeak peak = peaks.get(order[i]);
+      keep[order[i]] = true;
+      for (int j = 0; j < i; j++) {
+        final CentWavePeak other = peaks.get(order[j]);
+        if (keep[order[j]] && peak.left() < other.right() && other.left() < peak.right()) {
+          keep[order[i]] = false;
+          break;
+        }
+      }
+    }
+
+    final List<CentWavePeak> result = new ArrayList<>();
+    for (int i = 0; i < keep.length; i++) {
+      if (keep[i]) {
+        result.add(peaks.get(i));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Trimmed mean of the positive values or the mean of all values if there are less than minPts
+   * positive values.
+   */
+  static double estimateChromNoise(double[] values, int from, int to, int minPts) {
+    int positive = 0;
+    double sum = 0;
+    for (int i = from; i < to; i++) {
+      sum += values[i];
+      if (values[i] > 0) {
+        positive++;
+      }
+    }
+    if (positive < minPts) {
+      return sum / (to - from);
+    }
+    final double[] gz = new double[positive];
+    for (int i = from, j = 0; i < to; i++) {
+      if (values[i] > 0) {
+        gz[j++] = values[i];
+      }
+    }
+    return trimmedMean(gz, 0.05);
+  }
+
+  /**
+   * Mean after removing the fraction trim of the values at each end, like the mean function in R
+   */
+  private static double trimmedMean(double[] values, double trim) {
+    Arrays.sort(values);
+    final int lo = (int) Math.floor(values.length * trim);
+    final int hi = values.length - lo;
+    double sum = 0;
+    for (int i = lo; i < hi; i++) {
+      sum += values[i];
+    }
+    return sum / (hi - lo);
+  }
+
+  /**
+   * @return true if at least num consecutive values are above the threshold
+   */
+  static boolean continuousPtsAboveThreshold(double[] values, int from, int to, double threshold,
+      int num) {
+    int n = 0;
+    for (int i = from; i < to; i++) {
+      if (values[i] > threshold) {
+        n++;
+        if (n >= num) {
+          return true;
+        }
+      } else {
+        n = 0;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Baseline and standard deviation of the noise from the data outside the peak region and close
+   * to the peak region. Sections of at least num consecutive values above the threshold are
+   * excluded.
+   *
+   * @return the baseline and the noise standard deviation
+   */
+  private static double[] getLocalNoiseEstimate(double[] d, int d1, int d2, int noiseRange,
+      boolean partialChromatogram, double threshold, int num) {
+    if (!partialChromatogram) {
+      // trimmed positive values of the whole chromatogram
+      final double[] positive = Arrays.stream(d).filter(v -> v > 0).sorted().toArray();
+      final int n = positive.length;
+      final int from = (int) Math.rint(n * 0.05 + 1) - 1;
+      final int to = (int) Math.rint(n * 0.95);
+      if (to - from < 2) {
+        return new double[]{1, 1};
+      }
+      final double[] trimmed = Arrays.copyOfRange(positive, from, to);
+      final double mean = mean(trimmed);
+      return new double[]{mean, sd(trimmed, mean)};
+    }
+
+    // region outside of the peak region
+    final double[] n1 = new double[d.length - (d2 - d1 + 1)];
+    System.arraycopy(d, 0, n1, 0, d1);
+    System.arraycopy(d, d2 + 1, n1, d1, d.length - d2 - 1);
+
+    // region next to the peak region
+    final int leftFrom = Math.max(0, d1 - noiseRange);
+    final int rightTo = Math.min(d.length - 1, d2 + noiseRange);
+    final double[] n2 = new double[(d1 - leftFrom + 1) + (rightTo - d2 + 1)];
+    System.arraycopy(d, leftFrom, n2, 0, d1 - leftFrom + 1);
+    System.arraycopy(d, d2, n2, d1 - leftFrom + 1, rightTo - d2 + 1);
+
+    final double[] noise1 = removeContinuousPtsAboveThreshold(n1, threshold, num);
+    final double[] noise2 = removeContinuousPtsAboveThreshold(n2, threshold, num);
+    double baseline1 = 1;
+    double sdnoise1 = 1;
+    if (noise1.length > 1) {
+      baseline1 = mean(noise1);
+      sdnoise1 = sd(noise1, baseline1);
+    }
+    double baseline2 = 1;
+    double sdnoise2 = 1;
+    if (noise2.length > 1) {
+      baseline2 = mean(noise2);
+      sdnoise2 = sd(noise2, baseline2);
+    }
+    return new double[]{Math.min(baseline1, baseline2), Math.min(sdnoise1, sdnoise2)};
+  }
+
+  /**
+   * @return the values without sections of at least num consecutive values above the threshold
+   */
+  private static double[] removeContinuousPtsAboveThreshold(double[] values, double threshold,
+      int num) {
+    final boolean[] remove = new boolean[values.length];
+    int n = 0;
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] > threshold) {
+        n++;
+        if (n >= num) {
+          Arrays.fill(remove, i - n + 1, i + 1, true);
+        }
+      } else {
+        n = 0;
+      }
+    }
+    int size = 0;
+    final double[] result = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      if (!remove[i]) {
+        result[size++] = values[i];
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  private static double mean(double[] values) {
+    double sum = 0;
+    for (double v : values) {
+      sum += v;
+    }
+    return sum / values.length;
+  }
+
+  private static double sd(double[] values, double mean) {
+    double sum = 0;
+    for (double v : values) {
+      sum += (v - mean) * (v - mean);
+    }
+    return Math.sqrt(sum / (values.length - 1));
+  }
+
+  private static boolean anyAbove(double[] values, int from, int to, double baseline,
+      double threshold) {
+    for (int i = from; i < to; i++) {
+      if (values[i] - baseline >= threshold) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean anyAbove(double[][] values, double baseline, double threshold) {
+    for (double[] v : values) {
+      if (anyAbove(v, 0, v.length, baseline, threshold)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isWaveletPeak(double[] firstScaleCoefs, int[] ridge, double baseline,
+      double threshold) {
+    for (int pos : ridge) {
+      if (firstScaleCoefs[pos] - baseline >= threshold) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean allZero(double[] values, int from, int to) {
+    for (int i = from; i <= to; i++) {
+      if (values[i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Continuous wavelet transform with the Mexican hat wavelet (MSW.cwt). The data is extended to
+   * the next power of two by reflection and transformed by circular correlation.
+   *
+   * @return coefficients by scale and position. Scales with a wavelet longer than the extended
+   * data are omitted.
+   */
+  private double[][] cwt(double[] data, int[] scales) {
+    final int oldLength = data.length;
+    int length = 1;
+    while (length < oldLength) {
+      length <<= 1;
+    }
+    final double[] ms = Arrays.copyOf(data, length);
+    for (int i = oldLength; i < length; i++) {
+      ms[i] = data[2 * oldLength - 1 - i];
+    }
+
+    final List<double[]> coefs = new ArrayList<>(scales.length);
+    for (int scale : scales) {
+      final double[] wavelet = getWavelet(scale);
+      if (wavelet.length > length) {
+        break;
+      }
+      final int shift = wavelet.length / 2;
+      final double norm = 1d / Math.sqrt(scale);
+      final double[] c = new double[oldLength];
+      for (int t = 0; t < oldLength; t++) {
+        double sum = 0;
+        int index = Math.floorMod(t - shift, length);
+        for (double w : wavelet) {
+          sum += ms[index] * w;
+          if (++index == length) {
+            index = 0;
+          }
+        }
+        c[t] = norm * sum;
+      }
+      coefs.add(c);
+    }
+    return coefs.toArray(double[][]::new);
+  }
+
+  private double[] getWavelet(int scale) {
+    return wavelets.computeIfAbsent(scale, s -> {
+      final int length = (int) Math.floor(s * PSI_X_MAX) + 1;
+      final double[] psi = new double[length];
+      double mean = 0;
+      for (int m = 0; m < length; m++) {
+        final int j = Math.min(PSI_LENGTH - 1, (int) Math.floor(m / (s * PSI_DX)));
+        psi[m] = PSI[j];
+        mean += psi[m];
+      }
+      mean /= length;
+      // reversed and centered
+      final double[] wavelet = new double[length];
+      for (int m = 0; m < length; m++) {
+        wavelet[m] = psi[length - 1 - m] - mean;
+      }
+      return wavelet;
+    });
+  }
+
+  /**
+   * Local maxima of the coefficients of each scale (MSW.getLocalMaximumCWT)
+   */
+  private static boolean[][] getLocalMaximumCWT(double[][] wCoefs, int[] scales) {
+    final boolean[][] localMax = new boolean[wCoefs.length][];
+    for (int i = 0; i < wCoefs.length; i++) {
+      final int winSize = Math.max(scales[i] * 2 + 1, LOCAL_MAX_MIN_WIN_SIZE);
+      localMax[i] = localMax(wCoefs[i], winSize);
+      for (int j = 0; j < wCoefs[i].length; j++) {
+        if (wCoefs[i][j] < 0) {
+          localMax[i][j] = false;
+        }
+      }
+    }
+    return localMax;
+  }
+
+  /**
+   * Maxima in windows of winSize and windows shifted by half of winSize. Of two maxima closer than
+   * winSize only the larger one is kept (MSW.localMax).
+   */
+  private static boolean[] localMax(double[] x, int winSize) {
+    final int len = x.length;
+    final boolean[] localMax = new boolean[len];
+    for (int shift : new int[]{0, winSize / 2}) {
+      final int windows = (len + shift + winSize - 1) / winSize;
+      for (int w = 0; w < windows; w++) {
+        int maxIndex = 0;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int m = 0; m < winSize; m++) {
+          final double value = paddedValue(x, w * winSize + m - shift);
+          if (value > max) {
+            max = value;
+            maxIndex = m;
+          }
+        }
+        if (max > paddedValue(x, w * winSize - shift) && max > paddedValue(x,
+            w * winSize + winSize - 1 - shift)) {
+          localMax[w * winSize + maxIndex - shift] = true;
+        }
+      }
+    }
+
+    int previous = -1;
+    final List<Integer> remove = new ArrayList<>();
+    for (int i = 0; i < len; i++) {
+      if (localMax[i]) {
+        if (previous != -1 && i - previous < winSize) {
+          remove.add(x[previous] - x[i] <= 0 ? previous : i);
+        }
+        previous = i;
+      }
+    }
+    for (int i : remove) {
+      localMax[i] = false;
+    }
+    return localMax;
+  }
+
+  private static double paddedValue(double[] x, int index) {
+    return x[Math.max(0, Math.min(x.length - 1, index))];
+  }
+
+  /**
+   * Links the local maxima from the largest to the smallest scale to ridge lines (MSW.getRidge).
+   * Ridges that are disconnected for more than the gap threshold are kept as orphan ridges.
+   *
+   * @return the positions of each ridge from the smallest to the largest scale
+   */
+  private static List<int[]> getRidges(boolean[][] localMax, int[] scales) {
+    final int numScales = localMax.length;
+    final int nMz = localMax[0].length;
+
+    List<Ridge> current = new ArrayList<>();
+    for (int pos : maxima(localMax[numScales - 1])) {
+      current.add(new Ridge(pos, pos));
+    }
+    final List<Ridge> orphans = new ArrayList<>();
+
+    final int[] columns;
+    if (numScales > 1) {
+      columns = new int[numScales - 1];
+      for (int i = 0; i < columns.length; i++) {
+        columns[i] = numScales - 2 - i;
+      }
+    } else {
+      columns = new int[]{0};
+    }
+
+    for (int col : columns) {
+      final int scale = scales[col];
+      if (current.isEmpty()) {
+        // start new ridges without positions at the maxima of this scale
+        for (int pos : maxima(localMax[col])) {
+          current.add(new Ridge(pos));
+        }
+        continue;
+      }
+
+      final int winSize = Math.max(scale / 2, RIDGE_MIN_WIN_SIZE);
+      final List<Ridge> selected = new ArrayList<>();
+      final List<Integer> selectedPeaks = new ArrayList<>();
+      for (Ridge ridge : current) {
+        final int start = Math.max(0, ridge.name - winSize);
+        final int end = Math.min(nMz - 1, ridge.name + winSize);
+        int next = -1;
+        for (int i = start; i <= end; i++) {
+          if (localMax[col][i] && (next == -1 || Math.abs(i - ridge.name) < Math.abs(
+              next - ridge.name))) {
+            next = i;
+          }
+        }
+
+        if (next == -1) {
+          final int status = ridge.status < 0 ? RIDGE_GAP_THRESHOLD + 1 : ridge.status;
+          if (status > RIDGE_GAP_THRESHOLD && scale >= 2) {
+            final int size = ridge.positions.size();
+            final int keep = size == 0 ? 0 : Math.max(1, size - status);
+            orphans.add(new Ridge((col + status + 2) + "_" + ridge.name,
+                new ArrayList<>(ridge.positions.subList(0, keep))));
+            continue;
+          }
+          next = ridge.name;
+          ridge.status = status + 1;
+        } else {
+          ridge.status = 0;
+        }
+        ridge.positions.add(next);
+        selected.add(ridge);
+        selectedPeaks.add(next);
+      }
+
+      // keep the longest ridge of ridges that end in the same local maximum
+      final Set<Integer> duplicates = new HashSet<>();
+      final Set<Integer> seen = new HashSet<>();
+      final List<Integer> duplicateOrder = new ArrayList<>();
+      for (int peak : selectedPeaks) {
+        if (!seen.add(peak) && duplicates.add(peak)) {
+          duplicateOrder.add(peak);
+        }
+      }
+      if (!duplicateOrder.isEmpty()) {
+        final Set<Integer> removeIndices = new HashSet<>();
+        for (int duplicate : duplicateOrder) {
+          final List<Integer> indices = new ArrayList<>();
+          for (int i = 0; i < selectedPeaks.size(); i++) {
+            if (selectedPeaks.get(i) == duplicate) {
+              indices.add(i);
+            }
+          }
+          int longest = 0;
+          for (int i = 1; i < indices.size(); i++) {
+            if (selected.get(indices.get(i)).positions.size() > selected.get(
+                indices.get(longest)).positions.size()) {
+              longest = i;
+            }
+          }
+          for (int i = 0; i < indices.size(); i++) {
+            if (i != longest) {
+              removeIndices.add(indices.get(i));
+            }
+          }
+          // MassSpecWavelet stores the ridge at the index of the longest ridge in the group
+          // (not in the list) as orphan, this is reproduced here
+          final Ridge orphan = selected.get(longest);
+          orphans.add(new Ridge((col + 1) + "_" + selectedPeaks.get(longest),
+              new ArrayList<>(orphan.positions)));
+        }
+        final List<Ridge> remaining = new ArrayList<>();
+        final List<Integer> remainingPeaks = new ArrayList<>();
+        for (int i = 0; i < selected.size(); i++) {
+          if (!removeIndices.contains(i)) {
+            remaining.add(selected.get(i));
+            remainingPeaks.add(selectedPeaks.get(i));
+          }
+        }
+        selected.clear();
+        selected.addAll(remaining);
+        selectedPeaks.clear();
+        selectedPeaks.addAll(remainingPeaks);
+      }
+
+      for (int i = 0; i < selected.size(); i++) {
+        selected.get(i).name = selectedPeaks.get(i);
+      }
+      current = selected;
+      if (scale >= 2) {
+        // add the unselected maxima of this scale as new ridges
+        final Set<Integer> selectedSet = new HashSet<>(selectedPeaks);
+        for (int pos : maxima(localMax[col])) {
+          if (!selectedSet.contains(pos)) {
+            current.add(new Ridge(pos, pos));
+          }
+        }
+      }
+    }
+
+    // reverse to the order from small to large scales, remove duplicate names
+    final Map<String, int[]> ridges = new LinkedHashMap<>();
+    for (Ridge ridge : current) {
+      ridges.putIfAbsent("1_" + ridge.name, ridge.reversedPositions());
+    }
+    for (Ridge orphan : orphans) {
+      ridges.putIfAbsent(orphan.orphanName, orphan.reversedPositions());
+    }
+    return new ArrayList<>(ridges.values());
+  }
+
+  private static List<Integer> maxima(boolean[] localMax) {
+    final List<Integer> maxima = new ArrayList<>();
+    for (int i = 0; i < localMax.length; i++) {
+      if (localMax[i]) {
+        maxima.add(i);
+      }
+    }
+    return maxima;
+  }
+
+  /**
+   * Descends from istart to both sides while the values decrease (DescendMin in XCMS)
+   */
+  private static int[] descendMin(double[] y, int istart) {
+    int lower = istart;
+    while (lower > 0 && y[lower - 1] < y[lower]) {
+      lower--;
+    }
+    int upper = istart;
+    while (upper < y.length - 1 && y[upper + 1] < y[upper]) {
+      upper++;
+    }
+    return new int[]{lower, upper};
+  }
+
+  /**
+   * Descends from the start positions to both sides while the values are positive and decrease.
+   * Up to maxDescOutlier increasing values are tolerated (descendMinTol in XCMS).
+   */
+  private static int[] descendMinTol(double[] d, int left, int right, int maxDescOutlier) {
+    int l = left;
+    int outl = 0;
+    int opos = 0;
+    while (l > 0 && d[l] > 0 && outl <= maxDescOutlier) {
+      final int vpos = outl > 0 ? opos : l;
+      if (d[l - 1] > d[vpos]) {
+        outl++;
+      } else {
+        outl = 0;
+      }
+      if (outl == 1) {
+        opos = l;
+      }
+      l--;
+    }
+    if (outl > 0) {
+      l += outl;
+    }
+
+    int r = right;
+    outl = 0;
+    while (r < d.length - 1 && d[r] > 0 && outl <= maxDescOutlier) {
+      final int vpos = outl > 0 ? opos : r;
+      if (d[r + 1] > d[vpos]) {
+        outl++;
+      } else {
+        outl = 0;
+      }
+      if (outl == 1) {
+        opos = r;
+      }
+      r++;
+    }
+    if (outl > 0) {
+      r -= outl;
+    }
+    return new int[]{l, r};
+  }
+
+  /**
+   * Narrows the boundaries to the values >= 1 with one additional value on each side (XCMS
+   * .narrow_rt_boundaries).
+   */
+  private static int[] narrowBoundaries(int[] lm, double[] d) {
+    int first = -1;
+    int last = -1;
+    for (int i = lm[0]; i <= lm[1]; i++) {
+      if (d[i] >= 1) {
+        if (first == -1) {
+          first = i;
+        }
+        last = i;
+      }
+    }
+    if (first == -1) {
+      return lm;
+    }
+    return new int[]{Math.max(lm[0], first - 1), Math.min(lm[1], last + 1)};
+  }
+
+  /**
+   * A ridge line. The name is the position of the last local maximum, orphan ridges are named by
+   * their level and position.
+   */
+  private static final class Ridge {
+
+    private final List<Integer> positions;
+    private final String orphanName;
+    private int name;
+    // number of consecutive scales without a local maximum, -1 if not set
+    private int status;
+
+    private Ridge(int name, int position) {
+      this.name = name;
+      positions = new ArrayList<>();
+      positions.add(position);
+      orphanName = null;
+      status = 0;
+    }
+
+    private Ridge(int name) {
+      this.name = name;
+      positions = new ArrayList<>();
+      orphanName = null;
+      status = -1;
+    }
+
+    private Ridge(String orphanName, List<Integer> positions) {
+      this.orphanName = orphanName;
+      this.positions = positions;
+      name = -1;
+      status = 0;
+    }
+
+    private int[] reversedPositions() {
+      final int[] reversed = new int[positions.size()];
+      for (int i = 0; i < reversed.length; i++) {
+        reversed[i] = positions.get(positions.size() - 1 - i);
+      }
+      return reversed;
+    }
+  }
+
+  /**
+   * A detected peak
+   *
+   * @param left   index of the first data point
+   * @param right  index of the last data point
+   * @param apex   index of the ridge position of the best scale
+   * @param scale  the best wavelet scale in number of scans
+   * @param height maximum intensity
+   * @param area   area in intensity * seconds
+   * @param areaAboveBaseline area above the baseline
+   * @param sn     signal to noise ratio
+   */
+  public record CentWavePeak(int left, int right, int apex, int scale, double height, double area,
+                             double areaAboveBaseline, double sn) {
+
+  }
+}
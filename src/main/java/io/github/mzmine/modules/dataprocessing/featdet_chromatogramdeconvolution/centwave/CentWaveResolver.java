@@ -25,59 +25,38 @@
 package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave;
 
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.INTEGRATION_METHOD;
+import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.MIN_NUMBER_OF_DATAPOINTS;
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.PEAK_DURATION;
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.PEAK_SCALES;
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.SN_THRESHOLD;
 
 import com.google.common.collect.Range;
-import io.github.mzmine.datamodel.DataPoint;
-import io.github.mzmine.datamodel.RawDataFile;
-import io.github.mzmine.datamodel.Scan;
-import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.modules.MZmineProcessingModule;
-import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.FeatureResolver;
-import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.ResolvedPeak;
-import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.PeakIntegrationMethod;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.AbstractResolver;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWave.CentWavePeak;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.util.R.REngineType;
-import io.github.mzmine.util.R.RSessionWrapper;
-import io.github.mzmine.util.R.RSessionWrapperException;
-import io.github.mzmine.util.maths.CenterFunction;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 
 /**
- * Use XCMS findPeaks.centWave to identify peaks.
+ * Resolves chromatograms with the centWave algorithm of XCMS. The algorithm is implemented in
+ * {@link CentWave} and does not require R.
  */
-public class CentWaveResolver implements FeatureResolver {
+public class CentWaveResolver extends AbstractResolver {
 
-  // Logger.
-  private static final Logger logger = Logger.getLogger(CentWaveResolver.class.getName());
+  private final CentWave centWave;
+  private final Range<Double> peakDuration;
+  private final int minDataPoints;
 
-  // Name.
-  private static final String NAME = "Wavelets (XCMS)";
-
-  // Minutes <-> seconds.
-  private static final double SECONDS_PER_MINUTE = 60.0;
-
-  // Required minimum version of XCMS.
-  private static final String XCMS_VERSION = "1.33.2";
-
-  @NotNull
-  @Override
-  public String getName() {
-
-    return NAME;
-  }
-
-  @NotNull
-  @Override
-  public Class<? extends ParameterSet> getParameterSetClass() {
-
-    return CentWaveResolverParameters.class;
+  public CentWaveResolver(@NotNull ParameterSet parameters, @NotNull ModularFeatureList flist) {
+    super(parameters, flist);
+    centWave = new CentWave(parameters.getParameter(SN_THRESHOLD).getValue(),
+        parameters.getParameter(PEAK_SCALES).getValue(),
+        parameters.getParameter(INTEGRATION_METHOD).getValue());
+    peakDuration = parameters.getParameter(PEAK_DURATION).getValue();
+    minDataPoints = parameters.getParameter(MIN_NUMBER_OF_DATAPOINTS).getValue();
   }
 
   @Override
@@ -85,190 +64,41 @@ public class CentWaveResolver implements FeatureResolver {
     return CentWaveResolverModule.class;
   }
 
+  /**
+   * @param x retention times in minutes. Values have to be strictly increasing, buffers may be
+   *          longer than the data and are then padded with zeros.
+   * @param y intensities, missing data points are represented by 0
+   * @return List of x ranges for each resolved peak
+   */
   @Override
-  public boolean getRequiresR() {
-    return true;
-  }
-
-  @Override
-  public String[] getRequiredRPackages() {
-    return new String[] {"xcms"};
-  }
-
-  @Override
-  public String[] getRequiredRPackagesVersions() {
-    return new String[] {XCMS_VERSION};
-  }
-
-  @Override
-  public REngineType getREngineType(final ParameterSet parameters) {
-    return parameters.getParameter(CentWaveResolverParameters.RENGINE_TYPE).getValue();
-  }
-
-  @Override
-  public ResolvedPeak[] resolvePeaks(final Feature chromatogram, final ParameterSet parameters,
-      RSessionWrapper rSession, CenterFunction mzCenterFunction, double msmsRange,
-      float rTRangeMSMS) throws RSessionWrapperException {
-
-    List<Scan> scanNumbers = chromatogram.getScanNumbers();
-    final int scanCount = scanNumbers.size();
-    double retentionTimes[] = new double[scanCount];
-    double intensities[] = new double[scanCount];
-    RawDataFile dataFile = chromatogram.getRawDataFile();
-    for (int i = 0; i < scanCount; i++) {
-      final Scan scanNum = scanNumbers.get(i);
-      retentionTimes[i] = scanNum.getRetentionTime();
-      DataPoint dp = chromatogram.getDataPointAtIndex(i);
-      if (dp != null)
-        intensities[i] = dp.getIntensity();
-      else
-        intensities[i] = 0.0;
+  @NotNull
+  public List<Range<Double>> resolve(double[] x, double[] y) {
+    if (x.length != y.length) {
+      throw new AssertionError("Length of x, y and indices array does not match.");
     }
-
-    // Call findPeaks.centWave.
-    double[][] peakMatrix = null;
-
-    peakMatrix = centWave(rSession, retentionTimes, intensities, chromatogram.getMZ(),
-        parameters.getParameter(SN_THRESHOLD).getValue(),
-        parameters.getParameter(PEAK_SCALES).getValue(),
-        parameters.getParameter(INTEGRATION_METHOD).getValue());
-
-    final List<ResolvedPeak> resolvedPeaks;
-    if (peakMatrix == null) {
-
-      resolvedPeaks = new ArrayList<ResolvedPeak>(0);
-
-    } else {
-
-      logger.finest("Processing peak matrix...");
-
-      final Range<Double> peakDuration = parameters.getParameter(PEAK_DURATION).getValue();
-
-      // Process peak matrix.
-      resolvedPeaks = new ArrayList<ResolvedPeak>(peakMatrix.length);
-
-      for (final double[] peakRow : peakMatrix) {
-
-        // Get peak start and end.
-        final int peakLeft = findRTIndex(retentionTimes, peakRow[4]);
-        final int peakRight = findRTIndex(retentionTimes, peakRow[5]);
-
-        // Partition into sections bounded by null data points, creating
-        // a peak for each.
-        for (int start = peakLeft; start < peakRight; start++) {
-
-          if (chromatogram.getDataPointAtIndex(start) != null) {
-
-            int end = start;
-
-            while (end < peakRight && chromatogram.getDataPointAtIndex(end + 1) != null) {
-
-              end++;
-            }
-
-            if ((end > start)
-                && (peakDuration.contains(retentionTimes[end] - retentionTimes[start]))) {
-
-              resolvedPeaks.add(new ResolvedPeak(chromatogram, start, end, mzCenterFunction,
-                  msmsRange, rTRangeMSMS));
-            }
-
-            start = end;
-          }
-        }
-      }
+    int numValues = x.length;
+    while (numValues > 1 && x[numValues - 1] <= x[numValues - 2]) {
+      numValues--;
     }
 
-    return resolvedPeaks.toArray(new ResolvedPeak[resolvedPeaks.size()]);
-  }
-
-  private static int findRTIndex(final double[] rtMinutes, final double rtSec) {
-
-    final int i = Arrays.binarySearch(rtMinutes, rtSec / SECONDS_PER_MINUTE);
-    return i >= 0 ? i : -i - 2;
-  }
-
-  /**
-   * Do peak picking using xcms::findPeaks.centWave.
-   * 
-   * @param scanTime retention times (for each scan).
-   * @param intensity intensity values (for each scan).
-   * @param mz fixed m/z value for EIC.
-   * @param snrThreshold signal:noise ratio threshold.
-   * @param peakWidth peak width range.
-   * @param integrationMethod integration method.
-   * @return a matrix with a row for each detected peak.
-   * @throws RSessionWrapperException
-   */
-  private static double[][] centWave(RSessionWrapper rSession, final double[] scanTime,
-      final double[] intensity, final double mz, final double snrThreshold,
-      final Range<Double> peakWidth, final PeakIntegrationMethod integrationMethod)
-      throws RSessionWrapperException {
-
-    logger.finest("Detecting peaks.");
-
-    final double[][] peaks;
-
-    // Set vectors.
-    rSession.assign("scantime", scanTime);
-    rSession.assign("intensity", intensity);
-
-    // Initialize.
-    rSession.eval("mz <- " + mz);
-    rSession.eval("numPoints <- length(intensity)");
-
-    // Construct xcmsRaw object
-    rSession.eval("xRaw <- new(\"xcmsRaw\")");
-    rSession.eval("xRaw@tic <- intensity");
-    rSession.eval("xRaw@scantime <- scantime * " + SECONDS_PER_MINUTE);
-    rSession.eval("xRaw@scanindex <- 0:(numPoints-1)");
-    rSession.eval("xRaw@env$mz <- rep(mz, numPoints)");
-    rSession.eval("xRaw@env$intensity <- intensity");
-
-    // Construct ROIs.
-    rSession.eval("ROIs <- list()");
-    int roi = 1;
-    for (int start = 0; start < intensity.length; start++) {
-
-      // Found non-zero section.
-      if (intensity[start] > 0.0) {
-
-        // Look for end.
-        int end = start + 1;
-        while (end < intensity.length && intensity[end] > 0.0) {
+    final List<Range<Double>> resolved = new ArrayList<>();
+    for (CentWavePeak peak : centWave.findPeaks(x, y, numValues)) {
+      // Partition into sections bounded by missing data points, creating a peak for each.
+      for (int start = peak.left(); start < peak.right(); start++) {
+        if (y[start] > 0) {
+          int end = start;
+          while (end < peak.right() && y[end + 1] > 0) {
+            end++;
+          }
 
-          end++;
+          if (end > start && end - start + 1 >= minDataPoints && peakDuration.contains(
+              x[end] - x[start])) {
+            resolved.add(Range.closed(x[start], x[end]));
+          }
+          start = end;
         }
-
-        // Add ROI to list.
-        rSession.eval("ROIs[[" + roi + "]] <- list('scmin'=" + (start + 1) + ", 'scmax'=" + end
-            + ", 'mzmin'=mz, 'mzmax'=mz)");
-
-        // Next ROI.
-        start = end;
-        roi++;
-
       }
     }
-
-    // Do peak picking.
-    rSession.eval("mtx <- findPeaks.centWave(xRaw, ppm=0, mzdiff=0, verbose=TRUE" + ", peakwidth=c("
-        + peakWidth.lowerEndpoint() * SECONDS_PER_MINUTE + ", "
-        + peakWidth.upperEndpoint() * SECONDS_PER_MINUTE + ')' + ", snthresh=" + snrThreshold
-        + ", integrate=" + integrationMethod.getIndex() + ", ROI.list=ROIs)");
-
-    // Get rid of 'NA' values potentially found in the resulting matrix
-    rSession.eval("mtx[is.na(mtx)] <- " + RSessionWrapper.NA_DOUBLE); // +
-                                                                      // "0");//
-
-    final Object centWave = roi <= 1 ? null : (double[][]) rSession.collect("mtx", false);
-
-    // Done: Refresh R code stack
-    rSession.clearCode();
-
-    peaks = (centWave == null) ? null : (double[][]) centWave;
-
-    return peaks;
+    return resolved;
   }
-
 }
@@ -19,16 +19,20 @@
 package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave;
 
 import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.FeatureResolver;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.FeatureResolverSetupDialog;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.GeneralResolverParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.Resolver;
 import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.parameters.parametertypes.DoubleParameter;
 import io.github.mzmine.parameters.parametertypes.ranges.DoubleRangeParameter;
 import io.github.mzmine.util.ExitCode;
 import java.text.NumberFormat;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Parameters used by CentWaveDetector.
@@ -49,7 +53,7 @@ public class CentWaveResolverParameters extends GeneralResolverParameters {
      * Create the method.
      *
      * @param aName   name
-     * @param anIndex index (as used by findPeaks.centWave)
+     * @param anIndex index (as used by findPeaks.centWave in XCMS)
      */
     PeakIntegrationMethod(final String aName, final int anIndex) {
 
@@ -87,8 +91,8 @@ public class CentWaveResolverParameters extends GeneralResolverParameters {
 
   public CentWaveResolverParameters() {
 
-    super(new Parameter[]{PEAK_LISTS, SUFFIX, handleOriginal, groupMS2Parameters, SN_THRESHOLD,
-        PEAK_SCALES, PEAK_DURATION, INTEGRATION_METHOD, RENGINE_TYPE, MIN_NUMBER_OF_DATAPOINTS});
+    super(new Parameter[]{PEAK_LISTS, SUFFIX, handleOriginal, groupMS2Parameters, dimension,
+        SN_THRESHOLD, PEAK_SCALES, PEAK_DURATION, INTEGRATION_METHOD, MIN_NUMBER_OF_DATAPOINTS});
   }
 
   @Override
@@ -102,6 +106,12 @@ public class CentWaveResolverParameters extends GeneralResolverParameters {
 
   @Override
   public FeatureResolver getResolver() {
-    return new CentWaveResolver();
+    throw new UnsupportedOperationException(
+        "Legacy resolving is not supported by CentWaveResolver.");
+  }
+
+  @Override
+  public @Nullable Resolver getResolver(ParameterSet parameterSet, ModularFeatureList flist) {
+    return new CentWaveResolver(parameterSet, flist);
   }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_massdetection;
+
+import io.github.mzmine.util.IsotopesUtils;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openscience.cdk.Element;
+
+/**
+ * Possible m/z differences between isotopes of the given elements and charges. Immutable, so mass
+ * detectors can cache the last instance and be used by multiple threads.
+ *
+ * @param elements  the isotope elements
+ * @param maxCharge the maximum charge
+ * @param mzDiffs   possible m/z differences between isotopes
+ * @param maxMzDiff the maximum m/z difference, used to optimize the isotope search
+ */
+public record IsotopeMzDiffs(@NotNull List<Element> elements, int maxCharge,
+                             @NotNull List<Double> mzDiffs, double maxMzDiff) {
+
+  /**
+   * @param last      the last calculated differences or null
+   * @param elements  the isotope elements
+   * @param maxCharge the maximum charge
+   * @return the last differences if the elements and charge are equal or new differences
+   */
+  @NotNull
+  public static IsotopeMzDiffs of(@Nullable IsotopeMzDiffs last, @NotNull List<Element> elements,
+      int maxCharge) {
+    if (last != null && last.maxCharge == maxCharge && Objects.equals(last.elements, elements)) {
+      return last;
+    }
+    final List<Double> mzDiffs = IsotopesUtils.getIsotopesMzDiffs(elements, maxCharge);
+    return new IsotopeMzDiffs(List.copyOf(elements), maxCharge, mzDiffs,
+        Collections.max(mzDiffs));
+  }
+}
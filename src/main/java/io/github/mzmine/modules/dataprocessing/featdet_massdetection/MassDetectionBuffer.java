@@ -0,0 +1,138 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_massdetection;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reusable output of {@link MassDetector#getMassValues(io.github.mzmine.datamodel.MassSpectrum,
+ * io.github.mzmine.parameters.ParameterSet, MassDetectionBuffer)}. The arrays grow when needed and
+ * are reused for the next spectrum, so one buffer per thread detects masses without creating new
+ * arrays for each spectrum. Not thread safe.
+ */
+public final class MassDetectionBuffer {
+
+  private double[] mzs;
+  private double[] intensities;
+  private int size;
+
+  // working memory of the mass detectors
+  private double[] workValues = new double[0];
+
+  public MassDetectionBuffer() {
+    this(64);
+  }
+
+  /**
+   * @param capacity the initial capacity, e.g., the number of data points of the largest spectrum
+   */
+  public MassDetectionBuffer(int capacity) {
+    mzs = new double[capacity];
+    intensities = new double[capacity];
+  }
+
+  /**
+   * Removes all values and grows the buffer to the given capacity if needed. Mass detectors call
+   * this with the number of data points of the spectrum, which is an upper bound for the number of
+   * detected masses.
+   */
+  public void clear(int capacity) {
+    size = 0;
+    if (mzs.length < capacity) {
+      mzs = new double[capacity];
+      intensities = new double[capacity];
+    }
+  }
+
+  /**
+   * Adds a detected mass. Masses are added in ascending m/z order.
+   */
+  public void add(double mz, double intensity) {
+    if (size == mzs.length) {
+      final int capacity = Math.max(16, size * 2);
+      mzs = Arrays.copyOf(mzs, capacity);
+      intensities = Arrays.copyOf(intensities, capacity);
+    }
+    mzs[size] = mz;
+    intensities[size] = intensity;
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public double getMz(int index) {
+    return mzs[index];
+  }
+
+  public double getIntensity(int index) {
+    return intensities[index];
+  }
+
+  /**
+   * @return the m/z of the last detected mass
+   */
+  public double getLastMz() {
+    return mzs[size - 1];
+  }
+
+  /**
+   * @return the backing array, values are valid up to {@link #size()}
+   */
+  @NotNull
+  public double[] getMzValues() {
+    return mzs;
+  }
+
+  /**
+   * @return the backing array, values are valid up to {@link #size()}
+   */
+  @NotNull
+  public double[] getIntensityValues() {
+    return intensities;
+  }
+
+  /**
+   * @return a copy of the detected masses [mzs, intensities]
+   */
+  @NotNull
+  public double[][] toArrays() {
+    return new double[][]{Arrays.copyOf(mzs, size), Arrays.copyOf(intensities, size)};
+  }
+
+  /**
+   * Working memory for mass detectors that need temporary values per data point. The content is
+   * undefined and the array is shared with the next call.
+   *
+   * @param length the minimum length
+   */
+  @NotNull
+  public double[] getWorkValues(int length) {
+    if (workValues.length < length) {
+      workValues = new double[length];
+    }
+    return workValues;
+  }
+}
@@ -21,20 +21,28 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
 import io.github.mzmine.datamodel.data_access.ScanDataAccess;
+import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.impl.SimpleFrame;
 import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import java.io.File;
+import java.nio.Buffer;
+import java.nio.DoubleBuffer;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 import ucar.ma2.ArrayDouble;
 import ucar.ma2.DataType;
@@ -47,12 +55,16 @@ import ucar.nc2.Variable;
 
 public class MassDetectionTask extends AbstractTask {
 
+  // scans per parallel chunk, the mass lists of a chunk are stored in one batch
+  private static final int MAX_SCANS_PER_CHUNK = 500;
+
   private final Logger logger = Logger.getLogger(this.getClass().getName());
   private final RawDataFile dataFile;
   private final ScanSelection scanSelection;
   private final SelectedScanTypes scanTypes;
   // scan counter
-  private int processedScans = 0, totalScans = 0;
+  private final AtomicInteger processedScans = new AtomicInteger(0);
+  private int totalScans = 0;
   // Mass detector
   private MZmineProcessingStep<MassDetector> massDetector;
   // for outputting file
@@ -101,7 +113,7 @@ public class MassDetectionTask extends AbstractTask {
     if (totalScans == 0) {
       return 0;
     } else {
-      return (double) processedScans / totalScans;
+      return (double) processedScans.get() / totalScans;
     }
   }
 
@@ -136,59 +148,50 @@ public class MassDetectionTask extends AbstractTask {
 
       logger.info("Started mass detector on " + dataFile);
 
-      // uses only a single array for each (mz and intensity) to loop over all scans
-      ScanDataAccess data = EfficientDataAccess.of(dataFile, EfficientDataAccess.ScanDataType.RAW,
-          scanSelection);
-      totalScans = data.getNumberOfScans();
-
-      // all scans
-      while (data.hasNextScan()) {
-        if (isCanceled()) {
-          return;
-        }
+      final List<Scan> scans = Arrays.asList(scanSelection.getMatchingScans(dataFile));
+      totalScans = scans.size();
 
-        Scan scan = data.nextScan();
+      // detect masses in chunks of consecutive scans in parallel. Each chunk uses its own data
+      // access and stores its mass lists in a single write
+      final int chunkSize = Math.max(1, Math.min(MAX_SCANS_PER_CHUNK, (int) Math.ceil(
+          totalScans / (4d * MZmineCore.getConfiguration().getNumOfThreads()))));
+      final int numChunks = (totalScans + chunkSize - 1) / chunkSize;
+      final MassDetector detector = massDetector.getModule();
 
-        MassDetector detector = massDetector.getModule();
+      final List<DetectedMasses> detectedChunks = IntStream.range(0, numChunks).parallel()
+          .mapToObj(chunk -> detectMasses(
+              scans.subList(chunk * chunkSize, Math.min(totalScans, (chunk + 1) * chunkSize)),
+              detector)).toList();
 
-        double[][] mzPeaks = null;
-        if (scanTypes.applyTo(scan)) {
-          // run mass detection on data object
-          // [mzs, intensities]
-          mzPeaks = detector.getMassValues(data, massDetector.getParameterSet());
-
-          // add mass list to scans and frames
-          scan.addMassList(new SimpleMassList(getMemoryMapStorage(), mzPeaks[0], mzPeaks[1]));
-        }
+      if (isCanceled()) {
+        return;
+      }
 
-        if (scan instanceof SimpleFrame frame && (scanTypes == SelectedScanTypes.MOBLITY_SCANS
-            || scanTypes == SelectedScanTypes.SCANS)) {
-          // for ion mobility, detect subscans, too
-          frame.getMobilityScanStorage()
-              .generateAndAddMobilityScanMassLists(getMemoryMapStorage(), detector,
-                  massDetector.getParameterSet());
-        }
+      int scanIndex = 0;
+      for (DetectedMasses chunk : detectedChunks) {
+        int offset = 0;
+        for (int numPoints : chunk.numPoints()) {
+          final Scan scan = scans.get(scanIndex++);
+          if (!this.saveToCDF || numPoints == -1) {
+            offset += Math.max(numPoints, 0);
+            continue;
+          }
 
-        if (this.saveToCDF && mzPeaks != null) {
           curTotalIntensity = 0;
-          double[] mzs = mzPeaks[0];
-          double[] intensities = mzPeaks[1];
-          int size = mzs.length;
-          for (int a = 0; a < size; a++) {
-            allMZ.add(mzs[a]);
-            allIntensities.add(intensities[a]);
-            curTotalIntensity += intensities[a];
+          for (int a = offset; a < offset + numPoints; a++) {
+            allMZ.add(chunk.mzs()[a]);
+            allIntensities.add(chunk.intensities()[a]);
+            curTotalIntensity += chunk.intensities()[a];
           }
+          offset += numPoints;
 
           scanAcquisitionTime.add(scan.getRetentionTime());
           pointsInScans.add(0);
-          startIndex.add(mzPeaks.length + lastPointCount);
+          startIndex.add(numPoints + lastPointCount);
           totalIntensity.add(curTotalIntensity);
 
-          lastPointCount = mzPeaks.length + lastPointCount;
+          lastPointCount = numPoints + lastPointCount;
         }
-
-        processedScans++;
       }
 
       if (this.saveToCDF) {
@@ -317,4 +320,102 @@ public class MassDetectionTask extends AbstractTask {
     logger.info("Finished mass detector on " + dataFile);
 
   }
+
+  /**
+   * Detects the masses of consecutive scans and adds the mass lists to the scans. Called by
+   * multiple threads, each with its own chunk of scans. Detected masses of all scans are collected
+   * in one array with a single reused detection buffer.
+   *
+   * @return the detected masses of all scans or null if the task was canceled
+   */
+  private DetectedMasses detectMasses(List<Scan> scans, MassDetector detector) {
+    // uses only a single array for each (mz and intensity) to loop over the scans of this chunk
+    final ScanDataAccess data = EfficientDataAccess.of(dataFile,
+        EfficientDataAccess.ScanDataType.RAW, scans);
+    final MassDetectionBuffer buffer = new MassDetectionBuffer();
+    final DoubleArrayList mzs = new DoubleArrayList();
+    final DoubleArrayList intensities = new DoubleArrayList();
+    final int[] numPoints = new int[scans.size()];
+    Arrays.fill(numPoints, -1);
+
+    int scanIndex = 0;
+    while (data.hasNextScan()) {
+      if (isCanceled()) {
+        return null;
+      }
+
+      Scan scan = data.nextScan();
+
+      if (scanTypes.applyTo(scan)) {
+        // run mass detection on data object
+        final int detected = detector.getMassValues(data, massDetector.getParameterSet(), buffer);
+        mzs.addElements(mzs.size(), buffer.getMzValues(), 0, detected);
+        intensities.addElements(intensities.size(), buffer.getIntensityValues(), 0, detected);
+        numPoints[scanIndex] = detected;
+      }
+
+      if (scan instanceof SimpleFrame frame && (scanTypes == SelectedScanTypes.MOBLITY_SCANS
+          || scanTypes == SelectedScanTypes.SCANS)) {
+        // for ion mobility, detect subscans, too
+        frame.getMobilityScanStorage()
+            .generateAndAddMobilityScanMassLists(getMemoryMapStorage(), detector,
+                massDetector.getParameterSet());
+      }
+
+      scanIndex++;
+      processedScans.incrementAndGet();
+    }
+
+    final DetectedMasses detected = new DetectedMasses(mzs.toDoubleArray(),
+        intensities.toDoubleArray(), numPoints);
+    addMassLists(scans, detected);
+    return detected;
+  }
+
+  /**
+   * Adds the mass lists to scans and frames. The values of all scans are stored at once and each
+   * mass list uses a slice of the stored buffers. Spectra that are compressed in memory are stored
+   * individually.
+   */
+  private void addMassLists(List<Scan> scans, DetectedMasses detected) {
+    final MemoryMapStorage storage = getMemoryMapStorage();
+    final int[] numPoints = detected.numPoints();
+
+    if (storage == null && MemoryMapStorage.isCompressSpectraInRam()) {
+      int offset = 0;
+      for (int i = 0; i < numPoints.length; i++) {
+        if (numPoints[i] != -1) {
+          scans.get(i).addMassList(new SimpleMassList(null,
+              Arrays.copyOfRange(detected.mzs(), offset, offset + numPoints[i]),
+              Arrays.copyOfRange(detected.intensities(), offset, offset + numPoints[i])));
+          offset += numPoints[i];
+        }
+      }
+      return;
+    }
+
+    final DoubleBuffer mzBuffer = StorageUtils.storeValuesToDoubleBuffer(storage, detected.mzs());
+    final Buffer intensityBuffer = StorageUtils.storeIntensityValues(storage,
+        detected.intensities());
+    int offset = 0;
+    for (int i = 0; i < numPoints.length; i++) {
+      if (numPoints[i] != -1) {
+        scans.get(i).addMassList(new SimpleMassList(mzBuffer.slice(offset, numPoints[i]),
+            intensityBuffer.slice(offset, numPoints[i])));
+        offset += numPoints[i];
+      }
+    }
+  }
+
+  /**
+   * Detected masses of consecutive scans.
+   *
+   * @param mzs         the m/z values of all scans
+   * @param intensities the intensities of all scans
+   * @param numPoints   the number of detected masses for each scan or -1 if the scan was not
+   *                    processed
+   */
+  private record DetectedMasses(double[] mzs, double[] intensities, int[] numPoints) {
+
+  }
 }
@@ -36,6 +36,27 @@ public interface MassDetector extends MZmineModule {
    */
   double[][] getMassValues(MassSpectrum spectrum, ParameterSet parameters);
 
+  /**
+   * Detects masses in the given spectrum and writes them into the reusable buffer. Use one buffer
+   * per thread to detect masses in many spectra without allocating new arrays for each spectrum.
+   * The default implementation copies the result of {@link #getMassValues(MassSpectrum,
+   * ParameterSet)}.
+   *
+   * @param spectrum   the spectrum
+   * @param parameters the mass detector parameters
+   * @param buffer     cleared and filled with the detected masses in ascending m/z order
+   * @return the number of detected masses
+   */
+  default int getMassValues(MassSpectrum spectrum, ParameterSet parameters,
+      MassDetectionBuffer buffer) {
+    final double[][] detected = getMassValues(spectrum, parameters);
+    buffer.clear(detected[0].length);
+    for (int i = 0; i < detected[0].length; i++) {
+      buffer.add(detected[0][i], detected[1][i]);
+    }
+    return buffer.size();
+  }
+
   default double[][] getMassValues(double[] mzs, double[] intensities, ParameterSet parameters) {
     throw new UnsupportedOperationException("Method not implemented. Please implement me.");
   }
@@ -21,6 +21,7 @@ package io.github.mzmine.modules.dataprocessing.featdet_massdetection.auto;
 import io.github.mzmine.datamodel.MassSpectrum;
 import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.DetectIsotopesParameter;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionBuffer;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetector;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetectorParameters;
@@ -35,9 +36,6 @@ public class AutoMassDetector implements MassDetector {
   private final CentroidMassDetector centroidDetector = new CentroidMassDetector();
   private final ExactMassDetector exactMassDetector = new ExactMassDetector();
 
-  private ExactMassDetectorParameters exactMassDetectorParameters;
-  private CentroidMassDetectorParameters centroidMassDetectorParameters;
-
   @Override
   public @NotNull String getName() {
     return "Auto";
@@ -57,14 +55,25 @@ public class AutoMassDetector implements MassDetector {
     }
   }
 
+  @Override
+  public int getMassValues(MassSpectrum spectrum, ParameterSet parameters,
+      MassDetectionBuffer buffer) {
+    if (spectrum.getSpectrumType() == MassSpectrumType.PROFILE) {
+      return exactMassDetector.getMassValues(spectrum, getExactParam(parameters), buffer);
+    } else {
+      return centroidDetector.getMassValues(spectrum, getCentroidParam(parameters), buffer);
+    }
+  }
+
   @Override
   public double[][] getMassValues(double[] mzs, double[] intensities, ParameterSet parameters) {
     return MassDetector.super.getMassValues(mzs, intensities, parameters);
   }
 
   private ParameterSet getExactParam(ParameterSet autoParam) {
-    exactMassDetectorParameters = (ExactMassDetectorParameters) (new ExactMassDetectorParameters())
-        .cloneParameterSet();
+    // local parameters, the detector is called by multiple threads
+    final ExactMassDetectorParameters exactMassDetectorParameters =
+        (ExactMassDetectorParameters) (new ExactMassDetectorParameters()).cloneParameterSet();
     exactMassDetectorParameters.getParameter(ExactMassDetectorParameters.noiseLevel)
         .setValue(autoParam.getParameter(AutoMassDetectorParameters.noiseLevel).getValue());
     exactMassDetectorParameters.setParameter(ExactMassDetectorParameters.detectIsotopes,
@@ -88,7 +97,8 @@ public class AutoMassDetector implements MassDetector {
   }
 
   private ParameterSet getCentroidParam(ParameterSet autoParam) {
-    centroidMassDetectorParameters = new CentroidMassDetectorParameters();
+    final CentroidMassDetectorParameters centroidMassDetectorParameters =
+        new CentroidMassDetectorParameters();
     centroidMassDetectorParameters.getParameter(CentroidMassDetectorParameters.noiseLevel)
         .setValue(autoParam.getParameter(AutoMassDetectorParameters.noiseLevel).getValue());
     centroidMassDetectorParameters
@@ -22,13 +22,13 @@ import com.google.common.primitives.Doubles;
 import gnu.trove.list.array.TDoubleArrayList;
 import io.github.mzmine.datamodel.MassSpectrum;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.DetectIsotopesParameter;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.IsotopeMzDiffs;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionBuffer;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.util.IsotopesUtils;
-import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 import org.jetbrains.annotations.NotNull;
 import org.openscience.cdk.Element;
 
@@ -37,16 +37,20 @@ import org.openscience.cdk.Element;
  */
 public class CentroidMassDetector implements MassDetector {
 
-  // Variables for the detection of isotopes below the noise level
-  private List<Element> isotopeElements;
-  private int isotopeMaxCharge;
-  // Possible m/z differences between isotopes
-  private List<Double> isotopesMzDiffs;
-  // Used to optimize getMassValues
-  private double maxIsotopeMzDiff;
+  // Possible m/z differences between isotopes for the detection of isotopes below the noise
+  // level. Cached for the last called parameters
+  private volatile IsotopeMzDiffs isotopeMzDiffs;
 
   @Override
   public double[][] getMassValues(MassSpectrum spectrum, ParameterSet parameters) {
+    final MassDetectionBuffer buffer = new MassDetectionBuffer(spectrum.getNumberOfDataPoints());
+    getMassValues(spectrum, parameters, buffer);
+    return buffer.toArrays();
+  }
+
+  @Override
+  public int getMassValues(MassSpectrum spectrum, ParameterSet parameters,
+      MassDetectionBuffer buffer) {
 
     final double noiseLevel =
         parameters.getParameter(CentroidMassDetectorParameters.noiseLevel).getValue();
@@ -55,6 +59,8 @@ public class CentroidMassDetector implements MassDetector {
 
     // If isotopes are going to be detected get all the required parameters
     MZTolerance isotopesMzTolerance = null;
+    List<Double> isotopesMzDiffs = null;
+    double maxIsotopeMzDiff = 0d;
     if (detectIsotopes) {
       ParameterSet isotopesParameters = parameters.getParameter(CentroidMassDetectorParameters.detectIsotopes).getEmbeddedParameters();
       List<Element> isotopeElements = isotopesParameters.getParameter(DetectIsotopesParameter.elements).getValue();
@@ -62,23 +68,15 @@ public class CentroidMassDetector implements MassDetector {
       isotopesMzTolerance = isotopesParameters.getParameter(DetectIsotopesParameter.isotopeMzTolerance).getValue();
 
       // Update isotopesMzDiffs only if isotopeElements and isotopeMaxCharge differ from the last call
-      if (!Objects.equals(this.isotopeElements, isotopeElements)
-          || !Objects.equals(this.isotopeMaxCharge, isotopeMaxCharge)) {
-
-        // Update isotopesMzDiffs
-        this.isotopesMzDiffs = IsotopesUtils.getIsotopesMzDiffs(isotopeElements, isotopeMaxCharge);
-        this.maxIsotopeMzDiff = Collections.max(isotopesMzDiffs);
-
-        // Store last called parameters
-        this.isotopeElements = isotopeElements;
-        this.isotopeMaxCharge = isotopeMaxCharge;
-      }
+      final IsotopeMzDiffs diffs = IsotopeMzDiffs.of(isotopeMzDiffs, isotopeElements,
+          isotopeMaxCharge);
+      isotopeMzDiffs = diffs;
+      isotopesMzDiffs = diffs.mzDiffs();
+      maxIsotopeMzDiff = diffs.maxMzDiff();
     }
-    // use number of centroid signals as base array list capacity
+    // the number of centroid signals is the maximum number of detected masses
     final int points = spectrum.getNumberOfDataPoints();
-    // lists of primitive doubles
-    TDoubleArrayList mzs = new TDoubleArrayList(points);
-    TDoubleArrayList intensities = new TDoubleArrayList(points);
+    buffer.clear(points);
 
     // Find possible mzPeaks
     for (int i = 0; i < points; i++) {
@@ -88,14 +86,14 @@ public class CentroidMassDetector implements MassDetector {
           || (detectIsotopes
             // If the difference between current m/z and last detected m/z is greater than maximum
             // possible isotope m/z difference do not call isPossibleIsotopeMz
-            && (mzs.isEmpty() || Doubles.compare(spectrum.getMzValue(i) - mzs.get(mzs.size() - 1), maxIsotopeMzDiff) <= 0)
-            && IsotopesUtils.isPossibleIsotopeMz(spectrum.getMzValue(i), mzs, isotopesMzDiffs, isotopesMzTolerance))) {
+            && (buffer.isEmpty() || Doubles.compare(spectrum.getMzValue(i) - buffer.getLastMz(), maxIsotopeMzDiff) <= 0)
+            && IsotopesUtils.isPossibleIsotopeMz(spectrum.getMzValue(i), buffer.getMzValues(),
+            buffer.size(), isotopesMzDiffs, isotopesMzTolerance))) {
         // Yes, then mark this index as mzPeak
-        mzs.add(spectrum.getMzValue(i));
-        intensities.add(intensity);
+        buffer.add(spectrum.getMzValue(i), intensity);
       }
     }
-    return new double[][]{mzs.toArray(), intensities.toArray()};
+    return buffer.size();
   }
 
   @Override
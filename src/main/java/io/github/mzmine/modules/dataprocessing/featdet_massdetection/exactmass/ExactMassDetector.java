@@ -19,29 +19,23 @@
 package io.github.mzmine.modules.dataprocessing.featdet_massdetection.exactmass;
 
 import com.google.common.primitives.Doubles;
-import gnu.trove.list.array.TDoubleArrayList;
 import io.github.mzmine.datamodel.MassSpectrum;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.DetectIsotopesParameter;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.IsotopeMzDiffs;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionBuffer;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.util.IsotopesUtils;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 import org.jetbrains.annotations.NotNull;
 import org.openscience.cdk.Element;
 
 public class ExactMassDetector implements MassDetector {
 
-  // Variables for the detection of isotopes below the noise level
-  private List<Element> isotopeElements;
-  private int isotopeMaxCharge;
-  // Possible m/z differences between isotopes
-  private List<Double> isotopesMzDiffs;
-  // Used to optimize getMassValues
-  private double maxIsotopeMzDiff;
+  // Possible m/z differences between isotopes for the detection of isotopes below the noise
+  // level. Cached for the last called parameters
+  private volatile IsotopeMzDiffs isotopeMzDiffs;
 
   @NotNull
   public static double[][] getMassValues(MassSpectrum spectrum, double noiseLevel) {
@@ -52,13 +46,27 @@ public class ExactMassDetector implements MassDetector {
   public static double[][] getMassValues(MassSpectrum spectrum, double noiseLevel,
       boolean detectIsotopes, MZTolerance isotopesMzTolerance, List<Double> isotopesMzDiffs,
       double maxIsotopeMzDiff) {
-    // lists of primitive doubles
-    TDoubleArrayList mzs = new TDoubleArrayList(100);
-    TDoubleArrayList intensities = new TDoubleArrayList(100);
+    final MassDetectionBuffer buffer = new MassDetectionBuffer(100);
+    getMassValues(spectrum, noiseLevel, detectIsotopes, isotopesMzTolerance, isotopesMzDiffs,
+        maxIsotopeMzDiff, buffer);
+    return buffer.toArrays();
+  }
+
+  /**
+   * Detects the masses into the reusable buffer
+   *
+   * @return the number of detected masses
+   */
+  public static int getMassValues(MassSpectrum spectrum, double noiseLevel,
+      boolean detectIsotopes, MZTolerance isotopesMzTolerance, List<Double> isotopesMzDiffs,
+      double maxIsotopeMzDiff, MassDetectionBuffer buffer) {
+    buffer.clear(spectrum.getNumberOfDataPoints());
 
     // First get all candidate peaks (local maximum)
     int localMaximumIndex = 0;
-    ArrayList<Integer> rangeDataPoints = new ArrayList<>();
+    // first data point of the current m/z peak. The peak contains all non-zero data points from
+    // this index to the current index
+    int rangeStart = -1;
 
     boolean ascending = true;
 
@@ -77,7 +85,9 @@ public class ExactMassDetector implements MassDetector {
       }
 
       // Add current (non-zero) data point to the current m/z peak
-      rangeDataPoints.add(i);
+      if (rangeStart == -1) {
+        rangeStart = i;
+      }
 
       // Check for local maximum
       if (ascending && (!nextIsBigger)) {
@@ -90,41 +100,42 @@ public class ExactMassDetector implements MassDetector {
       if ((!ascending) && (nextIsBigger || nextIsZero)) {
 
         // Calculate the exact mass
-        double exactMz = calculateExactMass(spectrum, localMaximumIndex, rangeDataPoints);
+        double exactMz = calculateExactMass(spectrum, localMaximumIndex, rangeStart, i);
 
         // Add the m/z peak if it is above the noise level or m/z value corresponds to isotope mass
         if (spectrum.getIntensityValue(localMaximumIndex) > noiseLevel || //
             (detectIsotopes
              // If the difference between current m/z and last detected m/z is greater than maximum
              // possible isotope m/z difference do not call isPossibleIsotopeMz
-             && (mzs.isEmpty()
-                 || Doubles.compare(exactMz - mzs.get(mzs.size() - 1), maxIsotopeMzDiff) <= 0)
-             && IsotopesUtils.isPossibleIsotopeMz(exactMz, mzs, isotopesMzDiffs,
-                isotopesMzTolerance))) {
+             && (buffer.isEmpty()
+                 || Doubles.compare(exactMz - buffer.getLastMz(), maxIsotopeMzDiff) <= 0)
+             && IsotopesUtils.isPossibleIsotopeMz(exactMz, buffer.getMzValues(), buffer.size(),
+                isotopesMzDiffs, isotopesMzTolerance))) {
 
           // Add data point to lists
-          mzs.add(exactMz);
-          intensities.add(spectrum.getIntensityValue(localMaximumIndex));
+          buffer.add(exactMz, spectrum.getIntensityValue(localMaximumIndex));
         }
 
         // Reset and start with new peak
         ascending = true;
-        rangeDataPoints.clear();
+        rangeStart = -1;
       }
     }
 
-    // Return an array of detected MzPeaks sorted by MZ
-    return new double[][]{mzs.toArray(), intensities.toArray()};
+    // detected MzPeaks are sorted by MZ
+    return buffer.size();
   }
 
   /**
    * This method calculates the exact mass of a peak using the FWHM concept and linear equation (y =
    * mx + b).
    *
+   * @param rangeStart first data point of the peak
+   * @param rangeEnd   last data point of the peak (inclusive). Zero intensities are skipped
    * @return double
    */
-  private static double calculateExactMass(MassSpectrum spectrum, int topIndex,
-      List<Integer> rangeDataPoints) {
+  private static double calculateExactMass(MassSpectrum spectrum, int topIndex, int rangeStart,
+      int rangeEnd) {
 
     /*
      * According with the FWHM concept, the exact mass of this peak is the half point of FWHM. In
@@ -141,22 +152,32 @@ public class ExactMassDetector implements MassDetector {
     double xRight = -1, xLeft = -1;
     double halfIntensity = spectrum.getIntensityValue(topIndex) / 2;
 
-    for (int i = 0; i < rangeDataPoints.size() - 1; i++) {
+    // pairs of consecutive non-zero data points
+    int current = -1;
+    for (int next = rangeStart; next <= rangeEnd; next++) {
+      if (Double.compare(spectrum.getIntensityValue(next), 0d) == 0) {
+        continue;
+      }
+      final int i = current;
+      current = next;
+      if (i == -1) {
+        continue;
+      }
 
       // Left side of the curve
-      if ((spectrum.getIntensityValue(rangeDataPoints.get(i)) <= halfIntensity) && (
-          spectrum.getMzValue(rangeDataPoints.get(i)) < spectrum.getMzValue(topIndex)) && (
-              spectrum.getIntensityValue(rangeDataPoints.get(i + 1)) >= halfIntensity)) {
+      if ((spectrum.getIntensityValue(i) <= halfIntensity) && (
+          spectrum.getMzValue(i) < spectrum.getMzValue(topIndex)) && (
+              spectrum.getIntensityValue(next) >= halfIntensity)) {
 
         // First point with intensity just less than half of total
         // intensity
-        double leftY1 = spectrum.getIntensityValue(rangeDataPoints.get(i));
-        double leftX1 = spectrum.getMzValue(rangeDataPoints.get(i));
+        double leftY1 = spectrum.getIntensityValue(i);
+        double leftX1 = spectrum.getMzValue(i);
 
         // Second point with intensity just bigger than half of total
         // intensity
-        double leftY2 = spectrum.getIntensityValue(rangeDataPoints.get(i + 1));
-        double leftX2 = spectrum.getMzValue(rangeDataPoints.get(i + 1));
+        double leftY2 = spectrum.getIntensityValue(next);
+        double leftX2 = spectrum.getMzValue(next);
 
         // We calculate the slope with formula m = Y1 - Y2 / X1 - X2
         double mLeft = (leftY1 - leftY2) / (leftX1 - leftX2);
@@ -176,19 +197,19 @@ public class ExactMassDetector implements MassDetector {
       }
 
       // Right side of the curve
-      if ((spectrum.getIntensityValue(rangeDataPoints.get(i)) >= halfIntensity) && (
-          spectrum.getMzValue(rangeDataPoints.get(i)) > spectrum.getMzValue(topIndex)) && (
-              spectrum.getIntensityValue(rangeDataPoints.get(i + 1)) <= halfIntensity)) {
+      if ((spectrum.getIntensityValue(i) >= halfIntensity) && (
+          spectrum.getMzValue(i) > spectrum.getMzValue(topIndex)) && (
+              spectrum.getIntensityValue(next) <= halfIntensity)) {
 
         // First point with intensity just bigger than half of total
         // intensity
-        double rightY1 = spectrum.getIntensityValue(rangeDataPoints.get(i));
-        double rightX1 = spectrum.getMzValue(rangeDataPoints.get(i));
+        double rightY1 = spectrum.getIntensityValue(i);
+        double rightX1 = spectrum.getMzValue(i);
 
         // Second point with intensity just less than half of total
         // intensity
-        double rightY2 = spectrum.getIntensityValue(rangeDataPoints.get(i + 1));
-        double rightX2 = spectrum.getMzValue(rangeDataPoints.get(i + 1));
+        double rightY2 = spectrum.getIntensityValue(next);
+        double rightX2 = spectrum.getMzValue(next);
 
         // We calculate the slope with formula m = Y1 - Y2 / X1 - X2
         double mRight = (rightY1 - rightY2) / (rightX1 - rightX2);
@@ -226,6 +247,18 @@ public class ExactMassDetector implements MassDetector {
     if (spectrum.getNumberOfDataPoints() == 0) {
       return EMPTY_DATA;
     }
+    final MassDetectionBuffer buffer = new MassDetectionBuffer(100);
+    getMassValues(spectrum, parameters, buffer);
+    return buffer.toArrays();
+  }
+
+  @Override
+  public int getMassValues(MassSpectrum spectrum, ParameterSet parameters,
+      MassDetectionBuffer buffer) {
+    if (spectrum.getNumberOfDataPoints() == 0) {
+      buffer.clear(0);
+      return 0;
+    }
 
     double noiseLevel = parameters.getParameter(ExactMassDetectorParameters.noiseLevel).getValue();
     boolean detectIsotopes = parameters.getParameter(ExactMassDetectorParameters.detectIsotopes)
@@ -233,6 +266,8 @@ public class ExactMassDetector implements MassDetector {
 
     // If isotopes are going to be detected get all the required parameters
     MZTolerance isotopesMzTolerance = null;
+    List<Double> isotopesMzDiffs = null;
+    double maxIsotopeMzDiff = 0d;
     if (detectIsotopes) {
       ParameterSet isotopesParameters = parameters.getParameter(
           ExactMassDetectorParameters.detectIsotopes).getEmbeddedParameters();
@@ -244,21 +279,15 @@ public class ExactMassDetector implements MassDetector {
           DetectIsotopesParameter.isotopeMzTolerance).getValue();
 
       // Update isotopesMzDiffs only if isotopeElements and isotopeMaxCharge differ from the last call
-      if (!Objects.equals(this.isotopeElements, isotopeElements) || !Objects.equals(
-          this.isotopeMaxCharge, isotopeMaxCharge)) {
-
-        // Update isotopesMzDiffs
-        this.isotopesMzDiffs = IsotopesUtils.getIsotopesMzDiffs(isotopeElements, isotopeMaxCharge);
-        this.maxIsotopeMzDiff = Collections.max(isotopesMzDiffs);
-
-        // Store last called parameters
-        this.isotopeElements = isotopeElements;
-        this.isotopeMaxCharge = isotopeMaxCharge;
-      }
+      final IsotopeMzDiffs diffs = IsotopeMzDiffs.of(isotopeMzDiffs, isotopeElements,
+          isotopeMaxCharge);
+      isotopeMzDiffs = diffs;
+      isotopesMzDiffs = diffs.mzDiffs();
+      maxIsotopeMzDiff = diffs.maxMzDiff();
     }
 
     return getMassValues(spectrum, noiseLevel, detectIsotopes, isotopesMzTolerance, isotopesMzDiffs,
-        maxIsotopeMzDiff);
+        maxIsotopeMzDiff, buffer);
   }
 
   @Override
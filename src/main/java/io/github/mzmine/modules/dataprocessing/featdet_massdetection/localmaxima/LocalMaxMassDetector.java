@@ -18,9 +18,9 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_massdetection.localmaxima;
 
-import gnu.trove.list.array.TDoubleArrayList;
 import org.jetbrains.annotations.NotNull;
 import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionBuffer;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.parameters.ParameterSet;
 
@@ -31,13 +31,19 @@ public class LocalMaxMassDetector implements MassDetector {
 
   @Override
   public double[][] getMassValues(MassSpectrum scan, ParameterSet parameters) {
+    final MassDetectionBuffer buffer = new MassDetectionBuffer(100);
+    getMassValues(scan, parameters, buffer);
+    return buffer.toArrays();
+  }
+
+  @Override
+  public int getMassValues(MassSpectrum scan, ParameterSet parameters,
+      MassDetectionBuffer buffer) {
 
     double noiseLevel =
         parameters.getParameter(LocalMaxMassDetectorParameters.noiseLevel).getValue();
 
-    // lists of primitive doubles
-    TDoubleArrayList mzs = new TDoubleArrayList(100);
-    TDoubleArrayList intensities = new TDoubleArrayList(100);
+    buffer.clear(scan.getNumberOfDataPoints());
 
     // All data points of current m/z peak
 
@@ -72,16 +78,15 @@ public class LocalMaxMassDetector implements MassDetector {
 
         // Add the m/z peak if it is above the noise level
         if (scan.getIntensityValue(currentMzPeakTop) > noiseLevel) {
-          mzs.add(scan.getMzValue(currentMzPeakTop));
-          intensities.add(scan.getIntensityValue(currentMzPeakTop));
+          buffer.add(scan.getMzValue(currentMzPeakTop), scan.getIntensityValue(currentMzPeakTop));
         }
 
         // Reset and start with new peak
         ascending = true;
       }
     }
-    // Return an array of detected MzPeaks sorted by MZ
-    return new double[][]{mzs.toArray(), intensities.toArray()};
+    // detected MzPeaks are sorted by MZ
+    return buffer.size();
   }
 
   @Override
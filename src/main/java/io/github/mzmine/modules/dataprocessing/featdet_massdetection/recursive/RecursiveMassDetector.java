@@ -18,23 +18,24 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_massdetection.recursive;
 
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassSpectrum;
-import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionBuffer;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.util.DataPointSorter;
-import io.github.mzmine.util.SortingDirection;
-import io.github.mzmine.util.SortingProperty;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.TreeSet;
 import org.jetbrains.annotations.NotNull;
 
 public class RecursiveMassDetector implements MassDetector {
 
   @Override
   public double[][] getMassValues(MassSpectrum scan, ParameterSet parameters) {
+    final MassDetectionBuffer buffer = new MassDetectionBuffer(100);
+    getMassValues(scan, parameters, buffer);
+    return buffer.toArrays();
+  }
+
+  @Override
+  public int getMassValues(MassSpectrum scan, ParameterSet parameters,
+      MassDetectionBuffer buffer) {
     double noiseLevel =
         parameters.getParameter(RecursiveMassDetectorParameters.noiseLevel).getValue();
     double minimumMZPeakWidth =
@@ -42,36 +43,25 @@ public class RecursiveMassDetector implements MassDetector {
     double maximumMZPeakWidth =
         parameters.getParameter(RecursiveMassDetectorParameters.maximumMZPeakWidth).getValue();
 
-    TreeSet<DataPoint> mzPeaks =
-        new TreeSet<DataPoint>(new DataPointSorter(SortingProperty.MZ, SortingDirection.Ascending));
+    buffer.clear(scan.getNumberOfDataPoints());
 
     // Find MzPeaks
-    recursiveThreshold(mzPeaks, scan, 1, scan.getNumberOfDataPoints() - 1, noiseLevel,
+    recursiveThreshold(buffer, scan, 1, scan.getNumberOfDataPoints() - 1, noiseLevel,
         minimumMZPeakWidth, maximumMZPeakWidth, 0);
 
-    // convert to double[][] TODO remove use of DataPoint
-    int size = mzPeaks.size();
-    double[] mzs = new double[size];
-    double[] intensities = new double[size];
-    int i = 0;
-    for (DataPoint mzPeak : mzPeaks) {
-      mzs[i] = mzPeak.getMZ();
-      intensities[i] = mzPeak.getIntensity();
-      i++;
-    }
-    return new double[][]{mzs, intensities};
+    return buffer.size();
   }
 
   /**
-   * This function searches for maxima from given part of a spectrum
+   * This function searches for maxima from given part of a spectrum. The scan continues after
+   * each detected peak, so the maxima are added in ascending m/z order.
    */
-  private int recursiveThreshold(TreeSet<DataPoint> mzPeaks, MassSpectrum scan, int startInd,
+  private int recursiveThreshold(MassDetectionBuffer mzPeaks, MassSpectrum scan, int startInd,
       int stopInd, double curentNoiseLevel, double minimumMZPeakWidth, double maximumMZPeakWidth,
       int recuLevel) {
 
     // logger.finest(" Level of recursion " + recuLevel);
 
-    List<DataPoint> RawDataPointsInds = new ArrayList<DataPoint>();
     int peakStartInd, peakStopInd, peakMaxInd;
     double peakWidthMZ;
 
@@ -104,8 +94,6 @@ public class RecursiveMassDetector implements MassDetector {
         if (scan.getIntensityValue(ind) > scan.getIntensityValue(peakMaxInd))
           peakMaxInd = ind;
 
-        // Forming the DataPoint array that defines this peak
-        RawDataPointsInds.add(new SimpleDataPoint(scan.getMzValue(ind), scan.getIntensityValue(ind)));
         ind++;
       }
 
@@ -119,14 +107,13 @@ public class RecursiveMassDetector implements MassDetector {
 
         // Declare a new MzPeak with intensity equal to max intensity
         // data point
-        mzPeaks.add(new SimpleDataPoint(scan.getMzValue(peakMaxInd), scan.getIntensityValue(peakMaxInd)));
+        mzPeaks.add(scan.getMzValue(peakMaxInd), scan.getIntensityValue(peakMaxInd));
 
         if (recuLevel > 0) {
           // return stop index and beginning of the next peak
           return ind;
         }
       }
-      RawDataPointsInds.clear();
 
       // If the peak is still too big applies the same method until find a
       // peak of the right size
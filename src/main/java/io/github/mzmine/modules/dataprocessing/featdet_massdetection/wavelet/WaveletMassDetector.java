@@ -18,17 +18,10 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_massdetection.wavelet;
 
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassSpectrum;
-import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionBuffer;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.util.DataPointSorter;
-import io.github.mzmine.util.SortingDirection;
-import io.github.mzmine.util.SortingProperty;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.TreeSet;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -46,8 +39,19 @@ public class WaveletMassDetector implements MassDetector {
   private static final int WAVELET_ESL = -5;
   private static final int WAVELET_ESR = 5;
 
+  // pre calculated wavelet values of the last used window, immutable and shared by all threads
+  private volatile WaveletValues waveletValues;
+
   @Override
   public double[][] getMassValues(MassSpectrum scan, ParameterSet parameters) {
+    final MassDetectionBuffer buffer = new MassDetectionBuffer(100);
+    getMassValues(scan, parameters, buffer);
+    return buffer.toArrays();
+  }
+
+  @Override
+  public int getMassValues(MassSpectrum scan, ParameterSet parameters,
+      MassDetectionBuffer buffer) {
 
     double noiseLevel = parameters.getParameter(WaveletMassDetectorParameters.noiseLevel)
         .getValue();
@@ -55,29 +59,24 @@ public class WaveletMassDetector implements MassDetector {
     double waveletWindow = parameters.getParameter(WaveletMassDetectorParameters.waveletWindow)
         .getValue();
 
-    DataPoint waveletDataPoints[] = performCWT(scan, waveletWindow, scaleLevel);
+    buffer.clear(scan.getNumberOfDataPoints());
+    // wavelet intensities for each data point
+    final double[] waveletIntensities = buffer.getWorkValues(scan.getNumberOfDataPoints());
+    performCWT(scan, waveletWindow, scaleLevel, waveletIntensities);
 
-    DataPoint detected[] = getMzPeaks(noiseLevel, scan, waveletDataPoints);
-
-    // convert to double[][] TODO remove use of DataPoint
-    int size = detected.length;
-    double[] mzs = new double[size];
-    double[] intensities = new double[size];
-    for (int i = 0; i < size; i++) {
-      mzs[i] = detected[i].getMZ();
-      intensities[i] = detected[i].getIntensity();
-    }
-    return new double[][]{mzs, intensities};
+    getMzPeaks(noiseLevel, scan, waveletIntensities, buffer);
+    return buffer.size();
   }
 
   /**
-   * Perform the CWT over raw data points in the selected scale level
-   *
-   * @param scan
+   * @return the pre calculated values of the wavelet for this window
    */
-  private SimpleDataPoint[] performCWT(MassSpectrum scan, double waveletWindow, int scaleLevel) {
-    int length = scan.getNumberOfDataPoints();
-    SimpleDataPoint[] cwtDataPoints = new SimpleDataPoint[length];
+  private double[] getWaveletValues(double waveletWindow) {
+    final WaveletValues last = waveletValues;
+    if (last != null && Double.compare(last.waveletWindow(), waveletWindow) == 0) {
+      return last.values();
+    }
+
     double wstep = ((WAVELET_ESR - WAVELET_ESL) / NPOINTS);
     double[] W = new double[(int) NPOINTS];
 
@@ -87,6 +86,20 @@ public class WaveletMassDetector implements MassDetector {
       W[j] = cwtMEXHATreal(waveletIndex, waveletWindow, 0.0);
       waveletIndex += wstep;
     }
+    waveletValues = new WaveletValues(waveletWindow, W);
+    return W;
+  }
+
+  /**
+   * Perform the CWT over raw data points in the selected scale level
+   *
+   * @param scan
+   * @param cwtIntensities the wavelet intensity for each data point of the scan
+   */
+  private void performCWT(MassSpectrum scan, double waveletWindow, int scaleLevel,
+      double[] cwtIntensities) {
+    int length = scan.getNumberOfDataPoints();
+    double[] W = getWaveletValues(waveletWindow);
 
     /*
      * We only perform Translation of the wavelet in the selected scale
@@ -124,10 +137,8 @@ public class WaveletMassDetector implements MassDetector {
       if (intensity < 0) {
         intensity = 0;
       }
-      cwtDataPoints[dx] = new SimpleDataPoint(scan.getMzValue(dx), intensity);
+      cwtIntensities[dx] = intensity;
     }
-
-    return cwtDataPoints;
   }
 
   /**
@@ -152,21 +163,18 @@ public class WaveletMassDetector implements MassDetector {
   }
 
   /**
-   * This function searches for maximums from wavelet data points
+   * This function searches for maximums from wavelet data points. The peaks are added in ascending
+   * m/z order.
    */
-  private DataPoint[] getMzPeaks(double noiseLevel, MassSpectrum scan,
-      DataPoint[] waveletDataPoints) {
+  private void getMzPeaks(double noiseLevel, MassSpectrum scan, double[] waveletIntensities,
+      MassDetectionBuffer mzPeaks) {
 
-    TreeSet<DataPoint> mzPeaks = new TreeSet<>(
-        new DataPointSorter(SortingProperty.MZ, SortingDirection.Ascending));
-
-    List<DataPoint> rawDataPoints = new ArrayList<>();
     int peakMaxInd = 0;
-    int stopInd = waveletDataPoints.length - 1;
+    int stopInd = scan.getNumberOfDataPoints() - 1;
 
     for (int ind = 0; ind <= stopInd; ind++) {
 
-      while ((ind <= stopInd) && (waveletDataPoints[ind].getIntensity() == 0)) {
+      while ((ind <= stopInd) && (waveletIntensities[ind] == 0)) {
         ind++;
       }
       peakMaxInd = ind;
@@ -174,13 +182,16 @@ public class WaveletMassDetector implements MassDetector {
         break;
       }
 
+      // highest raw intensity of the current peak
+      double aproxIntensity = 0;
+
       // While peak is on
-      while ((ind <= stopInd) && (waveletDataPoints[ind].getIntensity() > 0)) {
+      while ((ind <= stopInd) && (waveletIntensities[ind] > 0)) {
         // Check if this is the maximum point of the peak
-        if (waveletDataPoints[ind].getIntensity() > waveletDataPoints[peakMaxInd].getIntensity()) {
+        if (waveletIntensities[ind] > waveletIntensities[peakMaxInd]) {
           peakMaxInd = ind;
         }
-        rawDataPoints.add(new SimpleDataPoint(scan.getMzValue(ind), scan.getIntensityValue(ind)));
+        aproxIntensity = Math.max(aproxIntensity, scan.getIntensityValue(ind));
         ind++;
       }
 
@@ -188,32 +199,16 @@ public class WaveletMassDetector implements MassDetector {
         break;
       }
 
-      rawDataPoints.add(new SimpleDataPoint(scan.getMzValue(ind), scan.getIntensityValue(ind)));
+      aproxIntensity = Math.max(aproxIntensity, scan.getIntensityValue(ind));
 
       if (scan.getIntensityValue(peakMaxInd) > noiseLevel) {
-        SimpleDataPoint peakDataPoint = new SimpleDataPoint(scan.getMzValue(peakMaxInd),
-            calcAproxIntensity(rawDataPoints));
-
-        mzPeaks.add(peakDataPoint);
-
+        mzPeaks.add(scan.getMzValue(peakMaxInd), aproxIntensity);
       }
-      rawDataPoints.clear();
     }
-
-    return mzPeaks.toArray(new DataPoint[0]);
-
   }
 
-  private double calcAproxIntensity(List<DataPoint> rawDataPoints) {
+  private record WaveletValues(double waveletWindow, double[] values) {
 
-    double aproxIntensity = 0;
-
-    for (DataPoint d : rawDataPoints) {
-      if (d.getIntensity() > aproxIntensity) {
-        aproxIntensity = d.getIntensity();
-      }
-    }
-    return aproxIntensity;
   }
 
   @Override
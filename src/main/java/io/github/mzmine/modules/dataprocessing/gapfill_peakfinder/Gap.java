@@ -84,7 +84,45 @@ public class Gap {
     } else {
       currentDataPoint = new GapDataPointImpl(scan, RangeUtils.rangeCenter(mzRange), scanRT, 0);
     }
+    offerDataPoint(currentDataPoint);
+  }
+
+  /**
+   * Offers the next scan and starts the search for the top m/z peak at a known index. Used by
+   * {@link GapIndex} to sweep the m/z sorted gaps and the data points of a scan at once.
+   *
+   * @param fromIndex index of the first data point with an m/z equal to or greater than the lower
+   *                  end of the m/z range of this gap
+   */
+  public void offerNextScan(Scan scan, int fromIndex) {
+
+    float scanRT = scan.getRetentionTime();
+
+    // If not yet inside the RT range
+    if (!rtRange.contains(scanRT)) {
+      return;
+    }
+
+    // Find top m/z peak in our range
+    final double upper = mzRange.upperEndpoint();
+    double baseMz = RangeUtils.rangeCenter(mzRange);
+    double baseIntensity = 0d;
+    for (int i = fromIndex; i < scan.getNumberOfDataPoints(); i++) {
+      final double mz = scan.getMzValue(i);
+      if (mz > upper) {
+        break;
+      }
+      final double intensity = scan.getIntensityValue(i);
+      if (intensity > baseIntensity) {
+        baseIntensity = intensity;
+        baseMz = mz;
+      }
+    }
 
+    offerDataPoint(new GapDataPointImpl(scan, baseMz, scanRT, baseIntensity));
+  }
+
+  private void offerDataPoint(GapDataPointImpl currentDataPoint) {
     // If we have not yet started, just create a new peak
     if (currentPeakDataPoints == null) {
       currentPeakDataPoints = new ArrayList<>();
@@ -110,6 +148,22 @@ public class Gap {
 
   }
 
+  /**
+   * @param rt retention time of the current scan. Scans are offered in ascending retention time.
+   * @return true if this and all following scans cannot change this gap anymore
+   */
+  public boolean isPassed(float rt) {
+    return rt > rtRange.upperEndpoint();
+  }
+
+  public Range<Double> getMzRange() {
+    return mzRange;
+  }
+
+  public Range<Float> getRtRange() {
+    return rtRange;
+  }
+
   /**
    * Finalizes the gap, adds a peak
    */
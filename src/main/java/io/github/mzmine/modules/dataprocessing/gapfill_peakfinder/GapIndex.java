@@ -0,0 +1,124 @@
+/*
+ * Copyright 2006-2021 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder;
+
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.data_access.MobilityScanDataAccess;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Distributes the scans of one raw data file to the gaps of this file. Scans have to be offered in
+ * ascending retention time. Only gaps whose RT range was reached and that are not passed yet
+ * receive a scan. These active gaps are sorted by the lower end of their m/z range, so the data
+ * points of a scan and the gaps are swept in one pass instead of searching every scan for every
+ * gap.
+ * <p>
+ * Not thread safe, use one index per thread.
+ */
+public class GapIndex {
+
+  private final Gap[] gapsByRt;
+  // gaps that receive scans, sorted by the lower m/z
+  private final List<Gap> active = new ArrayList<>();
+  private int nextGap = 0;
+
+  public GapIndex(@NotNull List<? extends Gap> gaps) {
+    gapsByRt = gaps.toArray(Gap[]::new);
+    Arrays.sort(gapsByRt, Comparator.comparingDouble(g -> g.getRtRange().lowerEndpoint()));
+  }
+
+  /**
+   * Offers the next scan to all active gaps.
+   */
+  public void offerNextScan(@NotNull Scan scan) {
+    final List<Gap> gaps = activate(scan.getRetentionTime());
+    final int numDp = scan.getNumberOfDataPoints();
+    int index = 0;
+    for (Gap gap : gaps) {
+      final double lower = gap.getMzRange().lowerEndpoint();
+      while (index < numDp && scan.getMzValue(index) < lower) {
+        index++;
+      }
+      gap.offerNextScan(scan, index);
+    }
+  }
+
+  /**
+   * Offers the current frame of the access to all active gaps. The mobility scans are reset for
+   * every gap.
+   */
+  public void offerNextFrame(@NotNull MobilityScanDataAccess access) {
+    for (Gap gap : activate(access.getFrame().getRetentionTime())) {
+      access.resetMobilityScan();
+      gap.offerNextScan(access);
+    }
+  }
+
+  /**
+   * Finalizes all gaps and adds the detected features to their rows.
+   *
+   * @return the number of filled gaps
+   */
+  public int noMoreOffers(int minDataPoints) {
+    int filled = 0;
+    for (Gap gap : gapsByRt) {
+      if (gap.noMoreOffers(minDataPoints)) {
+        filled++;
+      }
+    }
+    active.clear();
+    return filled;
+  }
+
+  public int size() {
+    return gapsByRt.length;
+  }
+
+  /**
+   * @return the gaps that need to receive a scan at this retention time, sorted by m/z
+   */
+  private List<Gap> activate(float rt) {
+    active.removeIf(gap -> gap.isPassed(rt));
+
+    while (nextGap < gapsByRt.length && gapsByRt[nextGap].getRtRange().lowerEndpoint() <= rt) {
+      final Gap gap = gapsByRt[nextGap++];
+      if (gap.isPassed(rt)) {
+        continue;
+      }
+      final double lower = gap.getMzRange().lowerEndpoint();
+      // insert after all gaps with an equal or lower m/z
+      int low = 0;
+      int high = active.size();
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (active.get(mid).getMzRange().lowerEndpoint() <= lower) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      active.add(low, gap);
+    }
+    return active;
+  }
+}
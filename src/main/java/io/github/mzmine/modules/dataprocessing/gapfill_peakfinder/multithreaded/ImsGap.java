@@ -106,6 +106,14 @@ public class ImsGap extends Gap {
 
   }
 
+  /**
+   * A peak that is still under construction may be continued after the RT range.
+   */
+  @Override
+  public boolean isPassed(float rt) {
+    return rt > rtRange.upperEndpoint() && currentPeakDataPoints == null;
+  }
+
   private DataPointIonMobilitySeries findDataPoint(@NotNull final MobilityScanDataAccess access) {
 
     final Frame frame = access.getFrame();
@@ -18,33 +18,49 @@
 
 package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.multithreaded;
 
-import com.google.common.util.concurrent.AtomicDouble;
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.data_access.BinningMobilogramDataAccess;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess.MobilityScanDataType;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess.ScanDataType;
+import io.github.mzmine.datamodel.data_access.MobilityScanDataAccess;
+import io.github.mzmine.datamodel.data_access.ScanDataAccess;
+import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
-import io.github.mzmine.gui.preferences.MZminePreferences;
-import io.github.mzmine.gui.preferences.NumOfThreadsParameter;
+import io.github.mzmine.datamodel.features.types.numbers.MobilityType;
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.GapIndex;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.OriginalFeatureListHandlingParameter.OriginalFeatureListOption;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
-import io.github.mzmine.taskcontrol.AllTasksFinishedListener;
-import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.BitSet;
 import java.util.List;
-import java.util.logging.Level;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
- * The main task creates sub tasks to perform the PeakFinder algorithm on multiple threads. Each sub
- * task performs gap filling on a number of RawDataFiles.
+ * Performs the PeakFinder algorithm on multiple threads. The work is split into units of one
+ * RawDataFile and a block of rows, so that large files are shared by several threads and many
+ * small files are balanced over all threads. Each unit streams the scans of its file once and
+ * offers every scan to the gaps of its rows through a {@link GapIndex}.
  *
  * @author Robin Schmid (robinschmid@wwu.de)
  */
@@ -52,19 +68,30 @@ class MultiThreadPeakFinderMainTask extends AbstractTask {
 
   private static final Logger logger = Logger.getLogger(
       MultiThreadPeakFinderMainTask.class.getName());
+  /**
+   * Every unit streams all scans of its file, so rows are only split into blocks of this minimum
+   * size.
+   */
+  private static final int MIN_ROWS_PER_BLOCK = 500;
+
   private final MZmineProject project;
   private final OriginalFeatureListOption originalFeatureListOption;
   private final ParameterSet parameters;
   private final ModularFeatureList peakList;
   private final String suffix;
-  private final AtomicDouble progress = new AtomicDouble(0);
+  private final double intTolerance;
+  private final MZTolerance mzTolerance;
+  private final RTTolerance rtTolerance;
+  private final int minDataPoints;
+  private final AtomicLong processedScans = new AtomicLong(0);
+  private long totalScans;
   private ModularFeatureList processedPeakList;
 
   /**
-   * @param batchTasks all sub tasks are registered to the batchtasks list
+   * @param storage stores the features of the processed feature list
    */
   public MultiThreadPeakFinderMainTask(MZmineProject project, FeatureList peakList,
-      ParameterSet parameters, Collection<Task> batchTasks, @Nullable MemoryMapStorage storage,
+      ParameterSet parameters, @Nullable MemoryMapStorage storage,
       @NotNull Instant moduleCallDate) {
     super(storage, moduleCallDate);
     this.project = project;
@@ -73,6 +100,10 @@ class MultiThreadPeakFinderMainTask extends AbstractTask {
 
     suffix = parameters.getParameter(MultiThreadPeakFinderParameters.suffix).getValue();
     originalFeatureListOption = parameters.getValue(MultiThreadPeakFinderParameters.handleOriginal);
+    intTolerance = parameters.getValue(MultiThreadPeakFinderParameters.intTolerance);
+    mzTolerance = parameters.getValue(MultiThreadPeakFinderParameters.MZTolerance);
+    rtTolerance = parameters.getValue(MultiThreadPeakFinderParameters.RTTolerance);
+    minDataPoints = parameters.getValue(MultiThreadPeakFinderParameters.minDataPoints);
   }
 
   @Override
@@ -89,131 +120,167 @@ class MultiThreadPeakFinderMainTask extends AbstractTask {
           false);
     };
 
-    progress.getAndSet(0.1);
-
-    // split raw data files into groups for each thread (task)
-    // Obtain the settings of max concurrent threads
-    // as this task uses one thread
-    int maxRunningThreads = getMaxThreads();
-    // raw files
-    int raw = processedPeakList.getNumberOfRawDataFiles();
-
-    // Submit the tasks to the task controller for processing
-    List<AbstractTask> tasks = createSubTasks(raw, maxRunningThreads);
-
-    final AbstractTask thistask = this;
-    new AllTasksFinishedListener(tasks, true,
-        // succeed
-        l -> {
-          logger.info(
-              "All sub tasks of multithreaded gap-filling have finished. Finalising results.");
-
-          // Add task description to peakList
-          processedPeakList.addDescriptionOfAppliedTask(
-              new SimpleFeatureListAppliedMethod("Gap filling ", MultiThreadPeakFinderModule.class,
-                  parameters, getModuleCallDate()));
-
-          // update all rows by row bindings (average values)
-          // this needs to be done after all tasks finish because values were not updated when
-          // adding features
-          processedPeakList.applyRowBindings();
-
-          // add / remove or rename the new feature list in project
-          originalFeatureListOption.reflectNewFeatureListToProject(suffix, project,
-              processedPeakList, peakList);
-
-          logger.info("Completed: Multithreaded gap-filling successfull");
-
-          if (thistask.getStatus() == TaskStatus.PROCESSING) {
-            thistask.setStatus(TaskStatus.FINISHED);
-          }
-        }, lerror -> {
-      setErrorMessage("Error in gap filling");
-      thistask.setStatus(TaskStatus.ERROR);
-      for (AbstractTask task : tasks) {
-        task.setStatus(TaskStatus.ERROR);
-      }
-    },
-        // cancel if one was cancelled
-        listCancelled -> cancel()) {
-      @Override
-      public void taskStatusChanged(Task task, TaskStatus newStatus, TaskStatus oldStatus) {
-        super.taskStatusChanged(task, newStatus, oldStatus);
-        // show progress
-        if (oldStatus != newStatus && newStatus == TaskStatus.FINISHED) {
-          progress.getAndAdd(0.9 / tasks.size());
+    final List<RawDataFile> files = peakList.getRawDataFiles();
+    final int numRows = peakList.getNumberOfRows();
+
+    // find all gaps before features are added to the rows by multiple threads
+    final List<BitSet> gapRows = new ArrayList<>(files.size());
+    for (RawDataFile file : files) {
+      final BitSet rows = new BitSet(numRows);
+      for (int row = 0; row < numRows; row++) {
+        Feature sourcePeak = peakList.getRow(row).getFeature(file);
+        if (sourcePeak == null || sourcePeak.getFeatureStatus().equals(FeatureStatus.UNKNOWN)) {
+          rows.set(row);
         }
       }
-    };
+      gapRows.add(rows);
+    }
 
-    // start
-    MZmineCore.getTaskController().addTasks(tasks.toArray(AbstractTask[]::new));
+    final List<GapFillingUnit> units = createUnits(files, numRows);
+    totalScans = units.stream().mapToLong(unit -> peakList.getSeletedScans(unit.file()).size())
+        .sum();
+    logger.finest(() -> String.format("Gap filling %s in %d units of files and row blocks",
+        peakList.toString(), units.size()));
 
-    // wait till finish
-    while (!(isCanceled() || isFinished())) {
-      try {
-        Thread.sleep(100);
-      } catch (InterruptedException e) {
-        logger.log(Level.SEVERE, "Error in GNPS export/submit task", e);
-      }
+    // units run on the task pool
+    final int filled = units.parallelStream()
+        .mapToInt(unit -> fillGaps(unit, gapRows.get(unit.fileIndex()))).sum();
+
+    if (isCanceled()) {
+      return;
     }
+
+    // Add task description to peakList
+    processedPeakList.addDescriptionOfAppliedTask(
+        new SimpleFeatureListAppliedMethod("Gap filling ", MultiThreadPeakFinderModule.class,
+            parameters, getModuleCallDate()));
+
+    // update all rows by row bindings (average values)
+    // this needs to be done after all units finish because values were not updated when
+    // adding features
+    processedPeakList.applyRowBindings();
+
+    // add / remove or rename the new feature list in project
+    originalFeatureListOption.reflectNewFeatureListToProject(suffix, project, processedPeakList,
+        peakList);
+
+    logger.info(String.format("Completed: Multithreaded gap-filling of %s (Gaps filled: %d)",
+        peakList, filled));
+    setStatus(TaskStatus.FINISHED);
   }
 
-  private int getMaxThreads() {
-    int maxRunningThreads = 1;
-    NumOfThreadsParameter parameter = MZmineCore.getConfiguration().getPreferences()
-        .getParameter(MZminePreferences.numOfThreads);
-    if (parameter.isAutomatic() || (parameter.getValue() == null)) {
-      maxRunningThreads = Runtime.getRuntime().availableProcessors();
-    } else {
-      maxRunningThreads = parameter.getValue();
+  /**
+   * Splits each raw data file into blocks of rows. Files are split until there are about four
+   * units per thread.
+   */
+  private List<GapFillingUnit> createUnits(List<RawDataFile> files, int numRows) {
+    final List<GapFillingUnit> units = new ArrayList<>();
+    if (numRows == 0) {
+      return units;
     }
+    final int threads = MZmineCore.getConfiguration().getNumOfThreads();
+    final int blocksPerFile = (int) Math.max(1,
+        Math.min(Math.ceil(4d * threads / files.size()),
+            Math.ceil(numRows / (double) MIN_ROWS_PER_BLOCK)));
+    final int rowsPerBlock = (numRows + blocksPerFile - 1) / blocksPerFile;
 
-    // raw files
-    int raw = peakList.getNumberOfRawDataFiles();
-    // raw files<?
-    if (raw < maxRunningThreads) {
-      maxRunningThreads = raw;
+    for (int f = 0; f < files.size(); f++) {
+      for (int start = 0; start < numRows; start += rowsPerBlock) {
+        units.add(
+            new GapFillingUnit(files.get(f), f, start, Math.min(numRows, start + rowsPerBlock)));
+      }
     }
-    return maxRunningThreads;
+    return units;
   }
 
   /**
-   * Distributes the RawDataFiles on different tasks
+   * Creates the gaps of this unit, streams all scans of the file once and adds the found features
+   * to the rows.
+   *
+   * @param gapRows all rows of this file that have a gap
+   * @return the number of filled gaps
    */
-  private List<AbstractTask> createSubTasks(int raw, int maxRunningThreads) {
-    int numPerTask = raw / maxRunningThreads;
-    int rest = raw % maxRunningThreads;
-    List<AbstractTask> tasks = new ArrayList<>();
-    for (int i = 0; i < maxRunningThreads; i++) {
-      int start = numPerTask * i;
-      int endexcl = numPerTask * (i + 1);
-      // add one from the rest
-      if (rest > 0) {
-        start += Math.min(i, rest);
-        endexcl += Math.min(i + 1, rest);
-      }
+  private int fillGaps(GapFillingUnit unit, BitSet gapRows) {
+    if (isCanceled()) {
+      return 0;
+    }
+
+    final RawDataFile dataFile = unit.file();
+    final List<? extends Scan> scans = peakList.getSeletedScans(dataFile);
+    final boolean ims =
+        peakList.hasFeatureType(MobilityType.class) && dataFile instanceof IMSRawDataFile;
+    // todo how to determine previous bin width for an aligned list?
+    final BinningMobilogramDataAccess mobilogramAccess =
+        ims ? EfficientDataAccess.of((IMSRawDataFile) dataFile,
+            BinningMobilogramDataAccess.getRecommendedBinWidth((IMSRawDataFile) dataFile)) : null;
+
+    final List<Gap> gaps = new ArrayList<>();
+    for (int row = gapRows.nextSetBit(unit.startRow()); row >= 0 && row < unit.endRow();
+        row = gapRows.nextSetBit(row + 1)) {
+      FeatureListRow sourceRow = peakList.getRow(row);
+      FeatureListRow newRow = processedPeakList.getRow(row);
 
-      if (i == maxRunningThreads - 1) {
-        endexcl = raw;
+      Range<Double> mzRange = mzTolerance.getToleranceRange(sourceRow.getAverageMZ());
+      Range<Float> rtRange = rtTolerance.getToleranceRange(sourceRow.getAverageRT());
+
+      if (ims) {
+        Range<Float> mobilityRange = sourceRow.getMobilityRange();
+        gaps.add(new ImsGap(newRow, dataFile, mzRange, rtRange, mobilityRange, intTolerance,
+            mobilogramAccess));
+      } else {
+        gaps.add(new Gap(newRow, dataFile, mzRange, rtRange, intTolerance));
       }
+    }
 
-      // create task
-      tasks.add(
-          new MultiThreadPeakFinderTask(peakList, processedPeakList, parameters, start, endexcl, i,
-              getModuleCallDate()));
+    // Stop processing this unit if there are no gaps
+    if (gaps.isEmpty()) {
+      processedScans.addAndGet(scans.size());
+      return 0;
     }
-    return tasks;
+
+    final GapIndex index = new GapIndex(gaps);
+    if (ims) {
+      final MobilityScanDataAccess access = new MobilityScanDataAccess((IMSRawDataFile) dataFile,
+          MobilityScanDataType.CENTROID, (List<Frame>) scans);
+      while (access.hasNextFrame()) {
+        if (isCanceled()) {
+          return 0;
+        }
+        access.nextFrame();
+        index.offerNextFrame(access);
+        processedScans.incrementAndGet();
+      }
+    } else {
+      final ScanDataAccess scanAccess = EfficientDataAccess.of(dataFile, ScanDataType.CENTROID,
+          scans);
+      while (scanAccess.hasNextScan()) {
+        if (isCanceled()) {
+          return 0;
+        }
+        scanAccess.nextScan();
+        index.offerNextScan(scanAccess);
+        processedScans.incrementAndGet();
+      }
+    }
+
+    // Finalize gaps and add to feature list
+    return index.noMoreOffers(minDataPoints);
   }
 
   @Override
   public double getFinishedPercentage() {
-    return progress.get();
+    return totalScans == 0 ? 0 : (double) processedScans.get() / totalScans;
   }
 
   @Override
   public String getTaskDescription() {
-    return "Main task: Gap filling " + peakList;
+    return "Gap filling " + peakList;
   }
 
+  /**
+   * All rows in [startRow, endRow) of one raw data file
+   */
+  private record GapFillingUnit(RawDataFile file, int fileIndex, int startRow, int endRow) {
+
+  }
 }
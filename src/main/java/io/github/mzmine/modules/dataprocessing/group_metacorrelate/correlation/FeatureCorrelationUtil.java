@@ -22,6 +22,7 @@ package io.github.mzmine.modules.dataprocessing.group_metacorrelate.correlation;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.CachedFeatureDataAccess;
+import io.github.mzmine.datamodel.data_access.CachedFeatureDataAccess.Values;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
@@ -106,17 +107,19 @@ public class FeatureCorrelationUtil {
    *
    * @param data                option to preload data or keep data in memory for large scale row 2
    *                            row correlation (null will access data directly from features)
-   * @param raws
+   * @param raws                the raw data files in the order of the preloaded data
    * @param testRow
+   * @param testRowIndex        index of testRow in the preloaded rows
    * @param row
+   * @param rowIndex            index of row in the preloaded rows
    * @param useHeightCorrFilter
    * @return R2R correlation, returns null if it was filtered by height correlation. Check for
    * validity on result
    */
   public static R2RFullCorrelationData corrR2R(
       CachedFeatureDataAccess data,
-      List<RawDataFile> raws, FeatureListRow testRow,
-      FeatureListRow row, boolean doFShapeCorr, int minCorrelatedDataPoints,
+      List<RawDataFile> raws, FeatureListRow testRow, int testRowIndex,
+      FeatureListRow row, int rowIndex, boolean doFShapeCorr, int minCorrelatedDataPoints,
       int minCorrDPOnFeatureEdge, int minDPFHeightCorr, double minHeight,
       double noiseLevelShapeCorr, boolean useHeightCorrFilter, SimilarityMeasure heightSimilarity,
       double minHeightCorr) {
@@ -143,8 +146,9 @@ public class FeatureCorrelationUtil {
     // feature shape correlation
     Map<RawDataFile, CorrelationData> featureCorrMap = null;
     if (doFShapeCorr) {
-      featureCorrMap = FeatureCorrelationUtil.corrR2RFeatureShapes(data, raws, testRow, row,
-          minCorrelatedDataPoints, minCorrDPOnFeatureEdge, noiseLevelShapeCorr);
+      featureCorrMap = FeatureCorrelationUtil.corrR2RFeatureShapes(data, raws, testRow,
+          testRowIndex, row, rowIndex, minCorrelatedDataPoints, minCorrDPOnFeatureEdge,
+          noiseLevelShapeCorr);
     }
 
     if (featureCorrMap != null && featureCorrMap.isEmpty()) {
@@ -159,26 +163,28 @@ public class FeatureCorrelationUtil {
    * Correlation of feature to feature shapes in all RawDataFiles of two rows
    *
    * @param data
-   * @param raws
+   * @param raws      the raw data files in the order of the preloaded data
    * @param row
+   * @param rowIndex  index of row in the preloaded rows
    * @param g
+   * @param gRowIndex index of g in the preloaded rows
    * @return Map of feature shape correlation data (can be empty NON null)
    */
   public static Map<RawDataFile, CorrelationData> corrR2RFeatureShapes(
       CachedFeatureDataAccess data,
       final List<RawDataFile> raws,
-      FeatureListRow row, FeatureListRow g, int minCorrelatedDataPoints, int minCorrDPOnFeatureEdge,
-      double noiseLevelShapeCorr) {
+      FeatureListRow row, int rowIndex, FeatureListRow g, int gRowIndex,
+      int minCorrelatedDataPoints, int minCorrDPOnFeatureEdge, double noiseLevelShapeCorr) {
     HashMap<RawDataFile, CorrelationData> corrData = new HashMap<>();
     // go through all raw files
-    for (RawDataFile raw : raws) {
+    for (int r = 0; r < raws.size(); r++) {
+      final RawDataFile raw = raws.get(r);
       Feature f1 = row.getFeature(raw);
       Feature f2 = g.getFeature(raw);
       if (f1 != null && f2 != null) {
         // feature shape correlation
-        CorrelationData correlationData = corrFeatureShape(data, f1, f2, true,
-            minCorrelatedDataPoints,
-            minCorrDPOnFeatureEdge, noiseLevelShapeCorr);
+        CorrelationData correlationData = corrFeatureShape(data, f1, rowIndex, f2, gRowIndex, r,
+            true, minCorrelatedDataPoints, minCorrDPOnFeatureEdge, noiseLevelShapeCorr);
 
         // if correlation is really bad return null
         if (isNegativeRegression(correlationData, 5, 0.2, 7, 0.5, SimilarityMeasure.PEARSON)) {
@@ -196,21 +202,27 @@ public class FeatureCorrelationUtil {
   /**
    * feature shape correlation
    *
-   * @param data option to preload feature data for large scale comparison. null to directly access
-   *             data from features
+   * @param data      option to preload feature data for large scale comparison. null to directly
+   *                  access data from features
    * @param f1
+   * @param rowIndex1 index of the row of f1 in the preloaded rows
    * @param f2
+   * @param rowIndex2 index of the row of f2 in the preloaded rows
+   * @param fileIndex index of the raw data file in the preloaded data
    * @return feature shape correlation or null if not possible not enough data points for a
    * correlation
    */
   public static CorrelationData corrFeatureShape(CachedFeatureDataAccess data, Feature f1,
-      Feature f2, boolean sameRawFile, int minCorrelatedDataPoints, int minCorrDPOnFeatureEdge,
-      double noiseLevelShapeCorr) {
+      int rowIndex1, Feature f2, int rowIndex2, int fileIndex, boolean sameRawFile,
+      int minCorrelatedDataPoints, int minCorrDPOnFeatureEdge, double noiseLevelShapeCorr) {
     // f1 should be the higher feature
     if (f1.getHeight() < f2.getHeight()) {
       Feature tmp = f1;
       f1 = f2;
       f2 = tmp;
+      int tmpIndex = rowIndex1;
+      rowIndex1 = rowIndex2;
+      rowIndex2 = tmpIndex;
     }
 
     List<Scan> scansA = f1.getScanNumbers();
@@ -221,16 +233,16 @@ public class FeatureCorrelationUtil {
     }
 
     // access data from features or preloaded data access
-    final double[] intensities1;
-    final double[] intensities2;
+    final Values intensities1;
+    final Values intensities2;
     if (data == null) {
-      intensities1 = f1.getFeatureData()
-          .getIntensityValues(new double[f1.getNumberOfDataPoints()]);
-      intensities2 = f2.getFeatureData()
-          .getIntensityValues(new double[f2.getNumberOfDataPoints()]);
+      intensities1 = Values.of(f1.getFeatureData()
+          .getIntensityValues(new double[f1.getNumberOfDataPoints()]));
+      intensities2 = Values.of(f2.getFeatureData()
+          .getIntensityValues(new double[f2.getNumberOfDataPoints()]));
     } else {
-      intensities1 = data.getIntensityValues(f1);
-      intensities2 = data.getIntensityValues(f2);
+      intensities1 = data.getIntensities(rowIndex1, fileIndex, f1);
+      intensities2 = data.getIntensities(rowIndex2, fileIndex, f2);
     }
 
     // find array index of max intensity for feature1 sn1
@@ -250,9 +262,9 @@ public class FeatureCorrelationUtil {
         Scan s1 = scansA.get(i1);
         Scan s2 = scansB.get(i2);
         // add point, if not break
-        if (s1 == s2 && intensities1[i1] >= noiseLevelShapeCorr
-            && intensities2[i2] >= noiseLevelShapeCorr) {
-          corrData.add(new double[]{intensities1[i1], intensities2[i2]});
+        if (s1 == s2 && intensities1.get(i1) >= noiseLevelShapeCorr
+            && intensities2.get(i2) >= noiseLevelShapeCorr) {
+          corrData.add(new double[]{intensities1.get(i1), intensities2.get(i2)});
         } else {
           // end of feature found
           break;
@@ -274,9 +286,9 @@ public class FeatureCorrelationUtil {
         Scan s1 = scansA.get(i1);
         Scan s2 = scansB.get(i2);
         // add point, if not break
-        if (s1 == s2 && intensities1[i1] >= noiseLevelShapeCorr
-            && intensities2[i2] >= noiseLevelShapeCorr) {
-          corrData.add(new double[]{intensities1[i1], intensities2[i2]});
+        if (s1 == s2 && intensities1.get(i1) >= noiseLevelShapeCorr
+            && intensities2.get(i2) >= noiseLevelShapeCorr) {
+          corrData.add(new double[]{intensities1.get(i1), intensities2.get(i2)});
         } else {
           // end of peak found
           break;
@@ -338,6 +350,22 @@ public class FeatureCorrelationUtil {
     return maxIndex;
   }
 
+  /**
+   * Find index of maximum value without copying the values, see {@link #indexOfMax(double[])}
+   */
+  public static int indexOfMax(Values values) {
+    int maxIndex = 0;
+    double max = 0;
+    for (int i = 0; i < values.length(); i++) {
+      double val = values.get(i);
+      if (val > max) {
+        maxIndex = i;
+        max = val;
+      }
+    }
+    return maxIndex;
+  }
+
   /**
    * correlates the height profile of one row to another NO escape routine
    *
@@ -31,6 +31,7 @@ import io.github.mzmine.datamodel.features.correlation.CorrelationRowGroup;
 import io.github.mzmine.datamodel.features.correlation.R2RCorrelationData;
 import io.github.mzmine.datamodel.features.correlation.R2RFullCorrelationData;
 import io.github.mzmine.datamodel.features.correlation.R2RMap;
+import io.github.mzmine.datamodel.features.correlation.RowPairCandidates;
 import io.github.mzmine.datamodel.features.correlation.RowsRelationship.Type;
 import io.github.mzmine.modules.dataprocessing.group_metacorrelate.correlation.FeatureCorrelationUtil;
 import io.github.mzmine.modules.dataprocessing.group_metacorrelate.correlation.FeatureShapeCorrelationParameters;
@@ -52,7 +53,6 @@ import java.time.Instant;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 
 public class CorrelateGroupingTask extends AbstractTask {
@@ -273,54 +273,51 @@ public class CorrelateGroupingTask extends AbstractTask {
 
     totalRows = rows.length;
 
-    // preload all intensity values
-    CachedFeatureDataAccess data = new CachedFeatureDataAccess(rows, false, true);
-
-    // for all rows - do in parallel
-    IntStream.range(0, totalRows - 1).parallel().forEach(i -> {
-      if (!isCanceled()) {
-        try {
-          FeatureListRow row = rows[i];
-          // compare to the rest of rows
-          for (int x = i + 1; x < totalRows; x++) {
-            if (isCanceled()) {
-              break;
-            }
-
-            FeatureListRow row2 = rows[x];
-
-            // has a minimum number/% of overlapping features in all samples / in at least one
-            // groups
-            OverlapResult overlap =
-                minFFilter.filterMinFeaturesOverlap(data, raws, row, row2, rtTolerance);
-            if (overlap.equals(OverlapResult.TRUE)) {
-              // correlate if in rt range
-              R2RFullCorrelationData corr =
-                  FeatureCorrelationUtil.corrR2R(data, raws, row, row2, groupByFShapeCorr,
-                      minCorrelatedDataPoints, minCorrDPOnFeatureEdge, minDPHeightCorr, minHeight,
-                      noiseLevelCorr, useHeightCorrFilter, heightSimMeasure, minHeightCorr);
-
-              // corr is even present if only grouping by retention time
-              // corr is only null if heightCorrelation was not met
-              if (corr != null && //
-                  (!groupByFShapeCorr || FeatureCorrelationUtil.checkFShapeCorr(groupedPKL,
-                      minFFilter, corr, useTotalShapeCorrFilter, minTotalShapeCorrR,
-                      minShapeCorrR,
-                      shapeSimMeasure))) {
-                // add to map
-                // can be because of any combination of
-                // retention time, shape correlation, non-negative height correlation
-                map.add(row, row2, corr);
-              }
-            }
+    // preload all intensity values, accessed by the index in rows and raws
+    CachedFeatureDataAccess data = new CachedFeatureDataAccess(rows, raws, false, true);
+
+    // only rows with features within the RT tolerance can overlap
+    final RowPairCandidates candidates =
+        minFFilter.isRtOverlapRequired(raws.size()) ? RowPairCandidates.withinRtTolerance(rows,
+            rtTolerance) : RowPairCandidates.all(totalRows);
+    logger.fine(() -> String.format("Corr: Comparing %d candidate pairs of %d rows",
+        candidates.getNumPairs(), totalRows));
+
+    // compare pairs in parallel blocks
+    candidates.forEachPair((i, x) -> {
+      try {
+        FeatureListRow row = rows[i];
+        FeatureListRow row2 = rows[x];
+
+        // has a minimum number/% of overlapping features in all samples / in at least one
+        // groups
+        OverlapResult overlap =
+            minFFilter.filterMinFeaturesOverlap(data, raws, row, i, row2, x, rtTolerance);
+        if (overlap.equals(OverlapResult.TRUE)) {
+          // correlate if in rt range
+          R2RFullCorrelationData corr =
+              FeatureCorrelationUtil.corrR2R(data, raws, row, i, row2, x, groupByFShapeCorr,
+                  minCorrelatedDataPoints, minCorrDPOnFeatureEdge, minDPHeightCorr, minHeight,
+                  noiseLevelCorr, useHeightCorrFilter, heightSimMeasure, minHeightCorr);
+
+          // corr is even present if only grouping by retention time
+          // corr is only null if heightCorrelation was not met
+          if (corr != null && //
+              (!groupByFShapeCorr || FeatureCorrelationUtil.checkFShapeCorr(groupedPKL,
+                  minFFilter, corr, useTotalShapeCorrFilter, minTotalShapeCorrR,
+                  minShapeCorrR,
+                  shapeSimMeasure))) {
+            // add to map
+            // can be because of any combination of
+            // retention time, shape correlation, non-negative height correlation
+            map.add(row, row2, corr);
           }
-          stageProgress.addAndGet(1d / totalRows);
-        } catch (Exception e) {
-          logger.log(Level.SEVERE, "Error in parallel R2Rcomparison: " + e.getMessage(), e);
-          throw new MSDKRuntimeException(e);
         }
+      } catch (Exception e) {
+        logger.log(Level.SEVERE, "Error in parallel R2Rcomparison: " + e.getMessage(), e);
+        throw new MSDKRuntimeException(e);
       }
-    });
+    }, this::isCanceled, stageProgress::addAndGet);
 
     // number of f2f correlations
     int nR2Rcorr = 0;
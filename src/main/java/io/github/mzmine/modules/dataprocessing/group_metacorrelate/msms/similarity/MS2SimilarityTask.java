@@ -29,6 +29,7 @@ import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.correlation.R2RMap;
 import io.github.mzmine.datamodel.features.correlation.R2RSpectralSimilarity;
 import io.github.mzmine.datamodel.features.correlation.R2RSpectralSimilarityList;
+import io.github.mzmine.datamodel.features.correlation.RowPairCandidates;
 import io.github.mzmine.datamodel.features.correlation.RowsRelationship;
 import io.github.mzmine.datamodel.features.correlation.RowsRelationship.Type;
 import io.github.mzmine.datamodel.features.correlation.SpectralSimilarity;
@@ -54,7 +55,6 @@ import java.util.Map;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -386,34 +386,19 @@ public class MS2SimilarityTask extends AbstractTask {
     }
     int numRows = filteredRows.size();
     LOG.log(Level.INFO, () -> MessageFormat.format("Checking MS2 similarity on {0} rows", numRows));
-    // run in parallel
-    IntStream.range(0, numRows - 1).parallel().forEach(i -> {
-      if (!isCanceled()) {
-        for (int j = i + 1; j < numRows; j++) {
-          if (!isCanceled()) {
-            FilteredRowData a = filteredRows.get(i);
-            FilteredRowData b = filteredRows.get(j);
-            checkR2RMs2Similarity(mapSimilarity, a.row(), b.row(), a.data(), b.data(),
-                Type.MS2_COSINE_SIM);
-
-            // check neutral loss similarity
-            if (checkNeutralLoss) {
-              // create mass diff array
-              DataPoint[] massDiffA = ScanMZDiffConverter.getAllMZDiff(a.data(), mzTolerance,
-                  minHeight, maxDPForDiff);
-              DataPoint[] massDiffB = ScanMZDiffConverter.getAllMZDiff(b.data(), mzTolerance,
-                  minHeight, maxDPForDiff);
-
-              checkR2RMs2Similarity(mapNeutralLoss, a.row(), b.row(), massDiffA, massDiffB,
-                  Type.MS2_NEUTRAL_LOSS_SIM);
-            }
-          }
-        }
-      }
-      if (stageProgress != null) {
-        stageProgress.getAndAdd(1d / numRows);
+    // run in parallel blocks of pairs
+    RowPairCandidates.all(numRows).forEachPair((i, j) -> {
+      FilteredRowData a = filteredRows.get(i);
+      FilteredRowData b = filteredRows.get(j);
+      checkR2RMs2Similarity(mapSimilarity, a.row(), b.row(), a.data(), b.data(),
+          Type.MS2_COSINE_SIM);
+
+      // check neutral loss similarity
+      if (checkNeutralLoss) {
+        checkR2RMs2Similarity(mapNeutralLoss, a.row(), b.row(), a.massDiff(), b.massDiff(),
+            Type.MS2_NEUTRAL_LOSS_SIM);
       }
-    });
+    }, this::isCanceled, stageProgress::addAndGet);
   }
 
   /**
@@ -435,44 +420,43 @@ public class MS2SimilarityTask extends AbstractTask {
         filteredRows.add(row);
       }
     }
+    // mass differences once per feature instead of once per pair
+    Map<Feature, DataPoint[]> mapFeatureMassDiff = new HashMap<>();
+    if (checkNeutralLoss) {
+      mapFeatureData.forEach(
+          (feature, data) -> mapFeatureMassDiff.put(feature, createMassDiff(data)));
+    }
     int numRows = filteredRows.size();
     LOG.log(Level.INFO, () -> MessageFormat.format("Checking MS2 similarity on {0} rows", numRows));
-    // run in parallel
-    IntStream.range(0, numRows - 1).parallel().forEach(i -> {
-      if (!isCanceled()) {
-        for (int j = i + 1; j < numRows; j++) {
-          if (!isCanceled()) {
-            FeatureListRow a = filteredRows.get(i);
-            FeatureListRow b = filteredRows.get(j);
-
-            checkR2RAllFeaturesMs2Similarity(mapFeatureData, a, b);
-          }
-        }
-      }
-      if (stageProgress != null) {
-        stageProgress.getAndAdd(1d / numRows);
-      }
-    });
+    // run in parallel blocks of pairs
+    RowPairCandidates.all(numRows).forEachPair((i, j) -> {
+      FeatureListRow a = filteredRows.get(i);
+      FeatureListRow b = filteredRows.get(j);
+      checkR2RAllFeaturesMs2Similarity(mapFeatureData, mapFeatureMassDiff, a, b);
+    }, this::isCanceled, stageProgress::addAndGet);
+  }
+
+  /**
+   * @param data data points sorted by intensity
+   * @return the mass differences sorted by intensity
+   */
+  private DataPoint[] createMassDiff(DataPoint[] data) {
+    DataPoint[] massDiff = ScanMZDiffConverter.getAllMZDiff(data, mzTolerance, minHeight,
+        maxDPForDiff);
+    Arrays.sort(massDiff, dpSorter);
+    return massDiff;
   }
 
   private void checkR2RAllFeaturesMs2Similarity(Map<Feature, DataPoint[]> mapFeatureData,
-      FeatureListRow a, FeatureListRow b) {
+      Map<Feature, DataPoint[]> mapFeatureMassDiff, FeatureListRow a, FeatureListRow b) {
 
     R2RSpectralSimilarityList cosineSim = new R2RSpectralSimilarityList(a, b, Type.MS2_COSINE_SIM);
     R2RSpectralSimilarityList neutralLossSim =
         checkNeutralLoss ? new R2RSpectralSimilarityList(a, b, Type.MS2_NEUTRAL_LOSS_SIM) : null;
 
-    DataPoint[] massDiffA = null;
-    DataPoint[] massDiffB = null;
-
     for (Feature fa : a.getFeatures()) {
       DataPoint[] dpa = mapFeatureData.get(fa);
       if (dpa != null) {
-        // create mass diff array
-        if (checkNeutralLoss) {
-          massDiffA = ScanMZDiffConverter.getAllMZDiff(dpa, mzTolerance, minHeight, maxDPForDiff);
-          Arrays.sort(massDiffA, dpSorter);
-        }
         for (Feature fb : b.getFeatures()) {
           DataPoint[] dpb = mapFeatureData.get(fb);
           if (dpb != null) {
@@ -485,10 +469,8 @@ public class MS2SimilarityTask extends AbstractTask {
 
             // alignment and sim of neutral losses
             if (checkNeutralLoss) {
-              massDiffB = ScanMZDiffConverter.getAllMZDiff(dpb, mzTolerance, maxDPForDiff);
-              Arrays.sort(massDiffB, dpSorter);
-              SpectralSimilarity massDiffSim = createMS2Sim(mzTolerance, massDiffA, massDiffB,
-                  minMatch, DIFF_OVERLAP);
+              SpectralSimilarity massDiffSim = createMS2Sim(mzTolerance,
+                  mapFeatureMassDiff.get(fa), mapFeatureMassDiff.get(fb), minMatch, DIFF_OVERLAP);
 
               if (massDiffSim != null && massDiffSim.cosine() >= minCosineSimilarity) {
                 neutralLossSim.addSpectralSim(massDiffSim);
@@ -535,7 +517,8 @@ public class MS2SimilarityTask extends AbstractTask {
     if (filteredData.length >= minDP) {
       // sort by intensity
       Arrays.sort(filteredData, dpSorter);
-      return new FilteredRowData(row, filteredData);
+      return new FilteredRowData(row, filteredData,
+          checkNeutralLoss ? createMassDiff(filteredData) : null);
     } else {
       return null;
     }
@@ -633,9 +616,11 @@ public class MS2SimilarityTask extends AbstractTask {
   }
 
   /**
-   * the filtered data of the best MS2 scan from row
+   * the filtered data of the best MS2 scan from row and its mass differences if neutral losses are
+   * checked
    */
-  private record FilteredRowData(FeatureListRow row, DataPoint[] data) {
+  private record FilteredRowData(FeatureListRow row, DataPoint[] data,
+                                 @Nullable DataPoint[] massDiff) {
 
   }
 }
@@ -36,6 +36,8 @@ import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -143,8 +145,11 @@ public class IonNetworkingTask extends AbstractTask {
     //
     AtomicInteger compared = new AtomicInteger(0);
     AtomicInteger annotPairs = new AtomicInteger(0);
-    // for all groups
-    groups.parallelStream().forEach(g -> {
+    // for all groups, largest first as the number of row pairs grows with the square of the size.
+    // Groups stay the unit of work as rows are only shared within a group
+    final List<RowGroup> bySize = new ArrayList<>(groups);
+    bySize.sort(Comparator.comparingInt(RowGroup::size).reversed());
+    bySize.parallelStream().forEach(g -> {
       if (!this.isCanceled()) {
         annotateGroup(g, compared, annotPairs);
         stageProgress.addAndGet(1d / groups.size());
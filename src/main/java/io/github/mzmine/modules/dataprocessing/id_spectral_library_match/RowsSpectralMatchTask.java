@@ -38,6 +38,7 @@ import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.parameters.parametertypes.tolerances.PercentTolerance;
 import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.util.DataPointSorter;
 import io.github.mzmine.util.exceptions.MissingMassListException;
 import io.github.mzmine.util.scans.ScanAlignment;
 import io.github.mzmine.util.scans.ScanUtils;
@@ -48,16 +49,20 @@ import io.github.mzmine.util.spectraldb.entry.DBEntryField;
 import io.github.mzmine.util.spectraldb.entry.SpectralDBAnnotation;
 import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
 import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryPrecursorIndex;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class RowsSpectralMatchTask extends AbstractTask {
 
@@ -96,6 +101,8 @@ public class RowsSpectralMatchTask extends AbstractTask {
   // 13C, H, 2H or Cl
   private final boolean needsIsotopePattern;
   private final int minMatchedIsoSignals;
+  // only keep the top N matches per row
+  private final int maxMatches;
   // use precursor mz provided by user
   private boolean useScanPrecursorMZ;
   private double scanPrecursorMZ;
@@ -147,6 +154,7 @@ public class RowsSpectralMatchTask extends AbstractTask {
         parameters.getParameter(SingleSpectrumLibrarySearchParameters.ccsTolerance)
             .getEmbeddedParameter().getValue()) : null;
     allMS2Scans = false;
+    maxMatches = Integer.MAX_VALUE;
     totalRows = 1;
   }
 
@@ -193,6 +201,9 @@ public class RowsSpectralMatchTask extends AbstractTask {
     }
 
     allMS2Scans = parameters.getValue(SpectralLibrarySearchParameters.allMS2Spectra);
+    maxMatches = parameters.getValue(SpectralLibrarySearchParameters.maxMatches)
+        ? parameters.getParameter(SpectralLibrarySearchParameters.maxMatches).getEmbeddedParameter()
+        .getValue() : Integer.MAX_VALUE;
 
     ccsTolerance = parameters.getValue(SingleSpectrumLibrarySearchParameters.ccsTolerance)
         ? new PercentTolerance(
@@ -306,9 +317,9 @@ public class RowsSpectralMatchTask extends AbstractTask {
       // get a ccs for the precursor of this scan
       final Float precursorCCS = getPrecursorCCSFromMsMs(scan);
 
-      for (var entry : entries) {
+      for (var entry : getCandidateEntries(entries, scanPrecursorMZ, null)) {
         final SpectralSimilarity sim = matchSpectrum(scan.getRetentionTime(), scanPrecursorMZ,
-            precursorCCS, masses, entry);
+            precursorCCS, masses, entry, Double.NEGATIVE_INFINITY);
         if (sim != null) {
           Float ccsError = PercentTolerance.getPercentError(entry.getOrElse(DBEntryField.CCS, null),
               precursorCCS);
@@ -355,7 +366,9 @@ public class RowsSpectralMatchTask extends AbstractTask {
   }
 
   /**
-   * Match row against all entries, add matches, sort them by score
+   * Match row against all entries, add matches, sort them by score. If only the top N matches are
+   * kept, they are collected in a bounded heap and entries that cannot beat the worst of the top N
+   * are skipped before the spectra are aligned.
    *
    * @param entries combined library entries
    * @param row     target row
@@ -374,19 +387,22 @@ public class RowsSpectralMatchTask extends AbstractTask {
       }
 
       final Float rowCCS = row.getAverageCCS();
-      List<SpectralDBAnnotation> ids = null;
-      // match against all library entries
-      for (SpectralDBEntry ident : entries) {
+      // the match with the lowest score is the head
+      PriorityQueue<SpectralDBAnnotation> ids = null;
+      // match against all library entries within the precursor window
+      final Float rowRT = useRT ? row.getAverageRT() : null;
+      for (SpectralDBEntry ident : getCandidateEntries(entries, row.getAverageMZ(), rowRT)) {
         final Float libCCS = ident.getOrElse(DBEntryField.CCS, null);
+        // needs to beat the worst of the top N matches
+        final double minScore = ids != null && ids.size() >= maxMatches ? getScore(ids.peek())
+            : Double.NEGATIVE_INFINITY;
         SpectralDBAnnotation best = null;
         // match all scans against this ident to find best match
         for (int i = 0; i < scans.size(); i++) {
           SpectralSimilarity sim = matchSpectrum(row.getAverageRT(), row.getAverageMZ(), rowCCS,
-              rowMassLists.get(i), ident);
+              rowMassLists.get(i), ident, best == null ? minScore : getScore(best));
           if (sim != null && (!needsIsotopePattern || checkForIsotopePattern(sim,
-              mzToleranceSpectra, minMatchedIsoSignals)) && (best == null
-                                                             || best.getSimilarity().getScore()
-                                                                < sim.getScore())) {
+              mzToleranceSpectra, minMatchedIsoSignals))) {
 
             Float ccsRelativeError = PercentTolerance.getPercentError(rowCCS, libCCS);
 
@@ -396,16 +412,19 @@ public class RowsSpectralMatchTask extends AbstractTask {
         // has match?
         if (best != null) {
           if (ids == null) {
-            ids = new ArrayList<>();
+            ids = new PriorityQueue<>(Comparator.comparingDouble(RowsSpectralMatchTask::getScore));
           }
           ids.add(best);
-          matches.getAndIncrement();
+          if (ids.size() > maxMatches) {
+            ids.poll();
+          }
         }
       }
 
       // add and sort identities based on similarity score
       if (ids != null) {
-        addIdentities(row, ids);
+        matches.getAndAdd(ids.size());
+        addIdentities(row, new ArrayList<>(ids));
         SortSpectralMatchesTask.sortIdentities(row);
       }
     } catch (MissingMassListException e) {
@@ -414,6 +433,44 @@ public class RowsSpectralMatchTask extends AbstractTask {
     }
   }
 
+  private static double getScore(SpectralDBAnnotation match) {
+    return match.getSimilarity().getScore();
+  }
+
+  /**
+   * For MS2 matching, only library entries within the precursor m/z window are candidates. Those
+   * are retrieved from the {@link SpectralLibraryPrecursorIndex} of each library instead of
+   * checking all entries. The window is twice the precursor tolerance, as the tolerance is later
+   * calculated on the library precursor m/z in {@link #checkPrecursorMZ(double, SpectralDBEntry)}.
+   *
+   * @param entries all library entries, used for MS1 matching
+   * @param mz      the query precursor m/z
+   * @param rt      the query retention time or null to skip the RT filter
+   * @return list of candidate entries
+   */
+  private List<SpectralDBEntry> getCandidateEntries(List<SpectralDBEntry> entries, double mz,
+      @Nullable Float rt) {
+    if (msLevel <= 1 || mzTolerancePrecursor == null) {
+      return entries;
+    }
+
+    final double window = 2d * mzTolerancePrecursor.getMzToleranceForMass(mz);
+    final boolean filterRT = useRT && rt != null;
+    List<SpectralDBEntry> candidates = new ArrayList<>();
+    for (SpectralLibrary library : libraries) {
+      final SpectralLibraryPrecursorIndex index = library.getPrecursorIndex();
+      final int end = index.indexAfterLast(mz + window);
+      for (int i = index.indexOfFirst(mz - window); i < end; i++) {
+        final float libRT = index.getRT(i);
+        if (filterRT && !Float.isNaN(libRT) && !rtTolerance.checkWithinTolerance(libRT, rt)) {
+          continue;
+        }
+        candidates.add(index.getEntry(i));
+      }
+    }
+    return candidates;
+  }
+
   /**
    * Remove 13C isotopes from masslist
    */
@@ -428,10 +485,11 @@ public class RowsSpectralMatchTask extends AbstractTask {
    * @param rowMZ       m/z of query row
    * @param rowMassList mass list (data points) for row
    * @param ident       library entry
+   * @param minScore    only matches with a higher score are returned
    * @return spectral similarity or null if no match
    */
   private SpectralSimilarity matchSpectrum(Float rowRT, double rowMZ, Float rowCCS,
-      DataPoint[] rowMassList, SpectralDBEntry ident) {
+      DataPoint[] rowMassList, SpectralDBEntry ident, double minScore) {
     // retention time
     // MS level 1 or check precursorMZ
     if (checkRT(rowRT, ident) && (msLevel == 1 || checkPrecursorMZ(rowMZ, ident)) && checkCCS(
@@ -461,7 +519,7 @@ public class RowsSpectralMatchTask extends AbstractTask {
       }
 
       // check spectra similarity
-      return createSimilarity(library, query);
+      return createSimilarity(library, query, minScore);
     }
     return null;
   }
@@ -487,11 +545,14 @@ public class RowsSpectralMatchTask extends AbstractTask {
   /**
    * Uses the similarity function and filter to create similarity.
    *
+   * @param minScore skips the similarity calculation if the score cannot exceed this value
    * @return positive match with similarity or null if criteria was not met
    */
-  private SpectralSimilarity createSimilarity(DataPoint[] library, DataPoint[] query) {
+  private SpectralSimilarity createSimilarity(DataPoint[] library, DataPoint[] query,
+      double minScore) {
     return simFunction.getModule()
-        .getSimilarity(simFunction.getParameterSet(), mzToleranceSpectra, minMatch, library, query);
+        .getSimilarity(simFunction.getParameterSet(), mzToleranceSpectra, minMatch, library, query,
+            minScore);
   }
 
   private boolean checkPrecursorMZ(double rowMZ, SpectralDBEntry ident) {
@@ -511,7 +572,8 @@ public class RowsSpectralMatchTask extends AbstractTask {
   }
 
   /**
-   * Thresholded masslist
+   * Thresholded masslist, sorted by ascending m/z once for the matching against all library
+   * entries
    *
    * @return the mass list data points from scan
    * @throws MissingMassListException if no mass list available
@@ -530,6 +592,8 @@ public class RowsSpectralMatchTask extends AbstractTask {
     if (removeIsotopes) {
       dps = removeIsotopes(dps);
     }
+    // the filters create a copy of the mass list
+    Arrays.sort(dps, DataPointSorter.DEFAULT_MZ_ASCENDING);
     return dps;
   }
 
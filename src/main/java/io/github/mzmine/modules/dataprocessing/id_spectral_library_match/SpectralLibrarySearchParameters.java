@@ -106,6 +106,11 @@ public class SpectralLibrarySearchParameters extends SimpleParameterSet {
       "Similarity", "Algorithm to calculate similarity and filter matches",
       SpectralSimilarityFunction.FUNCTIONS, SpectralSimilarityFunction.weightedCosine);
 
+  public static final OptionalParameter<IntegerParameter> maxMatches = new OptionalParameter<>(
+      new IntegerParameter("Keep top N matches",
+          "Only keep the N best library matches per row. Library entries that cannot reach the "
+          + "score of the N best matches are skipped.", 10, 1, Integer.MAX_VALUE), false);
+
   /**
    * for SelectedRowsParameters
    *
@@ -118,7 +123,7 @@ public class SpectralLibrarySearchParameters extends SimpleParameterSet {
   public SpectralLibrarySearchParameters() {
     super(new Parameter[]{peakLists, libraries, msLevel, allMS2Spectra, mzTolerancePrecursor,
         removePrecursor, ccsTolerance, noiseLevel, deisotoping, needsIsotopePattern,
-        cropSpectraToOverlap, mzTolerance, rtTolerance, minMatch, similarityFunction});
+        cropSpectraToOverlap, mzTolerance, rtTolerance, minMatch, similarityFunction, maxMatches});
   }
 
   @Override
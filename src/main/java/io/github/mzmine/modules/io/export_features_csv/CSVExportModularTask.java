@@ -29,6 +29,7 @@ import io.github.mzmine.datamodel.features.types.LinkedGraphicalType;
 import io.github.mzmine.datamodel.features.types.modifiers.NoTextColumn;
 import io.github.mzmine.datamodel.features.types.modifiers.NullColumnType;
 import io.github.mzmine.datamodel.features.types.modifiers.SubColumnsFactory;
+import io.github.mzmine.modules.io.export_features_csv.CSVRowBlockWriter.Column;
 import io.github.mzmine.modules.io.export_features_gnps.fbmn.FeatureListRowsFilter;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
@@ -48,6 +49,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -55,7 +58,6 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 public class CSVExportModularTask extends AbstractTask implements ProcessedItemsCounter {
 
@@ -205,92 +207,64 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
         .filter(type -> !removeEmptyCols || typeContainData(type, rows, true, -1))
         .collect(Collectors.toList());
 
+    // resolve columns and sub columns once
+    final List<Column> rowColumns = getColumns(rowTypes, rows, false);
+    final List<Column> featureColumns = getColumns(featureTypes, rows, true);
+
     // Write feature row headers
-    StringBuilder header = new StringBuilder(getJoinedHeader(rowTypes, "", rows, false));
+    StringBuilder header = new StringBuilder();
+    appendHeader(header, rowColumns, "");
     for (RawDataFile raw : rawDataFiles) {
-      header.append((header.length() == 0) ? "" : fieldSeparator).append(
-          getJoinedHeader(featureTypes, DATAFILE_PREFIX + headerSeparator + raw.getName(), rows,
-              true));
+      appendHeader(header, featureColumns, DATAFILE_PREFIX + headerSeparator + raw.getName());
     }
 
     writer.append(header.toString());
     writer.newLine();
 
     // write data
-    totalTypes = rowTypes.size() + featureTypes.size() * rawDataFiles.size();
-
-    List<String[]> formattedCols = new ArrayList<>(totalTypes);
-
-    // list string values for each type and sub type
-    for (DataType rowType : rowTypes) {
-      if (isCanceled()) {
-        return;
-      }
-
-      addFormattedColumnsRecursively(formattedCols, rows, null, rowType);
-
-      processedTypes++;
-    }
-
-    // add feature types for each raw data file
-    for (RawDataFile raw : rawDataFiles) {
-      for (DataType featureType : featureTypes) {
-        if (isCanceled()) {
-          return;
-        }
-
-        addFormattedColumnsRecursively(formattedCols, rows, raw, featureType);
-        processedTypes++;
-      }
-    }
-
-    for (int i = 0; i < rows.size(); i++) {
-      // Cancel?
-      if (isCanceled()) {
-        return;
-      }
-
-      final int row = i;
-      writer.append(
-          formattedCols.stream().map(col -> col[row]).collect(Collectors.joining(fieldSeparator)));
-      writer.newLine();
-
-      exportedRows.incrementAndGet();
-      processedTypes++;
-    }
+    processedTypes = 0;
+    totalTypes = rows.size();
+
+    // tasks run on the task pool of the task controller, format on the same threads
+    final ForkJoinPool pool =
+        ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+    final CSVRowBlockWriter rowWriter = new CSVRowBlockWriter(rawDataFiles, rowColumns,
+        featureColumns, fieldSeparator, pool);
+    rowWriter.write(rows, writer, this::isCanceled, written -> {
+      exportedRows.addAndGet(written);
+      processedTypes += written;
+    });
   }
 
   /**
-   * Adds columns of formatted values for each column / sub column. missing values are replaced by
-   * empty strings or default values
+   * Columns for each type and sub type. Sub columns are excluded if their type is not exported or
+   * if they are empty and empty columns are removed
    *
-   * @param formattedCols the target list
+   * @param types         the exported types
    * @param rows          the data
-   * @param raw           defines the feature
-   * @param type          the feature data type to be added (and its sub columns)
+   * @param isFeatureType defines if row or feature types (true)
    */
-  private void addFormattedColumnsRecursively(List<String[]> formattedCols,
-      List<FeatureListRow> rows, @Nullable RawDataFile raw, DataType type) {
-    if (type instanceof SubColumnsFactory subFactory) {
-      int subCols = subFactory.getNumberOfSubColumns();
-      for (int s = 0; s < subCols; s++) {
-        // filter sub column - maybe excluded, no text, empty
-        DataType<?> subType = subFactory.getType(s);
-        if (!filterType(subType) || (removeEmptyCols && !typeContainData(type, rows, raw != null,
-            s))) {
-          continue;
+  @SuppressWarnings("rawtypes")
+  private List<Column> getColumns(List<DataType> types, List<FeatureListRow> rows,
+      boolean isFeatureType) {
+    final List<Column> columns = new ArrayList<>();
+    for (DataType type : types) {
+      if (type instanceof SubColumnsFactory subFactory) {
+        int subCols = subFactory.getNumberOfSubColumns();
+        for (int s = 0; s < subCols; s++) {
+          // filter sub column - maybe excluded, no text, empty
+          DataType<?> subType = subFactory.getType(s);
+          if (!filterType(subType) || (removeEmptyCols && !typeContainData(type, rows,
+              isFeatureType, s))) {
+            continue;
+          }
+          columns.add(new Column(type, s));
         }
-        // collect column data
-        final int subIndex = s;
-        String[] column = getDataStream(rows, raw, false).map(
-            data -> getFormattedValue(data, subFactory, subIndex)).toArray(String[]::new);
-        formattedCols.add(column);
+      } else {
+        columns.add(new Column(type, -1));
       }
-    } else {
-      String[] column = getDataStream(rows, raw, false).map(data -> getFormattedValue(data, type))
-          .toArray(String[]::new);
-      formattedCols.add(column);
     }
+    return columns;
   }
 
   /**
@@ -313,29 +287,6 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
   }
 
 
-  private String getFormattedValue(@Nullable ModularDataModel data, SubColumnsFactory subColFactory,
-      int col) {
-    Object value = data == null ? null : data.get((DataType) subColFactory);
-    if (value == null) {
-      value = ((DataType) subColFactory).getDefaultValue();
-    }
-    return csvEscape(subColFactory.getFormattedSubColValue(col, value));
-  }
-
-  private String getFormattedValue(@Nullable ModularDataModel data, DataType type) {
-    Object value = data == null ? null : data.get(type);
-    if (value == null) {
-      value = type.getDefaultValue();
-    }
-    try {
-      return csvEscape(type.getFormattedString(value));
-    } catch (Exception e) {
-      logger.log(Level.FINEST,
-          "Cannot format value of type " + type.getClass().getName() + " value: " + value, e);
-      return "";
-    }
-  }
-
   /**
    * @return true if type should be exported
    */
@@ -376,40 +327,26 @@ public class CSVExportModularTask extends AbstractTask implements ProcessedItems
 
 
   /**
-   * Join headers by field separator and sub data types by headerSeparator (Standard is colon :)
+   * Append headers separated by field separator. Sub data types are joined by headerSeparator
+   * (Standard is colon :)
    *
-   * @param types
-   * @param prefix
-   * @return
+   * @param header  the target
+   * @param columns the columns
+   * @param prefix  prefix of each header or empty
    */
-  private String getJoinedHeader(List<DataType> types, String prefix, List<FeatureListRow> rows,
-      boolean isFeatureType) {
-    StringBuilder b = new StringBuilder();
-    for (DataType t : types) {
-      String header =
-          (prefix == null || prefix.isEmpty() ? "" : prefix + headerSeparator) + t.getUniqueID();
-      if (t instanceof SubColumnsFactory subCols) {
-        int numberOfSub = subCols.getNumberOfSubColumns();
-        for (int i = 0; i < numberOfSub; i++) {
-          DataType subType = subCols.getType(i);
-          if (!filterType(subType) || (removeEmptyCols && !typeContainData(t, rows, isFeatureType,
-              i))) {
-            continue;
-          }
-          String field = subCols.getUniqueID(i);
-          if (b.length() != 0) {
-            b.append(fieldSeparator);
-          }
-          b.append(csvEscape(header + headerSeparator + field));
-        }
-      } else {
-        if (b.length() != 0) {
-          b.append(fieldSeparator);
-        }
-        b.append(csvEscape(header));
+  private void appendHeader(StringBuilder header, List<Column> columns, String prefix) {
+    for (Column column : columns) {
+      final DataType<?> type = column.type();
+      String field = (prefix == null || prefix.isEmpty() ? "" : prefix + headerSeparator)
+                     + type.getUniqueID();
+      if (column.subColumn() >= 0) {
+        field += headerSeparator + ((SubColumnsFactory) type).getUniqueID(column.subColumn());
+      }
+      if (header.length() != 0) {
+        header.append(fieldSeparator);
       }
+      header.append(csvEscape(field));
     }
-    return b.toString();
   }
 
   private String csvEscape(String input) {
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2006-2021 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.io.export_features_csv;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularDataModel;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.modifiers.SubColumnsFactory;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.DoubleType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.FloatType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.IntegerType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.NumberRangeType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.NumberType;
+import io.github.mzmine.util.io.CSVUtils;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.NumberFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Writes the rows of a CSV export. Blocks of rows are formatted in parallel on the given pool into
+ * reusable buffers and written in the order of the rows, while the next blocks are already
+ * formatted. The columns are resolved once per export and each thread keeps its own formatters
+ * during {@link #write}. Number formats are not thread safe, so number types are formatted with
+ * copies of their format. All other types are formatted under a common lock, as they may use the
+ * shared formats of the configuration.
+ */
+class CSVRowBlockWriter {
+
+  private static final Logger logger = Logger.getLogger(CSVRowBlockWriter.class.getName());
+  // wide tables get fewer rows per block
+  private static final int VALUES_PER_BLOCK = 1 << 16;
+  private static final int BLOCKS_PER_THREAD = 4;
+
+  private final List<RawDataFile> rawDataFiles;
+  private final List<Column> rowColumns;
+  private final List<Column> featureColumns;
+  private final String fieldSeparator;
+  private final String lineSeparator = System.lineSeparator();
+  private final Object lock = new Object();
+  private final ForkJoinPool pool;
+
+  /**
+   * @param rawDataFiles   the feature columns are repeated for each raw data file
+   * @param rowColumns     columns of row types
+   * @param featureColumns columns of feature types
+   * @param fieldSeparator separation of columns
+   * @param pool           formats the blocks
+   */
+  CSVRowBlockWriter(@NotNull List<RawDataFile> rawDataFiles, @NotNull List<Column> rowColumns,
+      @NotNull List<Column> featureColumns, @NotNull String fieldSeparator,
+      @NotNull ForkJoinPool pool) {
+    this.rawDataFiles = rawDataFiles;
+    this.rowColumns = rowColumns;
+    this.featureColumns = featureColumns;
+    this.fieldSeparator = fieldSeparator;
+    this.pool = pool;
+  }
+
+  /**
+   * Formats and writes all rows, each followed by a line separator
+   *
+   * @param rows        the rows in export order
+   * @param writer      the target
+   * @param canceled    stops the export if true
+   * @param rowsWritten receives the number of rows after each written block
+   */
+  void write(@NotNull List<FeatureListRow> rows, @NotNull Writer writer,
+      @NotNull BooleanSupplier canceled, @NotNull IntConsumer rowsWritten) throws IOException {
+    final int numColumns = rowColumns.size() + featureColumns.size() * rawDataFiles.size();
+    final int rowsPerBlock = Math.max(1, VALUES_PER_BLOCK / Math.max(1, numColumns));
+    final int numBlocks = (rows.size() + rowsPerBlock - 1) / rowsPerBlock;
+    final int blocksPerWave = pool.getParallelism() * BLOCKS_PER_THREAD;
+    // formatters of each thread, only referenced during this export
+    final Map<Thread, RowFormatter> formatters = new ConcurrentHashMap<>();
+
+    char[] chars = new char[0];
+    StringBuilder[] current = createBuffers(blocksPerWave);
+    StringBuilder[] next = createBuffers(blocksPerWave);
+    ForkJoinTask<?> formatting = formatAsync(rows, rowsPerBlock, 0, numBlocks, current,
+        formatters);
+    try {
+      for (int first = 0; first < numBlocks && !canceled.getAsBoolean(); first += blocksPerWave) {
+        formatting.join();
+        final int following = first + blocksPerWave;
+        if (following < numBlocks) {
+          formatting = formatAsync(rows, rowsPerBlock, following, numBlocks, next, formatters);
+        }
+
+        final int last = Math.min(following, numBlocks);
+        for (int b = first; b < last; b++) {
+          final StringBuilder block = current[b - first];
+          if (chars.length < block.length()) {
+            chars = new char[block.length()];
+          }
+          block.getChars(0, block.length(), chars, 0);
+          writer.write(chars, 0, block.length());
+          rowsWritten.accept(Math.min(rowsPerBlock, rows.size() - b * rowsPerBlock));
+        }
+
+        final StringBuilder[] written = current;
+        current = next;
+        next = written;
+      }
+    } finally {
+      // do not leave a running task behind on cancel or error
+      formatting.quietlyJoin();
+    }
+  }
+
+  private ForkJoinTask<?> formatAsync(List<FeatureListRow> rows, int rowsPerBlock, int first,
+      int numBlocks, StringBuilder[] buffers, Map<Thread, RowFormatter> formatters) {
+    final int count = Math.min(buffers.length, numBlocks - first);
+    // the parallel stream forks into the pool of the submitted task
+    return pool.submit(() -> IntStream.range(0, count).parallel().forEach(i -> {
+      final int start = (first + i) * rowsPerBlock;
+      final int end = Math.min(start + rowsPerBlock, rows.size());
+      final StringBuilder b = buffers[i];
+      b.setLength(0);
+      final RowFormatter formatter = formatters.computeIfAbsent(Thread.currentThread(),
+          thread -> new RowFormatter());
+      for (int r = start; r < end; r++) {
+        formatter.append(rows.get(r), b);
+        b.append(lineSeparator);
+      }
+    }));
+  }
+
+  private static StringBuilder[] createBuffers(int n) {
+    final StringBuilder[] buffers = new StringBuilder[n];
+    for (int i = 0; i < n; i++) {
+      buffers[i] = new StringBuilder();
+    }
+    return buffers;
+  }
+
+  private String csvEscape(String input) {
+    return CSVUtils.escape(input, fieldSeparator);
+  }
+
+  private static Object getValue(@Nullable ModularDataModel data, DataType type) {
+    Object value = data == null ? null : data.get(type);
+    if (value == null) {
+      value = type.getDefaultValue();
+    }
+    return value;
+  }
+
+  private static void logFormatError(DataType type, Object value, Exception e) {
+    logger.log(Level.FINEST,
+        "Cannot format value of type " + type.getClass().getName() + " value: " + value, e);
+  }
+
+  /**
+   * A column of a data type or of a sub column of a {@link SubColumnsFactory}
+   *
+   * @param type      the data type
+   * @param subColumn the sub column index or -1 for the whole type
+   */
+  record Column(@NotNull DataType type, int subColumn) {
+
+  }
+
+  @FunctionalInterface
+  private interface ValueFormatter {
+
+    String format(@Nullable ModularDataModel data);
+  }
+
+  /**
+   * Formatters of all columns for one thread
+   */
+  private class RowFormatter {
+
+    private final ValueFormatter[] rowFormatters;
+    private final ValueFormatter[] featureFormatters;
+
+    private RowFormatter() {
+      rowFormatters = rowColumns.stream().map(this::createFormatter)
+          .toArray(ValueFormatter[]::new);
+      featureFormatters = featureColumns.stream().map(this::createFormatter)
+          .toArray(ValueFormatter[]::new);
+    }
+
+    private void append(FeatureListRow row, StringBuilder b) {
+      boolean first = true;
+      for (ValueFormatter formatter : rowFormatters) {
+        if (!first) {
+          b.append(fieldSeparator);
+        }
+        first = false;
+        b.append(formatter.format(row));
+      }
+      for (RawDataFile raw : rawDataFiles) {
+        final ModularFeature feature = (ModularFeature) row.getFeature(raw);
+        for (ValueFormatter formatter : featureFormatters) {
+          if (!first) {
+            b.append(fieldSeparator);
+          }
+          first = false;
+          b.append(formatter.format(feature));
+        }
+      }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private ValueFormatter createFormatter(Column column) {
+      final DataType type = column.type();
+      final int sub = column.subColumn();
+      if (type instanceof NumberRangeType<?> rangeType && sub >= 0) {
+        final NumberFormat format = (NumberFormat) rangeType.getFormatter().clone();
+        return data -> {
+          final Range<?> range = (Range<?>) getValue(data, type);
+          if (range == null) {
+            return "";
+          }
+          return switch (sub) {
+            case 0 -> csvEscape(format.format(range.lowerEndpoint()));
+            case 1 -> csvEscape(format.format(range.upperEndpoint()));
+            default -> "";
+          };
+        };
+      }
+      if (sub == -1 && (type instanceof DoubleType || type instanceof FloatType
+                        || type instanceof IntegerType)) {
+        final NumberFormat format = (NumberFormat) ((NumberType<?>) type).getFormatter().clone();
+        return data -> {
+          final Object value = getValue(data, type);
+          try {
+            return value == null ? "" : csvEscape(format.format(value));
+          } catch (Exception e) {
+            logFormatError(type, value, e);
+            return "";
+          }
+        };
+      }
+
+      if (type instanceof SubColumnsFactory subFactory) {
+        return data -> {
+          synchronized (lock) {
+            return csvEscape(subFactory.getFormattedSubColValue(sub, getValue(data, type)));
+          }
+        };
+      }
+      return data -> {
+        synchronized (lock) {
+          final Object value = getValue(data, type);
+          try {
+            return csvEscape(type.getFormattedString(value));
+          } catch (Exception e) {
+            logFormatError(type, value, e);
+            return "";
+          }
+        }
+      };
+    }
+  }
+}
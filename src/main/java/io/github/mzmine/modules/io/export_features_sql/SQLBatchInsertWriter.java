@@ -0,0 +1,123 @@
+/*
+ * Copyright 2006-2021 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.io.export_features_sql;
+
+import java.io.ByteArrayInputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Inserts rows with one prepared statement. Rows are added to a JDBC batch which is executed and
+ * committed once it reaches the batch size.
+ */
+public class SQLBatchInsertWriter implements SQLRowWriter {
+
+  private final Connection connection;
+  private final PreparedStatement statement;
+  private final int[] sqlTypes;
+  private final int batchSize;
+  private int batchRows = 0;
+  private long writtenRows = 0;
+
+  /**
+   * @param connection database connection, auto commit is disabled
+   * @param tableName  target table
+   * @param columns    target columns
+   * @param sqlTypes   {@link Types} of each column, used for null values
+   * @param batchSize  number of rows per batch and transaction
+   */
+  public SQLBatchInsertWriter(Connection connection, String tableName, String[] columns,
+      int[] sqlTypes, int batchSize) throws SQLException {
+    this.connection = connection;
+    this.sqlTypes = sqlTypes;
+    this.batchSize = Math.max(1, batchSize);
+    connection.setAutoCommit(false);
+    statement = connection.prepareStatement(createInsertStatement(tableName, columns));
+  }
+
+  /**
+   * @return INSERT INTO table (columns) VALUES (?,...)
+   */
+  public static String createInsertStatement(String tableName, String[] columns) {
+    StringBuilder sql = new StringBuilder();
+    sql.append("INSERT INTO ").append(tableName).append(" (");
+    sql.append(String.join(",", columns));
+    sql.append(" ) VALUES (");
+    for (int i = 0; i < columns.length; i++) {
+      sql.append(i == 0 ? "?" : ",?");
+    }
+    sql.append(")");
+    return sql.toString();
+  }
+
+  @Override
+  public void write(Object[] values) throws SQLException {
+    for (int i = 0; i < values.length; i++) {
+      final Object value = values[i];
+      final int index = i + 1;
+      if (value == null) {
+        statement.setNull(index, sqlTypes[i]);
+      } else if (value instanceof Integer v) {
+        statement.setInt(index, v);
+      } else if (value instanceof Number v) {
+        statement.setDouble(index, v.doubleValue());
+      } else if (value instanceof byte[] bytes) {
+        statement.setBlob(index, new ByteArrayInputStream(bytes));
+      } else {
+        statement.setString(index, value.toString());
+      }
+    }
+    statement.addBatch();
+    batchRows++;
+    if (batchRows >= batchSize) {
+      flush();
+    }
+  }
+
+  @Override
+  public void flush() throws SQLException {
+    if (batchRows == 0) {
+      return;
+    }
+    statement.executeBatch();
+    connection.commit();
+    writtenRows += batchRows;
+    batchRows = 0;
+  }
+
+  @Override
+  public long getWrittenRows() {
+    return writtenRows;
+  }
+
+  @Override
+  public void close() throws SQLException {
+    try {
+      if (batchRows > 0) {
+        statement.clearBatch();
+        batchRows = 0;
+        connection.rollback();
+      }
+    } finally {
+      statement.close();
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2006-2021 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.io.export_features_sql;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * Streams rows into PostgreSQL with COPY ... FROM STDIN in CSV format. Each batch is sent as one
+ * COPY and committed. Binary values are not supported, use {@link SQLBatchInsertWriter} for them.
+ */
+public class SQLCopyWriter implements SQLRowWriter {
+
+  private final Connection connection;
+  private final CopyManager copyManager;
+  private final String copySql;
+  private final int batchSize;
+  private final StringBuilder batch = new StringBuilder();
+  private int batchRows = 0;
+  private long writtenRows = 0;
+
+  /**
+   * @param connection PostgreSQL connection, auto commit is disabled
+   * @param tableName  target table
+   * @param columns    target columns
+   * @param batchSize  number of rows per COPY and transaction
+   */
+  public SQLCopyWriter(Connection connection, String tableName, String[] columns, int batchSize)
+      throws SQLException {
+    this.connection = connection;
+    this.batchSize = Math.max(1, batchSize);
+    connection.setAutoCommit(false);
+    copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+    copySql = "COPY " + tableName + " (" + String.join(",", columns) + ") FROM STDIN WITH CSV";
+  }
+
+  /**
+   * @return true if COPY can be used for this connection
+   */
+  public static boolean isSupported(Connection connection) {
+    try {
+      return connection.isWrapperFor(PGConnection.class);
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void write(Object[] values) throws SQLException {
+    appendCsvRow(batch, values);
+    batchRows++;
+    if (batchRows >= batchSize) {
+      flush();
+    }
+  }
+
+  /**
+   * Appends the values as one line in the CSV format of COPY. Null is an unquoted empty value,
+   * all other non-numeric values are quoted, so that empty strings are not read as null.
+   *
+   * @param line   the target
+   * @param values the row values
+   * @throws SQLException for binary values
+   */
+  public static void appendCsvRow(StringBuilder line, Object[] values) throws SQLException {
+    final int start = line.length();
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        line.append(',');
+      }
+      final Object value = values[i];
+      if (value instanceof byte[]) {
+        // no partial line in the batch
+        line.setLength(start);
+        throw new SQLException("Binary values are not supported by COPY");
+      } else if (value instanceof Number) {
+        line.append(value);
+      } else if (value != null) {
+        line.append('"').append(value.toString().replace("\"", "\"\"")).append('"');
+      }
+    }
+    line.append('\n');
+  }
+
+  @Override
+  public void flush() throws SQLException {
+    if (batchRows == 0) {
+      return;
+    }
+    try {
+      copyManager.copyIn(copySql, new StringReader(batch.toString()));
+    } catch (IOException e) {
+      throw new SQLException("Error during COPY to the database", e);
+    }
+    connection.commit();
+    writtenRows += batchRows;
+    batchRows = 0;
+    batch.setLength(0);
+  }
+
+  @Override
+  public long getWrittenRows() {
+    return writtenRows;
+  }
+
+  @Override
+  public void close() throws SQLException {
+    // rows are only sent on flush
+    batchRows = 0;
+    batch.setLength(0);
+  }
+}
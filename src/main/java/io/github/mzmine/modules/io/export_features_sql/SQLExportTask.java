@@ -18,12 +18,6 @@
 
 package io.github.mzmine.modules.io.export_features_sql;
 
-import java.io.ByteArrayInputStream;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.sql.Types;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.FeatureIdentity;
 import io.github.mzmine.datamodel.IsotopePattern;
@@ -38,22 +32,29 @@ import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.RangeUtils;
 import io.github.mzmine.util.scans.ScanUtils;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Types;
 import java.time.Instant;
-import java.util.Date;
+import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 class SQLExportTask extends AbstractTask {
 
+  private static final Logger logger = Logger.getLogger(SQLExportTask.class.getName());
+
   private final FeatureList featureList;
   private final String connectionString;
   private final String tableName;
   private final SQLColumnSettings exportColumns;
   private final boolean emptyExport;
+  private final int batchSize;
+  private final boolean useCopy;
 
   private int processedRows = 0, totalRows = 0;
 
-  private Connection dbConnection;
-
   SQLExportTask(ParameterSet parameters, @NotNull Instant moduleCallDate) {
     super(null, moduleCallDate); // no new data stored -> null
 
@@ -65,7 +66,8 @@ class SQLExportTask extends AbstractTask {
     this.tableName = parameters.getParameter(SQLExportParameters.tableName).getValue();
     this.exportColumns = parameters.getParameter(SQLExportParameters.exportColumns).getValue();
     this.emptyExport = parameters.getParameter(SQLExportParameters.emptyExport).getValue();
-
+    this.batchSize = parameters.getParameter(SQLExportParameters.batchSize).getValue();
+    this.useCopy = parameters.getParameter(SQLExportParameters.useCopy).getValue();
   }
 
   @Override
@@ -88,8 +90,9 @@ class SQLExportTask extends AbstractTask {
     // Get number of rows
     totalRows = featureList.getNumberOfRows();
 
+    final Connection dbConnection;
     try {
-      this.dbConnection = DriverManager.getConnection(connectionString);
+      dbConnection = DriverManager.getConnection(connectionString);
     } catch (SQLException e) {
       setStatus(TaskStatus.ERROR);
       setErrorMessage("Error connecting to the SQL database: " + e.toString());
@@ -98,23 +101,23 @@ class SQLExportTask extends AbstractTask {
 
     FeatureListRow rows[] = featureList.getRows().toArray(FeatureListRow[]::new);
 
-    try {
-      dbConnection.setAutoCommit(false);
-
+    try (dbConnection; SQLRowWriter writer = createWriter(dbConnection)) {
       // If select, an empty row with just the raw data file
       // information will be exported
       if (rows.length < 1 && emptyExport) {
-        exportFeatureListRow(null);
+        exportFeatureListRow(writer, null);
       } else {
         for (FeatureListRow row : rows) {
           if (getStatus() != TaskStatus.PROCESSING)
             break;
-          exportFeatureListRow(row);
+          exportFeatureListRow(writer, row);
           processedRows++;
         }
       }
-      dbConnection.commit();
-      dbConnection.close();
+      // the last batch is discarded on cancel
+      if (getStatus() == TaskStatus.PROCESSING) {
+        writer.flush();
+      }
     } catch (SQLException e) {
       setStatus(TaskStatus.ERROR);
       setErrorMessage("Error running SQL query: " + e.toString());
@@ -126,190 +129,159 @@ class SQLExportTask extends AbstractTask {
 
   }
 
-  private void exportFeatureListRow(FeatureListRow row) throws SQLException {
+  /**
+   * COPY for PostgreSQL if selected and no binary columns are exported, batched inserts otherwise
+   */
+  private SQLRowWriter createWriter(Connection dbConnection) throws SQLException {
+    final int numColumns = exportColumns.getRowCount();
+    final String[] columns = new String[numColumns];
+    final int[] sqlTypes = new int[numColumns];
+    boolean binary = false;
+    for (int i = 0; i < numColumns; i++) {
+      columns[i] = (String) exportColumns.getValueAt(i, 0);
+      SQLExportDataType dataType = (SQLExportDataType) exportColumns.getValueAt(i, 1);
+      binary |= isBinary(dataType);
+      sqlTypes[i] = isBinary(dataType) ? Types.BLOB : Types.VARCHAR;
+    }
 
-    // Cancel?
-    if (isCanceled()) {
-      return;
+    if (useCopy) {
+      if (!binary && SQLCopyWriter.isSupported(dbConnection)) {
+        return new SQLCopyWriter(dbConnection, tableName, columns, batchSize);
+      }
+      logger.info("COPY is only used for PostgreSQL without binary columns, using batched inserts");
     }
+    return new SQLBatchInsertWriter(dbConnection, tableName, columns, sqlTypes, batchSize);
+  }
 
-    // Value for looping through raw data files
-    boolean loopDataFiles = false;
+  private static boolean isBinary(SQLExportDataType dataType) {
+    return dataType == SQLExportDataType.ISOTOPEPATTERN || dataType == SQLExportDataType.MSMS;
+  }
 
-    StringBuilder sql = new StringBuilder();
-    sql.append("INSERT INTO ");
-    sql.append(tableName);
-    sql.append(" (");
-    for (int i = 0; i < exportColumns.getRowCount(); i++) {
-      sql.append(exportColumns.getValueAt(i, 0));
-      if (i < exportColumns.getRowCount() - 1)
-        sql.append(",");
-    }
-    sql.append(" ) VALUES (");
-    for (int i = 0; i < exportColumns.getRowCount(); i++) {
-      sql.append("?");
-      if (i < exportColumns.getRowCount() - 1)
-        sql.append(",");
+  /**
+   * @return true if the value differs between the raw data files of a row
+   */
+  private static boolean isDataFileElement(SQLExportDataType dataType) {
+    return switch (dataType) {
+      case FEATURECHARGE, FEATUREDURATION, FEATURESTATUS, FEATUREMZ, FEATURERT, FEATURERT_START,
+          FEATURERT_END, FEATUREHEIGHT, FEATUREAREA, DATAPOINTS, FWHM, TAILINGFACTOR,
+          ASYMMETRYFACTOR, RAWFILE -> true;
+      default -> false;
+    };
+  }
+
+  private void exportFeatureListRow(SQLRowWriter writer, FeatureListRow row) throws SQLException {
+
+    // Cancel?
+    if (isCanceled()) {
+      return;
     }
-    sql.append(")");
 
-    PreparedStatement statement = dbConnection.prepareStatement(sql.toString());
+    final int numColumns = exportColumns.getRowCount();
+    final Object[] values = new Object[numColumns];
 
     if (row == null) {
-      for (int i = 0; i < exportColumns.getRowCount(); i++) {
+      for (int i = 0; i < numColumns; i++) {
         SQLExportDataType dataType = (SQLExportDataType) exportColumns.getValueAt(i, 1);
         String dataValue = (String) exportColumns.getValueAt(i, 2);
-        switch (dataType) {
-          case CONSTANT:
-            statement.setString(i + 1, dataValue);
-            break;
-          case RAWFILE:
-            RawDataFile rawdatafiles[] = featureList.getRawDataFiles().toArray(RawDataFile[]::new);
-            statement.setString(i + 1, rawdatafiles[0].getName());
-            break;
-          default:
-            statement.setString(i + 1, null);
-            break;
-        }
+        values[i] = switch (dataType) {
+          case CONSTANT -> dataValue;
+          case RAWFILE -> featureList.getRawDataFiles().get(0).getName();
+          default -> null;
+        };
       }
-      statement.executeUpdate();
+      writer.write(values);
+      return;
     }
 
-    else {
-      for (RawDataFile rawDataFile : row.getRawDataFiles()) {
-        Feature feature = row.getFeature(rawDataFile);
+    // Value for looping through raw data files
+    boolean loopDataFiles = false;
+    // row values are the same for all raw data files
+    for (int i = 0; i < numColumns; i++) {
+      SQLExportDataType dataType = (SQLExportDataType) exportColumns.getValueAt(i, 1);
+      if (isDataFileElement(dataType)) {
+        loopDataFiles = true;
+      } else {
+        values[i] = getRowValue(row, dataType, (String) exportColumns.getValueAt(i, 2));
+      }
+    }
 
-        for (int i = 0; i < exportColumns.getRowCount(); i++) {
-          SQLExportDataType dataType = (SQLExportDataType) exportColumns.getValueAt(i, 1);
-          String dataValue = (String) exportColumns.getValueAt(i, 2);
-          switch (dataType) {
-            case CONSTANT:
-              statement.setString(i + 1, dataValue);
-              break;
-            case MZ:
-              statement.setDouble(i + 1, row.getAverageMZ());
-              break;
-            case RT:
-              statement.setDouble(i + 1, row.getAverageRT());
-              break;
-            case ID:
-              statement.setInt(i + 1, row.getID());
-              break;
-            case FEATURECHARGE:
-              statement.setDouble(i + 1, feature.getCharge());
-              loopDataFiles = true;
-              break;
-            case FEATUREDURATION:
-              statement.setDouble(i + 1, RangeUtils.rangeLength(feature.getRawDataPointsRTRange()));
-              loopDataFiles = true;
-              break;
-            case FEATURESTATUS:
-              statement.setString(i + 1, feature.getFeatureStatus().name());
-              loopDataFiles = true;
-              break;
-            case FEATUREMZ:
-              statement.setDouble(i + 1, feature.getMZ());
-              loopDataFiles = true;
-              break;
-            case FEATURERT:
-              statement.setDouble(i + 1, feature.getRT());
-              loopDataFiles = true;
-              break;
-            case FEATURERT_START:
-              statement.setDouble(i + 1, feature.getRawDataPointsRTRange().lowerEndpoint());
-              loopDataFiles = true;
-              break;
-            case FEATURERT_END:
-              statement.setDouble(i + 1, feature.getRawDataPointsRTRange().upperEndpoint());
-              loopDataFiles = true;
-              break;
-            case FEATUREHEIGHT:
-              statement.setDouble(i + 1, feature.getHeight());
-              loopDataFiles = true;
-              break;
-            case FEATUREAREA:
-              statement.setDouble(i + 1, feature.getArea());
-              loopDataFiles = true;
-              break;
-            case DATAPOINTS:
-              statement.setDouble(i + 1, feature.getScanNumbers().size());
-              loopDataFiles = true;
-              break;
-            case FWHM:
-              statement.setDouble(i + 1, feature.getFWHM());
-              loopDataFiles = true;
-              break;
-            case TAILINGFACTOR:
-              statement.setDouble(i + 1, feature.getTailingFactor());
-              loopDataFiles = true;
-              break;
-            case ASYMMETRYFACTOR:
-              statement.setDouble(i + 1, feature.getAsymmetryFactor());
-              loopDataFiles = true;
-              break;
-            case RAWFILE:
-              statement.setString(i + 1, rawDataFile.getName());
-              loopDataFiles = true;
-              break;
-            case HEIGHT:
-              statement.setDouble(i + 1, row.getAverageHeight());
-              break;
-            case AREA:
-              statement.setDouble(i + 1, row.getAverageArea());
-              break;
-            case COMMENT:
-              statement.setString(i + 1, row.getComment());
-              break;
-            case IDENTITY:
-              FeatureIdentity id = row.getPreferredFeatureIdentity();
-              if (id != null) {
-                statement.setString(i + 1, id.getName());
-              } else {
-                statement.setNull(i + 1, Types.VARCHAR);
-              }
-              break;
-            case ISOTOPEPATTERN:
-              IsotopePattern isotopes = row.getBestIsotopePattern();
-              if (isotopes == null) {
-                statement.setNull(i + 1, Types.BLOB);
-                break;
-              }
-              DataPoint dataPoints[] = ScanUtils.extractDataPoints(isotopes);
-              byte bytes[] = ScanUtils.encodeDataPointsToBytes(dataPoints);
-              ByteArrayInputStream is = new ByteArrayInputStream(bytes);
-              statement.setBlob(i + 1, is);
-              break;
-            case MSMS:
-              Scan msmsScan = row.getBestFeature().getMostIntenseFragmentScan();
-              // Check if there is any MS/MS scan
-              if (msmsScan == null) {
-                statement.setNull(i + 1, Types.BLOB);
-                break;
-              }
-              MassList msmsMassList = msmsScan.getMassList();
-              // Check if there is a masslist for the scan
-              if (msmsMassList == null) {
-                statement.setNull(i + 1, Types.BLOB);
-                break;
-              }
-              dataPoints = msmsMassList.getDataPoints();
-              bytes = ScanUtils.encodeDataPointsToBytes(dataPoints);
-              is = new ByteArrayInputStream(bytes);
-              statement.setBlob(i + 1, is);
-              break;
-            default:
-              break;
-          }
+    for (RawDataFile rawDataFile : row.getRawDataFiles()) {
+      Feature feature = row.getFeature(rawDataFile);
+      for (int i = 0; i < numColumns; i++) {
+        SQLExportDataType dataType = (SQLExportDataType) exportColumns.getValueAt(i, 1);
+        if (isDataFileElement(dataType)) {
+          values[i] = getFeatureValue(rawDataFile, feature, dataType);
         }
-        statement.executeUpdate();
+      }
+      writer.write(values);
 
-        // If no data file elements are selected then don't loop through
-        // all
-        // data files in feature list
-        if (!loopDataFiles) {
-          break;
-        }
+      // If no data file elements are selected then don't loop through
+      // all
+      // data files in feature list
+      if (!loopDataFiles) {
+        break;
       }
     }
   }
+
+  @Nullable
+  private Object getRowValue(FeatureListRow row, SQLExportDataType dataType, String dataValue) {
+    return switch (dataType) {
+      case CONSTANT -> dataValue;
+      case MZ -> row.getAverageMZ();
+      case RT -> row.getAverageRT();
+      case ID -> row.getID();
+      case HEIGHT -> row.getAverageHeight();
+      case AREA -> row.getAverageArea();
+      case COMMENT -> row.getComment();
+      case IDENTITY -> {
+        FeatureIdentity id = row.getPreferredFeatureIdentity();
+        yield id != null ? id.getName() : null;
+      }
+      case ISOTOPEPATTERN -> {
+        IsotopePattern isotopes = row.getBestIsotopePattern();
+        if (isotopes == null) {
+          yield null;
+        }
+        DataPoint dataPoints[] = ScanUtils.extractDataPoints(isotopes);
+        yield ScanUtils.encodeDataPointsToBytes(dataPoints);
+      }
+      case MSMS -> {
+        Scan msmsScan = row.getBestFeature().getMostIntenseFragmentScan();
+        // Check if there is any MS/MS scan
+        if (msmsScan == null) {
+          yield null;
+        }
+        MassList msmsMassList = msmsScan.getMassList();
+        // Check if there is a masslist for the scan
+        if (msmsMassList == null) {
+          yield null;
+        }
+        yield ScanUtils.encodeDataPointsToBytes(msmsMassList.getDataPoints());
+      }
+      default -> null;
+    };
+  }
+
+  @Nullable
+  private Object getFeatureValue(RawDataFile rawDataFile, Feature feature,
+      SQLExportDataType dataType) {
+    return switch (dataType) {
+      case FEATURECHARGE -> (double) feature.getCharge();
+      case FEATUREDURATION -> RangeUtils.rangeLength(feature.getRawDataPointsRTRange());
+      case FEATURESTATUS -> feature.getFeatureStatus().name();
+      case FEATUREMZ -> feature.getMZ();
+      case FEATURERT -> feature.getRT();
+      case FEATURERT_START -> feature.getRawDataPointsRTRange().lowerEndpoint();
+      case FEATURERT_END -> feature.getRawDataPointsRTRange().upperEndpoint();
+      case FEATUREHEIGHT -> feature.getHeight();
+      case FEATUREAREA -> feature.getArea();
+      case DATAPOINTS -> (double) feature.getScanNumbers().size();
+      case FWHM -> feature.getFWHM();
+      case TAILINGFACTOR -> feature.getTailingFactor();
+      case ASYMMETRYFACTOR -> feature.getAsymmetryFactor();
+      case RAWFILE -> rawDataFile.getName();
+      default -> null;
+    };
+  }
 }
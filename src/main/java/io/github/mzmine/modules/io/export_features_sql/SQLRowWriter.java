@@ -0,0 +1,51 @@
+/*
+ * Copyright 2006-2021 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.io.export_features_sql;
+
+import java.sql.SQLException;
+
+/**
+ * Writes exported rows into a database table. Rows are collected into batches and each batch is
+ * committed as one transaction.
+ */
+public interface SQLRowWriter extends AutoCloseable {
+
+  /**
+   * @param values one value per column: null, {@link Number}, {@link String} or byte[] for binary
+   *               data
+   */
+  void write(Object[] values) throws SQLException;
+
+  /**
+   * Sends and commits the current batch
+   */
+  void flush() throws SQLException;
+
+  /**
+   * @return number of rows that were sent to the database
+   */
+  long getWrittenRows();
+
+  /**
+   * Discards the rows that were not flushed, so that a canceled or failed export does not commit
+   * its last batch. Call {@link #flush()} after the last row to commit it.
+   */
+  @Override
+  void close() throws SQLException;
+}
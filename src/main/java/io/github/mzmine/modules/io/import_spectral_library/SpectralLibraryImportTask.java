@@ -25,6 +25,7 @@ import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
 import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
 import io.github.mzmine.util.spectraldb.parser.AutoLibraryParser;
+import io.github.mzmine.util.spectraldb.parser.SpectralLibraryCache;
 import io.github.mzmine.util.spectraldb.parser.UnsupportedFormatException;
 import java.io.File;
 import java.io.IOException;
@@ -66,8 +67,14 @@ public class SpectralLibraryImportTask extends AbstractTask {
     setStatus(TaskStatus.PROCESSING);
 
     try {
-      // will block until all library spectra are added to entries list
-      parseFile(dataBaseFile);
+      final boolean loadedFromCache = readCache(dataBaseFile);
+      if (!loadedFromCache) {
+        // will block until all library spectra are added to entries list
+        parseFile(dataBaseFile);
+        if (!isCanceled() && entries.size() > 0) {
+          writeCache(dataBaseFile);
+        }
+      }
       if (entries.size() > 0) {
         project.addSpectralLibrary(new SpectralLibrary(dataBaseFile, entries));
         logger.log(Level.INFO, () -> String
@@ -84,6 +91,40 @@ public class SpectralLibraryImportTask extends AbstractTask {
     setStatus(TaskStatus.FINISHED);
   }
 
+  /**
+   * Loads all entries from the binary library cache if it is up to date
+   *
+   * @return true if the entries were loaded from the cache
+   */
+  private boolean readCache(File dataBaseFile) {
+    try {
+      final List<SpectralDBEntry> cached = SpectralLibraryCache.read(dataBaseFile);
+      if (cached != null) {
+        entries.addAll(cached);
+        logger.fine(() -> "Loaded library from cache " + SpectralLibraryCache.getCacheFile(
+            dataBaseFile));
+        return true;
+      }
+    } catch (Exception e) {
+      logger.log(Level.WARNING,
+          "Cannot read library cache, parsing library file " + dataBaseFile + " instead", e);
+      entries.clear();
+    }
+    return false;
+  }
+
+  /**
+   * Writes the binary library cache to speed up the next import. Failures are only logged, e.g.,
+   * if the library directory is read only.
+   */
+  private void writeCache(File dataBaseFile) {
+    try {
+      SpectralLibraryCache.write(dataBaseFile, entries);
+    } catch (Exception e) {
+      logger.log(Level.WARNING, "Cannot write library cache for " + dataBaseFile, e);
+    }
+  }
+
   /**
    * Load all library entries from data base file
    *
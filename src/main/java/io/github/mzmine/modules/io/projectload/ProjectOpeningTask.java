@@ -19,8 +19,10 @@
 package io.github.mzmine.modules.io.projectload;
 
 import com.google.common.io.CountingInputStream;
+import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.projectload.version_3_0.FeatureListLoadTask;
+import io.github.mzmine.modules.io.projectload.version_3_0.ProcessedRawDataFileReader;
 import io.github.mzmine.modules.io.projectsave.ProjectSavingTask;
 import io.github.mzmine.modules.io.projectsave.RawDataFileSaveHandler;
 import io.github.mzmine.parameters.ParameterSet;
@@ -177,6 +179,8 @@ public class ProjectOpeningTask extends AbstractTask {
           loadUserParameters(cis);
         } else if (entryName.equals(RawDataFileSaveHandler.RAW_DATA_IMPORT_BATCH_FILENAME)) {
           loadRawDataFiles(cis, zipFile);
+        } else if (ProcessedRawDataFileReader.getFileIndex(entryName) != null) {
+          loadProcessedRawDataFile(zipFile, ProcessedRawDataFileReader.getFileIndex(entryName));
         } else if(entryName.equals(ProjectSavingTask.STANDALONE_FILENAME)) {
           newProject.setStandalone(true);
         }
@@ -373,6 +377,16 @@ public class ProjectOpeningTask extends AbstractTask {
 
   }
 
+  /**
+   * Loads a raw data file that was saved with its scans and mass lists. The scan and binary data
+   * entries of the file are read directly from the zip file.
+   */
+  private void loadProcessedRawDataFile(ZipFile zipFile, int fileIndex) throws IOException {
+    currentLoadedObjectName = "MS data files";
+    final RawDataFile file = new ProcessedRawDataFileReader(zipFile).read(fileIndex);
+    newProject.addFile(file);
+  }
+
   private boolean loadRawDataFiles(InputStream is, ZipFile zipFile) {
     currentLoadedObjectName = ("MS data files");
     rawDataFileOpenHandler.setBatchFileStream(is);
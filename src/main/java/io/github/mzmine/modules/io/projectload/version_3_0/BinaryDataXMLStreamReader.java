@@ -0,0 +1,87 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.io.projectload.version_3_0;
+
+import io.github.mzmine.util.ParsingUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Xml reader that resolves numeric arrays from the binary data file written by the
+ * {@link io.github.mzmine.modules.io.projectsave.BinaryDataXMLStreamWriter}. See
+ * {@link ParsingUtils#readDoubleValues(XMLStreamReader)}.
+ */
+public class BinaryDataXMLStreamReader extends StreamReaderDelegate implements AutoCloseable {
+
+  private final FileChannel channel;
+  private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+  public BinaryDataXMLStreamReader(@NotNull XMLStreamReader reader, @NotNull File binaryFile)
+      throws IOException {
+    super(reader);
+    channel = FileChannel.open(binaryFile.toPath(), StandardOpenOption.READ);
+  }
+
+  /**
+   * @param offset    the byte offset in the binary file
+   * @param numValues the number of values to read
+   * @return the values
+   */
+  public double[] readDoubles(long offset, int numValues) throws XMLStreamException {
+    final int bytes = numValues * Double.BYTES;
+    if (buffer.capacity() < bytes) {
+      buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    buffer.clear().limit(bytes);
+    try {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, offset + buffer.position()) < 0) {
+          throw new XMLStreamException("Unexpected end of binary data at offset " + offset);
+        }
+      }
+    } catch (IOException e) {
+      throw new XMLStreamException("Cannot read binary data", e);
+    }
+    buffer.flip();
+    final double[] values = new double[numValues];
+    buffer.asDoubleBuffer().get(values);
+    return values;
+  }
+
+  /**
+   * Closes the xml reader and the binary file.
+   */
+  @Override
+  public void close() throws XMLStreamException {
+    super.close();
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new XMLStreamException("Cannot close binary data", e);
+    }
+  }
+}
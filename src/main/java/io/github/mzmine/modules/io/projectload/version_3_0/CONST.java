@@ -33,6 +33,7 @@ public class CONST {
   public static final String XML_MOBILITY_VALUES_ELEMENT = "mobilities";
   public static final String XML_SCAN_LIST_ELEMENT = "scans";
   public static final String XML_NUM_VALUES_ATTR = "numvalues";
+  public static final String XML_BINARY_OFFSET_ATTR = "binaryoffset";
 
   public static final String XML_NUM_ROWS_ATTR = "numberofrows";
   public static final String XML_FLIST_NAME_ATTR = "featurelistname";
@@ -196,9 +196,17 @@ public class FeatureListLoadTask extends AbstractTask {
     processedRows = 0;
     totalRows = flist.getNumberOfRows();
 
-    try (InputStream fis = new FileInputStream(flistFile)) {
-      final XMLInputFactory xif = XMLInputFactory.newInstance();
-      final XMLStreamReader reader = xif.createXMLStreamReader(fis);
+    // projects saved with older versions store all values as text in the xml
+    final File binaryFile = new File(flistFile.toString()
+        .replace(FeatureListSaveTask.DATA_FILE_SUFFIX,
+            FeatureListSaveTask.BINARY_DATA_FILE_SUFFIX));
+
+    final XMLInputFactory xif = XMLInputFactory.newInstance();
+    try (InputStream fis = new FileInputStream(flistFile);
+        BinaryDataXMLStreamReader binaryReader = binaryFile.exists()
+            ? new BinaryDataXMLStreamReader(xif.createXMLStreamReader(fis), binaryFile) : null) {
+      final XMLStreamReader reader =
+          binaryReader != null ? binaryReader : xif.createXMLStreamReader(fis);
 
       while (reader.hasNext()) {
         if (isCanceled()) {
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.io.projectload.version_3_0;
+
+import static io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter.XML_COLOR_ATTR;
+import static io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter.XML_MASS_LIST_ELEMENT;
+import static io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter.XML_MASS_LIST_SCAN_POINTER_ATTR;
+import static io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter.XML_MSMS_INFO_LIST_ELEMENT;
+import static io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter.XML_SCAN_DEFINITION_ATTR;
+import static io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter.XML_SCAN_MSLEVEL_ATTR;
+import static io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter.XML_SCAN_MSMS_INFO_ELEMENT;
+import static io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter.XML_SCAN_MZ_RANGE_ATTR;
+import static io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter.XML_SCAN_NUMBER_ATTR;
+import static io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter.XML_SCAN_POLARITY_ATTR;
+import static io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter.XML_SCAN_RT_ATTR;
+import static io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter.XML_SCAN_SPECTRUM_TYPE_ATTR;
+
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.features.FeatureList.FeatureListAppliedMethod;
+import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.datamodel.impl.masslist.ScanPointerMassList;
+import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
+import io.github.mzmine.datamodel.msms.MsMsInfo;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter;
+import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.ParsingUtils;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javafx.scene.paint.Color;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Restores a raw data file that was saved by {@link ProcessedRawDataFileWriter}. The data points
+ * are read from the binary data entry and stored in the {@link MemoryMapStorage} of the new file,
+ * no import or processing module is executed.
+ */
+public class ProcessedRawDataFileReader {
+
+  private static final Pattern METADATA_FILE_PATTERN = Pattern.compile(
+      Pattern.quote(ProcessedRawDataFileWriter.PROCESSED_DATA_FOLDER) + "(\\d+)" + Pattern.quote(
+          ProcessedRawDataFileWriter.METADATA_FILE_SUFFIX));
+
+  private final ZipFile zipFile;
+
+  public ProcessedRawDataFileReader(@NotNull ZipFile zipFile) {
+    this.zipFile = zipFile;
+  }
+
+  /**
+   * @param entryName the name of a zip entry
+   * @return the file index if the entry is the metadata entry of a processed raw data file, null
+   * otherwise.
+   */
+  @Nullable
+  public static Integer getFileIndex(@NotNull String entryName) {
+    final Matcher matcher = METADATA_FILE_PATTERN.matcher(entryName);
+    return matcher.matches() ? Integer.parseInt(matcher.group(1)) : null;
+  }
+
+  /**
+   * @param fileIndex the index of the file in the zip, see {@link #getFileIndex(String)}.
+   * @return the restored raw data file. The file is not added to a project.
+   */
+  @NotNull
+  public RawDataFile read(int fileIndex) throws IOException {
+    final Element root;
+    try (InputStream is = getEntryStream(ProcessedRawDataFileWriter.getMetadataFileName(fileIndex))) {
+      final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+          .parse(is);
+      root = document.getDocumentElement();
+    } catch (ParserConfigurationException | SAXException e) {
+      throw new IOException("Cannot read raw data file metadata", e);
+    }
+
+    final Element fileElement = (Element) root.getElementsByTagName(CONST.XML_RAW_FILE_ELEMENT)
+        .item(0);
+    final String name = fileElement.getElementsByTagName(CONST.XML_RAW_FILE_NAME_ELEMENT).item(0)
+        .getTextContent();
+    final NodeList pathNodes = fileElement.getElementsByTagName(CONST.XML_RAW_FILE_PATH_ELEMENT);
+    final String path = pathNodes.getLength() > 0 ? pathNodes.item(0).getTextContent() : null;
+
+    final RawDataFile file = MZmineCore.createNewFile(name, path,
+        MemoryMapStorage.forRawDataFile());
+    if (fileElement.hasAttribute(XML_COLOR_ATTR)) {
+      file.setColor(Color.web(fileElement.getAttribute(XML_COLOR_ATTR)));
+    }
+
+    final NodeList methodNodes = root.getElementsByTagName(CONST.XML_FLIST_APPLIED_METHOD_ELEMENT);
+    for (int i = 0; i < methodNodes.getLength(); i++) {
+      final FeatureListAppliedMethod method = SimpleFeatureListAppliedMethod.loadValueFromXML(
+          (Element) methodNodes.item(i));
+      if (method != null) {
+        file.getAppliedMethods().add(method);
+      }
+    }
+
+    final File tempBinaryFile = File.createTempFile("mzmine_rawdata_binary_data", ".tmp");
+    try {
+      try (InputStream is = getEntryStream(
+          ProcessedRawDataFileWriter.getBinaryDataFileName(fileIndex));
+          OutputStream os = new FileOutputStream(tempBinaryFile)) {
+        is.transferTo(os);
+      }
+      final XMLInputFactory xif = XMLInputFactory.newInstance();
+      try (InputStream is = getEntryStream(ProcessedRawDataFileWriter.getScansFileName(fileIndex));
+          BinaryDataXMLStreamReader reader = new BinaryDataXMLStreamReader(
+              xif.createXMLStreamReader(is), tempBinaryFile)) {
+        readScans(reader, file);
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Cannot read scans of raw data file " + name, e);
+    } finally {
+      tempBinaryFile.delete();
+    }
+    return file;
+  }
+
+  private InputStream getEntryStream(String name) throws IOException {
+    final ZipEntry entry = zipFile.getEntry(name);
+    if (entry == null) {
+      throw new IOException("Project file does not contain " + name);
+    }
+    return zipFile.getInputStream(entry);
+  }
+
+  private void readScans(XMLStreamReader reader, RawDataFile file)
+      throws XMLStreamException, IOException {
+    final MemoryMapStorage massListStorage = MemoryMapStorage.forMassList();
+
+    while (reader.hasNext()) {
+      reader.next();
+      if (!reader.isStartElement()) {
+        continue;
+      }
+      switch (reader.getLocalName()) {
+        case CONST.XML_RAW_FILE_SCAN_ELEMENT -> readScan(reader, file, massListStorage);
+        case XML_MSMS_INFO_LIST_ELEMENT -> readMsMsInfos(reader, file);
+      }
+    }
+  }
+
+  private void readScan(XMLStreamReader reader, RawDataFile file, MemoryMapStorage massListStorage)
+      throws XMLStreamException, IOException {
+    final int scanNumber = Integer.parseInt(reader.getAttributeValue(null, XML_SCAN_NUMBER_ATTR));
+    final int msLevel = Integer.parseInt(reader.getAttributeValue(null, XML_SCAN_MSLEVEL_ATTR));
+    final float rt = Float.parseFloat(reader.getAttributeValue(null, XML_SCAN_RT_ATTR));
+    final PolarityType polarity = PolarityType.valueOf(
+        reader.getAttributeValue(null, XML_SCAN_POLARITY_ATTR));
+    final MassSpectrumType spectrumType = MassSpectrumType.valueOf(
+        reader.getAttributeValue(null, XML_SCAN_SPECTRUM_TYPE_ATTR));
+    final String definition = reader.getAttributeValue(null, XML_SCAN_DEFINITION_ATTR);
+    final String mzRange = reader.getAttributeValue(null, XML_SCAN_MZ_RANGE_ATTR);
+
+    double[] mzs = null;
+    double[] intensities = null;
+    double[] massListMzs = null;
+    double[] massListIntensities = null;
+    boolean inMassList = false;
+    boolean scanPointerMassList = false;
+
+    while (reader.hasNext()) {
+      reader.next();
+      if (reader.isEndElement()) {
+        if (reader.getLocalName().equals(CONST.XML_RAW_FILE_SCAN_ELEMENT)) {
+          break;
+        } else if (reader.getLocalName().equals(XML_MASS_LIST_ELEMENT)) {
+          inMassList = false;
+        }
+      }
+      if (!reader.isStartElement()) {
+        continue;
+      }
+      switch (reader.getLocalName()) {
+        case XML_MASS_LIST_ELEMENT -> {
+          inMassList = true;
+          scanPointerMassList = Boolean.parseBoolean(
+              reader.getAttributeValue(null, XML_MASS_LIST_SCAN_POINTER_ATTR));
+        }
+        case CONST.XML_MZ_VALUES_ELEMENT -> {
+          if (inMassList) {
+            massListMzs = ParsingUtils.readDoubleValues(reader);
+          } else {
+            mzs = ParsingUtils.readDoubleValues(reader);
+          }
+        }
+        case CONST.XML_INTENSITY_VALUES_ELEMENT -> {
+          if (inMassList) {
+            massListIntensities = ParsingUtils.readDoubleValues(reader);
+          } else {
+            intensities = ParsingUtils.readDoubleValues(reader);
+          }
+        }
+      }
+    }
+
+    if (mzs == null || intensities == null) {
+      throw new XMLStreamException("Scan " + scanNumber + " does not contain data points.");
+    }
+
+    final SimpleScan scan = new SimpleScan(file, scanNumber, msLevel, rt, null, mzs, intensities,
+        spectrumType, polarity, definition, ParsingUtils.stringToDoubleRange(mzRange));
+    if (scanPointerMassList) {
+      scan.addMassList(new ScanPointerMassList(scan));
+    } else if (massListMzs != null && massListIntensities != null) {
+      scan.addMassList(new SimpleMassList(massListStorage, massListMzs, massListIntensities));
+    }
+    file.addScan(scan);
+  }
+
+  /**
+   * MS/MS infos may reference any scan of the file and are therefore read after all scans.
+   */
+  private void readMsMsInfos(XMLStreamReader reader, RawDataFile file) throws XMLStreamException {
+    while (reader.hasNext()) {
+      reader.next();
+      if (reader.isEndElement() && reader.getLocalName().equals(XML_MSMS_INFO_LIST_ELEMENT)) {
+        break;
+      }
+      if (!(reader.isStartElement() && reader.getLocalName().equals(XML_SCAN_MSMS_INFO_ELEMENT))) {
+        continue;
+      }
+      final int index = Integer.parseInt(
+          reader.getAttributeValue(null, CONST.XML_RAW_FILE_SCAN_INDEX_ATTR));
+      if (ParsingUtils.progressToStartElement(reader, MsMsInfo.XML_ELEMENT,
+          XML_SCAN_MSMS_INFO_ELEMENT)) {
+        final Scan scan = file.getScan(index);
+        if (scan instanceof SimpleScan simpleScan) {
+          simpleScan.setMsMsInfo(MsMsInfo.loadFromXML(reader, file));
+        }
+      }
+    }
+  }
+}
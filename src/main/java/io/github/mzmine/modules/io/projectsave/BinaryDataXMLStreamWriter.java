@@ -0,0 +1,99 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import com.sun.xml.txw2.output.IndentingXMLStreamWriter;
+import io.github.mzmine.util.ParsingUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Indenting xml writer that writes large numeric arrays to a separate binary file instead of text.
+ * The xml only references the offset in the binary file. Values are written as raw little endian
+ * doubles. See {@link ParsingUtils#writeDoubleValues(XMLStreamWriter, DoubleBuffer)}.
+ */
+public class BinaryDataXMLStreamWriter extends IndentingXMLStreamWriter implements
+    AutoCloseable {
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+      .order(ByteOrder.LITTLE_ENDIAN);
+  private long position = 0;
+
+  public BinaryDataXMLStreamWriter(@NotNull XMLStreamWriter writer, @NotNull File binaryFile)
+      throws IOException {
+    super(writer);
+    channel = FileChannel.open(binaryFile.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  /**
+   * Appends all values of the buffer (index 0 to capacity) to the binary file.
+   *
+   * @param values the values
+   * @return the byte offset of the first value in the binary file
+   */
+  public long writeDoubles(@NotNull DoubleBuffer values) throws XMLStreamException {
+    final long offset = position;
+    try {
+      for (int i = 0, length = values.capacity(); i < length; i++) {
+        if (buffer.remaining() < Double.BYTES) {
+          flushBuffer();
+        }
+        buffer.putDouble(values.get(i));
+      }
+    } catch (IOException e) {
+      throw new XMLStreamException("Cannot write binary data", e);
+    }
+    position += (long) values.capacity() * Double.BYTES;
+    return offset;
+  }
+
+  private void flushBuffer() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Closes the xml writer and the binary file.
+   */
+  @Override
+  public void close() throws XMLStreamException {
+    super.close();
+    try {
+      flushBuffer();
+      channel.close();
+    } catch (IOException e) {
+      throw new XMLStreamException("Cannot write binary data", e);
+    }
+  }
+}
@@ -17,7 +17,6 @@
 
 package io.github.mzmine.modules.io.projectsave;
 
-import com.sun.xml.txw2.output.IndentingXMLStreamWriter;
 import io.github.mzmine.datamodel.FeatureStatus;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
@@ -68,6 +67,7 @@ public class FeatureListSaveTask extends AbstractTask {
 
   public static final String METADATA_FILE_SUFFIX = "_metadata.xml";
   public static final String DATA_FILE_SUFFIX = "_data.xml";
+  public static final String BINARY_DATA_FILE_SUFFIX = "_data.bin";
   public static final String FLIST_FOLDER = "featurelists/";
   private static final Logger logger = Logger.getLogger(FeatureListSaveTask.class.getName());
   private static final IDType idType = new IDType();
@@ -90,6 +90,11 @@ public class FeatureListSaveTask extends AbstractTask {
     return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname + DATA_FILE_SUFFIX;
   }
 
+  public static String getBinaryDataFileName(String flistname) {
+    return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname
+           + BINARY_DATA_FILE_SUFFIX;
+  }
+
   public static String getMetadataFileName(String flistname) {
     return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname + METADATA_FILE_SUFFIX;
   }
@@ -221,17 +226,30 @@ public class FeatureListSaveTask extends AbstractTask {
   private boolean saveFeatureData() {
     logger.finest(() -> "Creating temporary file for feature list " + flist.getName() + ".");
     File tempFile;
+    // numeric arrays of the feature data are written to a binary file
+    File tempBinaryFile;
     try {
       tempFile = File.createTempFile("mzmine_featurelist_data", ".tmp");
+      tempBinaryFile = File.createTempFile("mzmine_featurelist_binary_data", ".tmp");
     } catch (IOException e) {
       logger.log(Level.SEVERE, "Cannot create temporary file.", e);
       setStatus(TaskStatus.ERROR);
       return false;
     }
 
-    try (OutputStream os = new FileOutputStream(tempFile)) {
-      final XMLOutputFactory xof = XMLOutputFactory.newInstance();
-      final XMLStreamWriter writer = new IndentingXMLStreamWriter(xof.createXMLStreamWriter(os));
+    // the binary data is copied to the project or discarded
+    try {
+      return saveFeatureData(tempFile, tempBinaryFile);
+    } finally {
+      tempBinaryFile.delete();
+    }
+  }
+
+  private boolean saveFeatureData(File tempFile, File tempBinaryFile) {
+    final XMLOutputFactory xof = XMLOutputFactory.newInstance();
+    try (OutputStream os = new FileOutputStream(tempFile);
+        BinaryDataXMLStreamWriter writer = new BinaryDataXMLStreamWriter(
+            xof.createXMLStreamWriter(os), tempBinaryFile)) {
       writer.writeStartDocument("UTF-8", "1.0");
 
       writer.writeStartElement("featurelist");
@@ -252,7 +270,6 @@ public class FeatureListSaveTask extends AbstractTask {
       writer.writeEndElement();
       writer.writeEndDocument();
       writer.flush();
-      writer.close();
     } catch (IOException | XMLStreamException e) {
       logger.log(Level.SEVERE, e.getMessage(), e);
       setStatus(TaskStatus.ERROR);
@@ -273,6 +290,15 @@ public class FeatureListSaveTask extends AbstractTask {
       return false;
     }
 
+    try (FileInputStream is = new FileInputStream(tempBinaryFile)) {
+      zos.putNextEntry(new ZipEntry(getBinaryDataFileName(flist.getName())));
+      copy.copy(is, zos);
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, e.getMessage(), e);
+      setStatus(TaskStatus.ERROR);
+      return false;
+    }
+
 //    tempFile.delete();
     return true;
   }
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.features.FeatureList.FeatureListAppliedMethod;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.datamodel.impl.masslist.ScanPointerMassList;
+import io.github.mzmine.datamodel.msms.MsMsInfo;
+import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.ParsingUtils;
+import io.github.mzmine.util.StreamCopy;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.DoubleBuffer;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.jetbrains.annotations.NotNull;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Writes the processed state of a {@link RawDataFileImpl} (scans, raw data points and mass lists)
+ * to the project file. Opening the project restores the file from these entries instead of
+ * importing the original file and replaying the processing steps.
+ * <p>
+ * Three entries are written per file: the metadata (name, path, color and applied methods), the
+ * scan xml and the binary data file that contains all data point arrays, referenced from the scan
+ * xml by offset (see {@link BinaryDataXMLStreamWriter}).
+ */
+public class ProcessedRawDataFileWriter {
+
+  public static final String PROCESSED_DATA_FOLDER = "processedrawdata/";
+  public static final String METADATA_FILE_SUFFIX = "_metadata.xml";
+  public static final String SCANS_FILE_SUFFIX = "_scans.xml";
+  public static final String BINARY_DATA_FILE_SUFFIX = "_data.bin";
+
+  public static final String XML_COLOR_ATTR = "color";
+  public static final String XML_SCAN_MSLEVEL_ATTR = "mslevel";
+  public static final String XML_SCAN_NUMBER_ATTR = "scannumber";
+  public static final String XML_SCAN_RT_ATTR = "rt";
+  public static final String XML_SCAN_POLARITY_ATTR = "polarity";
+  public static final String XML_SCAN_SPECTRUM_TYPE_ATTR = "spectrumtype";
+  public static final String XML_SCAN_DEFINITION_ATTR = "definition";
+  public static final String XML_SCAN_MZ_RANGE_ATTR = "mzrange";
+  public static final String XML_MASS_LIST_ELEMENT = "masslist";
+  public static final String XML_MASS_LIST_SCAN_POINTER_ATTR = "scanpointer";
+  public static final String XML_MSMS_INFO_LIST_ELEMENT = "msmsinfos";
+  public static final String XML_SCAN_MSMS_INFO_ELEMENT = "scanmsmsinfo";
+
+  private final StreamCopy copy = new StreamCopy();
+
+  public static String getMetadataFileName(int fileIndex) {
+    return PROCESSED_DATA_FOLDER + fileIndex + METADATA_FILE_SUFFIX;
+  }
+
+  public static String getScansFileName(int fileIndex) {
+    return PROCESSED_DATA_FOLDER + fileIndex + SCANS_FILE_SUFFIX;
+  }
+
+  public static String getBinaryDataFileName(int fileIndex) {
+    return PROCESSED_DATA_FOLDER + fileIndex + BINARY_DATA_FILE_SUFFIX;
+  }
+
+  /**
+   * Only plain raw data files with {@link SimpleScan}s are supported. Ion mobility and imaging
+   * files are still restored from the import batch.
+   *
+   * @return true if the processed data of this file can be saved.
+   */
+  public static boolean canSaveProcessedData(@NotNull RawDataFile file) {
+    return file.getClass().equals(RawDataFileImpl.class) && file.getScans().stream()
+        .allMatch(s -> s instanceof SimpleScan);
+  }
+
+  /**
+   * Writes the metadata, scans and binary data entries of the file to the zip stream.
+   *
+   * @param file      the raw data file
+   * @param fileIndex the index of the file in the project, used as a unique name in the zip.
+   */
+  public void write(@NotNull RawDataFile file, int fileIndex, @NotNull ZipOutputStream zos)
+      throws IOException {
+    final File tempMetadataFile = File.createTempFile("mzmine_rawdata_metadata", ".tmp");
+    final File tempScansFile = File.createTempFile("mzmine_rawdata_scans", ".tmp");
+    final File tempBinaryFile = File.createTempFile("mzmine_rawdata_binary_data", ".tmp");
+
+    try {
+      writeMetadata(file, tempMetadataFile);
+      writeScans(file, tempScansFile, tempBinaryFile);
+
+      putEntry(zos, getMetadataFileName(fileIndex), tempMetadataFile);
+      putEntry(zos, getScansFileName(fileIndex), tempScansFile);
+      putEntry(zos, getBinaryDataFileName(fileIndex), tempBinaryFile);
+    } catch (ParserConfigurationException | TransformerException | XMLStreamException e) {
+      throw new IOException("Cannot save processed data of raw data file " + file.getName(), e);
+    } finally {
+      tempMetadataFile.delete();
+      tempScansFile.delete();
+      tempBinaryFile.delete();
+    }
+  }
+
+  private void putEntry(ZipOutputStream zos, String name, File file) throws IOException {
+    zos.putNextEntry(new ZipEntry(name));
+    try (InputStream is = new FileInputStream(file)) {
+      copy.copy(is, zos);
+    }
+  }
+
+  private void writeMetadata(RawDataFile file, File tempFile)
+      throws ParserConfigurationException, TransformerException, IOException {
+    final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .newDocument();
+    final Element root = document.createElement(CONST.XML_ROOT_ELEMENT);
+    document.appendChild(root);
+
+    final Element fileElement = document.createElement(CONST.XML_RAW_FILE_ELEMENT);
+    final Element nameElement = document.createElement(CONST.XML_RAW_FILE_NAME_ELEMENT);
+    nameElement.setTextContent(file.getName());
+    fileElement.appendChild(nameElement);
+    if (file.getAbsolutePath() != null) {
+      final Element pathElement = document.createElement(CONST.XML_RAW_FILE_PATH_ELEMENT);
+      pathElement.setTextContent(file.getAbsolutePath());
+      fileElement.appendChild(pathElement);
+    }
+    if (file.getColor() != null) {
+      fileElement.setAttribute(XML_COLOR_ATTR, file.getColor().toString());
+    }
+    root.appendChild(fileElement);
+
+    final Element appliedMethodsList = document.createElement(
+        CONST.XML_FLIST_APPLIED_METHODS_LIST_ELEMENT);
+    for (FeatureListAppliedMethod appliedMethod : file.getAppliedMethods()) {
+      final Element methodElement = document.createElement(CONST.XML_FLIST_APPLIED_METHOD_ELEMENT);
+      appliedMethod.saveValueToXML(methodElement);
+      appliedMethodsList.appendChild(methodElement);
+    }
+    root.appendChild(appliedMethodsList);
+
+    final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+    transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+    transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+    transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+    transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+
+    try (var stream = new FileOutputStream(tempFile)) {
+      transformer.transform(new DOMSource(document), new StreamResult(stream));
+    }
+  }
+
+  private void writeScans(RawDataFile file, File tempFile, File tempBinaryFile)
+      throws IOException, XMLStreamException {
+    final List<Scan> scans = file.getScans();
+    final XMLOutputFactory xof = XMLOutputFactory.newInstance();
+    try (OutputStream os = new FileOutputStream(tempFile);
+        BinaryDataXMLStreamWriter writer = new BinaryDataXMLStreamWriter(
+            xof.createXMLStreamWriter(os), tempBinaryFile)) {
+      writer.writeStartDocument("UTF-8", "1.0");
+      writer.writeStartElement(CONST.XML_RAW_FILE_ELEMENT);
+      writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(scans.size()));
+
+      writer.writeStartElement(CONST.XML_SCAN_LIST_ELEMENT);
+      for (Scan scan : scans) {
+        writeScan(writer, scan);
+      }
+      writer.writeEndElement();
+
+      // ms/ms infos reference other scans by index and are restored after all scans were loaded
+      writer.writeStartElement(XML_MSMS_INFO_LIST_ELEMENT);
+      for (int i = 0; i < scans.size(); i++) {
+        final MsMsInfo info = scans.get(i).getMsMsInfo();
+        if (info != null) {
+          writer.writeStartElement(XML_SCAN_MSMS_INFO_ELEMENT);
+          writer.writeAttribute(CONST.XML_RAW_FILE_SCAN_INDEX_ATTR, String.valueOf(i));
+          info.writeToXML(writer);
+          writer.writeEndElement();
+        }
+      }
+      writer.writeEndElement();
+
+      writer.writeEndElement();
+      writer.writeEndDocument();
+      writer.flush();
+    }
+  }
+
+  private void writeScan(XMLStreamWriter writer, Scan scan) throws XMLStreamException {
+    writer.writeStartElement(CONST.XML_RAW_FILE_SCAN_ELEMENT);
+    writer.writeAttribute(XML_SCAN_NUMBER_ATTR, String.valueOf(scan.getScanNumber()));
+    writer.writeAttribute(XML_SCAN_MSLEVEL_ATTR, String.valueOf(scan.getMSLevel()));
+    writer.writeAttribute(XML_SCAN_RT_ATTR, String.valueOf(scan.getRetentionTime()));
+    writer.writeAttribute(XML_SCAN_POLARITY_ATTR, scan.getPolarity().name());
+    writer.writeAttribute(XML_SCAN_SPECTRUM_TYPE_ATTR, scan.getSpectrumType().name());
+    writer.writeAttribute(XML_SCAN_DEFINITION_ATTR, scan.getScanDefinition());
+    final Range mzRange = scan.getScanningMZRange();
+    // empty scans without a scanning range are read back as null
+    writer.writeAttribute(XML_SCAN_MZ_RANGE_ATTR,
+        mzRange == null ? "" : ParsingUtils.rangeToString(mzRange));
+
+    writeDataPoints(writer, scan);
+
+    final MassList massList = scan.getMassList();
+    if (massList != null) {
+      writer.writeStartElement(XML_MASS_LIST_ELEMENT);
+      if (massList instanceof ScanPointerMassList) {
+        writer.writeAttribute(XML_MASS_LIST_SCAN_POINTER_ATTR, String.valueOf(true));
+      } else {
+        writeDataPoints(writer, massList);
+      }
+      writer.writeEndElement();
+    }
+
+    writer.writeEndElement();
+  }
+
+  private void writeDataPoints(XMLStreamWriter writer, MassSpectrum spectrum)
+      throws XMLStreamException {
+    final int numValues = spectrum.getNumberOfDataPoints();
+
+    writer.writeStartElement(CONST.XML_MZ_VALUES_ELEMENT);
+    writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(numValues));
+    ParsingUtils.writeDoubleValues(writer,
+        DoubleBuffer.wrap(spectrum.getMzValues(new double[numValues])));
+    writer.writeEndElement();
+
+    writer.writeStartElement(CONST.XML_INTENSITY_VALUES_ELEMENT);
+    writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(numValues));
+    ParsingUtils.writeDoubleValues(writer,
+        DoubleBuffer.wrap(spectrum.getIntensityValues(new double[numValues])));
+    writer.writeEndElement();
+  }
+}
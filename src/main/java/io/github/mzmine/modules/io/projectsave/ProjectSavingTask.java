@@ -26,6 +26,7 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.impl.MZmineProjectImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
 import io.github.mzmine.util.StreamCopy;
@@ -37,7 +38,10 @@ import java.time.Instant;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -54,6 +58,7 @@ public class ProjectSavingTask extends AbstractTask {
   public static final String PARAMETERS_FILENAME = "User parameters.xml";
   private static final Logger logger = Logger.getLogger(ProjectSavingTask.class.getName());
   private final ProjectSaveOption projectType;
+  private final boolean saveProcessedData;
 
   private final File saveFile;
   private final MZmineProjectImpl savedProject;
@@ -75,6 +80,7 @@ public class ProjectSavingTask extends AbstractTask {
     this.savedProject = (MZmineProjectImpl) project;
     this.saveFile = parameters.getValue(ProjectSaveAsParameters.projectFile);
     this.projectType = parameters.getValue(ProjectSaveAsParameters.option);
+    this.saveProcessedData = parameters.getValue(ProjectSaveAsParameters.saveProcessedData);
     dataFilesIDMap = new Hashtable<>();
     this.totalSaveItems = project.getDataFiles().length + project.getCurrentFeatureLists().size();
   }
@@ -309,34 +315,37 @@ public class ProjectSavingTask extends AbstractTask {
   private void saveRawDataFiles(ZipOutputStream zipStream)
       throws IOException, ParserConfigurationException {
 
-    AtomicBoolean finished = new AtomicBoolean(false);
     rawDataFileSaveHandler = new RawDataFileSaveHandler(savedProject, zipStream,
-        Objects.requireNonNullElse(savedProject.isStandalone(), true), getModuleCallDate());
+        Objects.requireNonNullElse(savedProject.isStandalone(), true), saveProcessedData,
+        getModuleCallDate());
     rawDataFileSaveHandler.addTaskStatusListener((task, newStatus, oldStatus) -> {
       switch (newStatus) {
         case WAITING, PROCESSING -> {
         }
         case FINISHED -> {
-          finished.set(true);
         }
         case CANCELED -> {
-          finished.set(true);
           setStatus(TaskStatus.CANCELED);
         }
         case ERROR -> {
-          finished.set(true);
           setErrorMessage("Error while saving raw data files.");
           setStatus(TaskStatus.ERROR);
         }
       }
     });
-    MZmineCore.getTaskController().addTask(rawDataFileSaveHandler);
+    final CompletableFuture<TaskStatus> completion = MZmineCore.getTaskController()
+        .addTasks(new Task[]{rawDataFileSaveHandler})[0].getCompletion();
 
-    while (!finished.get() && !isCanceled()) {
+    // wait until the raw data files are saved or this task is canceled
+    while (!isCanceled()) {
       try {
-        Thread.sleep(100);
-      } catch (InterruptedException e) {
+        completion.get(100, TimeUnit.MILLISECONDS);
+        break;
+      } catch (TimeoutException e) {
+        // check for cancel
+      } catch (InterruptedException | ExecutionException e) {
         e.printStackTrace();
+        break;
       }
     }
   }
@@ -355,25 +364,8 @@ public class ProjectSavingTask extends AbstractTask {
       FeatureListSaveTask saveTask = new FeatureListSaveTask((ModularFeatureList) featureList,
           zipStream);
 
-      AtomicBoolean finished = new AtomicBoolean(false);
-      saveTask.addTaskStatusListener((task, newStatus, oldStatus) -> {
-        switch (newStatus) {
-          case WAITING, PROCESSING -> {
-          }
-          case FINISHED, ERROR, CANCELED -> {
-            finished.set(true);
-          }
-        }
-      });
-      MZmineCore.getTaskController().addTask(saveTask);
-
-      while (!finished.get()) {
-        try {
-          Thread.sleep(50);
-        } catch (InterruptedException e) {
-          e.printStackTrace();
-        }
-      }
+      // the task writes to the zip stream, always wait until it is completed
+      MZmineCore.getTaskController().addTasks(new Task[]{saveTask})[0].getCompletion().join();
 
       if (isCanceled()) {
         break;
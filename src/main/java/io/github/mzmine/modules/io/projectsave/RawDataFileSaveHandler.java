@@ -84,6 +84,7 @@ public class RawDataFileSaveHandler extends AbstractTask {
   private double progress = 0;
   private final List<RawDataFile> files;
   private final boolean saveFilesInProject;
+  private final boolean saveProcessedData;
   private final String prefix = "Saving raw data files: ";
   private String description;
   private final int numSteps;
@@ -96,25 +97,44 @@ public class RawDataFileSaveHandler extends AbstractTask {
 
   public RawDataFileSaveHandler(MZmineProject project, ZipOutputStream zipOutputStream,
       boolean saveFilesInProject, @NotNull Instant moduleCallDate) {
+    this(project, zipOutputStream, saveFilesInProject, false, moduleCallDate);
+  }
+
+  /**
+   * @param saveProcessedData save the scans and mass lists of the files to the project instead of
+   *                          re-importing and processing the files when the project is opened.
+   *                          Only applies to files supported by {@link ProcessedRawDataFileWriter}
+   */
+  public RawDataFileSaveHandler(MZmineProject project, ZipOutputStream zipOutputStream,
+      boolean saveFilesInProject, boolean saveProcessedData, @NotNull Instant moduleCallDate) {
     super(null, moduleCallDate);
     this.project = project;
     this.zipStream = zipOutputStream;
     this.saveFilesInProject = saveFilesInProject;
+    this.saveProcessedData = saveProcessedData;
     files = List.of(project.getDataFiles());
     numSteps = 1 /*dissect + merge */ + (saveFilesInProject ? files.size() : 0) /*save files*/
-        + 1 /*save batch file*/;
+        + (saveProcessedData ? files.size() : 0) /*save processed data*/ + 1 /*save batch file*/;
     stepProgress = 1 / (double) numSteps;
   }
 
   public boolean saveRawDataFilesAsBatch() throws IOException, ParserConfigurationException {
 
-    List<BatchQueue> cleanedBatchQueues = List.of(RawDataSavingUtils.makeBatchQueue(files));
+    // files with saved processed data are not imported again
+    final List<RawDataFile> batchFiles =
+        saveProcessedData ? saveProcessedRawDataFiles() : files;
+    if (batchFiles.isEmpty()) {
+      progress = 1d;
+      return true;
+    }
+
+    List<BatchQueue> cleanedBatchQueues = List.of(RawDataSavingUtils.makeBatchQueue(batchFiles));
     progress += stepProgress;
 
     if (saveFilesInProject) {
       description = prefix + "Zipping raw data files.";
       replaceRawFilePaths(cleanedBatchQueues);
-      copyRawDataFilesToZip();
+      copyRawDataFilesToZip(batchFiles);
     }
 
     zipStream.putNextEntry(new ZipEntry(RAW_DATA_IMPORT_BATCH_FILENAME));
@@ -164,6 +184,27 @@ public class RawDataFileSaveHandler extends AbstractTask {
     return true;
   }
 
+  /**
+   * Saves the scans and mass lists of all supported files to the zip file.
+   *
+   * @return the files that were not saved and have to be imported from the batch queue.
+   */
+  private List<RawDataFile> saveProcessedRawDataFiles() throws IOException {
+    final ProcessedRawDataFileWriter writer = new ProcessedRawDataFileWriter();
+    final List<RawDataFile> batchFiles = new ArrayList<>();
+    for (int i = 0; i < files.size(); i++) {
+      final RawDataFile file = files.get(i);
+      if (!ProcessedRawDataFileWriter.canSaveProcessedData(file)) {
+        batchFiles.add(file);
+      } else {
+        description = prefix + "Saving processed data of " + file.getName();
+        writer.write(file, i, zipStream);
+      }
+      progress += stepProgress;
+    }
+    return batchFiles;
+  }
+
   /**
    * Replaces the raw data file paths in case an independent project is saved to an MZmine project
    * file.
@@ -226,9 +267,10 @@ public class RawDataFileSaveHandler extends AbstractTask {
   /**
    * Copies the raw data files to the zip folder (MZmine project file).
    *
+   * @param files the files to copy.
    * @throws IOException
    */
-  private void copyRawDataFilesToZip() throws IOException {
+  private void copyRawDataFilesToZip(List<RawDataFile> files) throws IOException {
 
     for (final RawDataFile file : files) {
       if (file.getAbsolutePath() == null || !Files.exists(Paths.get(file.getAbsolutePath()))) {
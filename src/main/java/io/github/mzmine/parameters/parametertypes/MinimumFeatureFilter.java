@@ -23,6 +23,7 @@ import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.CachedFeatureDataAccess;
+import io.github.mzmine.datamodel.data_access.CachedFeatureDataAccess.Values;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.parameters.UserParameter;
@@ -146,6 +147,17 @@ public class MinimumFeatureFilter {
     return false;
   }
 
+  /**
+   * @param numRaws number of raw data files
+   * @return true if {@link #filterMinFeaturesOverlap(CachedFeatureDataAccess, List, FeatureListRow,
+   * int, FeatureListRow, int, RTTolerance)} only accepts rows with at least one pair of features within the
+   * RT tolerance
+   */
+  public boolean isRtOverlapRequired(int numRaws) {
+    return minFInSamples.getMaximumValue(numRaws) > 0 || (filterGroups && sgroupSize != null
+                                                          && minFInGroups.isGreaterZero());
+  }
+
   private boolean checkFeatureQuality(Feature f) {
     return f != null && f.getHeight() >= minFeatureHeight && filterEstimated(f);
   }
@@ -160,25 +172,29 @@ public class MinimumFeatureFilter {
    * height>minHeight and within rtTolerance)
    *
    * @param data        Optional preloaded feature data for large scale comparison of features
-   * @param raw
+   * @param raw         the raw data files in the order of the preloaded data
    * @param row
+   * @param rowIndex    index of row in the preloaded rows
    * @param row2
+   * @param row2Index   index of row2 in the preloaded rows
    * @param rtTolerance
    * @return
    */
   public OverlapResult filterMinFeaturesOverlap(@Nullable CachedFeatureDataAccess data,
-      final List<RawDataFile> raw, FeatureListRow row,
-      FeatureListRow row2, RTTolerance rtTolerance) {
+      final List<RawDataFile> raw, FeatureListRow row, int rowIndex,
+      FeatureListRow row2, int row2Index, RTTolerance rtTolerance) {
     OverlapResult result = OverlapResult.TRUE;
     // filter min samples in all
     if (minFInSamples.isGreaterZero()) {
       int n = 0;
-      for (RawDataFile file : raw) {
+      for (int f = 0; f < raw.size(); f++) {
+        final RawDataFile file = raw.get(f);
         Feature a = row.getFeature(file);
         Feature b = row2.getFeature(file);
         if (checkFeatureQuality(a) && checkFeatureQuality(b)) {
           if (checkRTTol(rtTolerance, a, b)) {
-            if (checkIntensityOverlap(data, a, b, minIPercOverlap, minFeatureHeight)) {
+            if (checkIntensityOverlap(data, a, rowIndex, b, row2Index, f, minIPercOverlap,
+                minFeatureHeight)) {
               n++;
             } else {
               result = OverlapResult.AntiOverlap;
@@ -206,12 +222,14 @@ public class MinimumFeatureFilter {
     // is present in X % samples of a sample set?
     // count sample in groups (no feature in a sample group->no occurrence in map)
     HashMap<String, MutableInt> counter = new HashMap<>();
-    for (RawDataFile file : raw) {
+    for (int f = 0; f < raw.size(); f++) {
+      final RawDataFile file = raw.get(f);
       Feature a = row.getFeature(file);
       Feature b = row2.getFeature(file);
       if (checkFeatureQuality(a) && checkFeatureQuality(b)) {
         if (checkRTTol(rtTolerance, a, b)) {
-          if (checkIntensityOverlap(data, a, b, minIPercOverlap, minFeatureHeight)) {
+          if (checkIntensityOverlap(data, a, rowIndex, b, row2Index, f, minIPercOverlap,
+              minFeatureHeight)) {
             String sgroup = sgroupOf(file);
 
             MutableInt count = counter.get(sgroup);
@@ -255,14 +273,17 @@ public class MinimumFeatureFilter {
    * @param data            optional preloaded feature data for large scale data access. null to
    *                        load data directly from features
    * @param a
+   * @param aRowIndex       index of the row of a in the preloaded rows
    * @param b
+   * @param bRowIndex       index of the row of b in the preloaded rows
+   * @param fileIndex       index of the raw data file in the preloaded data
    * @param minIPercOverlap
    * @param minHeight
    * @return
    */
   public boolean checkIntensityOverlap(
-      CachedFeatureDataAccess data, Feature a, Feature b,
-      double minIPercOverlap,
+      CachedFeatureDataAccess data, Feature a, int aRowIndex, Feature b, int bRowIndex,
+      int fileIndex, double minIPercOverlap,
       double minHeight) {
     if (minIPercOverlap < 0.00001) {
       return true;
@@ -270,9 +291,13 @@ public class MinimumFeatureFilter {
     // check more
     Feature small = a;
     Feature big = b;
+    int smallRowIndex = aRowIndex;
+    int bigRowIndex = bRowIndex;
     if (a.getHeight() > b.getHeight()) {
       small = b;
       big = a;
+      smallRowIndex = bRowIndex;
+      bigRowIndex = aRowIndex;
     }
     if (big.getRawDataPointsRTRange().encloses(small.getRawDataPointsRTRange())) {
       return true;
@@ -283,22 +308,22 @@ public class MinimumFeatureFilter {
 
     List<Scan> bigScans = big.getScanNumbers();
     List<Scan> smallScans = small.getScanNumbers();
-    double[] bigIntensities;
-    double[] smallIntensities;
+    Values bigIntensities;
+    Values smallIntensities;
     if (data != null) {
       // get preloaded
-      bigIntensities = data.getIntensityValues(big);
-      smallIntensities = data.getIntensityValues(small);
+      bigIntensities = data.getIntensities(bigRowIndex, fileIndex, big);
+      smallIntensities = data.getIntensities(smallRowIndex, fileIndex, small);
     } else {
       // load from features
-      bigIntensities = big.getFeatureData()
-          .getIntensityValues(new double[big.getNumberOfDataPoints()]);
-      smallIntensities = small.getFeatureData()
-          .getIntensityValues(new double[small.getNumberOfDataPoints()]);
+      bigIntensities = Values.of(big.getFeatureData()
+          .getIntensityValues(new double[big.getNumberOfDataPoints()]));
+      smallIntensities = Values.of(small.getFeatureData()
+          .getIntensityValues(new double[small.getNumberOfDataPoints()]));
     }
     // at 5% height
     for (int i = 0; i < big.getNumberOfDataPoints(); i++) {
-      double intensity = bigIntensities[i];
+      double intensity = bigIntensities.get(i);
       Scan sn = bigScans.get(i);
       if (intensity >= big.getHeight() * 0.05 || intensity >= minHeight) {
         if (start <= 0) {
@@ -311,7 +336,7 @@ public class MinimumFeatureFilter {
     // check smaller
     double overlap = 0, sum = 0;
     for (int i = 0; i < small.getNumberOfDataPoints(); i++) {
-      double intensity = smallIntensities[i];
+      double intensity = smallIntensities.get(i);
       Scan sn = smallScans.get(i);
       double rt = sn.getRetentionTime();
 
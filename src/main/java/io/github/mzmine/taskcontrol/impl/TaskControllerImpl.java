@@ -32,11 +32,18 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.logging.Logger;
 
 /**
- * Task controller implementation
+ * Task controller implementation. Tasks of normal priority are executed on a single work-stealing
+ * {@link ForkJoinPool} with one thread per allowed concurrent task. Parallel streams and other fork
+ * join work started within a task run on the same pool, so that idle task threads help with the
+ * parallel work of running tasks instead of oversubscribing the CPU with the common pool. High
+ * priority tasks are started immediately on their own thread.
  */
 public class TaskControllerImpl implements TaskController, Runnable {
 
@@ -51,10 +58,21 @@ public class TaskControllerImpl implements TaskController, Runnable {
   private TaskQueue taskQueue;
 
   /**
-   * This vector contains references to all running threads of NORMAL priority. Maximum number of
-   * concurrent threads is specified in the preferences dialog.
+   * Tasks that were added but not started yet, in the order of submission. Guarded by this.
    */
-  private Vector<WorkerThread> runningThreads;
+  private final List<WrappedTask> pendingTasks = new ArrayList<>();
+
+  /**
+   * This vector contains references to all running tasks of NORMAL priority. Maximum number of
+   * concurrent tasks is specified in the preferences dialog.
+   */
+  private Vector<TaskRunner> runningTasks;
+
+  /**
+   * The pool for tasks of normal priority and their parallel work. Recreated if the number of
+   * threads changes.
+   */
+  private ForkJoinPool taskPool;
 
   /**
    * Initialize the task controller
@@ -64,10 +82,10 @@ public class TaskControllerImpl implements TaskController, Runnable {
     logger.finest("Starting task controller thread");
     taskQueue = new TaskQueue();
 
-    runningThreads = new Vector<WorkerThread>();
+    runningTasks = new Vector<TaskRunner>();
 
     // Create a low-priority thread that will manage the queue and start
-    // worker threads for tasks
+    // tasks on the task pool
     taskControllerThread = new Thread(this, "Task controller thread");
     taskControllerThread.setPriority(Thread.MIN_PRIORITY);
     taskControllerThread.start();
@@ -122,15 +140,18 @@ public class TaskControllerImpl implements TaskController, Runnable {
       // task.getTaskDescription());
     }
 
-    // Wake up the task controller thread
+    // Start the tasks right away and wake up the task controller thread
     synchronized (this) {
+      pendingTasks.addAll(Arrays.asList(wrappedTasks));
+      startPendingTasks();
       this.notifyAll();
     }
     return wrappedTasks;
   }
 
   /**
-   * Task controller thread main method.
+   * Task controller thread main method. Tasks are started as soon as they are added or a running
+   * task finishes, this thread only updates the listeners and the tasks window.
    *
    * @see java.lang.Runnable#run()
    */
@@ -170,65 +191,97 @@ public class TaskControllerImpl implements TaskController, Runnable {
         continue;
       }
 
-      // Remove already finished threads from runningThreads
-      Iterator<WorkerThread> threadIterator = runningThreads.iterator();
-      while (threadIterator.hasNext()) {
-        WorkerThread thread = threadIterator.next();
-        if (thread.isFinished()) {
-          threadIterator.remove();
-        }
+      // Refresh the tasks window
+      Desktop desktop = MZmineCore.getDesktop();
+      if ((desktop != null) && (!(desktop instanceof HeadLessDesktop))) {
+        desktop.getTasksView().refresh();
       }
 
-      // Get a snapshot of the queue
-      WrappedTask[] queueSnapshot = taskQueue.getQueueSnapshot();
-
-      // Obtain the settings of max concurrent threads
-      NumOfThreadsParameter parameter = MZmineCore.getConfiguration().getPreferences()
-          .getParameter(MZminePreferences.numOfThreads);
-      int maxRunningThreads;
-      if (parameter.isAutomatic() || (parameter.getValue() == null)) {
-        maxRunningThreads = Runtime.getRuntime().availableProcessors();
-      } else {
-        maxRunningThreads = parameter.getValue();
+      // Sleep until the next update
+      try {
+        Thread.sleep(TASKCONTROLLER_THREAD_SLEEP);
+      } catch (InterruptedException e) {
+        // Ignore
       }
 
-      // Check all tasks in the queue
-      for (WrappedTask task : queueSnapshot) {
+    }
 
-        // Skip assigned and canceled tasks
-        if (task.isAssigned() || (task.getActualTask().getStatus() == TaskStatus.CANCELED)) {
-          continue;
-        }
+  }
 
-        // Create a new thread if the task is high-priority or if we
-        // have less then maximum # of threads running
-        if ((task.getPriority() == TaskPriority.HIGH) || (runningThreads.size()
-            < maxRunningThreads)) {
-          WorkerThread newThread = new WorkerThread(task);
+  /**
+   * Starts all pending tasks of high priority and as many tasks of normal priority as there are
+   * free slots. Called whenever a task is added, finishes or changes the priority.
+   */
+  private synchronized void startPendingTasks() {
+    runningTasks.removeIf(TaskRunner::isFinished);
 
-          if (task.getPriority() == TaskPriority.NORMAL) {
-            runningThreads.add(newThread);
-          }
+    final int maxRunningTasks = getMaxRunningTasks();
 
-          newThread.start();
-        }
-      }
+    for (Iterator<WrappedTask> iterator = pendingTasks.iterator(); iterator.hasNext(); ) {
+      final WrappedTask task = iterator.next();
 
-      // Refresh the tasks window
-      Desktop desktop = MZmineCore.getDesktop();
-      if ((desktop != null) && (!(desktop instanceof HeadLessDesktop))) {
-        desktop.getTasksView().refresh();
+      // Skip canceled tasks
+      if (task.getActualTask().getStatus() == TaskStatus.CANCELED) {
+        iterator.remove();
+        task.complete(TaskStatus.CANCELED);
+        continue;
       }
 
-      // Sleep for a while until next update
-      try {
-        Thread.sleep(TASKCONTROLLER_THREAD_SLEEP);
-      } catch (InterruptedException e) {
-        // Ignore
+      // Start the task if it is high-priority or if we
+      // have less then maximum # of tasks running
+      if (task.getPriority() == TaskPriority.HIGH) {
+        iterator.remove();
+        final TaskRunner runner = new TaskRunner(task, this::taskFinished);
+        new Thread(runner, "Thread executing task " + task).start();
+      } else if (runningTasks.size() < maxRunningTasks) {
+        iterator.remove();
+        final TaskRunner runner = new TaskRunner(task, this::taskFinished);
+        runningTasks.add(runner);
+        getTaskPool(maxRunningTasks).execute(runner);
       }
+    }
+  }
+
+  private void taskFinished() {
+    synchronized (this) {
+      startPendingTasks();
+      this.notifyAll();
+    }
+  }
 
+  /**
+   * @return the maximum number of concurrent tasks of normal priority
+   */
+  private int getMaxRunningTasks() {
+    // Obtain the settings of max concurrent threads
+    NumOfThreadsParameter parameter = MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.numOfThreads);
+    if (parameter.isAutomatic() || (parameter.getValue() == null)) {
+      return Runtime.getRuntime().availableProcessors();
+    } else {
+      return Math.max(1, parameter.getValue());
     }
+  }
 
+  /**
+   * @param parallelism the number of threads
+   * @return the task pool. A new pool is created if the number of threads was changed, running
+   * tasks finish on the old pool.
+   */
+  private synchronized ForkJoinPool getTaskPool(int parallelism) {
+    if (taskPool == null || taskPool.getParallelism() != parallelism) {
+      if (taskPool != null) {
+        taskPool.shutdown();
+      }
+      logger.finest(() -> "Creating task pool with " + parallelism + " threads");
+      taskPool = new ForkJoinPool(parallelism, pool -> {
+        final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory
+            .newThread(pool);
+        thread.setName("Task pool thread " + thread.getPoolIndex());
+        return thread;
+      }, null, false);
+    }
+    return taskPool;
   }
 
   @Override
@@ -247,6 +300,11 @@ public class TaskControllerImpl implements TaskController, Runnable {
       }
     }
 
+    // a pending task might be started now
+    synchronized (this) {
+      startPendingTasks();
+    }
+
     // Refresh the tasks window
     Desktop desktop = MZmineCore.getDesktop();
     if ((desktop != null) && (!(desktop instanceof HeadLessDesktop))) {
@@ -268,9 +326,9 @@ public class TaskControllerImpl implements TaskController, Runnable {
       }
     }
 
-    var running = runningThreads.toArray(WorkerThread[]::new);
-    for (WorkerThread runningThread : running) {
-      if (clazz.isInstance(runningThread.getWrappedTask().getActualTask())) {
+    var running = runningTasks.toArray(TaskRunner[]::new);
+    for (TaskRunner runningTask : running) {
+      if (clazz.isInstance(runningTask.getWrappedTask().getActualTask())) {
         return true;
       }
     }
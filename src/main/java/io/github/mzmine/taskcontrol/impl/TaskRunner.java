@@ -26,18 +26,21 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Task controller worker thread, this thread will process one task and then finish
+ * Processes one task on a worker thread of the task pool (or a dedicated thread for high priority
+ * tasks) and notifies the task controller when it is finished.
  */
-class WorkerThread extends Thread {
+class TaskRunner implements Runnable {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
-  private WrappedTask wrappedTask;
-  private boolean finished = false;
+  private final WrappedTask wrappedTask;
+  private final Runnable onFinished;
+  private volatile Thread thread;
+  private volatile boolean finished = false;
 
-  WorkerThread(WrappedTask wrappedTask) {
-    super("Thread executing task " + wrappedTask);
+  TaskRunner(WrappedTask wrappedTask, Runnable onFinished) {
     this.wrappedTask = wrappedTask;
+    this.onFinished = onFinished;
     wrappedTask.assignTo(this);
   }
 
@@ -46,6 +49,7 @@ class WorkerThread extends Thread {
    */
   public void run() {
 
+    thread = Thread.currentThread();
     Task actualTask = wrappedTask.getActualTask();
 
     try {
@@ -95,13 +99,33 @@ class WorkerThread extends Thread {
       MZmineCore.getDesktop().displayErrorMessage("Unhandled exception in task "
           + actualTask.getTaskDescription() + ": " + ExceptionUtils.exceptionToString(e));
 
+      // do not keep waiting tasks blocked
+      wrappedTask.complete(TaskStatus.ERROR);
+    }
+
+    // tasks that are not AbstractTasks do not report status changes
+    final TaskStatus status = wrappedTask.getActualTask().getStatus();
+    if (WrappedTask.isFinalStatus(status)) {
+      wrappedTask.complete(status);
     }
 
     /*
-     * Mark this thread as finished
+     * Mark this runner as finished. Pool threads are reused, reset the priority.
      */
+    thread.setPriority(Thread.NORM_PRIORITY);
+    thread = null;
     finished = true;
+    onFinished.run();
+  }
 
+  /**
+   * Changes the priority of the thread that currently processes the task.
+   */
+  void setThreadPriority(int priority) {
+    final Thread current = thread;
+    if (current != null) {
+      current.setPriority(priority);
+    }
   }
 
   boolean isFinished() {
@@ -19,8 +19,11 @@
 package io.github.mzmine.taskcontrol.impl;
 
 import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskPriority;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.util.concurrent.CompletableFuture;
 import javafx.beans.property.Property;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
@@ -47,11 +50,51 @@ public class WrappedTask {
 
   private Task task;
   private Property<TaskPriority> priority;
-  private WorkerThread assignedTo;
+  private TaskRunner assignedTo;
+  private final CompletableFuture<TaskStatus> completion = new CompletableFuture<>();
+  private volatile long completionNanoTime = -1;
 
   public WrappedTask(Task task, TaskPriority priority) {
     this.task = task;
     this.priority = new SimpleObjectProperty<>(priority);
+    if (task instanceof AbstractTask abstractTask) {
+      abstractTask.addTaskStatusListener((t, newStatus, oldStatus) -> {
+        if (isFinalStatus(newStatus)) {
+          complete(newStatus);
+        }
+      });
+    }
+  }
+
+  static boolean isFinalStatus(TaskStatus status) {
+    return status == TaskStatus.FINISHED || status == TaskStatus.ERROR
+           || status == TaskStatus.CANCELED;
+  }
+
+  /**
+   * The future is completed with the final status (finished, error or canceled) as soon as the
+   * task reaches it. Use this instead of polling the task status.
+   *
+   * @return the completion of this task
+   */
+  public CompletableFuture<TaskStatus> getCompletion() {
+    return completion;
+  }
+
+  /**
+   * @return the {@link System#nanoTime()} when the task reached its final status or -1 if it is
+   * not completed yet
+   */
+  public long getCompletionNanoTime() {
+    return completionNanoTime;
+  }
+
+  void complete(TaskStatus status) {
+    if (completion.isDone()) {
+      return;
+    }
+    completionNanoTime = System.nanoTime();
+    completion.complete(status);
   }
 
   /**
@@ -68,8 +111,8 @@ public class WrappedTask {
     MZmineCore.runLater(() -> this.priority.setValue(priority));
     if (assignedTo != null) {
       switch (priority) {
-        case HIGH -> assignedTo.setPriority(Thread.MAX_PRIORITY);
-        case NORMAL -> assignedTo.setPriority(Thread.NORM_PRIORITY);
+        case HIGH -> assignedTo.setThreadPriority(Thread.MAX_PRIORITY);
+        case NORMAL -> assignedTo.setThreadPriority(Thread.NORM_PRIORITY);
       }
     }
   }
@@ -85,8 +128,8 @@ public class WrappedTask {
     return assignedTo != null;
   }
 
-  void assignTo(WorkerThread thread) {
-    assignedTo = thread;
+  void assignTo(TaskRunner runner) {
+    assignedTo = runner;
   }
 
   /**
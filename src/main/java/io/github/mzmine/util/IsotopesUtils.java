@@ -20,7 +20,6 @@ package io.github.mzmine.util;
 
 import com.google.common.collect.Range;
 import com.google.common.primitives.Doubles;
-import gnu.trove.list.array.TDoubleArrayList;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.MassSpectrum;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
@@ -282,23 +281,27 @@ public class IsotopesUtils {
    * isotopesMzDiffs are considered.
    *
    * @param newMz           M/z value of interest
-   * @param knownMzs        List of known m/z values
+   * @param knownMzs        Known m/z values sorted in ascending order
+   * @param numKnownMzs     The number of known m/z values in knownMzs
    * @param isotopesMzDiffs Pairwise m/z differences between isotopes (supposed to be obtained with
    *                        {@link #getIsotopesMzDiffs(List, int)})
    * @param mzTolerance     Maximum allowed m/z difference to consider any m/z value and isotope m/z
    *                        value equal
    * @return True if new m/z corresponds to an isotope of known m/z's, false otherwise.
    */
-  public static boolean isPossibleIsotopeMz(double newMz, @NotNull TDoubleArrayList knownMzs,
-      @NotNull List<Double> isotopesMzDiffs, @NotNull MZTolerance mzTolerance) {
+  public static boolean isPossibleIsotopeMz(double newMz, @NotNull double[] knownMzs,
+      int numKnownMzs, @NotNull List<Double> isotopesMzDiffs, @NotNull MZTolerance mzTolerance) {
 
     // Iterate over possible isotope m/z differences
-    for (double isotopeMzDiff : isotopesMzDiffs) {
+    for (int i = 0; i < isotopesMzDiffs.size(); i++) {
 
       // Compute theoretical m/z value representing the difference between possible isotope
-      // candidate newMz and possible isotope difference
-      double theoreticalMz = newMz - isotopeMzDiff;
-      Range<Double> theoreticalMzTolRange = mzTolerance.getToleranceRange(theoreticalMz);
+      // candidate newMz and possible isotope difference. Same as the tolerance range without
+      // creating a range object, this method is called for many data points of each scan
+      final double theoreticalMz = newMz - isotopesMzDiffs.get(i);
+      final double tolerance = mzTolerance.getMzToleranceForMass(theoreticalMz);
+      final double lower = theoreticalMz - tolerance;
+      final double upper = theoreticalMz + tolerance;
 
       // Go left over m/z's of previously detected peaks and check whether current peak is an
       // isotope of one of them
@@ -306,19 +309,19 @@ public class IsotopesUtils {
       //  the speed by implementing a HashSet for doubles with given precision and use it to store
       //  all knownMzs values and check for their presence instead of the following for loop.
       //  O(n^2 / 2) -> O(n) for O(n) memory
-      for (int mzIndex = knownMzs.size() - 1; mzIndex >= 0; mzIndex--) {
+      for (int mzIndex = numKnownMzs - 1; mzIndex >= 0; mzIndex--) {
 
         // Get real m/z from knownMzs that is going to be compared with the theoretical one
-        double realMz = knownMzs.get(mzIndex);
+        double realMz = knownMzs[mzIndex];
 
         // Do not go left further if the theoretical m/z is higher than real
-        if (Doubles.compare(theoreticalMzTolRange.lowerEndpoint(), realMz) > 0) {
+        if (Doubles.compare(lower, realMz) > 0) {
           break;
         }
 
         // If the theoretical and real m/z values are equal up to tolerance, then m/z of the mzIndex
         // peak corresponds to the mass of the isotope
-        if (theoreticalMzTolRange.contains(realMz)) {
+        if (lower <= realMz && realMz <= upper) {
           return true;
         }
       }
@@ -327,7 +330,6 @@ public class IsotopesUtils {
     return false;
   }
 
-
   public static boolean isPossibleIsotopeMz(double newMz, @NotNull List<DataPoint> knownMzs,
       @NotNull List<Double> isotopesMzDiffs, @NotNull MZTolerance mzTolerance) {
 
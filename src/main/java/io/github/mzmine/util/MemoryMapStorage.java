@@ -32,6 +32,8 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -43,8 +45,9 @@ import sun.misc.Unsafe;
  * buffer is directly bound to the memory-mapped portion of the file so the data can be directly
  * accessed without loading it into another intermediate primitive type array.
  * <p>
- * The size of each temporary file is STORAGE_FILE_CAPACITY bytes. When the file is full, a new file
- * is automatically created using the createNewMappedFile() function. The size of each temporary
+ * The size of each temporary file is DEFAULT_STORAGE_FILE_CAPACITY bytes unless another capacity is
+ * set in the preferences. When the file is full, a new file is automatically created using the
+ * createNewMappedFile() function. The size of each temporary
  * file in the filesystem may show as 1GB, but actually only a portion of that space is occupied on
  * the disk, depending on the amount of stored data (this can be examined using the 'du -hs' Linux
  * command.
@@ -60,14 +63,19 @@ import sun.misc.Unsafe;
  * The total amount of storage space is also limited by the amount of addressable virtual memory
  * (e.g., 128TB on Linux). For this reason, this approach requires a 64-bit system - the limit would
  * be only 2GB on a 32-bit system.
+ * <p>
+ * Storing data is thread safe without locking. Each thread reserves its region in the current
+ * file by an atomic increment of the file position and copies the data into its own slice, so
+ * parallel writers only synchronize when a new file has to be created.
  */
 public class MemoryMapStorage {
 
   /**
-   * One temporary file can store STORAGE_FILE_CAPACITY bytes. We need to fit within 2GB limit for a
+   * By default, one temporary file can store 1 GB. We need to fit within 2GB limit for a
    * single MappedByteBuffer. 1 GB per file seems like a good start.
    */
-  private static final long STORAGE_FILE_CAPACITY = 1_000_000_000L;
+  public static final long DEFAULT_STORAGE_FILE_CAPACITY = 1_000_000_000L;
+  private static final Logger staticLogger = Logger.getLogger(MemoryMapStorage.class.getName());
   private final Logger logger = Logger.getLogger(this.getClass().getName());
   private final Set<File> temporaryFiles = new HashSet<>();
   private final List<MappedByteBuffer> mappedByteBufferList = new ArrayList<>();
@@ -75,6 +83,34 @@ public class MemoryMapStorage {
   private static boolean storeFeaturesInRam = false;
   private static boolean storeRawFilesInRam = false;
   private static boolean storeMassListsInRam = false;
+  /**
+   * Spectra that are kept in RAM are compressed in native memory
+   */
+  private static boolean compressSpectraInRam = false;
+  /**
+   * Intensities of spectra and feature data are stored as floats instead of doubles
+   */
+  private static boolean storeIntensitiesAsFloat = false;
+
+  /**
+   * Directory of the temporary files. Null to use the java temp directory.
+   */
+  @Nullable
+  private static File storageDirectory = null;
+  private static long storageFileCapacity = DEFAULT_STORAGE_FILE_CAPACITY;
+  /**
+   * Maximum number of bytes stored in all storages. Values <= 0 disable the quota.
+   */
+  private static long storageQuota = 0;
+
+  // usage of all storages
+  private static final AtomicLong totalBytesMapped = new AtomicLong(0);
+  private static final AtomicLong totalBytesUsed = new AtomicLong(0);
+  private static final AtomicInteger totalNumberOfFiles = new AtomicInteger(0);
+
+  // usage of this storage
+  private final AtomicLong bytesMapped = new AtomicLong(0);
+  private final AtomicLong bytesUsed = new AtomicLong(0);
 
   /**
    * @return The {@link MemoryMapStorage} or null, if the data shall be stored in ram.
@@ -113,19 +149,20 @@ public class MemoryMapStorage {
   /**
    * The file that we are currently writing into.
    */
-  private MappedByteBuffer currentMappedFile = null;
+  private volatile MappedSegment currentMappedFile = null;
 
   /**
    * Creates a new temporary file, maps it into memory, and returns the corresponding
-   * MappedByteBuffer. The capacity of the buffer is STORAGE_FILE_CAPACITY bytes.
+   * MappedByteBuffer. The capacity of the buffer is the configured storage file capacity.
    *
+   * @param capacity the capacity of the file in bytes
    * @return a MappedByteBuffer corresponding to the memory-mapped temporary file
    * @throws IOException
    */
-  private MappedByteBuffer createNewMappedFile() throws IOException {
+  private MappedByteBuffer createNewMappedFile(long capacity) throws IOException {
 
     // Create the temporary storage file
-    File storageFileName = File.createTempFile("mzmine", ".tmp");
+    File storageFileName = File.createTempFile("mzmine", ".tmp", storageDirectory);
     temporaryFiles.add(storageFileName);
     logger.finest("Created a temporary file " + storageFileName);
 
@@ -134,8 +171,12 @@ public class MemoryMapStorage {
 
     // Map the file into memory
     MappedByteBuffer mappedFileBuffer =
-        storageFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, STORAGE_FILE_CAPACITY);
+        storageFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
     mappedByteBufferList.add(mappedFileBuffer);
+    bytesMapped.addAndGet(capacity);
+    totalBytesMapped.addAndGet(capacity);
+    totalNumberOfFiles.incrementAndGet();
+    logger.info(() -> "Memory mapped a new temporary file. " + getUsageDescription());
 
     // Close the temporary file, the memory mapping will remain
     storageFile.close();
@@ -158,7 +199,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized DoubleBuffer storeData(@NotNull final double data[])
+  public DoubleBuffer storeData(@NotNull final double data[])
       throws IOException {
     return storeData(data, 0, data.length);
   }
@@ -174,21 +215,11 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized DoubleBuffer storeData(@NotNull final double data[], int offset,
+  public DoubleBuffer storeData(@NotNull final double data[], int offset,
       int length) throws IOException {
 
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + (length * Double.BYTES) > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Double.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
+    // reserve the region of this array in the current file
+    final ByteBuffer slice = allocate((long) length * Double.BYTES);
 
     // Create a double view of the memory-mapped byte buffer
     DoubleBuffer sliceDoubleView = slice.asDoubleBuffer();
@@ -196,9 +227,6 @@ public class MemoryMapStorage {
     // Copy the data to the memory mapped storage
     sliceDoubleView.put(data, offset, length);
 
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Double.BYTES);
-
     // Create a read-only version of the new buffer slice
     final DoubleBuffer readOnlySlice = sliceDoubleView.asReadOnlyBuffer();
 
@@ -215,7 +243,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized FloatBuffer storeData(@NotNull final float data[])
+  public FloatBuffer storeData(@NotNull final float data[])
       throws IOException {
     return storeData(data, 0, data.length);
   }
@@ -231,21 +259,11 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized FloatBuffer storeData(@NotNull final float data[], int offset,
+  public FloatBuffer storeData(@NotNull final float data[], int offset,
       int length) throws IOException {
 
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + (length * Float.BYTES) > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Float.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
+    // reserve the region of this array in the current file
+    final ByteBuffer slice = allocate((long) length * Float.BYTES);
 
     // Create a float view of the memory-mapped byte buffer
     FloatBuffer sliceFloatView = slice.asFloatBuffer();
@@ -253,9 +271,6 @@ public class MemoryMapStorage {
     // Copy the data to the memory mapped storage
     sliceFloatView.put(data, offset, length);
 
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Float.BYTES);
-
     // Create a read-only version of the new buffer slice
     final FloatBuffer readOnlySlice = sliceFloatView.asReadOnlyBuffer();
 
@@ -272,7 +287,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized IntBuffer storeData(@NotNull final int data[]) throws IOException {
+  public IntBuffer storeData(@NotNull final int data[]) throws IOException {
     return storeData(data, 0, data.length);
   }
 
@@ -287,21 +302,11 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized IntBuffer storeData(@NotNull final int data[], int offset,
+  public IntBuffer storeData(@NotNull final int data[], int offset,
       int length) throws IOException {
 
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + (length * Integer.BYTES) > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Integer.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
+    // reserve the region of this array in the current file
+    final ByteBuffer slice = allocate((long) length * Integer.BYTES);
 
     // Create an int view of the memory-mapped byte buffer
     IntBuffer sliceIntView = slice.asIntBuffer();
@@ -309,9 +314,6 @@ public class MemoryMapStorage {
     // Copy the data to the memory mapped storage
     sliceIntView.put(data, offset, length);
 
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Integer.BYTES);
-
     // Create a read-only version of the new buffer slice
     final IntBuffer readOnlySlice = sliceIntView.asReadOnlyBuffer();
 
@@ -319,6 +321,50 @@ public class MemoryMapStorage {
 
   }
 
+  /**
+   * Reserves a region of the given size in the current file. Threads reserve their regions
+   * concurrently, only the creation of a new file is synchronized.
+   *
+   * @param bytes the size of the region in bytes
+   * @return a buffer of the reserved region
+   * @throws IOException if a new file cannot be created
+   */
+  private ByteBuffer allocate(long bytes) throws IOException {
+    final long used = totalBytesUsed.addAndGet(bytes);
+    if (storageQuota > 0 && used > storageQuota) {
+      totalBytesUsed.addAndGet(-bytes);
+      throw new IOException(String.format(
+          "Memory mapping quota of %s exceeded. Increase the quota or keep data in memory in the "
+          + "preferences. %s", formatBytes(storageQuota), getUsageDescription()));
+    }
+    bytesUsed.addAndGet(bytes);
+
+    try {
+      while (true) {
+        final MappedSegment segment = currentMappedFile;
+        if (segment != null) {
+          final ByteBuffer slice = segment.allocate(bytes);
+          if (slice != null) {
+            return slice;
+          }
+        }
+
+        // If we have no storage file or if the current file is full, create a new one
+        synchronized (this) {
+          if (segment == currentMappedFile) {
+            currentMappedFile = new MappedSegment(
+                createNewMappedFile(Math.max(storageFileCapacity, bytes)));
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // release the reservation, nothing was stored
+      bytesUsed.addAndGet(-bytes);
+      totalBytesUsed.addAndGet(-bytes);
+      throw e;
+    }
+  }
+
   /**
    * Discard this memory-mapped storage and remove all the associated temporary files.
    */
@@ -336,10 +382,97 @@ public class MemoryMapStorage {
       }
     }
 
+    totalNumberOfFiles.addAndGet(-temporaryFiles.size());
+    totalBytesMapped.addAndGet(-bytesMapped.getAndSet(0));
+    totalBytesUsed.addAndGet(-bytesUsed.getAndSet(0));
     temporaryFiles.clear();
+    mappedByteBufferList.clear();
     currentMappedFile = null;
   }
 
+  /**
+   * @return the capacity of all memory-mapped files of this storage in bytes
+   */
+  public long getBytesMapped() {
+    return bytesMapped.get();
+  }
+
+  /**
+   * @return the number of bytes stored in this storage
+   */
+  public long getBytesUsed() {
+    return bytesUsed.get();
+  }
+
+  /**
+   * @return the number of temporary files of this storage
+   */
+  public synchronized int getNumberOfFiles() {
+    return temporaryFiles.size();
+  }
+
+  /**
+   * @return the capacity of all memory-mapped files of all storages in bytes
+   */
+  public static long getTotalBytesMapped() {
+    return totalBytesMapped.get();
+  }
+
+  /**
+   * @return the number of bytes stored in all storages
+   */
+  public static long getTotalBytesUsed() {
+    return totalBytesUsed.get();
+  }
+
+  /**
+   * @return the number of temporary files of all storages
+   */
+  public static int getTotalNumberOfFiles() {
+    return totalNumberOfFiles.get();
+  }
+
+  /**
+   * @return a description of the memory mapping usage of all storages for logs and the gui
+   */
+  public static String getUsageDescription() {
+    return String.format("Memory mapping: %s used, %s mapped in %d files%s",
+        formatBytes(getTotalBytesUsed()), formatBytes(getTotalBytesMapped()),
+        getTotalNumberOfFiles(),
+        storageQuota > 0 ? " (quota " + formatBytes(storageQuota) + ")" : "");
+  }
+
+  private static String formatBytes(long bytes) {
+    return bytes >= 1E9 ? String.format("%.2f GB", bytes / 1E9)
+        : String.format("%.1f MB", bytes / 1E6);
+  }
+
+  /**
+   * A memory-mapped file with an atomic bump pointer. The mapped buffer itself is never modified,
+   * all regions are created as absolute slices.
+   */
+  private static class MappedSegment {
+
+    private final MappedByteBuffer buffer;
+    private final AtomicLong position = new AtomicLong(0);
+
+    private MappedSegment(MappedByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * @return a slice of the given size or null if the segment is full
+     */
+    @Nullable
+    private ByteBuffer allocate(long bytes) {
+      final long start = position.getAndAdd(bytes);
+      if (start + bytes > buffer.capacity()) {
+        return null;
+      }
+      return buffer.slice((int) start, (int) bytes);
+    }
+  }
+
 
   public static boolean isStoreFeaturesInRam() {
     return storeFeaturesInRam;
@@ -364,6 +497,76 @@ public class MemoryMapStorage {
   public static void setStoreMassListsInRam(boolean storeMassListsInRam) {
     MemoryMapStorage.storeMassListsInRam = storeMassListsInRam;
   }
+
+  public static boolean isStoreIntensitiesAsFloat() {
+    return storeIntensitiesAsFloat;
+  }
+
+  /**
+   * @param storeIntensitiesAsFloat true to store intensities of spectra, mobility scans and ion
+   *                                time series in float precision (half the memory). Only applies
+   *                                to new data.
+   */
+  public static void setStoreIntensitiesAsFloat(boolean storeIntensitiesAsFloat) {
+    MemoryMapStorage.storeIntensitiesAsFloat = storeIntensitiesAsFloat;
+  }
+
+  public static boolean isCompressSpectraInRam() {
+    return compressSpectraInRam;
+  }
+
+  /**
+   * @param compressSpectraInRam true to keep the data points of spectra that are stored in RAM
+   *                             (no storage) lossless compressed in native memory. Spectra are
+   *                             decoded on access.
+   */
+  public static void setCompressSpectraInRam(boolean compressSpectraInRam) {
+    MemoryMapStorage.compressSpectraInRam = compressSpectraInRam;
+  }
+
+  @Nullable
+  public static File getStorageDirectory() {
+    return storageDirectory;
+  }
+
+  /**
+   * @param directory the directory for new temporary files or null to use the java temp
+   *                  directory. Only applies to files created after this call.
+   */
+  public static void setStorageDirectory(@Nullable File directory) {
+    if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+      staticLogger.warning(() -> "Cannot create memory mapping directory " + directory
+          + ", using the temporary directory instead.");
+      storageDirectory = null;
+      return;
+    }
+    storageDirectory = directory;
+  }
+
+  public static long getStorageFileCapacity() {
+    return storageFileCapacity;
+  }
+
+  /**
+   * @param bytes the capacity of new temporary files. Limited to the maximum size of a single
+   *              {@link MappedByteBuffer}.
+   */
+  public static void setStorageFileCapacity(long bytes) {
+    storageFileCapacity = Math.max(1, Math.min(bytes, Integer.MAX_VALUE));
+  }
+
+  public static long getStorageQuota() {
+    return storageQuota;
+  }
+
+  /**
+   * @param bytes the maximum number of bytes stored in all storages. Values <= 0 disable the
+   *              quota.
+   */
+  public static void setStorageQuota(long bytes) {
+    storageQuota = bytes;
+  }
+
   /**
    * Store everything in RAM instead of using MemoryMapStorage
    *
@@ -373,5 +576,6 @@ public class MemoryMapStorage {
     storeFeaturesInRam = state;
     storeMassListsInRam = state;
     storeRawFilesInRam = state;
+    compressSpectraInRam = false;
   }
 }
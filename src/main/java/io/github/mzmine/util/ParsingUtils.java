@@ -25,7 +25,9 @@ import io.github.mzmine.datamodel.IonizationType;
 import io.github.mzmine.datamodel.MobilityScan;
 import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.identities.iontype.IonType;
+import io.github.mzmine.modules.io.projectload.version_3_0.BinaryDataXMLStreamReader;
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.modules.io.projectsave.BinaryDataXMLStreamWriter;
 import java.nio.DoubleBuffer;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -41,6 +43,7 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -95,6 +98,45 @@ public class ParsingUtils {
     return b.toString();
   }
 
+  /**
+   * Writes the values of the buffer to the current element. A {@link BinaryDataXMLStreamWriter}
+   * appends the values to its binary file and only the offset is written as an attribute,
+   * otherwise the values are written as text. Must be called after the attributes of the current
+   * element were written. The element needs a {@link CONST#XML_NUM_VALUES_ATTR} attribute to be
+   * read by {@link #readDoubleValues(XMLStreamReader)}.
+   */
+  public static void writeDoubleValues(XMLStreamWriter writer, DoubleBuffer values)
+      throws XMLStreamException {
+    if (writer instanceof BinaryDataXMLStreamWriter binaryWriter) {
+      final long offset = binaryWriter.writeDoubles(values);
+      writer.writeAttribute(CONST.XML_BINARY_OFFSET_ATTR, String.valueOf(offset));
+    } else {
+      writer.writeCharacters(doubleBufferToString(values));
+    }
+  }
+
+  /**
+   * Reads the values of the current element, written by
+   * {@link #writeDoubleValues(XMLStreamWriter, DoubleBuffer)}. Moves the reader to the end of the
+   * current element.
+   *
+   * @return the values either from the binary data or parsed from text
+   */
+  public static double[] readDoubleValues(XMLStreamReader reader) throws XMLStreamException {
+    final String offset = reader.getAttributeValue(null, CONST.XML_BINARY_OFFSET_ATTR);
+    if (offset == null) {
+      return stringToDoubleArray(reader.getElementText());
+    }
+    if (!(reader instanceof BinaryDataXMLStreamReader binaryReader)) {
+      throw new IllegalStateException(
+          "Values were saved as binary data but the binary data file is not available.");
+    }
+    final int numValues = Integer.parseInt(reader.getAttributeValue(null, CONST.XML_NUM_VALUES_ATTR));
+    // move to end element
+    reader.getElementText();
+    return binaryReader.readDoubles(Long.parseLong(offset), numValues);
+  }
+
   public static String intArrayToString(int[] array, int length) {
     assert length <= array.length;
 
@@ -32,6 +32,9 @@ public class CSVUtils {
   public static String escape(String input, String separator) {
     if (input == null) {
       return "";
+    } else if (isPlain(input, separator)) {
+      // most values need no escaping, skip the regex and copies
+      return input;
     } else {
       // Remove all special characters (particularly \n would mess up our CSV
       // format).
@@ -50,4 +53,20 @@ public class CSVUtils {
       }
     }
   }
+
+  /**
+   * @return true if the input has no control characters, separators or quotes and no excess length
+   */
+  private static boolean isPlain(String input, String separator) {
+    if (input.length() >= 32766) {
+      return false;
+    }
+    for (int i = 0; i < input.length(); i++) {
+      final char c = input.charAt(i);
+      if (c < 0x20 || c == 0x7f || c == '"') {
+        return false;
+      }
+    }
+    return !input.contains(separator);
+  }
 }
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2006-2021 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.util.scans.similarity;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.DataPointSorter;
+import io.github.mzmine.util.scans.ScanAlignment;
+import java.util.Arrays;
+
+/**
+ * Weighted cosine similarity of two spectra on primitive m/z and intensity arrays. Signals are
+ * matched like in {@link ScanAlignment#align(MZTolerance, DataPoint[], DataPoint[])}: library
+ * signals in descending intensity are matched to the most intense unmatched query signal within
+ * the m/z tolerance of the library signal. The candidates are found by a binary search on the m/z
+ * sorted query, and the weighted dot product and norms are summed in the same pass. No aligned
+ * data point list is created.
+ * <p>
+ * Buffers are reused between calls, so instances are not thread safe. Use
+ * {@link #forCurrentThread()} in parallel code.
+ */
+public final class CosineSimilarityKernel {
+
+  private static final ThreadLocal<CosineSimilarityKernel> kernels = ThreadLocal.withInitial(
+      CosineSimilarityKernel::new);
+
+  // library indices in matching order
+  private int[] libraryOrder = new int[0];
+  // position in matching order for each library index
+  private int[] libraryRanks = new int[0];
+  // matched query index for each library index or -1
+  private int[] matches = new int[0];
+  private boolean[] queryMatched = new boolean[0];
+  // matched library indices sorted by the lower m/z of each pair
+  private int[] pairs = new int[0];
+  private double[] pairMzs = new double[0];
+
+  // buffers for data point arrays
+  private double[] libraryMzBuffer = new double[0];
+  private double[] libraryIntensityBuffer = new double[0];
+  private double[] queryMzBuffer = new double[0];
+  private double[] queryIntensityBuffer = new double[0];
+
+  // last comparison
+  private double[] libraryMzs;
+  private double[] libraryIntensities;
+  private double[] queryMzs;
+  private double[] queryIntensities;
+  private int numLibrary;
+  private int overlap;
+
+  /**
+   * @return the kernel of the current thread
+   */
+  public static CosineSimilarityKernel forCurrentThread() {
+    return kernels.get();
+  }
+
+  /**
+   * The data point arrays are not modified.
+   *
+   * @return the weighted cosine similarity, see
+   * {@link #cosine(double[], double[], int, double[], double[], int, MZTolerance, Weights,
+   * HandleUnmatchedSignalOptions)}
+   */
+  public double cosine(DataPoint[] library, DataPoint[] query, MZTolerance mzTol, Weights weights,
+      HandleUnmatchedSignalOptions handleUnmatched) {
+    libraryMzBuffer = ensureCapacity(libraryMzBuffer, library.length);
+    libraryIntensityBuffer = ensureCapacity(libraryIntensityBuffer, library.length);
+    queryMzBuffer = ensureCapacity(queryMzBuffer, query.length);
+    queryIntensityBuffer = ensureCapacity(queryIntensityBuffer, query.length);
+    toSortedArrays(library, libraryMzBuffer, libraryIntensityBuffer);
+    toSortedArrays(query, queryMzBuffer, queryIntensityBuffer);
+    return cosine(libraryMzBuffer, libraryIntensityBuffer, library.length, queryMzBuffer,
+        queryIntensityBuffer, query.length, mzTol, weights, handleUnmatched);
+  }
+
+  /**
+   * Matches the signals of both spectra and calculates the weighted cosine similarity in one pass.
+   * The number of matched signals is available by {@link #getOverlap()} afterwards.
+   *
+   * @param libraryMzs         m/z values of the library spectrum in ascending order
+   * @param libraryIntensities intensities of the library spectrum
+   * @param numLibrary         number of library signals in the arrays
+   * @param queryMzs           m/z values of the query spectrum in ascending order
+   * @param queryIntensities   intensities of the query spectrum
+   * @param numQuery           number of query signals in the arrays
+   * @param handleUnmatched    unmatched signals that are kept add to the norm of their spectrum
+   * @return the weighted cosine similarity
+   */
+  public double cosine(double[] libraryMzs, double[] libraryIntensities, int numLibrary,
+      double[] queryMzs, double[] queryIntensities, int numQuery, MZTolerance mzTol,
+      Weights weights, HandleUnmatchedSignalOptions handleUnmatched) {
+    this.libraryMzs = libraryMzs;
+    this.libraryIntensities = libraryIntensities;
+    this.queryMzs = queryMzs;
+    this.queryIntensities = queryIntensities;
+    this.numLibrary = numLibrary;
+
+    if (libraryOrder.length < numLibrary) {
+      libraryOrder = new int[numLibrary];
+      libraryRanks = new int[numLibrary];
+      matches = new int[numLibrary];
+    }
+    if (queryMatched.length < numQuery) {
+      queryMatched = new boolean[numQuery];
+    } else {
+      Arrays.fill(queryMatched, 0, numQuery, false);
+    }
+    for (int i = 0; i < numLibrary; i++) {
+      libraryOrder[i] = i;
+    }
+    sortByIntensity(libraryOrder, numLibrary, libraryMzs, libraryIntensities);
+
+    overlap = 0;
+    double dot = 0;
+    double libraryMatched = 0;
+    double libraryTotal = 0;
+    double queryMatchedSum = 0;
+    for (int o = 0; o < numLibrary; o++) {
+      final int l = libraryOrder[o];
+      libraryRanks[l] = o;
+      final double mz = libraryMzs[l];
+      final double tolerance = mzTol.getMzToleranceForMass(mz);
+      final double lower = mz - tolerance;
+      final double upper = mz + tolerance;
+
+      // most intense unmatched query signal within tolerance
+      int best = -1;
+      for (int q = lowerBound(queryMzs, numQuery, lower); q < numQuery && queryMzs[q] <= upper;
+          q++) {
+        if (!queryMatched[q] && (best == -1 || isBefore(q, best, queryMzs, queryIntensities))) {
+          best = q;
+        }
+      }
+
+      final double wl = weights.apply(mz, libraryIntensities[l]);
+      libraryTotal += wl * wl;
+      matches[l] = best;
+      if (best != -1) {
+        queryMatched[best] = true;
+        overlap++;
+        final double wq = weights.apply(queryMzs[best], queryIntensities[best]);
+        dot += wl * wq;
+        libraryMatched += wl * wl;
+        queryMatchedSum += wq * wq;
+      }
+    }
+
+    final boolean keepLibrary =
+        handleUnmatched == HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO
+        || handleUnmatched == HandleUnmatchedSignalOptions.KEEP_LIBRARY_SIGNALS;
+    final boolean keepQuery =
+        handleUnmatched == HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO
+        || handleUnmatched == HandleUnmatchedSignalOptions.KEEP_EXPERIMENTAL_SIGNALS;
+
+    double queryTotal = queryMatchedSum;
+    if (keepQuery) {
+      queryTotal = 0;
+      for (int q = 0; q < numQuery; q++) {
+        final double wq = weights.apply(queryMzs[q], queryIntensities[q]);
+        queryTotal += wq * wq;
+      }
+    }
+    final double libraryNorm = keepLibrary ? libraryTotal : libraryMatched;
+    return dot / (Math.sqrt(libraryNorm) * Math.sqrt(queryTotal));
+  }
+
+  /**
+   * @return the number of matched signals of the last comparison
+   */
+  public int getOverlap() {
+    return overlap;
+  }
+
+  /**
+   * Sum of the relative intensity ratios of neighbouring matched signals in both spectra of the
+   * last comparison, divided by the overlap. Used by the composite cosine identity.
+   *
+   * @return factor from 0-1
+   */
+  public double relativeNeighbourFactor() {
+    if (pairs.length < overlap) {
+      pairs = new int[overlap];
+      pairMzs = new double[overlap];
+    }
+    // insertion sort by the lower m/z of each pair, then by matching order like the stable sort
+    // of the aligned list. Library m/z values are already sorted
+    int n = 0;
+    for (int l = 0; l < numLibrary; l++) {
+      if (matches[l] == -1) {
+        continue;
+      }
+      final double mz = Math.min(libraryMzs[l], queryMzs[matches[l]]);
+      int i = n++;
+      while (i > 0 && (pairMzs[i - 1] > mz || (pairMzs[i - 1] == mz
+                                                && libraryRanks[pairs[i - 1]] > libraryRanks[l]))) {
+        pairs[i] = pairs[i - 1];
+        pairMzs[i] = pairMzs[i - 1];
+        i--;
+      }
+      pairs[i] = l;
+      pairMzs[i] = mz;
+    }
+
+    double factor = 0;
+    for (int i = 1; i < n; i++) {
+      final int l1 = pairs[i - 1];
+      final int l2 = pairs[i];
+      final double ratioLibrary = libraryIntensities[l2] / libraryIntensities[l1];
+      final double ratioQuery = queryIntensities[matches[l2]] / queryIntensities[matches[l1]];
+      factor += Math.min(ratioLibrary, ratioQuery) / Math.max(ratioLibrary, ratioQuery);
+    }
+    return factor / overlap;
+  }
+
+  /**
+   * Descending intensity, then descending m/z as in {@link ScanAlignment#sorter}
+   */
+  private static boolean isBefore(int a, int b, double[] mzs, double[] intensities) {
+    final int result = Double.compare(intensities[a], intensities[b]);
+    return result > 0 || (result == 0 && Double.compare(mzs[a], mzs[b]) > 0);
+  }
+
+  /**
+   * Heap sort of the indices into matching order
+   */
+  private static void sortByIntensity(int[] order, int n, double[] mzs, double[] intensities) {
+    for (int i = n / 2 - 1; i >= 0; i--) {
+      siftDown(order, i, n, mzs, intensities);
+    }
+    for (int end = n - 1; end > 0; end--) {
+      final int tmp = order[0];
+      order[0] = order[end];
+      order[end] = tmp;
+      siftDown(order, 0, end, mzs, intensities);
+    }
+  }
+
+  /**
+   * Heap with the last signal in matching order at the root, so that the heap sort moves it to
+   * the end
+   */
+  private static void siftDown(int[] order, int i, int n, double[] mzs, double[] intensities) {
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= n) {
+        return;
+      }
+      if (child + 1 < n && isBefore(order[child], order[child + 1], mzs, intensities)) {
+        child++;
+      }
+      if (!isBefore(order[i], order[child], mzs, intensities)) {
+        return;
+      }
+      final int tmp = order[i];
+      order[i] = order[child];
+      order[child] = tmp;
+      i = child;
+    }
+  }
+
+  /**
+   * @return the index of the first value equal to or greater than the key
+   */
+  private static int lowerBound(double[] values, int n, double key) {
+    int low = 0;
+    int high = n;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (values[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private static void toSortedArrays(DataPoint[] dps, double[] mzs, double[] intensities) {
+    boolean sorted = true;
+    for (int i = 1; i < dps.length && sorted; i++) {
+      sorted = dps[i - 1].getMZ() <= dps[i].getMZ();
+    }
+    if (!sorted) {
+      dps = dps.clone();
+      Arrays.sort(dps, DataPointSorter.DEFAULT_MZ_ASCENDING);
+    }
+    for (int i = 0; i < dps.length; i++) {
+      mzs[i] = dps[i].getMZ();
+      intensities[i] = dps[i].getIntensity();
+    }
+  }
+
+  private static double[] ensureCapacity(double[] array, int length) {
+    return array.length < length ? new double[length] : array;
+  }
+}
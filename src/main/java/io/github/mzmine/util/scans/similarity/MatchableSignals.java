@@ -0,0 +1,142 @@
+/*
+ * Copyright 2006-2021 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.util.scans.similarity;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import java.util.Arrays;
+
+/**
+ * Signals of a library and a query spectrum that have a partner within the m/z tolerance of the
+ * library signal, as checked by {@link io.github.mzmine.util.scans.ScanAlignment}. Every aligned
+ * pair consists of matchable signals, so this gives cheap upper bounds for the overlap and the
+ * cosine similarity without aligning the spectra.
+ *
+ * @param library        number of matchable library signals
+ * @param query          number of matchable query signals
+ * @param librarySquares sum of squared weighted intensities of the matchable library signals
+ * @param libraryTotal   sum of squared weighted intensities of all library signals
+ * @param querySquares   sum of squared weighted intensities of the matchable query signals
+ * @param queryTotal     sum of squared weighted intensities of all query signals
+ */
+public record MatchableSignals(int library, int query, double librarySquares, double libraryTotal,
+                               double querySquares, double queryTotal) {
+
+  // absorbs rounding differences to the cosine calculated on aligned signals
+  private static final double EPSILON = 1E-9;
+
+  /**
+   * The data points are not modified. The query is sorted once by the caller, as it is usually
+   * matched against many library spectra.
+   *
+   * @param query sorted by ascending m/z
+   */
+  public static MatchableSignals of(MZTolerance mzTol, Weights weights, DataPoint[] library,
+      DataPoint[] query) {
+    final double[] queryMzs = new double[query.length];
+    final double[] queryWeights = new double[query.length];
+    double queryTotal = 0;
+    for (int i = 0; i < query.length; i++) {
+      queryMzs[i] = query[i].getMZ();
+      assert i == 0 || queryMzs[i - 1] <= queryMzs[i] : "query is not sorted by m/z";
+      queryWeights[i] = weight(weights, query[i]);
+      queryTotal += queryWeights[i] * queryWeights[i];
+    }
+
+    final boolean[] queryMatched = new boolean[query.length];
+    int numLibrary = 0;
+    int numQuery = 0;
+    double librarySquares = 0;
+    double libraryTotal = 0;
+    double querySquares = 0;
+    for (DataPoint dp : library) {
+      final double w = weight(weights, dp);
+      libraryTotal += w * w;
+
+      final double mz = dp.getMZ();
+      final double tolerance = mzTol.getMzToleranceForMass(mz);
+      final double lower = mz - tolerance;
+      final double upper = mz + tolerance;
+      int i = Arrays.binarySearch(queryMzs, lower);
+      if (i < 0) {
+        i = -i - 1;
+      } else {
+        // first of equal values
+        while (i > 0 && queryMzs[i - 1] == lower) {
+          i--;
+        }
+      }
+      boolean matched = false;
+      for (; i < queryMzs.length && queryMzs[i] <= upper; i++) {
+        matched = true;
+        if (!queryMatched[i]) {
+          queryMatched[i] = true;
+          numQuery++;
+          querySquares += queryWeights[i] * queryWeights[i];
+        }
+      }
+      if (matched) {
+        numLibrary++;
+        librarySquares += w * w;
+      }
+    }
+    return new MatchableSignals(numLibrary, numQuery, librarySquares, libraryTotal, querySquares,
+        queryTotal);
+  }
+
+  private static double weight(Weights weights, DataPoint dp) {
+    // same as ScanAlignment.toIntensityMatrixWeighted
+    return Math.pow(dp.getIntensity(), weights.getIntensity()) * Math.pow(dp.getMZ(),
+        weights.getMz());
+  }
+
+  /**
+   * @return upper bound of the number of aligned signal pairs
+   */
+  public int maxOverlap() {
+    return Math.min(library, query);
+  }
+
+  /**
+   * The dot product of the aligned signals is at most the product of the norms of the matchable
+   * signals (Cauchy-Schwarz). Unmatched signals that are kept for the cosine only add to the
+   * norms.
+   *
+   * @return upper bound of the weighted cosine similarity
+   */
+  public double maxCosine(HandleUnmatchedSignalOptions handleUnmatched) {
+    if (maxOverlap() == 0) {
+      return 0;
+    }
+    final boolean keepLibrary =
+        handleUnmatched == HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO
+        || handleUnmatched == HandleUnmatchedSignalOptions.KEEP_LIBRARY_SIGNALS;
+    final boolean keepQuery =
+        handleUnmatched == HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO
+        || handleUnmatched == HandleUnmatchedSignalOptions.KEEP_EXPERIMENTAL_SIGNALS;
+    double max = 1;
+    if (keepLibrary && libraryTotal > 0) {
+      max *= Math.sqrt(librarySquares / libraryTotal);
+    }
+    if (keepQuery && queryTotal > 0) {
+      max *= Math.sqrt(querySquares / queryTotal);
+    }
+    return max + EPSILON;
+  }
+}
@@ -57,6 +57,42 @@ public abstract class SpectralSimilarityFunction implements MZmineModule {
   public abstract SpectralSimilarity getSimilarity(ParameterSet parameters, MZTolerance mzTol,
       int minMatch, DataPoint[] library, DataPoint[] query);
 
+  /**
+   * Calculates the similarity only if its score can exceed minScore. The cheap upper bound of
+   * {@link #getMaxScore(ParameterSet, MZTolerance, int, DataPoint[], DataPoint[])} skips the
+   * alignment of spectra that cannot match.
+   *
+   * @param query    sorted by ascending m/z
+   * @param minScore only similarities with a higher score are returned
+   * @return A spectra similarity if all requirements were met - otherwise null
+   */
+  @Nullable
+  public SpectralSimilarity getSimilarity(ParameterSet parameters, MZTolerance mzTol,
+      int minMatch, DataPoint[] library, DataPoint[] query, double minScore) {
+    final double maxScore = getMaxScore(parameters, mzTol, minMatch, library, query);
+    if (maxScore < 0 || maxScore <= minScore) {
+      return null;
+    }
+    final SpectralSimilarity similarity = getSimilarity(parameters, mzTol, minMatch, library,
+        query);
+    return similarity == null || similarity.getScore() <= minScore ? null : similarity;
+  }
+
+  /**
+   * Upper bound of the score of
+   * {@link #getSimilarity(ParameterSet, MZTolerance, int, DataPoint[], DataPoint[])} without
+   * aligning the spectra. Override with a tighter bound for a specific similarity function.
+   *
+   * @param minMatch minimum overlap in signals
+   * @param query    sorted by ascending m/z
+   * @return an upper bound of the score or a negative value if the spectra cannot match
+   */
+  public double getMaxScore(ParameterSet parameters, MZTolerance mzTol, int minMatch,
+      DataPoint[] library, DataPoint[] query) {
+    return MatchableSignals.of(mzTol, Weights.NONE, library, query).maxOverlap() < minMatch ? -1
+        : Double.MAX_VALUE;
+  }
+
   /**
    * Align two mass lists. Override if alignement is changed in a specific spectral similarity
    * function.
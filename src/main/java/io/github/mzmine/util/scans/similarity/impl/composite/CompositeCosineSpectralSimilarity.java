@@ -18,21 +18,18 @@
 
 package io.github.mzmine.util.scans.similarity.impl.composite;
 
-import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
-import io.github.mzmine.util.maths.similarity.Similarity;
-import io.github.mzmine.util.scans.ScanAlignment;
+import io.github.mzmine.util.scans.similarity.CosineSimilarityKernel;
 import io.github.mzmine.util.scans.similarity.HandleUnmatchedSignalOptions;
+import io.github.mzmine.util.scans.similarity.MatchableSignals;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
 import io.github.mzmine.util.scans.similarity.Weights;
-import java.util.Comparator;
 
 /**
  * Similar to NIST search algorithm for GC-MS data with lots of signals (more an identity check than
@@ -56,28 +53,26 @@ public class CompositeCosineSpectralSimilarity extends SpectralSimilarityFunctio
         .getParameter(CompositeCosineSpectralSimilarityParameters.handleUnmatched)
         .getValue();
 
-    // align
-    List<DataPoint[]> aligned = alignDataPoints(mzTol, library, query);
-    // removes all signals which were not found in both masslists
-    aligned = handleUnmatched.handleUnmatched(aligned);
+    // match signals and calculate the weighted cosine without aligned data point lists
+    CosineSimilarityKernel kernel = CosineSimilarityKernel.forCurrentThread();
+    double diffCosine = kernel.cosine(library, query, mzTol, weights, handleUnmatched);
 
     int queryN = query.length;
-    int overlap = calcOverlap(aligned);
+    int overlap = kernel.getOverlap();
 
     if (overlap >= minMatch) {
       // relative factor ranges from 0-1
-      double relativeFactor = calcRelativeNeighbourFactor(aligned);
-
-      // weighted cosine
-      double[][] diffArray =
-          ScanAlignment.toIntensityMatrixWeighted(aligned, weights.getIntensity(), weights.getMz());
-      double diffCosine = Similarity.COSINE.calc(diffArray);
+      double relativeFactor = kernel.relativeNeighbourFactor();
 
       // composite dot product identity score
       // NIST search similar
       double composite = (queryN * diffCosine + overlap * relativeFactor) / (queryN + overlap);
 
       if (composite >= minCos) {
+        // only matches are aligned, the kernel matches signals like the default alignment
+        List<DataPoint[]> aligned = alignDataPoints(mzTol, library, query);
+        // removes all signals which were not found in both masslists
+        aligned = handleUnmatched.handleUnmatched(aligned);
         return new SpectralSimilarity(getName(), composite, overlap, library, query, aligned);
       } else {
         return null;
@@ -87,52 +82,28 @@ public class CompositeCosineSpectralSimilarity extends SpectralSimilarityFunctio
   }
 
   /**
-   * sum of relative ratios of neighbours in both mass lists
-   *
-   * @param aligned list of aligned signals DataPoint[library, query]
+   * Upper bound of the {@link #getSimilarity} score from the matchable signals of both spectra.
    */
-  private double calcRelativeNeighbourFactor(List<DataPoint[]> aligned) {
-    // remove all unaligned signals
-    List<DataPoint[]> filtered = removeUnaligned(aligned);
-    // sort by mz
-    sortByMZ(filtered);
-
-    // overlapping within mass tolerance
-    int overlap = calcOverlap(aligned);
-
-    // sum of relative ratios of neighbours in both mass lists
-    double factor = 0;
-    for (int i = 1; i < filtered.size(); i++) {
-      DataPoint[] match1 = filtered.get(i - 1);
-      DataPoint[] match2 = filtered.get(i);
+  @Override
+  public double getMaxScore(ParameterSet parameters, MZTolerance mzTol, int minMatch,
+      DataPoint[] library, DataPoint[] query) {
+    Weights weights =
+        parameters.getParameter(CompositeCosineSpectralSimilarityParameters.weight).getValue();
+    double minCos =
+        parameters.getParameter(CompositeCosineSpectralSimilarityParameters.minCosine).getValue();
+    HandleUnmatchedSignalOptions handleUnmatched = parameters
+        .getParameter(CompositeCosineSpectralSimilarityParameters.handleUnmatched).getValue();
 
-      // 0 is library
-      // 1 is query
-      double ratioLibrary = match2[0].getIntensity() / match1[0].getIntensity();
-      double ratioQuery = match2[1].getIntensity() / match1[1].getIntensity();
-      factor += Math.min(ratioLibrary, ratioQuery) / Math.max(ratioLibrary, ratioQuery);
+    MatchableSignals matchable = MatchableSignals.of(mzTol, weights, library, query);
+    final int maxOverlap = matchable.maxOverlap();
+    if (maxOverlap < minMatch) {
+      return -1;
     }
-    // factor ranges from 0-1 * overlap
-    return factor / (overlap);
-  }
-
-  /**
-   * Sort aligned datapoints by their minimum mz values (ascending)
-   *
-   * @param filtered list of aligned signals DataPoint[library, query]
-   */
-  private void sortByMZ(List<DataPoint[]> filtered) {
-    filtered.sort(Comparator.comparingDouble(this::getMinMZ));
-  }
-
-  /**
-   * Minimum mz of all aligned data points
-   *
-   * @param dp array of aligned data points
-   * @return minimum mz of aligned data points
-   */
-  private double getMinMZ(DataPoint[] dp) {
-    return Arrays.stream(dp).filter(Objects::nonNull).mapToDouble(DataPoint::getMZ).min().orElse(0);
+    // the composite score increases with the overlap, the relative factor is at most 1
+    final int queryN = query.length;
+    double maxComposite =
+        (queryN * matchable.maxCosine(handleUnmatched) + maxOverlap) / (queryN + maxOverlap);
+    return maxComposite < minCos ? -1 : maxComposite;
   }
 
   @Override
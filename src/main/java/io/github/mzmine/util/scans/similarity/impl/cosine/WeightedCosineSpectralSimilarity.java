@@ -18,7 +18,9 @@
 
 package io.github.mzmine.util.scans.similarity.impl.cosine;
 
+import io.github.mzmine.util.scans.similarity.CosineSimilarityKernel;
 import io.github.mzmine.util.scans.similarity.HandleUnmatchedSignalOptions;
+import io.github.mzmine.util.scans.similarity.MatchableSignals;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -26,8 +28,6 @@ import org.jetbrains.annotations.Nullable;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
-import io.github.mzmine.util.maths.similarity.Similarity;
-import io.github.mzmine.util.scans.ScanAlignment;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
 import io.github.mzmine.util.scans.similarity.Weights;
@@ -53,27 +53,43 @@ public class WeightedCosineSpectralSimilarity extends SpectralSimilarityFunction
     HandleUnmatchedSignalOptions handleUnmatched = parameters
         .getParameter(WeightedCosineSpectralSimilarityParameters.handleUnmatched).getValue();
 
-    // align
-    List<DataPoint[]> aligned = alignDataPoints(mzTol, library, query);
-    // removes all signals which were not found in both masslists
-    aligned = handleUnmatched.handleUnmatched(aligned);
-
+    // match signals and calculate the weighted cosine without aligned data point lists
+    CosineSimilarityKernel kernel = CosineSimilarityKernel.forCurrentThread();
+    double diffCosine = kernel.cosine(library, query, mzTol, weights, handleUnmatched);
     // overlapping within mass tolerance
-    int overlap = calcOverlap(aligned);
+    int overlap = kernel.getOverlap();
 
-    if (overlap >= minMatch) {
-      // weighted cosine
-      double[][] diffArray =
-          ScanAlignment.toIntensityMatrixWeighted(aligned, weights.getIntensity(), weights.getMz());
-      double diffCosine = Similarity.COSINE.calc(diffArray);
-      if (diffCosine >= minCos)
-        return new SpectralSimilarity(getName(), diffCosine, overlap, library, query, aligned);
-      else
-        return null;
+    if (overlap >= minMatch && diffCosine >= minCos) {
+      // only matches are aligned, the kernel matches signals like the default alignment
+      List<DataPoint[]> aligned = alignDataPoints(mzTol, library, query);
+      // removes all signals which were not found in both masslists
+      aligned = handleUnmatched.handleUnmatched(aligned);
+      return new SpectralSimilarity(getName(), diffCosine, overlap, library, query, aligned);
     }
     return null;
   }
 
+  /**
+   * Upper bound of the {@link #getSimilarity} score from the matchable signals of both spectra.
+   */
+  @Override
+  public double getMaxScore(ParameterSet parameters, MZTolerance mzTol, int minMatch,
+      DataPoint[] library, DataPoint[] query) {
+    Weights weights =
+        parameters.getParameter(WeightedCosineSpectralSimilarityParameters.weight).getValue();
+    double minCos =
+        parameters.getParameter(WeightedCosineSpectralSimilarityParameters.minCosine).getValue();
+    HandleUnmatchedSignalOptions handleUnmatched = parameters
+        .getParameter(WeightedCosineSpectralSimilarityParameters.handleUnmatched).getValue();
+
+    MatchableSignals matchable = MatchableSignals.of(mzTol, weights, library, query);
+    if (matchable.maxOverlap() < minMatch) {
+      return -1;
+    }
+    double maxCos = matchable.maxCosine(handleUnmatched);
+    return maxCos < minCos ? -1 : maxCos;
+  }
+
   @Override
   @NotNull
   public String getName() {
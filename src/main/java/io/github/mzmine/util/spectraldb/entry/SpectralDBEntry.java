@@ -22,6 +22,7 @@ import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.impl.SimpleDataPoint;
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
 import io.github.mzmine.util.ParsingUtils;
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.HashMap;
@@ -41,12 +42,17 @@ public class SpectralDBEntry {
   private static final String XML_FIELD_NAME_ATTR = "name";
 
   private final Map<DBEntryField, Object> fields;
+  // either data points or m/z and intensity buffers (e.g., memory mapped from a library cache)
   private final DataPoint[] dps;
+  private final DoubleBuffer mzValues;
+  private final DoubleBuffer intensityValues;
 
   public SpectralDBEntry(double precursorMZ, DataPoint[] dps) {
     this.fields = new HashMap<>();
     fields.put(DBEntryField.MZ, precursorMZ);
     this.dps = dps;
+    this.mzValues = null;
+    this.intensityValues = null;
   }
 
   public SpectralDBEntry(double precursorMZ, int charge, DataPoint[] dps) {
@@ -57,6 +63,25 @@ public class SpectralDBEntry {
   public SpectralDBEntry(Map<DBEntryField, Object> fields, DataPoint[] dps) {
     this.fields = fields;
     this.dps = dps;
+    this.mzValues = null;
+    this.intensityValues = null;
+  }
+
+  /**
+   * Entry backed by m/z and intensity buffers. The data points are only created on demand in
+   * {@link #getDataPoints()}, which keeps the spectra of memory mapped libraries off heap.
+   *
+   * @param fields          the library fields
+   * @param mzValues        m/z values (sorted ascending)
+   * @param intensityValues intensity values, same length as mzValues
+   */
+  public SpectralDBEntry(Map<DBEntryField, Object> fields, DoubleBuffer mzValues,
+      DoubleBuffer intensityValues) {
+    assert mzValues.limit() == intensityValues.limit();
+    this.fields = fields;
+    this.dps = null;
+    this.mzValues = mzValues;
+    this.intensityValues = intensityValues;
   }
 
   public static SpectralDBEntry loadFromXML(XMLStreamReader reader) throws XMLStreamException {
@@ -137,12 +162,42 @@ public class SpectralDBEntry {
     return value == null ? defaultValue : (T) value;
   }
 
+  /**
+   * @return the library fields of this entry
+   */
+  public Map<DBEntryField, Object> getFields() {
+    return fields;
+  }
+
+  public int getNumberOfDataPoints() {
+    return dps != null ? dps.length : mzValues.limit();
+  }
+
+  public double getMzValue(int index) {
+    return dps != null ? dps[index].getMZ() : mzValues.get(index);
+  }
+
+  public double getIntensityValue(int index) {
+    return dps != null ? dps[index].getIntensity() : intensityValues.get(index);
+  }
+
+  /**
+   * @return the data points of this entry. Buffer backed entries create a new array on every call.
+   */
   public DataPoint[] getDataPoints() {
-    return dps;
+    if (dps != null) {
+      return dps;
+    }
+    final DataPoint[] dataPoints = new DataPoint[mzValues.limit()];
+    for (int i = 0; i < dataPoints.length; i++) {
+      dataPoints[i] = new SimpleDataPoint(mzValues.get(i), intensityValues.get(i));
+    }
+    return dataPoints;
   }
 
   public void saveToXML(XMLStreamWriter writer) throws XMLStreamException {
     writer.writeStartElement(XML_ELEMENT);
+    final DataPoint[] dps = getDataPoints();
 
     double[] mzs = Arrays.stream(dps).mapToDouble(DataPoint::getMZ).toArray();
     double[] intensities = Arrays.stream(dps).mapToDouble(DataPoint::getIntensity).toArray();
@@ -177,7 +232,7 @@ public class SpectralDBEntry {
       return false;
     }
     SpectralDBEntry that = (SpectralDBEntry) o;
-    boolean b1 = Arrays.equals(dps, that.dps);
+    boolean b1 = Arrays.equals(getDataPoints(), that.getDataPoints());
     boolean b2 = Objects.equals(fields, that.fields);
     return b1 && b2;
   }
@@ -185,7 +240,7 @@ public class SpectralDBEntry {
   @Override
   public int hashCode() {
     int result = Objects.hash(fields);
-    result = 31 * result + Arrays.hashCode(dps);
+    result = 31 * result + Arrays.hashCode(getDataPoints());
     return result;
   }
 }
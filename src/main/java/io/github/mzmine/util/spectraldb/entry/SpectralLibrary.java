@@ -20,6 +20,7 @@ package io.github.mzmine.util.spectraldb.entry;
 import java.io.File;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * @author Robin Schmid (https://github.com/robinschmid)
@@ -29,6 +30,8 @@ public class SpectralLibrary {
   private final @NotNull String name;
   private final @NotNull File path;
   private final @NotNull List<SpectralDBEntry> entries;
+  // lazy initialized on first search
+  private volatile @Nullable SpectralLibraryPrecursorIndex precursorIndex;
 
   public SpectralLibrary(@NotNull File path, @NotNull List<SpectralDBEntry> entries) {
     this(path.getName(), path, entries);
@@ -46,6 +49,26 @@ public class SpectralLibrary {
     return entries;
   }
 
+  /**
+   * Index of all entries with a precursor m/z, sorted by m/z. Created on first access.
+   *
+   * @return the precursor index of this library
+   */
+  @NotNull
+  public SpectralLibraryPrecursorIndex getPrecursorIndex() {
+    SpectralLibraryPrecursorIndex index = precursorIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = precursorIndex;
+        if (index == null) {
+          index = new SpectralLibraryPrecursorIndex(entries);
+          precursorIndex = index;
+        }
+      }
+    }
+    return index;
+  }
+
   @NotNull
   public File getPath() {
     return path;
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.util.spectraldb.entry;
+
+import java.util.Collection;
+import java.util.Comparator;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable index of spectral library entries sorted by their precursor m/z. Only entries with a
+ * precursor m/z are indexed. The precursor m/z, retention time and CCS values are kept in primitive
+ * arrays so that searches can skip entries outside of a tolerance window without touching the
+ * field maps of the entries. Missing RT or CCS values are stored as {@link Float#NaN}.
+ */
+public class SpectralLibraryPrecursorIndex {
+
+  private final SpectralDBEntry[] entries;
+  private final double[] precursorMzs;
+  private final float[] rts;
+  private final float[] ccs;
+
+  public SpectralLibraryPrecursorIndex(@NotNull Collection<SpectralDBEntry> libraryEntries) {
+    entries = libraryEntries.stream().filter(e -> e.getPrecursorMZ() != null)
+        .sorted(Comparator.comparingDouble(SpectralDBEntry::getPrecursorMZ))
+        .toArray(SpectralDBEntry[]::new);
+
+    precursorMzs = new double[entries.length];
+    rts = new float[entries.length];
+    ccs = new float[entries.length];
+    for (int i = 0; i < entries.length; i++) {
+      precursorMzs[i] = entries[i].getPrecursorMZ();
+      rts[i] = toFloat(entries[i].getOrElse(DBEntryField.RT, null));
+      ccs[i] = toFloat(entries[i].getOrElse(DBEntryField.CCS, null));
+    }
+  }
+
+  private static float toFloat(Object value) {
+    return value instanceof Number n ? n.floatValue() : Float.NaN;
+  }
+
+  /**
+   * @param minMz the lower bound (inclusive)
+   * @return the index of the first entry with a precursor m/z >= minMz or {@link #size()} if there
+   * is none.
+   */
+  public int indexOfFirst(double minMz) {
+    int low = 0;
+    int high = precursorMzs.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (precursorMzs[mid] < minMz) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @param maxMz the upper bound (inclusive)
+   * @return the index after the last entry with a precursor m/z <= maxMz. Can be used as exclusive
+   * end index.
+   */
+  public int indexAfterLast(double maxMz) {
+    int low = 0;
+    int high = precursorMzs.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (precursorMzs[mid] <= maxMz) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  @NotNull
+  public SpectralDBEntry getEntry(int index) {
+    return entries[index];
+  }
+
+  public double getPrecursorMz(int index) {
+    return precursorMzs[index];
+  }
+
+  /**
+   * @return the retention time or {@link Float#NaN} if the entry has no RT
+   */
+  public float getRT(int index) {
+    return rts[index];
+  }
+
+  /**
+   * @return the CCS or {@link Float#NaN} if the entry has no CCS
+   */
+  public float getCCS(int index) {
+    return ccs[index];
+  }
+
+  /**
+   * @return the number of indexed entries (only entries with a precursor m/z)
+   */
+  public int size() {
+    return entries.length;
+  }
+
+}
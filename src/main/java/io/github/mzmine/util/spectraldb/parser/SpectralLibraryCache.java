@@ -0,0 +1,276 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package io.github.mzmine.util.spectraldb.parser;
+
+import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compiled binary sidecar of a spectral library file. The cache is written next to the library
+ * file after the first import and memory mapped on the next import, which skips parsing of the
+ * text formats. The cache is only used while the size and modification date of the library file
+ * match the values stored in the header.
+ * <p>
+ * Layout (big endian): header (magic, version, library file length and last modified, number of
+ * entries), the field name table, the interned string table, the data point offsets of all
+ * entries, the metadata columns as (field index, string index) pairs per entry, and finally all
+ * m/z values followed by all intensity values as flat double arrays. The m/z and intensity arrays
+ * are memory mapped and stay off heap, entries are backed by slices of these buffers.
+ */
+public class SpectralLibraryCache {
+
+  public static final String FILE_SUFFIX = ".mzlibcache";
+  private static final Logger logger = Logger.getLogger(SpectralLibraryCache.class.getName());
+  private static final int MAGIC = 0x4D5A4C43; // MZLC
+  private static final int VERSION = 1;
+
+  private SpectralLibraryCache() {
+  }
+
+  /**
+   * @param libraryFile the spectral library file
+   * @return the cache file next to the library file
+   */
+  @NotNull
+  public static File getCacheFile(@NotNull File libraryFile) {
+    return new File(libraryFile.getParentFile(), libraryFile.getName() + FILE_SUFFIX);
+  }
+
+  /**
+   * Writes the cache file of a library. The file is first written to a temporary file and then
+   * moved to the final location.
+   *
+   * @param libraryFile the source library file
+   * @param entries     all entries of the library
+   * @throws IOException if the cache cannot be written
+   */
+  public static void write(@NotNull File libraryFile, @NotNull List<SpectralDBEntry> entries)
+      throws IOException {
+    final File cacheFile = getCacheFile(libraryFile);
+    final File tmp = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+
+    // intern all field names and values
+    final List<DBEntryField> fieldTable = new ArrayList<>();
+    final Map<DBEntryField, Integer> fieldIndex = new EnumMap<>(DBEntryField.class);
+    final List<String> stringTable = new ArrayList<>();
+    final Map<String, Integer> stringIndex = new HashMap<>();
+    long numDataPoints = 0;
+    for (SpectralDBEntry entry : entries) {
+      numDataPoints += entry.getNumberOfDataPoints();
+      for (Entry<DBEntryField, Object> field : entry.getFields().entrySet()) {
+        if (field.getValue() == null) {
+          continue;
+        }
+        fieldIndex.computeIfAbsent(field.getKey(), key -> {
+          fieldTable.add(key);
+          return fieldTable.size() - 1;
+        });
+        stringIndex.computeIfAbsent(String.valueOf(field.getValue()), value -> {
+          stringTable.add(value);
+          return stringTable.size() - 1;
+        });
+      }
+    }
+
+    try (var out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(libraryFile.length());
+      out.writeLong(libraryFile.lastModified());
+      out.writeInt(entries.size());
+
+      out.writeInt(fieldTable.size());
+      for (DBEntryField field : fieldTable) {
+        writeString(out, field.name());
+      }
+      out.writeInt(stringTable.size());
+      for (String value : stringTable) {
+        writeString(out, value);
+      }
+
+      // data point offsets
+      out.writeLong(numDataPoints);
+      long offset = 0;
+      for (SpectralDBEntry entry : entries) {
+        out.writeLong(offset);
+        offset += entry.getNumberOfDataPoints();
+      }
+
+      // metadata columns
+      for (SpectralDBEntry entry : entries) {
+        final Map<DBEntryField, Object> fields = entry.getFields();
+        out.writeShort((int) fields.values().stream().filter(Objects::nonNull).count());
+        for (Entry<DBEntryField, Object> field : fields.entrySet()) {
+          if (field.getValue() == null) {
+            continue;
+          }
+          out.writeShort(fieldIndex.get(field.getKey()));
+          out.writeInt(stringIndex.get(String.valueOf(field.getValue())));
+        }
+      }
+
+      // flat m/z and intensity arrays
+      for (SpectralDBEntry entry : entries) {
+        for (int i = 0; i < entry.getNumberOfDataPoints(); i++) {
+          out.writeDouble(entry.getMzValue(i));
+        }
+      }
+      for (SpectralDBEntry entry : entries) {
+        for (int i = 0; i < entry.getNumberOfDataPoints(); i++) {
+          out.writeDouble(entry.getIntensityValue(i));
+        }
+      }
+    }
+
+    Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    logger.fine(() -> String.format("Wrote library cache %s with %d entries", cacheFile,
+        entries.size()));
+  }
+
+  /**
+   * Loads the library entries from the cache file if the cache exists and matches the library
+   * file.
+   *
+   * @param libraryFile the source library file
+   * @return the list of entries or null if there is no valid cache
+   * @throws IOException if the cache cannot be read
+   */
+  @Nullable
+  public static List<SpectralDBEntry> read(@NotNull File libraryFile) throws IOException {
+    final File cacheFile = getCacheFile(libraryFile);
+    if (!cacheFile.exists()) {
+      return null;
+    }
+
+    try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+      final long fileSize = channel.size();
+      // the metadata section is smaller than the data point arrays
+      final MappedByteBuffer meta = channel.map(MapMode.READ_ONLY, 0,
+          Math.min(fileSize, Integer.MAX_VALUE));
+
+      if (fileSize < 28 || meta.getInt() != MAGIC || meta.getInt() != VERSION) {
+        logger.info(() -> "Library cache has a different version, skipping " + cacheFile);
+        return null;
+      }
+      if (meta.getLong() != libraryFile.length() || meta.getLong() != libraryFile.lastModified()) {
+        logger.info(() -> "Library file was changed since the cache was created " + cacheFile);
+        return null;
+      }
+      final int numEntries = meta.getInt();
+
+      final DBEntryField[] fieldTable = new DBEntryField[meta.getInt()];
+      for (int i = 0; i < fieldTable.length; i++) {
+        final String name = readString(meta);
+        try {
+          fieldTable[i] = DBEntryField.valueOf(name);
+        } catch (IllegalArgumentException e) {
+          // field was removed - skip values
+          logger.fine(() -> "Unknown library field in cache " + name);
+        }
+      }
+      final String[] stringTable = new String[meta.getInt()];
+      for (int i = 0; i < stringTable.length; i++) {
+        stringTable[i] = readString(meta);
+      }
+
+      final long numDataPoints = meta.getLong();
+      final long[] offsets = new long[numEntries + 1];
+      for (int i = 0; i < numEntries; i++) {
+        offsets[i] = meta.getLong();
+      }
+      offsets[numEntries] = numDataPoints;
+
+      if (numDataPoints > Integer.MAX_VALUE / Double.BYTES) {
+        logger.info(() -> "Library is too large for a memory mapped cache " + cacheFile);
+        return null;
+      }
+
+      final List<Map<DBEntryField, Object>> fields = new ArrayList<>(numEntries);
+      for (int i = 0; i < numEntries; i++) {
+        final int numFields = meta.getShort();
+        final Map<DBEntryField, Object> entryFields = new EnumMap<>(DBEntryField.class);
+        for (int f = 0; f < numFields; f++) {
+          final DBEntryField field = fieldTable[meta.getShort()];
+          final String value = stringTable[meta.getInt()];
+          if (field != null) {
+            entryFields.put(field, field.convertValue(value));
+          }
+        }
+        fields.add(entryFields);
+      }
+
+      final long dataStart = meta.position();
+      final long arrayBytes = numDataPoints * Double.BYTES;
+      if (dataStart + 2 * arrayBytes != fileSize) {
+        logger.warning(() -> "Library cache is corrupt, skipping " + cacheFile);
+        return null;
+      }
+      final DoubleBuffer mzs = channel.map(MapMode.READ_ONLY, dataStart, arrayBytes)
+          .asDoubleBuffer();
+      final DoubleBuffer intensities = channel.map(MapMode.READ_ONLY, dataStart + arrayBytes,
+          arrayBytes).asDoubleBuffer();
+
+      final List<SpectralDBEntry> entries = new ArrayList<>(numEntries);
+      for (int i = 0; i < numEntries; i++) {
+        final int start = (int) offsets[i];
+        final int length = (int) (offsets[i + 1] - offsets[i]);
+        entries.add(new SpectralDBEntry(fields.get(i), mzs.slice(start, length),
+            intensities.slice(start, length)));
+      }
+      return entries;
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package datamodel;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.logging.Logger;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FeatureListRowIndexTest {
+
+  private static final Logger logger = Logger.getLogger(FeatureListRowIndexTest.class.getName());
+
+  private static ModularFeatureList createRows(int numRows, long seed) {
+    final ModularFeatureList flist = new ModularFeatureList("flist", null);
+    flist.addRowType(new MZType(), new RTType());
+    final Random random = new Random(seed);
+    for (int i = 0; i < numRows; i++) {
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, i);
+      row.set(MZType.class, 100d + random.nextDouble() * 1400d);
+      row.set(RTType.class, random.nextFloat() * 30f);
+      flist.addRow(row);
+    }
+    return flist;
+  }
+
+  private static List<FeatureListRow> filter(ModularFeatureList flist, Range<Float> rtRange,
+      Range<Double> mzRange) {
+    return flist.stream().filter(
+            row -> rtRange.contains(row.getAverageRT()) && mzRange.contains(row.getAverageMZ()))
+        .toList();
+  }
+
+  private static void assertSameRows(ModularFeatureList flist, Range<Float> rtRange,
+      Range<Double> mzRange) {
+    Assertions.assertEquals(filter(flist, rtRange, mzRange),
+        flist.getRowsInsideScanAndMZRange(rtRange, mzRange));
+  }
+
+  @Test
+  void testRangeQueries() {
+    final ModularFeatureList flist = createRows(5000, 42);
+    assertSameRows(flist, Range.closed(5f, 6f), Range.closed(400d, 410d));
+    assertSameRows(flist, Range.all(), Range.closedOpen(400d, 410d));
+    assertSameRows(flist, Range.openClosed(5f, 5.5f), Range.all());
+    assertSameRows(flist, Range.atLeast(29f), Range.atMost(150d));
+    Assertions.assertEquals(5000, flist.getRowsInsideScanAndMZRange(Range.all(), Range.all()).size());
+
+    // appended rows are found before the index is rebuilt
+    final ModularFeatureListRow appended = new ModularFeatureListRow(flist, 5000);
+    appended.set(MZType.class, 405d);
+    appended.set(RTType.class, 5.5f);
+    flist.addRow(appended);
+    Assertions.assertTrue(
+        flist.getRowsInsideScanAndMZRange(Range.closed(5f, 6f), Range.closed(400d, 410d))
+            .contains(appended));
+    Assertions.assertSame(appended, flist.findRowByID(5000));
+
+    // changed and removed rows
+    final FeatureListRow row = flist.getRow(10);
+    row.set(MZType.class, 1600d);
+    assertSameRows(flist, Range.all(), Range.closed(1550d, 1650d));
+    flist.removeRow(row);
+    assertSameRows(flist, Range.all(), Range.closed(1550d, 1650d));
+    Assertions.assertNull(flist.findRowByID(10));
+    Assertions.assertSame(flist.getRow(10), flist.findRowByID(11));
+  }
+
+  @Test
+  void testFeatureQueries() {
+    final RawDataFile file = new RawDataFileImpl("testfile", null, null, Color.BLACK);
+    final ModularFeatureList flist = new ModularFeatureList("flist", null, file);
+    flist.addRowType(new MZType(), new RTType());
+    flist.addFeatureType(new MZType(), new RTType());
+
+    for (int i = 0; i < 100; i++) {
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, i);
+      final ModularFeature feature = new ModularFeature(flist, file, null, null);
+      feature.set(MZType.class, 200d + i);
+      feature.set(RTType.class, i / 10f);
+      row.addFeature(file, feature);
+      flist.addRow(row);
+    }
+
+    final List<Feature> features = flist.getFeaturesInsideScanAndMZRange(file,
+        Range.closed(1f, 2f), Range.closed(205d, 215d));
+    Assertions.assertEquals(6, features.size());
+    Assertions.assertEquals(210d, features.get(0).getMZ());
+
+    final ModularFeature feature = ((ModularFeatureListRow) flist.getRow(50)).getFilesFeatures()
+        .get(file);
+    Assertions.assertEquals(50, flist.getFeatureListRowNum(feature));
+    Assertions.assertSame(flist.getRow(50), flist.getFeatureRow(feature));
+
+    // changed features are checked with their current values
+    feature.set(MZType.class, 1000d);
+    Assertions.assertEquals(List.of(feature),
+        flist.getFeaturesInsideMZRange(file, Range.closed(999d, 1001d)));
+    flist.getRow(50).removeFeature(file);
+    Assertions.assertTrue(flist.getFeaturesInsideMZRange(file, Range.closed(999d, 1001d)).isEmpty());
+    Assertions.assertEquals(-1, flist.getFeatureListRowNum(feature));
+  }
+
+  /**
+   * Changed rows are marked in the index and need to be found with their current values.
+   */
+  @Test
+  void testChangedRows() {
+    final ModularFeatureList flist = createRows(5000, 7);
+    final Random random = new Random(8);
+    for (int i = 0; i < 300; i++) {
+      final FeatureListRow row = flist.getRow(random.nextInt(flist.getNumberOfRows()));
+      if (random.nextBoolean()) {
+        row.set(MZType.class, 100d + random.nextDouble() * 1400d);
+      } else {
+        row.set(RTType.class, random.nextFloat() * 30f);
+      }
+      final double mz = 100d + random.nextDouble() * 1400d;
+      final float rt = random.nextFloat() * 30f;
+      assertSameRows(flist, Range.closed(rt, rt + 2f), Range.closed(mz, mz + 50d));
+      assertSameRows(flist, Range.all(), Range.closed(mz, mz + 5d));
+    }
+  }
+
+  /**
+   * Compares the indexed range queries with the linear filter on a large feature list.
+   */
+  @Test
+  void benchmarkRangeQueries() {
+    final int numRows = 500_000;
+    final int numQueries = 1000;
+    final ModularFeatureList flist = createRows(numRows, 1);
+
+    final Random random = new Random(2);
+    final double[] mzs = random.doubles(numQueries, 100, 1500).toArray();
+
+    long start = System.nanoTime();
+    long linearHits = 0;
+    for (int i = 0; i < numQueries / 10; i++) {
+      linearHits += filter(flist, Range.closed(5f, 10f), Range.closed(mzs[i], mzs[i] + 0.01))
+          .size();
+    }
+    final double linear = (System.nanoTime() - start) / 1E6 / (numQueries / 10d);
+
+    start = System.nanoTime();
+    long indexedHits = 0;
+    for (int i = 0; i < numQueries; i++) {
+      final List<FeatureListRow> rows = flist.getRowsInsideScanAndMZRange(Range.closed(5f, 10f),
+          Range.closed(mzs[i], mzs[i] + 0.01));
+      if (i < numQueries / 10) {
+        indexedHits += rows.size();
+      }
+    }
+    final double indexed = (System.nanoTime() - start) / 1E6 / numQueries;
+    Assertions.assertEquals(linearHits, indexedHits);
+
+    start = System.nanoTime();
+    for (int i = 0; i < numQueries; i++) {
+      Objects.requireNonNull(flist.findRowByID(random.nextInt(numRows)));
+    }
+    final double byId = (System.nanoTime() - start) / 1E6 / numQueries;
+
+    logger.info(String.format(
+        "%d rows: linear range query %.3f ms, indexed range query %.4f ms (including index "
+            + "build), find row by ID %.4f ms", numRows, linear, indexed, byId));
+  }
+}
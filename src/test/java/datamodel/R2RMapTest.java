@@ -0,0 +1,115 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package datamodel;
+
+import io.github.mzmine.datamodel.features.correlation.R2RMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class R2RMapTest {
+
+  private static final Logger logger = Logger.getLogger(R2RMapTest.class.getName());
+
+  @Test
+  void testUndirectedKey() {
+    Assertions.assertEquals(R2RMap.toKey(3, 70000), R2RMap.toKey(70000, 3));
+    Assertions.assertNotEquals(R2RMap.toKey(3, 70000), R2RMap.toKey(3, 70001));
+    Assertions.assertNotEquals(R2RMap.toKey(0, 1), R2RMap.toKey(1, 1));
+  }
+
+  @Test
+  void testUniqueKeysForLargeIDs() {
+    // the int pairing of row IDs overflowed above ~46k rows
+    final Set<Long> keys = new HashSet<>();
+    for (int a = 46000; a < 47000; a++) {
+      for (int b = a + 1; b < a + 200; b++) {
+        Assertions.assertTrue(keys.add(R2RMap.toKey(a, b)));
+      }
+    }
+    Assertions.assertTrue(keys.add(R2RMap.toKey(Integer.MAX_VALUE - 1, Integer.MAX_VALUE)));
+  }
+
+  /**
+   * Random edges inserted from multiple threads, compared with a map of boxed keys
+   */
+  @Test
+  void testSameAsHashMap() {
+    final Random random = new Random(9);
+    final long[] keys = new long[100_000];
+    final Map<Long, Integer> expected = new HashMap<>();
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = R2RMap.toKey(random.nextInt(Integer.MAX_VALUE), random.nextInt(50_000));
+      expected.put(keys[i], i);
+    }
+
+    final R2RMap<Integer> map = new R2RMap<>();
+    final R2RMap<Integer> firstHalf = new R2RMap<>();
+    IntStream.range(0, keys.length).parallel().forEach(i -> {
+      if (i < keys.length / 2) {
+        firstHalf.put(keys[i], i);
+      }
+    });
+    map.putAll(firstHalf);
+    // sequential to keep the last value of duplicate keys
+    for (int i = keys.length / 2; i < keys.length; i++) {
+      map.put(keys[i], i);
+    }
+
+    Assertions.assertEquals(expected.size(), map.size());
+    for (Entry<Long, Integer> e : expected.entrySet()) {
+      Assertions.assertEquals(e.getValue(), map.get(e.getKey()));
+    }
+    Assertions.assertEquals(new HashSet<>(expected.values()), new HashSet<>(map.values()));
+    Assertions.assertNull(map.get(R2RMap.toKey(-1, -2)));
+
+    IntStream.range(0, 1000).parallel().forEach(i -> map.remove(keys[i]));
+    for (int i = 0; i < 1000; i++) {
+      Assertions.assertFalse(map.containsKey(keys[i]));
+    }
+    map.clear();
+    Assertions.assertTrue(map.isEmpty());
+  }
+
+  /**
+   * Concurrent insertion of edges between rows with high IDs
+   */
+  @Test
+  void benchmarkConcurrentEdges() {
+    final int numRows = 200_000;
+    final int edgesPerRow = 10;
+    final R2RMap<Integer> map = new R2RMap<>();
+    final long start = System.nanoTime();
+    IntStream.range(0, numRows).parallel().forEach(a -> {
+      for (int i = 1; i <= edgesPerRow; i++) {
+        map.put(R2RMap.toKey(a, (a + i * 7919) % numRows), a);
+      }
+    });
+    final double seconds = (System.nanoTime() - start) / 1E9;
+    Assertions.assertEquals((long) numRows * edgesPerRow, map.size());
+    logger.info(String.format("Added %d edges in %.2f s", map.size(), seconds));
+  }
+}
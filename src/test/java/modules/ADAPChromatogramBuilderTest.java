@@ -0,0 +1,278 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package modules;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeMap;
+import com.google.common.collect.TreeRangeMap;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ADAPChromatogram;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.ExpandedDataPoint;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.PrimitiveChromatogramBuilder;
+import io.github.mzmine.modules.dataprocessing.featdet_adapchromatogrambuilder.PrimitiveChromatogramBuilder.MzRanges;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.DataPointSorter;
+import io.github.mzmine.util.SortingDirection;
+import io.github.mzmine.util.SortingProperty;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Random;
+import java.util.logging.Logger;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the {@link PrimitiveChromatogramBuilder} with the previous implementation of the ADAP
+ * chromatogram builder that mapped the m/z ranges in a TreeRangeMap.
+ */
+public class ADAPChromatogramBuilderTest {
+
+  private static final Logger logger = Logger.getLogger(
+      ADAPChromatogramBuilderTest.class.getName());
+
+  private static Scan[] createScans(int numScans) {
+    final RawDataFile file = new RawDataFileImpl("file", null, null, Color.BLACK);
+    final Scan[] scans = new Scan[numScans];
+    for (int i = 0; i < numScans; i++) {
+      scans[i] = new SimpleScan(file, i, 1, i * 0.01f, null, new double[0], new double[0],
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", Range.closed(0d, 2000d));
+    }
+    return scans;
+  }
+
+  /**
+   * Gaussian peaks with a jittered m/z, some of them close to each other, and random noise
+   *
+   * @return the data points of each scan, each an array of m/z and intensity
+   */
+  private static List<List<double[]>> createDataPoints(Random random, int numScans,
+      int numCompounds, int noisePerScan) {
+    final double[][] compounds = new double[numCompounds][];
+    for (int i = 0; i < numCompounds; i++) {
+      // every fifth compound is close to the previous to create overlapping m/z ranges
+      final double mz = i % 5 == 4 ? compounds[i - 1][0] + random.nextDouble() * 0.02
+          : 100 + random.nextDouble() * 900;
+      compounds[i] = new double[]{mz, random.nextInt(numScans), 1 + random.nextDouble() * 5,
+          Math.pow(10, 3 + random.nextDouble() * 3)};
+    }
+
+    final List<List<double[]>> dataPoints = new ArrayList<>();
+    for (int s = 0; s < numScans; s++) {
+      final List<double[]> scanPoints = new ArrayList<>();
+      for (double[] c : compounds) {
+        final double intensity = c[3] * Math.exp(-Math.pow(s - c[1], 2) / (2 * c[2] * c[2]));
+        if (intensity > 100) {
+          scanPoints.add(new double[]{c[0] + random.nextGaussian() * 0.002, intensity});
+        }
+      }
+      for (int i = 0; i < noisePerScan; i++) {
+        // some noise points repeat intensities to check the order of ties
+        final double intensity = random.nextInt(4) == 0 ? 500 : random.nextDouble() * 3000;
+        scanPoints.add(new double[]{100 + random.nextDouble() * 900, intensity});
+      }
+      dataPoints.add(scanPoints);
+    }
+    return dataPoints;
+  }
+
+  private static List<ADAPChromatogram> buildPrimitive(Scan[] scans,
+      List<List<double[]>> dataPoints, MZTolerance tolerance, double minHighestPoint,
+      double minGroupIntensity, int minimumScanSpan) {
+    final PrimitiveChromatogramBuilder builder = new PrimitiveChromatogramBuilder(tolerance,
+        minHighestPoint);
+    for (int s = 0; s < scans.length; s++) {
+      for (double[] dp : dataPoints.get(s)) {
+        builder.addDataPoint(dp[0], dp[1], s);
+      }
+    }
+    return builder.buildChromatograms(scans, minGroupIntensity, minimumScanSpan, () -> false);
+  }
+
+  /**
+   * The previous implementation with one {@link ExpandedDataPoint} per data point
+   */
+  private static List<ADAPChromatogram> buildRangeMap(Scan[] scans,
+      List<List<double[]>> dataPoints, MZTolerance tolerance, double minHighestPoint,
+      double minGroupIntensity, int minimumScanSpan) {
+    final RangeMap<Double, ADAPChromatogram> rangeToChromMap = TreeRangeMap.create();
+    final List<ExpandedDataPoint> allMzValues = new ArrayList<>();
+    for (int s = 0; s < scans.length; s++) {
+      for (double[] dp : dataPoints.get(s)) {
+        allMzValues.add(new ExpandedDataPoint(dp[0], dp[1], scans[s]));
+      }
+    }
+    allMzValues.sort(new DataPointSorter(SortingProperty.Intensity, SortingDirection.Descending));
+
+    for (ExpandedDataPoint mzFeature : allMzValues) {
+      final Entry<Range<Double>, ADAPChromatogram> existing = rangeToChromMap.getEntry(
+          mzFeature.getMZ());
+      if (existing != null) {
+        existing.getValue().addMzFeature(mzFeature.getScan(), mzFeature);
+      } else if (mzFeature.getIntensity() >= minHighestPoint) {
+        startNewChromatogramLimitMzRanges(rangeToChromMap, mzFeature, tolerance);
+      }
+    }
+
+    final List<ADAPChromatogram> chromatograms = new ArrayList<>();
+    for (ADAPChromatogram chromatogram : rangeToChromMap.asMapOfRanges().values()) {
+      if (chromatogram.matchesMinContinuousDataPoints(scans, minGroupIntensity, minimumScanSpan,
+          minHighestPoint)) {
+        chromatograms.add(chromatogram);
+      }
+    }
+    return chromatograms;
+  }
+
+  private static void startNewChromatogramLimitMzRanges(
+      RangeMap<Double, ADAPChromatogram> rangeToChromMap, ExpandedDataPoint mzFeature,
+      MZTolerance tolerance) {
+    final Range<Double> toleranceRange = tolerance.getToleranceRange(mzFeature.getMZ());
+    final Entry<Range<Double>, ADAPChromatogram> minusRange = rangeToChromMap.getEntry(
+        toleranceRange.lowerEndpoint());
+    final Entry<Range<Double>, ADAPChromatogram> plusRange = rangeToChromMap.getEntry(
+        toleranceRange.upperEndpoint());
+    final Double toBeLowerBound =
+        minusRange == null ? toleranceRange.lowerEndpoint() : minusRange.getKey().upperEndpoint();
+    final Double toBeUpperBound =
+        plusRange == null ? toleranceRange.upperEndpoint() : plusRange.getKey().lowerEndpoint();
+
+    if (toBeLowerBound < toBeUpperBound) {
+      final ADAPChromatogram newChrom = new ADAPChromatogram();
+      newChrom.addMzFeature(mzFeature.getScan(), mzFeature);
+      rangeToChromMap.put(Range.closedOpen(toBeLowerBound, toBeUpperBound), newChrom);
+    } else if (toBeLowerBound.equals(toBeUpperBound) && plusRange != null) {
+      plusRange.getValue().addMzFeature(mzFeature.getScan(), mzFeature);
+    } else {
+      throw new IllegalStateException("Incorrect range for m/z " + mzFeature.getMZ());
+    }
+  }
+
+  private static void assertSameChromatograms(List<ADAPChromatogram> expected,
+      List<ADAPChromatogram> actual) {
+    Assertions.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      final List<Scan> expectedScans = new ArrayList<>(expected.get(i).getScanNumbers());
+      final List<Scan> actualScans = new ArrayList<>(actual.get(i).getScanNumbers());
+      Assertions.assertEquals(expectedScans, actualScans, "scans of chromatogram " + i);
+      for (Scan scan : expectedScans) {
+        final DataPoint e = expected.get(i).getDataPoint(scan);
+        final DataPoint a = actual.get(i).getDataPoint(scan);
+        Assertions.assertEquals(e.getMZ(), a.getMZ());
+        Assertions.assertEquals(e.getIntensity(), a.getIntensity());
+      }
+    }
+  }
+
+  private static void compare(long seed, int numCompounds, int noisePerScan,
+      MZTolerance tolerance, double minHighestPoint, double minGroupIntensity,
+      int minimumScanSpan) {
+    final int numScans = 150;
+    final Scan[] scans = createScans(numScans);
+    final List<List<double[]>> dataPoints = createDataPoints(new Random(seed), numScans,
+        numCompounds, noisePerScan);
+
+    final List<ADAPChromatogram> expected = buildRangeMap(scans, dataPoints, tolerance,
+        minHighestPoint, minGroupIntensity, minimumScanSpan);
+    final List<ADAPChromatogram> actual = buildPrimitive(scans, dataPoints, tolerance,
+        minHighestPoint, minGroupIntensity, minimumScanSpan);
+    assertSameChromatograms(expected, actual);
+    logger.fine(() -> "Seed " + seed + ": " + actual.size() + " chromatograms");
+  }
+
+  /**
+   * Puts overlapping ranges into the {@link MzRanges} and a TreeRangeMap. The chromatogram builder
+   * never puts a range inside another range, TreeRangeMap would split the outer range.
+   */
+  @Test
+  void testMzRanges() {
+    final Random random = new Random(30);
+    final MzRanges ranges = new MzRanges();
+    final RangeMap<Double, Integer> expected = TreeRangeMap.create();
+    // narrow ranges fill the blocks, wide ranges remove and truncate many of them
+    for (int i = 0; i < 20000; i++) {
+      final double lower = random.nextDouble() * 1000;
+      final double width = i % 50 == 0 ? random.nextDouble() * 20 : random.nextDouble() * 0.05;
+      final double upper = lower + width;
+      final Entry<Range<Double>, Integer> outer = expected.getEntry(lower);
+      if (width == 0 || (outer != null && outer.getKey().upperEndpoint() > upper)) {
+        continue;
+      }
+      final int id = ranges.put(lower, upper);
+      expected.put(Range.closedOpen(lower, upper), id);
+
+      final double value = random.nextDouble() * 1000;
+      Assertions.assertEquals(Objects.requireNonNullElse(expected.get(value), -1),
+          ranges.get(value));
+    }
+
+    final Map<Range<Double>, Integer> expectedRanges = expected.asMapOfRanges();
+    final int[] ids = ranges.getIdsSortedByMz();
+    Assertions.assertEquals(List.copyOf(expectedRanges.values()),
+        Arrays.stream(ids).boxed().toList());
+    for (Entry<Range<Double>, Integer> entry : expectedRanges.entrySet()) {
+      Assertions.assertEquals(entry.getKey().lowerEndpoint(), ranges.getLower(entry.getValue()));
+      Assertions.assertEquals(entry.getKey().upperEndpoint(), ranges.getUpper(entry.getValue()));
+    }
+    final Set<Integer> present = new HashSet<>(expectedRanges.values());
+    for (int id = 0; id < ranges.getNumberOfIds(); id++) {
+      Assertions.assertEquals(present.contains(id), ranges.isPresent(id));
+    }
+  }
+
+  /**
+   * Few chromatograms with wide m/z ranges. New ranges often overlap existing ranges.
+   */
+  @Test
+  void testWideTolerance() {
+    for (long seed = 0; seed < 5; seed++) {
+      compare(seed, 200, 50, new MZTolerance(0.05, 50), 1000, 300, 3);
+    }
+  }
+
+  /**
+   * Many chromatograms and noise with narrow m/z ranges, more than fit into one block of ranges
+   */
+  @Test
+  void testManyChromatograms() {
+    for (long seed = 10; seed < 13; seed++) {
+      compare(seed, 3000, 300, new MZTolerance(0.002, 10), 500, 200, 4);
+    }
+  }
+
+  /**
+   * All data points start chromatograms and all chromatograms are kept
+   */
+  @Test
+  void testNoThresholds() {
+    compare(20, 500, 100, new MZTolerance(0.005, 5), 0, 0, 1);
+  }
+}
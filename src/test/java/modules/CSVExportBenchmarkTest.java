@@ -0,0 +1,163 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package modules;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.numbers.AreaType;
+import io.github.mzmine.datamodel.features.types.numbers.ChargeType;
+import io.github.mzmine.datamodel.features.types.numbers.HeightType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.features.types.numbers.RTRangeType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.modules.io.export_features_csv.CSVExportModularTask;
+import io.github.mzmine.modules.io.export_features_gnps.fbmn.FeatureListRowsFilter;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.io.CSVUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the order of the parallel CSV export and measures its throughput on wide feature lists
+ */
+public class CSVExportBenchmarkTest {
+
+  private static final Logger logger = Logger.getLogger(CSVExportBenchmarkTest.class.getName());
+  private static final String separator = "\t";
+
+  @TempDir
+  File tempDir;
+
+  /**
+   * Some features are missing to create empty values
+   */
+  private static ModularFeatureList createFeatureList(int numRows, int numFiles, long seed) {
+    final List<RawDataFile> files = new ArrayList<>();
+    for (int i = 0; i < numFiles; i++) {
+      files.add(new RawDataFileImpl("sample_" + i, null, null, Color.BLACK));
+    }
+    final ModularFeatureList flist = new ModularFeatureList("flist", null, files);
+    flist.addFeatureType(new MZType(), new RTType(), new HeightType(), new AreaType(),
+        new RTRangeType(), new ChargeType());
+
+    final Random random = new Random(seed);
+    for (int i = 0; i < numRows; i++) {
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, i);
+      for (RawDataFile file : files) {
+        if (random.nextInt(10) == 0) {
+          continue;
+        }
+        final ModularFeature feature = new ModularFeature(flist, file, null, null);
+        final float rt = random.nextFloat() * 30f;
+        feature.set(MZType.class, 100d + random.nextDouble() * 1400d);
+        feature.set(RTType.class, rt);
+        feature.set(HeightType.class, random.nextFloat() * 1E6f);
+        feature.set(AreaType.class, random.nextFloat() * 1E7f);
+        feature.set(RTRangeType.class, Range.closed(rt - 0.1f, rt + 0.1f));
+        feature.set(ChargeType.class, 1 + random.nextInt(3));
+        row.addFeature(file, feature);
+      }
+      flist.addRow(row);
+    }
+    return flist;
+  }
+
+  private static void export(ModularFeatureList flist, File file) {
+    final CSVExportModularTask task = new CSVExportModularTask(new ModularFeatureList[]{flist},
+        file, separator, ";", FeatureListRowsFilter.ALL, false, Instant.now());
+    task.run();
+    Assertions.assertEquals(TaskStatus.FINISHED, task.getStatus());
+  }
+
+  @Test
+  void testRowOrderAndValues() throws IOException {
+    final ModularFeatureList flist = createFeatureList(3000, 20, 3);
+    final File file = new File(tempDir, "export.csv");
+    export(flist, file);
+
+    final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    Assertions.assertEquals(flist.getNumberOfRows() + 1, lines.size());
+    final List<String> header = Arrays.asList(lines.get(0).split(separator, -1));
+    final int idColumn = header.indexOf("id");
+
+    final HeightType heightType = new HeightType();
+    final RTRangeType rtRangeType = new RTRangeType();
+    for (int i = 0; i < flist.getNumberOfRows(); i++) {
+      final FeatureListRow row = flist.getRow(i);
+      final String[] values = lines.get(i + 1).split(separator, -1);
+      Assertions.assertEquals(header.size(), values.length);
+      Assertions.assertEquals(String.valueOf(row.getID()), values[idColumn]);
+
+      for (RawDataFile raw : flist.getRawDataFiles()) {
+        final String prefix = CSVExportModularTask.DATAFILE_PREFIX + ":" + raw.getName() + ":";
+        final ModularFeature feature = (ModularFeature) row.getFeature(raw);
+        final String height = values[header.indexOf(prefix + "height")];
+        final String rtMax = values[header.indexOf(prefix + "rt_range:max")];
+        if (feature == null) {
+          Assertions.assertEquals("", height);
+          Assertions.assertEquals("", rtMax);
+        } else {
+          Assertions.assertEquals(
+              CSVUtils.escape(heightType.getFormattedString(feature.get(HeightType.class)),
+                  separator), height);
+          Assertions.assertEquals(CSVUtils.escape(
+              rtRangeType.getFormattedSubColValue(1, feature.get(RTRangeType.class)),
+              separator), rtMax);
+        }
+      }
+    }
+  }
+
+  /**
+   * Export of a wide feature list with 500 samples
+   */
+  @Test
+  void benchmarkWideExport() {
+    final ModularFeatureList flist = createFeatureList(400, 500, 1);
+    final File file = new File(tempDir, "wide.csv");
+
+    for (int rep = 0; rep < 3; rep++) {
+      final long start = System.nanoTime();
+      export(flist, file);
+      final double seconds = (System.nanoTime() - start) / 1E9;
+      final double mb = file.length() / 1E6;
+      logger.info(String.format(
+          "CSV export of %d rows x %d samples: %.1f MB in %.2f s (%.1f MB/s, %d threads)",
+          flist.getNumberOfRows(), flist.getNumberOfRawDataFiles(), mb, seconds, mb / seconds,
+          Runtime.getRuntime().availableProcessors()));
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package modules;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWave;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWave.CentWavePeak;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.PeakIntegrationMethod;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CentWaveTest {
+
+  private static final Logger logger = Logger.getLogger(CentWaveTest.class.getName());
+  private static final int NUM_SCANS = 600;
+  private static final double RT_STEP = 0.01;
+
+  private static double[] createRts() {
+    final double[] rts = new double[NUM_SCANS];
+    for (int i = 0; i < NUM_SCANS; i++) {
+      rts[i] = i * RT_STEP;
+    }
+    return rts;
+  }
+
+  /**
+   * @param peaks rt, sigma and height of each gaussian peak
+   */
+  private static double[] createChromatogram(double[] rts, double[][] peaks, double noise,
+      Random random) {
+    final double[] intensities = new double[rts.length];
+    for (int i = 0; i < rts.length; i++) {
+      double value = random.nextDouble() * noise;
+      for (double[] peak : peaks) {
+        value += peak[2] * Math.exp(-Math.pow(rts[i] - peak[0], 2) / (2 * peak[1] * peak[1]));
+      }
+      intensities[i] = value;
+    }
+    return intensities;
+  }
+
+  private static void assertPeak(CentWavePeak peak, double[] rts, double rt, double sigma) {
+    Assertions.assertEquals(rt, rts[peak.apex()], 2 * RT_STEP);
+    // the peak covers at least +- 1.5 sigma
+    Assertions.assertTrue(rts[peak.left()] <= rt - 1.5 * sigma, peak.toString());
+    Assertions.assertTrue(rts[peak.right()] >= rt + 1.5 * sigma, peak.toString());
+  }
+
+  @Test
+  void testReferenceChromatograms() {
+    final double[] rts = createRts();
+    final double[][] truePeaks = {{1.0, 0.03, 1E5}, {2.5, 0.05, 5E4}, {2.75, 0.04, 8E4},
+        {4.5, 0.1, 2E4}};
+    final double[] intensities = createChromatogram(rts, truePeaks, 200, new Random(1));
+    // a gap of missing values
+    for (int i = 150; i < 170; i++) {
+      intensities[i] = 0;
+    }
+
+    for (PeakIntegrationMethod method : PeakIntegrationMethod.values()) {
+      final CentWave centWave = new CentWave(10, Range.closed(0.05, 0.5), method);
+      final List<CentWavePeak> peaks = centWave.findPeaks(rts, intensities, NUM_SCANS).stream()
+          .sorted(Comparator.comparingInt(CentWavePeak::apex)).toList();
+
+      Assertions.assertEquals(truePeaks.length, peaks.size());
+      for (int i = 0; i < truePeaks.length; i++) {
+        assertPeak(peaks.get(i), rts, truePeaks[i][0], truePeaks[i][1]);
+        Assertions.assertEquals(truePeaks[i][2], peaks.get(i).height(), truePeaks[i][2] * 0.01);
+      }
+      // co-eluting peaks do not overlap
+      Assertions.assertTrue(peaks.get(1).right() <= peaks.get(2).left());
+    }
+  }
+
+  @Test
+  void testNoise() {
+    final double[] rts = createRts();
+    final double[] intensities = createChromatogram(rts, new double[0][], 1000, new Random(2));
+    final CentWave centWave = new CentWave(10, Range.closed(0.05, 0.5),
+        PeakIntegrationMethod.UseSmoothedData);
+    Assertions.assertTrue(centWave.findPeaks(rts, intensities, NUM_SCANS).isEmpty());
+    Assertions.assertTrue(centWave.findPeaks(rts, new double[NUM_SCANS], NUM_SCANS).isEmpty());
+  }
+
+  @Test
+  void benchmarkThroughput() {
+    final double[] rts = createRts();
+    final Random random = new Random(3);
+    final double[][] chromatograms = new double[2000][];
+    for (int i = 0; i < chromatograms.length; i++) {
+      chromatograms[i] = createChromatogram(rts,
+          new double[][]{{0.5 + random.nextDouble() * 5, 0.05, 1E4}}, 100, random);
+    }
+
+    final CentWave centWave = new CentWave(10, Range.closed(0.05, 0.5),
+        PeakIntegrationMethod.UseSmoothedData);
+    for (int rep = 0; rep < 3; rep++) {
+      final long start = System.nanoTime();
+      int numPeaks = 0;
+      for (double[] intensities : chromatograms) {
+        numPeaks += centWave.findPeaks(rts, intensities, NUM_SCANS).size();
+      }
+      final double seconds = (System.nanoTime() - start) / 1E9;
+      logger.info(String.format("CentWave: %.0f chromatograms/s (%d scans), %d peaks",
+          chromatograms.length / seconds, NUM_SCANS, numPeaks));
+      Assertions.assertEquals(chromatograms.length, numPeaks);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package modules;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.FeatureResolverTask;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.minimumsearch.MinimumSearchFeatureResolverParameters;
+import io.github.mzmine.parameters.parametertypes.OriginalFeatureListHandlingParameter.OriginalFeatureListOption;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.maths.CenterFunction;
+import io.github.mzmine.util.maths.CenterMeasure;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Resolves the same feature list in parallel chunks and in a single chunk
+ */
+public class FeatureResolverChunkTest {
+
+  private static final int NUM_SCANS = 200;
+  private static final float RT_STEP = 0.02f;
+
+  /**
+   * Chromatograms with up to three gaussian peaks and noise
+   */
+  private static ModularFeatureList createFeatureList(Random random, int numRows)
+      throws IOException {
+    final RawDataFile file = new RawDataFileImpl("file", null, null, Color.BLACK);
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < NUM_SCANS; i++) {
+      final Scan scan = new SimpleScan(file, i, 1, i * RT_STEP, null, new double[0], new double[0],
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", Range.closed(0d, 2000d));
+      file.addScan(scan);
+      scans.add(scan);
+    }
+
+    final ModularFeatureList flist = new ModularFeatureList("flist", null, file);
+    flist.setSelectedScans(file, scans);
+    for (int r = 0; r < numRows; r++) {
+      final double mz = 100 + random.nextDouble() * 900;
+      final int numPeaks = 1 + random.nextInt(3);
+      final double[][] peaks = new double[numPeaks][];
+      for (int p = 0; p < numPeaks; p++) {
+        // apex RT, width, height
+        peaks[p] = new double[]{random.nextDouble() * NUM_SCANS * RT_STEP,
+            0.02 + random.nextDouble() * 0.1, 1E4 + random.nextDouble() * 1E6};
+      }
+      final double[] mzs = new double[NUM_SCANS];
+      final double[] intensities = new double[NUM_SCANS];
+      for (int i = 0; i < NUM_SCANS; i++) {
+        final float rt = i * RT_STEP;
+        mzs[i] = mz;
+        intensities[i] = random.nextDouble() * 500;
+        for (double[] peak : peaks) {
+          intensities[i] +=
+              peak[2] * Math.exp(-Math.pow(rt - peak[0], 2) / (2 * peak[1] * peak[1]));
+        }
+      }
+      final ModularFeature feature = new ModularFeature(flist, file,
+          new SimpleIonTimeSeries(null, mzs, intensities, scans), FeatureStatus.DETECTED);
+      flist.addRow(new ModularFeatureListRow(flist, r + 1, feature));
+    }
+    return flist;
+  }
+
+  private static FeatureList resolve(ModularFeatureList flist, int rowsPerChunk) {
+    final MinimumSearchFeatureResolverParameters parameters =
+        new MinimumSearchFeatureResolverParameters();
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.handleOriginal,
+        OriginalFeatureListOption.KEEP);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.groupMS2Parameters, false);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.CHROMATOGRAPHIC_THRESHOLD_LEVEL,
+        0.5);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.MIN_ABSOLUTE_HEIGHT, 1E3);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.MIN_NUMBER_OF_DATAPOINTS, 4);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.MIN_RATIO, 1.7);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.MIN_RELATIVE_HEIGHT, 0d);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.PEAK_DURATION,
+        Range.closed(0d, 10d));
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.SEARCH_RT_RANGE, 0.05);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.SUFFIX, "resolved");
+
+    final MZmineProject project = new MZmineProjectImpl();
+    final FeatureResolverTask task = new FeatureResolverTask(project, null, flist, parameters,
+        new CenterFunction(CenterMeasure.MEDIAN), Instant.now(), rowsPerChunk);
+    task.run();
+    Assertions.assertEquals(TaskStatus.FINISHED, task.getStatus());
+    Assertions.assertEquals(1, project.getCurrentFeatureLists().size());
+    return project.getCurrentFeatureLists().get(0);
+  }
+
+  @Test
+  void testParallelChunksEqualSingleChunk() throws IOException {
+    final ModularFeatureList flist = createFeatureList(new Random(7), 500);
+    final FeatureList single = resolve(flist, Integer.MAX_VALUE);
+    Assertions.assertTrue(single.getNumberOfRows() > flist.getNumberOfRows());
+
+    for (int rowsPerChunk : new int[]{0, 1, 7, 64}) {
+      final FeatureList chunked = resolve(flist, rowsPerChunk);
+      Assertions.assertEquals(single.getNumberOfRows(), chunked.getNumberOfRows());
+      for (int i = 0; i < single.getNumberOfRows(); i++) {
+        final FeatureListRow expected = single.getRow(i);
+        final FeatureListRow actual = chunked.getRow(i);
+        Assertions.assertEquals(expected.getID(), actual.getID());
+        final Feature expectedFeature = expected.getBestFeature();
+        final Feature actualFeature = actual.getBestFeature();
+        Assertions.assertEquals(expectedFeature.getMZ(), actualFeature.getMZ());
+        Assertions.assertEquals(expectedFeature.getRT(), actualFeature.getRT());
+        Assertions.assertEquals(expectedFeature.getHeight(), actualFeature.getHeight());
+        Assertions.assertEquals(expectedFeature.getArea(), actualFeature.getArea());
+        Assertions.assertEquals(expectedFeature.getScanNumbers(), actualFeature.getScanNumbers());
+      }
+    }
+  }
+}
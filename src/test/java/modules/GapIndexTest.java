@@ -0,0 +1,184 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package modules;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.GapDataPoint;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.GapIndex;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the gaps filled by the {@link GapIndex} with the gaps that search every scan on their
+ * own, as the peak finder did before.
+ */
+public class GapIndexTest {
+
+  private static final int NUM_SCANS = 300;
+  private static final float RT_STEP = 0.05f;
+
+  /**
+   * Gaussian peaks and random noise
+   */
+  private static Scan[] createScans(Random random, int numCompounds, int noisePerScan) {
+    final double[][] compounds = new double[numCompounds][];
+    for (int i = 0; i < numCompounds; i++) {
+      // m/z, apex RT, width, height
+      compounds[i] = new double[]{100 + random.nextDouble() * 900,
+          random.nextDouble() * NUM_SCANS * RT_STEP, 0.05 + random.nextDouble() * 0.2,
+          1E4 + random.nextDouble() * 1E6};
+    }
+
+    final RawDataFile file = new RawDataFileImpl("file", null, null, Color.BLACK);
+    final Scan[] scans = new Scan[NUM_SCANS];
+    for (int s = 0; s < NUM_SCANS; s++) {
+      final float rt = s * RT_STEP;
+      final List<double[]> dps = new ArrayList<>();
+      for (double[] c : compounds) {
+        final double intensity = c[3] * Math.exp(-Math.pow(rt - c[1], 2) / (2 * c[2] * c[2]));
+        if (intensity > 100) {
+          dps.add(new double[]{c[0] + random.nextGaussian() * 0.001, intensity});
+        }
+      }
+      for (int i = 0; i < noisePerScan; i++) {
+        dps.add(new double[]{100 + random.nextDouble() * 900, random.nextDouble() * 1000});
+      }
+      dps.sort((a, b) -> Double.compare(a[0], b[0]));
+      final double[] mzs = dps.stream().mapToDouble(dp -> dp[0]).toArray();
+      final double[] intensities = dps.stream().mapToDouble(dp -> dp[1]).toArray();
+      scans[s] = new SimpleScan(file, s, 1, rt, null, mzs, intensities,
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", Range.closed(0d, 2000d));
+    }
+    return scans;
+  }
+
+  /**
+   * Gaps around the m/z of scan data points, or at random m/z values
+   *
+   * @return m/z center, RT center, m/z tolerance and RT tolerance of each gap
+   */
+  private static List<double[]> createGapRanges(Random random, Scan[] scans, int numGaps) {
+    final List<double[]> ranges = new ArrayList<>();
+    for (int i = 0; i < numGaps; i++) {
+      final Scan scan = scans[random.nextInt(scans.length)];
+      final double mz =
+          scan.getNumberOfDataPoints() > 0 && random.nextBoolean() ? scan.getMzValue(
+              random.nextInt(scan.getNumberOfDataPoints())) : 100 + random.nextDouble() * 900;
+      ranges.add(new double[]{mz, scan.getRetentionTime() + random.nextGaussian() * 0.1,
+          0.001 + random.nextDouble() * 0.02, 0.05 + random.nextDouble() * 0.5});
+    }
+    return ranges;
+  }
+
+  private static List<RecordingGap> createGaps(List<double[]> ranges) {
+    return ranges.stream().map(r -> new RecordingGap(Range.closed(r[0] - r[2], r[0] + r[2]),
+        Range.closed((float) (r[1] - r[3]), (float) (r[1] + r[3])))).toList();
+  }
+
+  private static void assertSameGaps(Random random, int numCompounds, int noisePerScan,
+      int numGaps, int minDataPoints) {
+    final Scan[] scans = createScans(random, numCompounds, noisePerScan);
+    final List<double[]> ranges = createGapRanges(random, scans, numGaps);
+
+    // every gap searches all scans
+    final List<RecordingGap> expected = createGaps(ranges);
+    int expectedFilled = 0;
+    for (RecordingGap gap : expected) {
+      for (Scan scan : scans) {
+        gap.offerNextScan(scan);
+      }
+      if (gap.noMoreOffers(minDataPoints)) {
+        expectedFilled++;
+      }
+    }
+
+    final List<RecordingGap> actual = createGaps(ranges);
+    final GapIndex index = new GapIndex(actual);
+    for (Scan scan : scans) {
+      index.offerNextScan(scan);
+    }
+    Assertions.assertEquals(expectedFilled, index.noMoreOffers(minDataPoints));
+    Assertions.assertTrue(expectedFilled > 0);
+
+    for (int i = 0; i < numGaps; i++) {
+      final List<double[]> expectedPoints = expected.get(i).feature;
+      final List<double[]> actualPoints = actual.get(i).feature;
+      if (expectedPoints == null) {
+        Assertions.assertNull(actualPoints);
+        continue;
+      }
+      Assertions.assertNotNull(actualPoints);
+      Assertions.assertEquals(expectedPoints.size(), actualPoints.size());
+      for (int j = 0; j < expectedPoints.size(); j++) {
+        Assertions.assertArrayEquals(expectedPoints.get(j), actualPoints.get(j));
+      }
+    }
+  }
+
+  @Test
+  void testSameAsSearchPerGap() {
+    assertSameGaps(new Random(5), 200, 50, 2000, 1);
+  }
+
+  @Test
+  void testMinDataPoints() {
+    assertSameGaps(new Random(11), 100, 20, 1000, 5);
+  }
+
+  /**
+   * Many overlapping gaps in noisy scans with few compounds
+   */
+  @Test
+  void testOverlappingGaps() {
+    assertSameGaps(new Random(17), 30, 200, 3000, 3);
+  }
+
+  /**
+   * Keeps the data points of the detected feature instead of adding it to a row
+   */
+  private static class RecordingGap extends Gap {
+
+    // RT, m/z and intensity of each data point
+    private List<double[]> feature;
+
+    private RecordingGap(Range<Double> mzRange, Range<Float> rtRange) {
+      super(null, null, mzRange, rtRange, 0.2);
+    }
+
+    @Override
+    protected boolean addFeatureToRow() {
+      feature = new ArrayList<>();
+      for (GapDataPoint dp : bestPeakDataPoints) {
+        feature.add(new double[]{dp.getRT(), dp.getMZ(), dp.getIntensity()});
+      }
+      return true;
+    }
+  }
+}
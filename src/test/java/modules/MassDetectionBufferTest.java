@@ -0,0 +1,204 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package modules;
+
+import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.impl.SimpleMassSpectrum;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionBuffer;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.auto.AutoMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.auto.AutoMassDetectorParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.centroid.CentroidMassDetectorParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.exactmass.ExactMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.exactmass.ExactMassDetectorParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.localmaxima.LocalMaxMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.localmaxima.LocalMaxMassDetectorParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.recursive.RecursiveMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.recursive.RecursiveMassDetectorParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.wavelet.WaveletMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.wavelet.WaveletMassDetectorParameters;
+import io.github.mzmine.parameters.ParameterSet;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class MassDetectionBufferTest {
+
+  private static final Logger logger = Logger.getLogger(MassDetectionBufferTest.class.getName());
+
+  private static final List<MassDetector> detectors = new ArrayList<>();
+  private static final List<ParameterSet> parameters = new ArrayList<>();
+
+  @BeforeAll
+  static void initialise() {
+    MZmineCore.main(new String[]{"-r", "-m", "all"});
+
+    final CentroidMassDetectorParameters centroid = new CentroidMassDetectorParameters();
+    centroid.setParameter(CentroidMassDetectorParameters.noiseLevel, 50d);
+    centroid.setParameter(CentroidMassDetectorParameters.detectIsotopes, false);
+    add(new CentroidMassDetector(), centroid);
+
+    final ExactMassDetectorParameters exact = new ExactMassDetectorParameters();
+    exact.setParameter(ExactMassDetectorParameters.noiseLevel, 50d);
+    exact.setParameter(ExactMassDetectorParameters.detectIsotopes, false);
+    add(new ExactMassDetector(), exact);
+
+    final LocalMaxMassDetectorParameters localMax = new LocalMaxMassDetectorParameters();
+    localMax.setParameter(LocalMaxMassDetectorParameters.noiseLevel, 50d);
+    add(new LocalMaxMassDetector(), localMax);
+
+    final RecursiveMassDetectorParameters recursive = new RecursiveMassDetectorParameters();
+    recursive.setParameter(RecursiveMassDetectorParameters.noiseLevel, 50d);
+    recursive.setParameter(RecursiveMassDetectorParameters.minimumMZPeakWidth, 0.002);
+    recursive.setParameter(RecursiveMassDetectorParameters.maximumMZPeakWidth, 0.03);
+    add(new RecursiveMassDetector(), recursive);
+
+    final WaveletMassDetectorParameters wavelet = new WaveletMassDetectorParameters();
+    wavelet.setParameter(WaveletMassDetectorParameters.noiseLevel, 50d);
+    wavelet.setParameter(WaveletMassDetectorParameters.scaleLevel, 3);
+    wavelet.setParameter(WaveletMassDetectorParameters.waveletWindow, 0.3);
+    add(new WaveletMassDetector(), wavelet);
+
+    final AutoMassDetectorParameters auto = new AutoMassDetectorParameters();
+    auto.setParameter(AutoMassDetectorParameters.noiseLevel, 50d);
+    auto.setParameter(AutoMassDetectorParameters.detectIsotopes, false);
+    add(new AutoMassDetector(), auto);
+  }
+
+  private static void add(MassDetector detector, ParameterSet param) {
+    detectors.add(detector);
+    parameters.add(param);
+  }
+
+  /**
+   * Profile spectrum with gaussian peaks, noise and zero intensity regions.
+   */
+  private static MassSpectrum createProfileSpectrum(Random random, int numDataPoints) {
+    final double[] mzs = new double[numDataPoints];
+    final double[] intensities = new double[numDataPoints];
+    final double[] centers = new double[numDataPoints / 100 + 1];
+    for (int i = 0; i < centers.length; i++) {
+      centers[i] = 100 + random.nextDouble() * numDataPoints * 0.002;
+    }
+
+    for (int i = 0; i < numDataPoints; i++) {
+      mzs[i] = 100 + i * 0.002;
+      double intensity = random.nextDouble() * 20;
+      for (double center : centers) {
+        intensity += 1000 * Math.exp(-Math.pow((mzs[i] - center) / 0.004, 2));
+      }
+      intensities[i] = intensity < 5 ? 0 : intensity;
+    }
+    return new SimpleMassSpectrum(mzs, intensities, MassSpectrumType.PROFILE);
+  }
+
+  /**
+   * The buffer is reused for spectra of different sizes and gives the same masses as the array
+   * API.
+   */
+  @Test
+  void testBufferEqualsArrays() {
+    final Random random = new Random(42);
+    final List<MassSpectrum> spectra = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      spectra.add(createProfileSpectrum(random, random.nextInt(5000)));
+    }
+
+    for (int d = 0; d < detectors.size(); d++) {
+      final MassDetector detector = detectors.get(d);
+      final MassDetectionBuffer buffer = new MassDetectionBuffer(10);
+      for (MassSpectrum spectrum : spectra) {
+        final double[][] expected = detector.getMassValues(spectrum, parameters.get(d));
+        final int numDetected = detector.getMassValues(spectrum, parameters.get(d), buffer);
+
+        Assertions.assertEquals(expected[0].length, numDetected, detector.getName());
+        Assertions.assertEquals(numDetected, buffer.size());
+        final double[][] actual = buffer.toArrays();
+        Assertions.assertArrayEquals(expected[0], actual[0], detector.getName());
+        Assertions.assertArrayEquals(expected[1], actual[1], detector.getName());
+      }
+    }
+  }
+
+  /**
+   * Measures the time and the allocated memory per spectrum of both APIs for each detector.
+   */
+  @Test
+  void benchmarkDetectors() {
+    final Random random = new Random(1);
+    final List<MassSpectrum> spectra = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      spectra.add(createProfileSpectrum(random, 5000));
+    }
+    final int rounds = 5;
+    final int numSpectra = spectra.size() * rounds;
+
+    for (int d = 0; d < detectors.size(); d++) {
+      final MassDetector detector = detectors.get(d);
+      final ParameterSet param = parameters.get(d);
+      final MassDetectionBuffer buffer = new MassDetectionBuffer();
+      // warm up
+      for (MassSpectrum spectrum : spectra) {
+        detector.getMassValues(spectrum, param);
+        detector.getMassValues(spectrum, param, buffer);
+      }
+
+      long bytes = getAllocatedBytes();
+      long start = System.nanoTime();
+      long detected = 0;
+      for (int r = 0; r < rounds; r++) {
+        for (MassSpectrum spectrum : spectra) {
+          detected += detector.getMassValues(spectrum, param)[0].length;
+        }
+      }
+      final double arrayMicros = (System.nanoTime() - start) / 1E3 / numSpectra;
+      final long arrayBytes = (getAllocatedBytes() - bytes) / numSpectra;
+
+      bytes = getAllocatedBytes();
+      start = System.nanoTime();
+      for (int r = 0; r < rounds; r++) {
+        for (MassSpectrum spectrum : spectra) {
+          detected -= detector.getMassValues(spectrum, param, buffer);
+        }
+      }
+      final double bufferMicros = (System.nanoTime() - start) / 1E3 / numSpectra;
+      final long bufferBytes = (getAllocatedBytes() - bytes) / numSpectra;
+      Assertions.assertEquals(0, detected);
+
+      logger.info(String.format(
+          "%s: arrays %.1f µs and %d bytes per spectrum, buffer %.1f µs and %d bytes per spectrum",
+          detector.getName(), arrayMicros, arrayBytes, bufferMicros, bufferBytes));
+    }
+  }
+
+  private static long getAllocatedBytes() {
+    if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean) {
+      return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+}
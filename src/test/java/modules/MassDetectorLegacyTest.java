@@ -0,0 +1,473 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package modules;
+
+import com.google.common.collect.Range;
+import com.google.common.primitives.Doubles;
+import gnu.trove.list.array.TDoubleArrayList;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.datamodel.impl.SimpleMassSpectrum;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetectionBuffer;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.exactmass.ExactMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.recursive.RecursiveMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.recursive.RecursiveMassDetectorParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.wavelet.WaveletMassDetector;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.wavelet.WaveletMassDetectorParameters;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.DataPointSorter;
+import io.github.mzmine.util.SortingDirection;
+import io.github.mzmine.util.SortingProperty;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the exact mass, recursive threshold and wavelet mass detectors with their previous
+ * implementations, which collected boxed indices and {@link DataPoint}s, on random spectra.
+ */
+public class MassDetectorLegacyTest {
+
+  /**
+   * Profile spectrum with gaussian peaks of different widths, overlapping peaks, noise and zero
+   * intensity regions. Rounded intensities create plateaus of equal intensities.
+   */
+  private static MassSpectrum createProfileSpectrum(Random random, int numDataPoints,
+      boolean round) {
+    final double[] mzs = new double[numDataPoints];
+    final double[] intensities = new double[numDataPoints];
+    final double[][] peaks = new double[numDataPoints / 50 + 1][];
+    for (int i = 0; i < peaks.length; i++) {
+      // center, width, height
+      peaks[i] = new double[]{100 + random.nextDouble() * numDataPoints * 0.002,
+          0.001 + random.nextDouble() * 0.015, 100 + random.nextDouble() * 5000};
+    }
+
+    for (int i = 0; i < numDataPoints; i++) {
+      mzs[i] = 100 + i * 0.002;
+      double intensity = random.nextDouble() * 20;
+      for (double[] peak : peaks) {
+        intensity += peak[2] * Math.exp(-Math.pow((mzs[i] - peak[0]) / peak[1], 2));
+      }
+      if (round) {
+        intensity = Math.round(intensity / 50) * 50d;
+      }
+      intensities[i] = intensity < 5 ? 0 : intensity;
+    }
+    return new SimpleMassSpectrum(mzs, intensities, MassSpectrumType.PROFILE);
+  }
+
+  private static List<MassSpectrum> createSpectra(long seed) {
+    final Random random = new Random(seed);
+    final List<MassSpectrum> spectra = new ArrayList<>();
+    for (int n : new int[]{0, 1, 2, 3}) {
+      spectra.add(createProfileSpectrum(random, n, false));
+    }
+    for (int i = 0; i < 150; i++) {
+      spectra.add(createProfileSpectrum(random, random.nextInt(5000), i % 3 == 0));
+    }
+    return spectra;
+  }
+
+  private static void assertSameMasses(double[][] expected, double[][] actual, String message) {
+    Assertions.assertArrayEquals(expected[0], actual[0], message);
+    Assertions.assertArrayEquals(expected[1], actual[1], message);
+  }
+
+  @Test
+  void testExactMass() {
+    // 13C, 13C with charge 2 and 34S
+    final List<Double> isotopesMzDiffs = List.of(0.50168, 1.00335, 1.99580);
+    final MZTolerance tolerance = new MZTolerance(0.0005, 10);
+    final MassDetectionBuffer buffer = new MassDetectionBuffer(10);
+    int detected = 0;
+
+    for (MassSpectrum spectrum : createSpectra(11)) {
+      for (double noiseLevel : new double[]{0, 50, 500}) {
+        final double[][] expected = legacyExactMass(spectrum, noiseLevel, false, null, null, 0d);
+        assertSameMasses(expected, ExactMassDetector.getMassValues(spectrum, noiseLevel),
+            "noise " + noiseLevel);
+        detected += expected[0].length;
+
+        final double[][] expectedIsotopes = legacyExactMass(spectrum, noiseLevel, true, tolerance,
+            isotopesMzDiffs, 1.99580);
+        ExactMassDetector.getMassValues(spectrum, noiseLevel, true, tolerance, isotopesMzDiffs,
+            1.99580, buffer);
+        assertSameMasses(expectedIsotopes, buffer.toArrays(), "isotopes, noise " + noiseLevel);
+      }
+    }
+    Assertions.assertTrue(detected > 0);
+  }
+
+  @Test
+  void testRecursiveThreshold() {
+    final RecursiveMassDetector detector = new RecursiveMassDetector();
+    final MassDetectionBuffer buffer = new MassDetectionBuffer(10);
+    final RecursiveMassDetectorParameters parameters = new RecursiveMassDetectorParameters();
+    int detected = 0;
+
+    for (MassSpectrum spectrum : createSpectra(12)) {
+      for (double[] setting : new double[][]{{50, 0.002, 0.03}, {10, 0.001, 0.01},
+          {200, 0.004, 0.05}}) {
+        parameters.setParameter(RecursiveMassDetectorParameters.noiseLevel, setting[0]);
+        parameters.setParameter(RecursiveMassDetectorParameters.minimumMZPeakWidth, setting[1]);
+        parameters.setParameter(RecursiveMassDetectorParameters.maximumMZPeakWidth, setting[2]);
+
+        final double[][] expected = legacyRecursive(spectrum, setting[0], setting[1], setting[2]);
+        detector.getMassValues(spectrum, parameters, buffer);
+        assertSameMasses(expected, buffer.toArrays(), "noise " + setting[0]);
+        detected += expected[0].length;
+      }
+    }
+    Assertions.assertTrue(detected > 0);
+  }
+
+  @Test
+  void testWavelet() {
+    final WaveletMassDetector detector = new WaveletMassDetector();
+    final MassDetectionBuffer buffer = new MassDetectionBuffer(10);
+    final WaveletMassDetectorParameters parameters = new WaveletMassDetectorParameters();
+    int detected = 0;
+
+    for (MassSpectrum spectrum : createSpectra(13)) {
+      for (int scaleLevel : new int[]{1, 3, 6}) {
+        for (double waveletWindow : new double[]{0.1, 0.3, 1}) {
+          parameters.setParameter(WaveletMassDetectorParameters.noiseLevel, 50d);
+          parameters.setParameter(WaveletMassDetectorParameters.scaleLevel, scaleLevel);
+          parameters.setParameter(WaveletMassDetectorParameters.waveletWindow, waveletWindow);
+
+          final double[][] expected = legacyWavelet(spectrum, 50d, scaleLevel, waveletWindow);
+          detector.getMassValues(spectrum, parameters, buffer);
+          assertSameMasses(expected, buffer.toArrays(),
+              "scale " + scaleLevel + ", window " + waveletWindow);
+          detected += expected[0].length;
+        }
+      }
+    }
+    Assertions.assertTrue(detected > 0);
+  }
+
+  /**
+   * The previous exact mass detector with a list of boxed indices for the current peak
+   */
+  private static double[][] legacyExactMass(MassSpectrum spectrum, double noiseLevel,
+      boolean detectIsotopes, MZTolerance isotopesMzTolerance, List<Double> isotopesMzDiffs,
+      double maxIsotopeMzDiff) {
+    TDoubleArrayList mzs = new TDoubleArrayList(100);
+    TDoubleArrayList intensities = new TDoubleArrayList(100);
+
+    int localMaximumIndex = 0;
+    ArrayList<Integer> rangeDataPoints = new ArrayList<>();
+    boolean ascending = true;
+
+    for (int i = 0; i < spectrum.getNumberOfDataPoints() - 1; i++) {
+      double intensity = spectrum.getIntensityValue(i);
+      double nextIntensity = spectrum.getIntensityValue(i + 1);
+
+      boolean nextIsBigger = nextIntensity > intensity;
+      boolean nextIsZero = Double.compare(nextIntensity, 0d) == 0;
+      boolean currentIsZero = Double.compare(intensity, 0d) == 0;
+
+      if (currentIsZero) {
+        continue;
+      }
+
+      rangeDataPoints.add(i);
+
+      if (ascending && (!nextIsBigger)) {
+        localMaximumIndex = i;
+        ascending = false;
+        continue;
+      }
+
+      if ((!ascending) && (nextIsBigger || nextIsZero)) {
+        double exactMz = legacyCalculateExactMass(spectrum, localMaximumIndex, rangeDataPoints);
+
+        if (spectrum.getIntensityValue(localMaximumIndex) > noiseLevel || (detectIsotopes && (
+            mzs.isEmpty()
+            || Doubles.compare(exactMz - mzs.get(mzs.size() - 1), maxIsotopeMzDiff) <= 0)
+            && legacyIsPossibleIsotopeMz(exactMz, mzs, isotopesMzDiffs, isotopesMzTolerance))) {
+          mzs.add(exactMz);
+          intensities.add(spectrum.getIntensityValue(localMaximumIndex));
+        }
+
+        ascending = true;
+        rangeDataPoints.clear();
+      }
+    }
+    return new double[][]{mzs.toArray(), intensities.toArray()};
+  }
+
+  private static double legacyCalculateExactMass(MassSpectrum spectrum, int topIndex,
+      List<Integer> rangeDataPoints) {
+    double xRight = -1, xLeft = -1;
+    double halfIntensity = spectrum.getIntensityValue(topIndex) / 2;
+
+    for (int i = 0; i < rangeDataPoints.size() - 1; i++) {
+      // left side of the curve
+      if ((spectrum.getIntensityValue(rangeDataPoints.get(i)) <= halfIntensity) && (
+          spectrum.getMzValue(rangeDataPoints.get(i)) < spectrum.getMzValue(topIndex)) && (
+              spectrum.getIntensityValue(rangeDataPoints.get(i + 1)) >= halfIntensity)) {
+        double leftY1 = spectrum.getIntensityValue(rangeDataPoints.get(i));
+        double leftX1 = spectrum.getMzValue(rangeDataPoints.get(i));
+        double leftY2 = spectrum.getIntensityValue(rangeDataPoints.get(i + 1));
+        double leftX2 = spectrum.getMzValue(rangeDataPoints.get(i + 1));
+        double mLeft = (leftY1 - leftY2) / (leftX1 - leftX2);
+        if (mLeft == 0.0) {
+          xLeft = (leftX1 + leftX2) / 2;
+        } else {
+          xLeft = leftX1 + (((halfIntensity) - leftY1) / mLeft);
+        }
+        continue;
+      }
+
+      // right side of the curve
+      if ((spectrum.getIntensityValue(rangeDataPoints.get(i)) >= halfIntensity) && (
+          spectrum.getMzValue(rangeDataPoints.get(i)) > spectrum.getMzValue(topIndex)) && (
+              spectrum.getIntensityValue(rangeDataPoints.get(i + 1)) <= halfIntensity)) {
+        double rightY1 = spectrum.getIntensityValue(rangeDataPoints.get(i));
+        double rightX1 = spectrum.getMzValue(rangeDataPoints.get(i));
+        double rightY2 = spectrum.getIntensityValue(rangeDataPoints.get(i + 1));
+        double rightX2 = spectrum.getMzValue(rangeDataPoints.get(i + 1));
+        double mRight = (rightY1 - rightY2) / (rightX1 - rightX2);
+        if (mRight == 0.0) {
+          xRight = (rightX1 + rightX2) / 2;
+        } else {
+          xRight = rightX1 + (((halfIntensity) - rightY1) / mRight);
+        }
+        break;
+      }
+    }
+
+    if ((xRight == -1) || (xLeft == -1)) {
+      return spectrum.getMzValue(topIndex);
+    }
+    return (xLeft + xRight) / 2;
+  }
+
+  /**
+   * The previous isotope check with a tolerance range for each candidate
+   */
+  private static boolean legacyIsPossibleIsotopeMz(double newMz, TDoubleArrayList knownMzs,
+      List<Double> isotopesMzDiffs, MZTolerance mzTolerance) {
+    for (double isotopeMzDiff : isotopesMzDiffs) {
+      double theoreticalMz = newMz - isotopeMzDiff;
+      Range<Double> theoreticalMzTolRange = mzTolerance.getToleranceRange(theoreticalMz);
+      for (int mzIndex = knownMzs.size() - 1; mzIndex >= 0; mzIndex--) {
+        double realMz = knownMzs.get(mzIndex);
+        if (Doubles.compare(theoreticalMzTolRange.lowerEndpoint(), realMz) > 0) {
+          break;
+        }
+        if (theoreticalMzTolRange.contains(realMz)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The previous recursive threshold detector that collected the maxima in a sorted set
+   */
+  private static double[][] legacyRecursive(MassSpectrum scan, double noiseLevel,
+      double minimumMZPeakWidth, double maximumMZPeakWidth) {
+    TreeSet<DataPoint> mzPeaks = new TreeSet<>(
+        new DataPointSorter(SortingProperty.MZ, SortingDirection.Ascending));
+    legacyRecursiveThreshold(mzPeaks, scan, 1, scan.getNumberOfDataPoints() - 1, noiseLevel,
+        minimumMZPeakWidth, maximumMZPeakWidth, 0);
+    return toArrays(mzPeaks);
+  }
+
+  private static int legacyRecursiveThreshold(TreeSet<DataPoint> mzPeaks, MassSpectrum scan,
+      int startInd, int stopInd, double curentNoiseLevel, double minimumMZPeakWidth,
+      double maximumMZPeakWidth, int recuLevel) {
+    int peakStartInd, peakStopInd, peakMaxInd;
+    double peakWidthMZ;
+
+    for (int ind = startInd; ind < stopInd; ind++) {
+      boolean currentIsBiggerNoise = scan.getIntensityValue(ind) > curentNoiseLevel;
+      double localMinimum = Double.MAX_VALUE;
+
+      if (!currentIsBiggerNoise) {
+        continue;
+      }
+
+      peakStartInd = ind;
+      peakMaxInd = peakStartInd;
+
+      while ((ind < stopInd) && (scan.getIntensityValue(ind) > curentNoiseLevel)) {
+        boolean isLocalMinimum = (scan.getIntensityValue(ind - 1) > scan.getIntensityValue(ind))
+                                 && (scan.getIntensityValue(ind) < scan.getIntensityValue(
+            ind + 1));
+        if (isLocalMinimum && (scan.getIntensityValue(ind) < localMinimum)) {
+          localMinimum = scan.getIntensityValue(ind);
+        }
+        if (scan.getIntensityValue(ind) > scan.getIntensityValue(peakMaxInd)) {
+          peakMaxInd = ind;
+        }
+        ind++;
+      }
+
+      peakStopInd = ind;
+      peakWidthMZ = scan.getMzValue(peakStopInd) - scan.getMzValue(peakStartInd);
+
+      if ((peakWidthMZ >= minimumMZPeakWidth) && (peakWidthMZ <= maximumMZPeakWidth)) {
+        mzPeaks.add(
+            new SimpleDataPoint(scan.getMzValue(peakMaxInd), scan.getIntensityValue(peakMaxInd)));
+        if (recuLevel > 0) {
+          return ind;
+        }
+      }
+
+      if (peakWidthMZ > maximumMZPeakWidth) {
+        if (localMinimum < Double.MAX_VALUE) {
+          ind = legacyRecursiveThreshold(mzPeaks, scan, peakStartInd, peakStopInd, localMinimum,
+              minimumMZPeakWidth, maximumMZPeakWidth, recuLevel + 1);
+        }
+      }
+    }
+    return stopInd;
+  }
+
+  /**
+   * The previous wavelet detector that recalculated the wavelet for each spectrum and collected
+   * the maxima in a sorted set
+   */
+  private static double[][] legacyWavelet(MassSpectrum scan, double noiseLevel, int scaleLevel,
+      double waveletWindow) {
+    final double npoints = 60000;
+    final int waveletEsl = -5;
+    final int waveletEsr = 5;
+
+    // continuous wavelet transform
+    int length = scan.getNumberOfDataPoints();
+    SimpleDataPoint[] waveletDataPoints = new SimpleDataPoint[length];
+    double wstep = ((waveletEsr - waveletEsl) / npoints);
+    double[] W = new double[(int) npoints];
+    double waveletIndex = waveletEsl;
+    for (int j = 0; j < npoints; j++) {
+      W[j] = legacyCwtMEXHATreal(waveletIndex, waveletWindow, 0.0);
+      waveletIndex += wstep;
+    }
+
+    int d = (int) npoints / (waveletEsr - waveletEsl);
+    int a_esl = scaleLevel * waveletEsl;
+    int a_esr = scaleLevel * waveletEsr;
+    double sqrtScaleLevel = Math.sqrt(scaleLevel);
+    for (int dx = 0; dx < length; dx++) {
+      int t1 = a_esl + dx;
+      if (t1 < 0) {
+        t1 = 0;
+      }
+      int t2 = a_esr + dx;
+      if (t2 >= length) {
+        t2 = (length - 1);
+      }
+
+      double intensity = 0.0;
+      for (int i = t1; i <= t2; i++) {
+        int ind = (int) (npoints / 2) - ((d * (i - dx) / scaleLevel) * (-1));
+        if (ind < 0) {
+          ind = 0;
+        }
+        if (ind >= npoints) {
+          ind = (int) npoints - 1;
+        }
+        intensity += scan.getIntensityValue(i) * W[ind];
+      }
+      intensity /= sqrtScaleLevel;
+      if (intensity < 0) {
+        intensity = 0;
+      }
+      waveletDataPoints[dx] = new SimpleDataPoint(scan.getMzValue(dx), intensity);
+    }
+
+    // maxima of the wavelet data points
+    TreeSet<DataPoint> mzPeaks = new TreeSet<>(
+        new DataPointSorter(SortingProperty.MZ, SortingDirection.Ascending));
+    List<DataPoint> rawDataPoints = new ArrayList<>();
+    int peakMaxInd;
+    int stopInd = waveletDataPoints.length - 1;
+
+    for (int ind = 0; ind <= stopInd; ind++) {
+      while ((ind <= stopInd) && (waveletDataPoints[ind].getIntensity() == 0)) {
+        ind++;
+      }
+      peakMaxInd = ind;
+      if (ind >= stopInd) {
+        break;
+      }
+
+      while ((ind <= stopInd) && (waveletDataPoints[ind].getIntensity() > 0)) {
+        if (waveletDataPoints[ind].getIntensity() > waveletDataPoints[peakMaxInd].getIntensity()) {
+          peakMaxInd = ind;
+        }
+        rawDataPoints.add(new SimpleDataPoint(scan.getMzValue(ind), scan.getIntensityValue(ind)));
+        ind++;
+      }
+
+      if (ind >= stopInd) {
+        break;
+      }
+
+      rawDataPoints.add(new SimpleDataPoint(scan.getMzValue(ind), scan.getIntensityValue(ind)));
+
+      if (scan.getIntensityValue(peakMaxInd) > noiseLevel) {
+        double aproxIntensity = 0;
+        for (DataPoint dp : rawDataPoints) {
+          if (dp.getIntensity() > aproxIntensity) {
+            aproxIntensity = dp.getIntensity();
+          }
+        }
+        mzPeaks.add(new SimpleDataPoint(scan.getMzValue(peakMaxInd), aproxIntensity));
+      }
+      rawDataPoints.clear();
+    }
+    return toArrays(mzPeaks);
+  }
+
+  private static double legacyCwtMEXHATreal(double x, double a, double b) {
+    double c = 0.8673250705840776;
+    double TINY = 1E-200;
+    double x2;
+    if (a == 0.0) {
+      a = TINY;
+    }
+    x = (x - b) / a;
+    x2 = x * x;
+    return c * (1.0 - x2) * Math.exp(-x2 / 2);
+  }
+
+  private static double[][] toArrays(TreeSet<DataPoint> mzPeaks) {
+    final double[] mzs = new double[mzPeaks.size()];
+    final double[] intensities = new double[mzPeaks.size()];
+    int i = 0;
+    for (DataPoint mzPeak : mzPeaks) {
+      mzs[i] = mzPeak.getMZ();
+      intensities[i] = mzPeak.getIntensity();
+      i++;
+    }
+    return new double[][]{mzs, intensities};
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package modules;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassList;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.DDAMsMsInfoImpl;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.datamodel.impl.masslist.ScanPointerMassList;
+import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
+import io.github.mzmine.datamodel.msms.ActivationMethod;
+import io.github.mzmine.modules.io.projectload.version_3_0.BinaryDataXMLStreamReader;
+import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
+import io.github.mzmine.modules.io.projectload.version_3_0.ProcessedRawDataFileReader;
+import io.github.mzmine.modules.io.projectsave.BinaryDataXMLStreamWriter;
+import io.github.mzmine.modules.io.projectsave.ProcessedRawDataFileWriter;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.ParsingUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import javafx.scene.paint.Color;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Saves and loads the numeric arrays of the binary project data and the processed raw data files
+ */
+public class ProjectBinaryDataTest {
+
+  @TempDir
+  File tempDir;
+
+  private static double[] createValues(Random random, int n) {
+    final double[] values = new double[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = random.nextDouble() * 2000;
+    }
+    return values;
+  }
+
+  /**
+   * Arrays larger than the buffers of the writer and the reader, empty arrays and values as text
+   */
+  @Test
+  void testBinaryXmlRoundTrip() throws IOException, XMLStreamException {
+    final Random random = new Random(3);
+    final List<double[]> arrays = new ArrayList<>();
+    for (int n : new int[]{0, 1, 7, 10_000, 300_000, 5}) {
+      arrays.add(createValues(random, n));
+    }
+
+    final File xmlFile = new File(tempDir, "data.xml");
+    final File binaryFile = new File(tempDir, "data.bin");
+    try (OutputStream os = new FileOutputStream(xmlFile);
+        BinaryDataXMLStreamWriter writer = new BinaryDataXMLStreamWriter(
+            XMLOutputFactory.newInstance().createXMLStreamWriter(os), binaryFile)) {
+      writer.writeStartDocument("UTF-8", "1.0");
+      writer.writeStartElement("root");
+      for (double[] values : arrays) {
+        writer.writeStartElement(CONST.XML_MZ_VALUES_ELEMENT);
+        writer.writeAttribute(CONST.XML_NUM_VALUES_ATTR, String.valueOf(values.length));
+        ParsingUtils.writeDoubleValues(writer, DoubleBuffer.wrap(values));
+        writer.writeEndElement();
+      }
+      // older projects store the values as text
+      writer.writeStartElement(CONST.XML_INTENSITY_VALUES_ELEMENT);
+      writer.writeCharacters(ParsingUtils.doubleArrayToString(arrays.get(2), 7));
+      writer.writeEndElement();
+      writer.writeEndElement();
+      writer.writeEndDocument();
+      writer.flush();
+    }
+    Assertions.assertEquals(
+        arrays.stream().mapToLong(values -> values.length).sum() * Double.BYTES,
+        binaryFile.length());
+
+    final List<double[]> loaded = new ArrayList<>();
+    try (InputStream is = new FileInputStream(xmlFile);
+        BinaryDataXMLStreamReader reader = new BinaryDataXMLStreamReader(
+            XMLInputFactory.newInstance().createXMLStreamReader(is), binaryFile)) {
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamReader.START_ELEMENT && !reader.getLocalName()
+            .equals("root")) {
+          loaded.add(ParsingUtils.readDoubleValues(reader));
+        }
+      }
+    }
+
+    Assertions.assertEquals(arrays.size() + 1, loaded.size());
+    for (int i = 0; i < arrays.size(); i++) {
+      Assertions.assertArrayEquals(arrays.get(i), loaded.get(i));
+    }
+    Assertions.assertArrayEquals(arrays.get(2), loaded.get(arrays.size()));
+  }
+
+  @Test
+  void testProcessedRawDataFileRoundTrip() throws IOException {
+    final Random random = new Random(5);
+    final RawDataFile file = new RawDataFileImpl("processed.mzML", "/data/processed.mzML", null,
+        Color.CORNFLOWERBLUE);
+    Scan lastMs1 = null;
+    for (int i = 0; i < 50; i++) {
+      final int msLevel = i % 5 == 0 ? 1 : 2;
+      // some empty scans without a scanning range
+      final boolean empty = i % 7 == 6;
+      final double[] mzs = createValues(random, empty ? 0 : random.nextInt(2000));
+      Arrays.sort(mzs);
+      final double[] intensities = createValues(random, mzs.length);
+      final SimpleScan scan = new SimpleScan(file, i + 1, msLevel, i * 0.1f, null, mzs,
+          intensities, msLevel == 1 ? MassSpectrumType.PROFILE : MassSpectrumType.CENTROIDED,
+          PolarityType.POSITIVE, "scan " + i, empty ? null : Range.closed(50d, 2000d));
+      if (msLevel == 1) {
+        lastMs1 = scan;
+        final double[] massListMzs = createValues(random, 100);
+        Arrays.sort(massListMzs);
+        scan.addMassList(
+            new SimpleMassList(null, massListMzs, createValues(random, massListMzs.length)));
+      } else {
+        scan.setMsMsInfo(new DDAMsMsInfoImpl(mzs.length > 0 ? mzs[0] : 500d, 1, 30f, scan,
+            lastMs1, 2, ActivationMethod.CID, Range.closed(499d, 501d)));
+        if (i % 3 == 0) {
+          scan.addMassList(new ScanPointerMassList(scan));
+        }
+      }
+      file.addScan(scan);
+    }
+
+    final File zip = new File(tempDir, "project.mzmine");
+    try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip))) {
+      new ProcessedRawDataFileWriter().write(file, 3, zos);
+    }
+
+    final RawDataFile loaded;
+    try (ZipFile zipFile = new ZipFile(zip)) {
+      final List<Integer> indices = Collections.list(zipFile.entries()).stream()
+          .map(entry -> ProcessedRawDataFileReader.getFileIndex(entry.getName()))
+          .filter(index -> index != null).toList();
+      Assertions.assertEquals(List.of(3), indices);
+      loaded = new ProcessedRawDataFileReader(zipFile).read(3);
+    }
+
+    Assertions.assertEquals(file.getName(), loaded.getName());
+    Assertions.assertEquals(file.getAbsolutePath(), loaded.getAbsolutePath());
+    Assertions.assertEquals(file.getColor(), loaded.getColor());
+    Assertions.assertEquals(file.getNumOfScans(), loaded.getNumOfScans());
+    for (int i = 0; i < file.getNumOfScans(); i++) {
+      final Scan expected = file.getScan(i);
+      final Scan actual = loaded.getScan(i);
+      Assertions.assertEquals(expected.getScanNumber(), actual.getScanNumber());
+      Assertions.assertEquals(expected.getMSLevel(), actual.getMSLevel());
+      Assertions.assertEquals(expected.getRetentionTime(), actual.getRetentionTime());
+      Assertions.assertEquals(expected.getPolarity(), actual.getPolarity());
+      Assertions.assertEquals(expected.getSpectrumType(), actual.getSpectrumType());
+      Assertions.assertEquals(expected.getScanDefinition(), actual.getScanDefinition());
+      Assertions.assertEquals(expected.getScanningMZRange(), actual.getScanningMZRange());
+      assertSameValues(expected.getMzValues(new double[0]), actual.getMzValues(new double[0]));
+      assertSameValues(expected.getIntensityValues(new double[0]),
+          actual.getIntensityValues(new double[0]));
+
+      final MassList expectedMassList = expected.getMassList();
+      final MassList actualMassList = actual.getMassList();
+      if (expectedMassList == null) {
+        Assertions.assertNull(actualMassList);
+      } else {
+        Assertions.assertNotNull(actualMassList);
+        Assertions.assertEquals(expectedMassList.getClass(), actualMassList.getClass());
+        assertSameValues(expectedMassList.getMzValues(new double[0]),
+            actualMassList.getMzValues(new double[0]));
+        assertSameValues(expectedMassList.getIntensityValues(new double[0]),
+            actualMassList.getIntensityValues(new double[0]));
+      }
+
+      if (expected.getMsMsInfo() instanceof DDAMsMsInfoImpl expectedInfo) {
+        final DDAMsMsInfoImpl actualInfo = (DDAMsMsInfoImpl) actual.getMsMsInfo();
+        Assertions.assertEquals(expectedInfo.getIsolationMz(), actualInfo.getIsolationMz());
+        Assertions.assertEquals(expectedInfo.getPrecursorCharge(),
+            actualInfo.getPrecursorCharge());
+        Assertions.assertEquals(expectedInfo.getActivationEnergy(),
+            actualInfo.getActivationEnergy());
+        Assertions.assertEquals(expectedInfo.getIsolationWindow(),
+            actualInfo.getIsolationWindow());
+        Assertions.assertEquals(file.getScans().indexOf(expectedInfo.getParentScan()),
+            loaded.getScans().indexOf(actualInfo.getParentScan()));
+      } else {
+        Assertions.assertNull(actual.getMsMsInfo());
+      }
+    }
+  }
+
+  /**
+   * The getters may return larger arrays
+   */
+  private static void assertSameValues(double[] expected, double[] actual) {
+    Assertions.assertEquals(expected.length, actual.length);
+    Assertions.assertArrayEquals(expected, actual);
+  }
+}
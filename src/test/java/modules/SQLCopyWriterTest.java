@@ -0,0 +1,53 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package modules;
+
+import io.github.mzmine.modules.io.export_features_sql.SQLCopyWriter;
+import java.sql.SQLException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SQLCopyWriterTest {
+
+  private static String toCsv(Object... values) throws SQLException {
+    final StringBuilder line = new StringBuilder();
+    SQLCopyWriter.appendCsvRow(line, values);
+    return line.toString();
+  }
+
+  @Test
+  void testQuotingAndNull() throws SQLException {
+    Assertions.assertEquals("1,2.5,\"text\"\n", toCsv(1, 2.5, "text"));
+    // null is an unquoted empty value, an empty string is quoted
+    Assertions.assertEquals(",\"\",\n", toCsv(null, "", null));
+    Assertions.assertEquals("\"say \"\"hi\"\"\"\n", toCsv("say \"hi\""));
+    Assertions.assertEquals("\"a,b\",\"line\nbreak\"\n", toCsv("a,b", "line\nbreak"));
+    Assertions.assertEquals("\"true\",NaN\n", toCsv(true, Double.NaN));
+  }
+
+  @Test
+  void testBinaryValues() throws SQLException {
+    final StringBuilder line = new StringBuilder();
+    SQLCopyWriter.appendCsvRow(line, new Object[]{1});
+    Assertions.assertThrows(SQLException.class,
+        () -> SQLCopyWriter.appendCsvRow(line, new Object[]{2, new byte[]{1}}));
+    // the rejected row is not left in the batch
+    Assertions.assertEquals("1\n", line.toString());
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package modules;
+
+import io.github.mzmine.modules.io.export_features_sql.SQLBatchInsertWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares single inserts with batched inserts of the SQL export on an in-memory SQLite database
+ */
+public class SQLExportBenchmarkTest {
+
+  private static final Logger logger = Logger.getLogger(SQLExportBenchmarkTest.class.getName());
+  private static final String[] columns = {"id", "mz", "rt", "rawfile", "height"};
+  private static final int[] sqlTypes = {Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+      Types.VARCHAR, Types.VARCHAR};
+  private static final int numRows = 50_000;
+
+  private static Connection createDatabase() throws SQLException {
+    final Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(
+          "CREATE TABLE features (id INT, mz DOUBLE, rt DOUBLE, rawfile TEXT, height DOUBLE)");
+    }
+    return connection;
+  }
+
+  private static Object[] createValues(int i) {
+    return new Object[]{i / 100, 100 + i * 0.001, i * 0.0001f, "sample_" + (i % 100) + ".mzML",
+        1E5 + i};
+  }
+
+  private static int countRows(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement();
+        ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM features")) {
+      return result.getInt(1);
+    }
+  }
+
+  /**
+   * Only flushed batches are committed, the rows of a canceled export are rolled back on close
+   */
+  @Test
+  void testCloseDiscardsUnflushedRows() throws SQLException {
+    try (Connection connection = createDatabase()) {
+      try (SQLBatchInsertWriter writer = new SQLBatchInsertWriter(connection, "features", columns,
+          sqlTypes, 100)) {
+        for (int i = 0; i < 250; i++) {
+          writer.write(createValues(i));
+        }
+        Assertions.assertEquals(200, writer.getWrittenRows());
+      }
+      Assertions.assertEquals(200, countRows(connection));
+
+      try (SQLBatchInsertWriter writer = new SQLBatchInsertWriter(connection, "features", columns,
+          sqlTypes, 100)) {
+        for (int i = 0; i < 250; i++) {
+          writer.write(createValues(i));
+        }
+        writer.flush();
+      }
+      Assertions.assertEquals(450, countRows(connection));
+    }
+  }
+
+  @Test
+  void benchmarkBatchedInserts() throws SQLException {
+    // single inserts in one transaction as before
+    double singleRowsPerSecond;
+    try (Connection connection = createDatabase()) {
+      connection.setAutoCommit(false);
+      final long start = System.nanoTime();
+      try (PreparedStatement statement = connection.prepareStatement(
+          SQLBatchInsertWriter.createInsertStatement("features", columns))) {
+        for (int i = 0; i < numRows; i++) {
+          final Object[] values = createValues(i);
+          for (int c = 0; c < values.length; c++) {
+            statement.setObject(c + 1, values[c]);
+          }
+          statement.executeUpdate();
+        }
+      }
+      connection.commit();
+      singleRowsPerSecond = numRows / ((System.nanoTime() - start) / 1E9);
+      Assertions.assertEquals(numRows, countRows(connection));
+    }
+
+    double batchRowsPerSecond;
+    try (Connection connection = createDatabase()) {
+      final long start = System.nanoTime();
+      try (SQLBatchInsertWriter writer = new SQLBatchInsertWriter(connection, "features", columns,
+          sqlTypes, 1000)) {
+        for (int i = 0; i < numRows; i++) {
+          writer.write(createValues(i));
+        }
+        writer.flush();
+      }
+      batchRowsPerSecond = numRows / ((System.nanoTime() - start) / 1E9);
+      Assertions.assertEquals(numRows, countRows(connection));
+    }
+
+    logger.info(String.format(
+        "SQLite export of %d rows: single inserts %.0f rows/s, batched %.0f rows/s", numRows,
+        singleRowsPerSecond, batchRowsPerSecond));
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package util;
+
+import io.github.mzmine.datamodel.impl.CompressedSpectrumData;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CompressedSpectrumDataTest {
+
+  @Test
+  void testProfileSpectrum() {
+    final Random random = new Random(42);
+    final int n = 20_000;
+    final double[] mzs = new double[n];
+    final double[] intensities = new double[n];
+    double mz = 100;
+    for (int i = 0; i < n; i++) {
+      mz += 0.0001 + random.nextDouble() * 0.001;
+      mzs[i] = mz;
+      intensities[i] = i % 7 < 3 ? 0d : random.nextDouble() * 1E6;
+    }
+
+    final CompressedSpectrumData data = CompressedSpectrumData.compress(mzs, intensities);
+    Assertions.assertEquals(n, data.getNumberOfValues());
+    Assertions.assertArrayEquals(mzs, data.getMzValues(new double[0]));
+    Assertions.assertArrayEquals(intensities, data.getIntensityValues(new double[0]));
+    Assertions.assertTrue(data.getCompressedSize() < n * 2 * Double.BYTES);
+  }
+
+  @Test
+  void testFloatIntensitiesAndTrailingZeros() {
+    final double[] mzs = {-1d, 0d, 50.5, 50.5, 1000.123456789};
+    final double[] intensities = {0d, 1.5, 0d, 2.25, 0d};
+
+    final CompressedSpectrumData data = CompressedSpectrumData.compress(mzs, intensities);
+    // larger destination arrays are reused
+    final double[] dst = new double[10];
+    Arrays.fill(dst, -1);
+    Assertions.assertSame(dst, data.getIntensityValues(dst));
+    Assertions.assertArrayEquals(intensities, Arrays.copyOf(dst, mzs.length));
+    Assertions.assertArrayEquals(mzs, data.getMzValues(new double[0]));
+  }
+
+  @Test
+  void testEmpty() {
+    final CompressedSpectrumData data = CompressedSpectrumData.compress(new double[0],
+        new double[0]);
+    Assertions.assertEquals(0, data.getNumberOfValues());
+    Assertions.assertEquals(0, data.getMzValues(new double[0]).length);
+    Assertions.assertEquals(0, data.getIntensityValues(new double[0]).length);
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package util;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.DataPointSorter;
+import io.github.mzmine.util.maths.similarity.Similarity;
+import io.github.mzmine.util.scans.ScanAlignment;
+import io.github.mzmine.util.scans.similarity.CosineSimilarityKernel;
+import io.github.mzmine.util.scans.similarity.HandleUnmatchedSignalOptions;
+import io.github.mzmine.util.scans.similarity.Weights;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CosineSimilarityKernelTest {
+
+  private static final Logger logger = Logger.getLogger(CosineSimilarityKernelTest.class.getName());
+  private static final MZTolerance mzTol = new MZTolerance(0.002, 10);
+
+  /**
+   * Coarse m/z values and intensities to create ambiguous matches and ties
+   */
+  private static DataPoint[] createSpectrum(Random random, int numSignals) {
+    final DataPoint[] dps = new DataPoint[numSignals];
+    for (int i = 0; i < numSignals; i++) {
+      dps[i] = new SimpleDataPoint(50 + random.nextInt(300) + random.nextInt(5) * 0.001,
+          1 + random.nextInt(100));
+    }
+    return dps;
+  }
+
+  /**
+   * The alignment based calculation of the similarity functions
+   */
+  private static double alignedCosine(DataPoint[] library, DataPoint[] query, Weights weights,
+      HandleUnmatchedSignalOptions handleUnmatched) {
+    final List<DataPoint[]> aligned = handleUnmatched.handleUnmatched(
+        ScanAlignment.align(mzTol, library.clone(), query.clone()));
+    return Similarity.COSINE.calc(
+        ScanAlignment.toIntensityMatrixWeighted(aligned, weights.getIntensity(), weights.getMz()));
+  }
+
+  private static double alignedRelativeNeighbourFactor(DataPoint[] library, DataPoint[] query) {
+    final List<DataPoint[]> filtered = ScanAlignment.removeUnaligned(
+        ScanAlignment.align(mzTol, library.clone(), query.clone()));
+    filtered.sort(Comparator.comparingDouble(dps -> Math.min(dps[0].getMZ(), dps[1].getMZ())));
+    double factor = 0;
+    for (int i = 1; i < filtered.size(); i++) {
+      double ratioLibrary = filtered.get(i)[0].getIntensity() / filtered.get(i - 1)[0]
+          .getIntensity();
+      double ratioQuery = filtered.get(i)[1].getIntensity() / filtered.get(i - 1)[1]
+          .getIntensity();
+      factor += Math.min(ratioLibrary, ratioQuery) / Math.max(ratioLibrary, ratioQuery);
+    }
+    return factor / filtered.size();
+  }
+
+  @Test
+  void testSameAsAlignment() {
+    final Random random = new Random(11);
+    final CosineSimilarityKernel kernel = new CosineSimilarityKernel();
+    for (int i = 0; i < 300; i++) {
+      final DataPoint[] library = createSpectrum(random, 5 + random.nextInt(60));
+      final DataPoint[] query = createSpectrum(random, 5 + random.nextInt(60));
+      final int overlap = ScanAlignment.removeUnaligned(
+          ScanAlignment.align(mzTol, library.clone(), query.clone())).size();
+
+      for (Weights weights : Weights.VALUES) {
+        for (HandleUnmatchedSignalOptions option : HandleUnmatchedSignalOptions.values()) {
+          final double cosine = kernel.cosine(library, query, mzTol, weights, option);
+          Assertions.assertEquals(overlap, kernel.getOverlap());
+          if (overlap > 0) {
+            Assertions.assertEquals(alignedCosine(library, query, weights, option), cosine, 1E-9);
+            Assertions.assertEquals(alignedRelativeNeighbourFactor(library, query),
+                kernel.relativeNeighbourFactor(), 1E-9);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testIdentical() {
+    final DataPoint[] spectrum = createSpectrum(new Random(1), 50);
+    final CosineSimilarityKernel kernel = CosineSimilarityKernel.forCurrentThread();
+    Assertions.assertEquals(1, kernel.cosine(spectrum, spectrum, mzTol, Weights.SQRT,
+        HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO), 1E-9);
+  }
+
+  /**
+   * Compares the kernel with the alignment based cosine on library search sized spectra.
+   */
+  @Test
+  void benchmarkCosine() {
+    final Random random = new Random(5);
+    final int numPairs = 5000;
+    final DataPoint[][] libraries = new DataPoint[numPairs][];
+    final DataPoint[][] queries = new DataPoint[numPairs][];
+    // mass lists and library spectra are sorted by m/z
+    for (int i = 0; i < numPairs; i++) {
+      libraries[i] = createSpectrum(random, 20 + random.nextInt(200));
+      queries[i] = createSpectrum(random, 20 + random.nextInt(200));
+      Arrays.sort(libraries[i], DataPointSorter.DEFAULT_MZ_ASCENDING);
+      Arrays.sort(queries[i], DataPointSorter.DEFAULT_MZ_ASCENDING);
+    }
+    final Weights weights = Weights.MASSBANK;
+    final HandleUnmatchedSignalOptions option = HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO;
+    final CosineSimilarityKernel kernel = new CosineSimilarityKernel();
+
+    for (int rep = 0; rep < 3; rep++) {
+      long start = System.nanoTime();
+      double sumAligned = 0;
+      for (int i = 0; i < numPairs; i++) {
+        sumAligned += alignedCosine(libraries[i], queries[i], weights, option);
+      }
+      final double aligned = (System.nanoTime() - start) / 1E3 / numPairs;
+
+      start = System.nanoTime();
+      double sumKernel = 0;
+      for (int i = 0; i < numPairs; i++) {
+        sumKernel += kernel.cosine(libraries[i], queries[i], mzTol, weights, option);
+      }
+      final double kernelTime = (System.nanoTime() - start) / 1E3 / numPairs;
+
+      Assertions.assertEquals(sumAligned, sumKernel, 1E-6);
+      logger.info(String.format(
+          "Cosine of %d spectrum pairs: alignment %.2f µs, kernel %.2f µs per pair (%.1fx)",
+          numPairs, aligned, kernelTime, aligned / kernelTime));
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package util;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.DataPointSorter;
+import io.github.mzmine.util.maths.similarity.Similarity;
+import io.github.mzmine.util.scans.ScanAlignment;
+import io.github.mzmine.util.scans.similarity.HandleUnmatchedSignalOptions;
+import io.github.mzmine.util.scans.similarity.MatchableSignals;
+import io.github.mzmine.util.scans.similarity.Weights;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MatchableSignalsTest {
+
+  private static DataPoint[] createSpectrum(Random random, int numSignals) {
+    final DataPoint[] dps = new DataPoint[numSignals];
+    for (int i = 0; i < numSignals; i++) {
+      // coarse m/z values to create matches within the tolerance
+      dps[i] = new SimpleDataPoint(50 + random.nextInt(200) + random.nextDouble() * 0.004,
+          1 + random.nextDouble() * 1000);
+    }
+    return dps;
+  }
+
+  @Test
+  void testUpperBounds() {
+    final MZTolerance mzTol = new MZTolerance(0.002, 10);
+    final Random random = new Random(7);
+    for (int i = 0; i < 500; i++) {
+      final DataPoint[] library = createSpectrum(random, 5 + random.nextInt(40));
+      final DataPoint[] query = createSpectrum(random, 5 + random.nextInt(40));
+      Arrays.sort(query, DataPointSorter.DEFAULT_MZ_ASCENDING);
+
+      for (Weights weights : Weights.VALUES) {
+        final MatchableSignals matchable = MatchableSignals.of(mzTol, weights, library, query);
+        for (HandleUnmatchedSignalOptions option : HandleUnmatchedSignalOptions.values()) {
+          // align sorts the library, use copies
+          final List<DataPoint[]> aligned = option.handleUnmatched(
+              ScanAlignment.align(mzTol, library.clone(), query.clone()));
+          final int overlap = (int) aligned.stream().filter(dp -> dp[0] != null && dp[1] != null)
+              .count();
+          Assertions.assertTrue(overlap <= matchable.maxOverlap());
+          if (overlap == 0) {
+            continue;
+          }
+
+          final double cosine = Similarity.COSINE.calc(
+              ScanAlignment.toIntensityMatrixWeighted(aligned, weights.getIntensity(),
+                  weights.getMz()));
+          Assertions.assertTrue(cosine <= matchable.maxCosine(option),
+              () -> cosine + " > " + matchable.maxCosine(option) + " for " + option);
+        }
+      }
+    }
+  }
+
+  @Test
+  void testNoMatch() {
+    final MZTolerance mzTol = new MZTolerance(0.002, 10);
+    final DataPoint[] library = {new SimpleDataPoint(100, 10), new SimpleDataPoint(200, 10)};
+    final DataPoint[] query = {new SimpleDataPoint(100.5, 10), new SimpleDataPoint(200.001, 10)};
+    final MatchableSignals matchable = MatchableSignals.of(mzTol, Weights.NONE, library, query);
+    Assertions.assertEquals(1, matchable.maxOverlap());
+    // half of the signals are matchable in both spectra
+    Assertions.assertEquals(0.5,
+        matchable.maxCosine(HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO), 1E-6);
+    Assertions.assertEquals(1, matchable.maxCosine(HandleUnmatchedSignalOptions.REMOVE_ALL), 1E-6);
+  }
+}
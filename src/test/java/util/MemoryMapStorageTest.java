@@ -0,0 +1,239 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package util;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.impl.StorageUtils;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MemoryMapStorageTest {
+
+  private static final Logger logger = Logger.getLogger(MemoryMapStorageTest.class.getName());
+  private static final List<MemoryMapStorage> storages = new ArrayList<>();
+
+  @AfterAll
+  static void discardStorages() throws IOException {
+    for (MemoryMapStorage storage : storages) {
+      storage.discard(null);
+    }
+  }
+
+  private static MemoryMapStorage createStorage() {
+    final MemoryMapStorage storage = MemoryMapStorage.create();
+    storages.add(storage);
+    return storage;
+  }
+
+  /**
+   * Stores arrays from multiple threads and checks that no region was handed out twice.
+   */
+  @Test
+  void testConcurrentStoreData() throws Exception {
+    final MemoryMapStorage storage = createStorage();
+    final int threads = 8;
+    final int arraysPerThread = 2000;
+
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final List<Future<List<DoubleBuffer>>> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      final int thread = t;
+      futures.add(executor.submit(() -> {
+        final List<DoubleBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < arraysPerThread; i++) {
+          final double[] data = new double[1 + i % 100];
+          Arrays.fill(data, thread * arraysPerThread + i);
+          buffers.add(storage.storeData(data));
+        }
+        return buffers;
+      }));
+    }
+    executor.shutdown();
+
+    for (int t = 0; t < threads; t++) {
+      final List<DoubleBuffer> buffers = futures.get(t).get();
+      for (int i = 0; i < arraysPerThread; i++) {
+        final DoubleBuffer buffer = buffers.get(i);
+        Assertions.assertEquals(1 + i % 100, buffer.capacity());
+        for (int j = 0; j < buffer.capacity(); j++) {
+          Assertions.assertEquals(t * arraysPerThread + i, buffer.get(j));
+        }
+      }
+    }
+  }
+
+  @Test
+  void testStoreDataOffset() throws IOException {
+    final MemoryMapStorage storage = createStorage();
+    final IntBuffer ints = storage.storeData(new int[]{1, 2, 3, 4}, 1, 2);
+    Assertions.assertEquals(2, ints.capacity());
+    Assertions.assertEquals(2, ints.get(0));
+    Assertions.assertEquals(3, ints.get(1));
+    Assertions.assertTrue(ints.isReadOnly());
+  }
+
+  @Test
+  void testUsageAndQuota() throws IOException {
+    final MemoryMapStorage storage = createStorage();
+    storage.storeData(new double[100]);
+    storage.storeData(new float[10]);
+    Assertions.assertEquals(100 * Double.BYTES + 10 * Float.BYTES, storage.getBytesUsed());
+    Assertions.assertEquals(1, storage.getNumberOfFiles());
+    Assertions.assertTrue(storage.getBytesMapped() >= storage.getBytesUsed());
+
+    try {
+      MemoryMapStorage.setStorageQuota(MemoryMapStorage.getTotalBytesUsed() + 1000);
+      storage.storeData(new double[100]);
+      Assertions.assertThrows(IOException.class, () -> storage.storeData(new double[100]));
+      Assertions.assertEquals(200 * Double.BYTES + 10 * Float.BYTES, storage.getBytesUsed());
+    } finally {
+      MemoryMapStorage.setStorageQuota(0);
+    }
+  }
+
+  /**
+   * A failed file creation must not count towards the quota
+   */
+  @Test
+  void testUsageAfterFailedMapping() throws IOException {
+    final MemoryMapStorage storage = createStorage();
+    final File directory = Files.createTempDirectory("mzmine_storage_test").toFile();
+    try {
+      MemoryMapStorage.setStorageDirectory(directory);
+      Assertions.assertTrue(directory.delete());
+      final long totalUsed = MemoryMapStorage.getTotalBytesUsed();
+      Assertions.assertThrows(IOException.class, () -> storage.storeData(new double[100]));
+      Assertions.assertEquals(0, storage.getBytesUsed());
+      Assertions.assertEquals(totalUsed, MemoryMapStorage.getTotalBytesUsed());
+    } finally {
+      MemoryMapStorage.setStorageDirectory(null);
+    }
+  }
+
+  @Test
+  void testFloatIntensities() throws IOException {
+    final MemoryMapStorage storage = createStorage();
+    final double[] intensities = {0d, 1.5, 1E7 + 0.1, 3};
+    try {
+      MemoryMapStorage.setStoreIntensitiesAsFloat(true);
+      final Buffer buffer = StorageUtils.storeIntensityValues(storage, intensities);
+      Assertions.assertTrue(buffer instanceof FloatBuffer);
+      Assertions.assertEquals(intensities.length * Float.BYTES, storage.getBytesUsed());
+
+      final double[] dst = new double[intensities.length + 1];
+      StorageUtils.getValues(buffer, 1, dst, 1, 3);
+      Assertions.assertEquals(1.5, dst[1]);
+      Assertions.assertEquals((float) (1E7 + 0.1), dst[2]);
+      Assertions.assertEquals(3d, StorageUtils.getValue(buffer, 3));
+      Assertions.assertEquals(4, StorageUtils.toDoubleBuffer(buffer).capacity());
+    } finally {
+      MemoryMapStorage.setStoreIntensitiesAsFloat(false);
+    }
+    Assertions.assertTrue(
+        StorageUtils.storeIntensityValues(storage, intensities) instanceof DoubleBuffer);
+  }
+
+  /**
+   * Float intensities of a series are converted once and not on every buffer access
+   */
+  @Test
+  void testConvertedIntensitiesAreCached() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("file", null, null, Color.BLACK);
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      scans.add(new SimpleScan(file, i, 1, i * 0.1f, null, new double[0], new double[0],
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", Range.closed(0d, 2000d)));
+    }
+    final double[] mzs = {100, 100.001, 100.002, 100};
+    final double[] intensities = {0d, 1.5, 1E7 + 0.1, 3};
+    final SimpleIonTimeSeries series;
+    try {
+      MemoryMapStorage.setStoreIntensitiesAsFloat(true);
+      series = new SimpleIonTimeSeries(createStorage(), mzs, intensities, scans);
+    } finally {
+      MemoryMapStorage.setStoreIntensitiesAsFloat(false);
+    }
+
+    final DoubleBuffer buffer = series.getIntensityValueBuffer();
+    Assertions.assertSame(buffer, series.getIntensityValueBuffer());
+    Assertions.assertEquals(intensities.length, buffer.capacity());
+    for (int i = 0; i < intensities.length; i++) {
+      Assertions.assertEquals((float) intensities[i], buffer.get(i));
+      Assertions.assertEquals(buffer.get(i), series.getIntensity(i));
+    }
+  }
+
+  /**
+   * Measures the throughput of storeData with an increasing number of writer threads.
+   */
+  @Test
+  void benchmarkStoreData() throws Exception {
+    final double[] data = new double[500];
+    final int arraysPerThread = 5_000;
+
+    for (int threads : new int[]{1, 2, 4, 8}) {
+      final MemoryMapStorage storage = createStorage();
+      final ExecutorService executor = Executors.newFixedThreadPool(threads);
+      final List<Future<?>> futures = new ArrayList<>();
+
+      final long start = System.nanoTime();
+      for (int t = 0; t < threads; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < arraysPerThread; i++) {
+            storage.storeData(data);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      final double seconds = (System.nanoTime() - start) / 1E9;
+      executor.shutdown();
+
+      final long arrays = (long) threads * arraysPerThread;
+      logger.info(String.format("storeData with %d threads: %.0f arrays/s, %.0f MB/s", threads,
+          arrays / seconds, arrays * data.length * Double.BYTES / seconds / 1E6));
+    }
+  }
+}
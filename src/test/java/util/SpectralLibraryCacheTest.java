@@ -0,0 +1,79 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package util;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
+import io.github.mzmine.util.spectraldb.parser.SpectralLibraryCache;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SpectralLibraryCacheTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testWriteAndRead() throws IOException {
+    final File library = tempDir.resolve("library.msp").toFile();
+    Files.writeString(library.toPath(), "dummy library content");
+
+    Map<DBEntryField, Object> fields = new EnumMap<>(DBEntryField.class);
+    fields.put(DBEntryField.NAME, "Caffeine");
+    fields.put(DBEntryField.ION_TYPE, "[M+H]+");
+    fields.put(DBEntryField.MZ, 195.0877);
+    fields.put(DBEntryField.RT, 3.2f);
+    fields.put(DBEntryField.CHARGE, 1);
+    final SpectralDBEntry a = new SpectralDBEntry(fields,
+        new DataPoint[]{new SimpleDataPoint(138.0662, 100), new SimpleDataPoint(195.0877, 35)});
+
+    Map<DBEntryField, Object> fields2 = new EnumMap<>(DBEntryField.class);
+    fields2.put(DBEntryField.NAME, "Empty");
+    fields2.put(DBEntryField.ION_TYPE, "[M+H]+");
+    final SpectralDBEntry b = new SpectralDBEntry(fields2, new DataPoint[0]);
+
+    final SpectralDBEntry c = new SpectralDBEntry(500.5, 2,
+        new DataPoint[]{new SimpleDataPoint(250.1, 1E5)});
+
+    final List<SpectralDBEntry> entries = List.of(a, b, c);
+    SpectralLibraryCache.write(library, entries);
+    Assertions.assertTrue(SpectralLibraryCache.getCacheFile(library).exists());
+
+    final List<SpectralDBEntry> loaded = SpectralLibraryCache.read(library);
+    Assertions.assertNotNull(loaded);
+    Assertions.assertEquals(entries, loaded);
+    // interned values
+    Assertions.assertSame(loaded.get(0).getField(DBEntryField.ION_TYPE).get(),
+        loaded.get(1).getField(DBEntryField.ION_TYPE).get());
+
+    // library changed -> cache invalid
+    Files.writeString(library.toPath(), "changed library content, different length");
+    Assertions.assertNull(SpectralLibraryCache.read(library));
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2006-2022 The MZmine Development Team
+ *
+ * This file is part of MZmine.
+ *
+ * MZmine is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ */
+
+package util;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.spectraldb.entry.DBEntryField;
+import io.github.mzmine.util.spectraldb.entry.SpectralDBEntry;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibraryPrecursorIndex;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SpectralLibraryPrecursorIndexTest {
+
+  private static final Logger logger = Logger.getLogger(
+      SpectralLibraryPrecursorIndexTest.class.getName());
+
+  private static List<SpectralDBEntry> createEntries(int n, long seed) {
+    final Random random = new Random(seed);
+    List<SpectralDBEntry> entries = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      Map<DBEntryField, Object> fields = new EnumMap<>(DBEntryField.class);
+      // some entries without precursor
+      if (i % 50 != 0) {
+        fields.put(DBEntryField.MZ, 50d + random.nextDouble() * 1500d);
+      }
+      if (i % 3 == 0) {
+        fields.put(DBEntryField.RT, random.nextFloat() * 20f);
+      }
+      entries.add(new SpectralDBEntry(fields, new DataPoint[0]));
+    }
+    return entries;
+  }
+
+  @Test
+  void testIndexRange() {
+    final List<SpectralDBEntry> entries = createEntries(10_000, 42);
+    final SpectralLibraryPrecursorIndex index = new SpectralLibraryPrecursorIndex(entries);
+
+    Assertions.assertEquals(entries.stream().filter(e -> e.getPrecursorMZ() != null).count(),
+        index.size());
+    for (int i = 1; i < index.size(); i++) {
+      Assertions.assertTrue(index.getPrecursorMz(i - 1) <= index.getPrecursorMz(i));
+    }
+
+    final MZTolerance tol = new MZTolerance(0.005, 10);
+    final Random random = new Random(1);
+    for (int q = 0; q < 500; q++) {
+      final double mz = 50d + random.nextDouble() * 1500d;
+      final double window = tol.getMzToleranceForMass(mz);
+      final int first = index.indexOfFirst(mz - window);
+      final int end = index.indexAfterLast(mz + window);
+
+      final long expected = entries.stream().filter(
+          e -> e.getPrecursorMZ() != null && Math.abs(e.getPrecursorMZ() - mz) <= window).count();
+      Assertions.assertEquals(expected, end - first);
+      for (int i = first; i < end; i++) {
+        Assertions.assertTrue(Math.abs(index.getPrecursorMz(i) - mz) <= window);
+      }
+    }
+  }
+
+  @Test
+  void testEmptyAndMissingValues() {
+    final SpectralLibraryPrecursorIndex empty = new SpectralLibraryPrecursorIndex(List.of());
+    Assertions.assertEquals(0, empty.size());
+    Assertions.assertEquals(0, empty.indexOfFirst(100));
+    Assertions.assertEquals(0, empty.indexAfterLast(100));
+
+    Map<DBEntryField, Object> fields = new HashMap<>();
+    fields.put(DBEntryField.MZ, 200d);
+    final SpectralLibraryPrecursorIndex index = new SpectralLibraryPrecursorIndex(
+        List.of(new SpectralDBEntry(fields, new DataPoint[0]),
+            new SpectralDBEntry(100d, new DataPoint[0])));
+    Assertions.assertEquals(100d, index.getPrecursorMz(0));
+    Assertions.assertTrue(Float.isNaN(index.getRT(0)));
+    Assertions.assertTrue(Float.isNaN(index.getCCS(1)));
+    Assertions.assertEquals(1, index.indexOfFirst(100.001));
+    Assertions.assertEquals(2, index.indexAfterLast(200));
+  }
+
+  /**
+   * Compares the candidate search of the full entry scan against the index search
+   */
+  @Test
+  void benchmarkCandidateSearch() {
+    final List<SpectralDBEntry> entries = createEntries(200_000, 7);
+    final int rows = 2000;
+    final double[] rowMzs = new Random(3).doubles(rows, 50, 1550).toArray();
+    final MZTolerance tol = new MZTolerance(0.005, 10);
+
+    long start = System.nanoTime();
+    long linearHits = 0;
+    for (double mz : rowMzs) {
+      final double window = tol.getMzToleranceForMass(mz);
+      for (SpectralDBEntry e : entries) {
+        final Double precursor = e.getPrecursorMZ();
+        if (precursor != null && Math.abs(precursor - mz) <= window) {
+          linearHits++;
+        }
+      }
+    }
+    final double linearSeconds = (System.nanoTime() - start) / 1E9;
+
+    start = System.nanoTime();
+    final SpectralLibraryPrecursorIndex index = new SpectralLibraryPrecursorIndex(entries);
+    long indexHits = 0;
+    for (double mz : rowMzs) {
+      final double window = tol.getMzToleranceForMass(mz);
+      indexHits += index.indexAfterLast(mz + window) - index.indexOfFirst(mz - window);
+    }
+    final double indexSeconds = (System.nanoTime() - start) / 1E9;
+
+    Assertions.assertEquals(linearHits, indexHits);
+    logger.info(String.format(
+        "Precursor candidate search of %d rows in %d entries: linear %.0f rows/s, index (incl. build) %.0f rows/s",
+        rows, entries.size(), rows / linearSeconds, rows / indexSeconds));
+  }
+}